@@ -0,0 +1,244 @@
+package org.console;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Сбор метрик контейнеров напрямую из cgroup (v1 и v2) одним удаленным вызовом на сервер.
+// Дельты CPU считаются на бекенде между соседними замерами, результат отдается всем зрителям сервера.
+public class CgroupStatsCollector {
+    private static final Logger logger = LoggerFactory.getLogger(CgroupStatsCollector.class);
+    private static final long MAX_AGE_NS = 3_000_000_000L;
+    private static final long MAX_BASELINE_AGE_NS = 60_000_000_000L;
+    private static final long WARMUP_DELAY_MS = 1000;
+    private static final long UNAVAILABLE_RETRY_MS = 5 * 60 * 1000;
+
+    // Вывод построчный: заголовки T/V/M, затем блок "C <id>" с сырыми значениями счетчиков на контейнер
+    static final String SCRIPT = String.join("\n",
+        "echo \"T $(date +%s%N) $(nproc 2>/dev/null || echo 1)\"",
+        "echo \"M $(awk '/^MemTotal:/{print $2}' /proc/meminfo 2>/dev/null)\"",
+        "net() { p=$(head -n 1 \"$1/cgroup.procs\" 2>/dev/null); [ -n \"$p\" ] && tail -n +3 \"/proc/$p/net/dev\" 2>/dev/null | sed 's/^/N /'; }",
+        "cid() { id=${1##*/}; id=${id#docker-}; id=${id%.scope}; case $id in *[!0-9a-f]*) return 1;; esac; [ ${#id} -eq 64 ]; }",
+        "if [ -f /sys/fs/cgroup/cgroup.controllers ]; then",
+        "  echo 'V 2'",
+        "  for d in /sys/fs/cgroup/system.slice/docker-*.scope /sys/fs/cgroup/docker/*; do",
+        "    [ -f \"$d/cpu.stat\" ] && cid \"$d\" || continue",
+        "    echo \"C $id\"",
+        "    grep '^usage_usec ' \"$d/cpu.stat\"",
+        "    echo \"memory.current $(cat \"$d/memory.current\" 2>/dev/null)\"",
+        "    echo \"memory.max $(cat \"$d/memory.max\" 2>/dev/null)\"",
+        "    grep '^inactive_file ' \"$d/memory.stat\" 2>/dev/null",
+        "    echo \"pids.current $(cat \"$d/pids.current\" 2>/dev/null)\"",
+        "    sed 's/^/IO /' \"$d/io.stat\" 2>/dev/null",
+        "    net \"$d\"",
+        "  done",
+        "elif [ -d /sys/fs/cgroup/memory ]; then",
+        "  echo 'V 1'",
+        "  for d in /sys/fs/cgroup/memory/docker/* /sys/fs/cgroup/memory/system.slice/docker-*.scope; do",
+        "    [ -f \"$d/memory.usage_in_bytes\" ] && cid \"$d\" || continue",
+        "    rel=${d#/sys/fs/cgroup/memory/}",
+        "    echo \"C $id\"",
+        "    echo \"cpuacct.usage $(cat \"/sys/fs/cgroup/cpuacct/$rel/cpuacct.usage\" 2>/dev/null)\"",
+        "    echo \"memory.current $(cat \"$d/memory.usage_in_bytes\" 2>/dev/null)\"",
+        "    echo \"memory.max $(cat \"$d/memory.limit_in_bytes\" 2>/dev/null)\"",
+        "    grep '^total_inactive_file ' \"$d/memory.stat\" 2>/dev/null",
+        "    echo \"pids.current $(cat \"/sys/fs/cgroup/pids/$rel/pids.current\" 2>/dev/null)\"",
+        "    sed 's/^/B /' \"/sys/fs/cgroup/blkio/$rel/blkio.throttle.io_service_bytes\" 2>/dev/null",
+        "    net \"$d\"",
+        "  done",
+        "fi",
+        "exit 0");
+
+    private final Vertx vertx;
+    private final Map<String, Snapshot> latest = new ConcurrentHashMap<>();
+    private final Map<String, Future<Map<String, JsonObject>>> pending = new ConcurrentHashMap<>();
+    private final Map<String, Long> unavailableUntil = new ConcurrentHashMap<>();
+
+    public CgroupStatsCollector(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    public boolean isAvailable(String serverId) {
+        Long until = unavailableUntil.get(serverId);
+        return until == null || until < System.currentTimeMillis();
+    }
+
+    // runner выполняет скрипт на сервере и возвращает его вывод
+    public Future<Map<String, JsonObject>> collect(String serverId, Function<String, Future<String>> runner) {
+        Snapshot last = latest.get(serverId);
+        if (last != null && last.summaries != null && System.nanoTime() - last.localNs < MAX_AGE_NS) {
+            return Future.succeededFuture(last.summaries);
+        }
+        Future<Map<String, JsonObject>> inflight = pending.get(serverId);
+        if (inflight != null) {
+            return inflight;
+        }
+
+        Promise<Map<String, JsonObject>> promise = Promise.promise();
+        pending.put(serverId, promise.future());
+        sample(runner)
+            .compose(snapshot -> {
+                Snapshot prev = latest.get(serverId);
+                if (prev == null || snapshot.localNs - prev.localNs > MAX_BASELINE_AGE_NS) {
+                    // Нет свежей базы для дельт CPU: делаем второй замер через секунду, не блокируя потоки
+                    Promise<Void> delay = Promise.promise();
+                    vertx.setTimer(WARMUP_DELAY_MS, t -> delay.complete());
+                    return delay.future().compose(v -> sample(runner)).map(second -> second.computeSummaries(snapshot));
+                }
+                return Future.succeededFuture(snapshot.computeSummaries(prev));
+            })
+            .onComplete(ar -> {
+                pending.remove(serverId);
+                if (ar.succeeded()) {
+                    latest.put(serverId, ar.result());
+                    promise.complete(ar.result().summaries);
+                } else {
+                    logger.warn("cgroup stats are not available on server {}, falling back to Docker API: {}", serverId, ar.cause().getMessage());
+                    latest.remove(serverId);
+                    unavailableUntil.put(serverId, System.currentTimeMillis() + UNAVAILABLE_RETRY_MS);
+                    promise.fail(ar.cause());
+                }
+            });
+        return promise.future();
+    }
+
+    private Future<Snapshot> sample(Function<String, Future<String>> runner) {
+        return runner.apply(SCRIPT).compose(output -> {
+            Snapshot snapshot = parse(output);
+            return snapshot.version == 0 ? Future.failedFuture("cgroup counters are not readable") : Future.succeededFuture(snapshot);
+        });
+    }
+
+    static Snapshot parse(String output) {
+        Snapshot snapshot = new Snapshot();
+        Sample current = null;
+        for (String rawLine : output.split("\n")) {
+            String line = rawLine.trim();
+            if (line.isEmpty()) continue;
+            String[] parts = line.split("\\s+");
+            if (line.startsWith("T ")) {
+                snapshot.remoteNs = parts.length > 1 ? parseLong(parts[1]) : 0;
+                snapshot.cpus = parts.length > 2 ? (int) Math.max(1, parseLong(parts[2])) : 1;
+            } else if (line.startsWith("V ")) {
+                snapshot.version = (int) parseLong(parts[1]);
+            } else if (line.startsWith("M ")) {
+                snapshot.hostMemory = parts.length > 1 ? parseLong(parts[1]) * 1024 : 0;
+            } else if (line.startsWith("C ")) {
+                current = new Sample();
+                snapshot.samples.put(parts[1], current);
+            } else if (current != null) {
+                switch (parts[0]) {
+                    case "usage_usec": current.cpuNs = parseLong(parts[1]) * 1000; break;
+                    case "cpuacct.usage": current.cpuNs = parts.length > 1 ? parseLong(parts[1]) : 0; break;
+                    case "memory.current": current.memUsage = parts.length > 1 ? parseLong(parts[1]) : 0; break;
+                    case "memory.max":
+                        // "max" в v2 и огромное значение в v1 означают отсутствие лимита
+                        long limit = parts.length > 1 ? parseLong(parts[1]) : 0;
+                        current.memLimit = limit >= (1L << 60) ? 0 : limit;
+                        break;
+                    case "inactive_file":
+                    case "total_inactive_file": current.inactiveFile = parseLong(parts[1]); break;
+                    case "pids.current": current.pids = parts.length > 1 ? parseLong(parts[1]) : 0; break;
+                    case "IO":
+                        for (int i = 2; i < parts.length; i++) {
+                            if (parts[i].startsWith("rbytes=")) current.ioRead += parseLong(parts[i].substring(7));
+                            else if (parts[i].startsWith("wbytes=")) current.ioWrite += parseLong(parts[i].substring(7));
+                        }
+                        break;
+                    case "B":
+                        if (parts.length >= 4) {
+                            if ("Read".equals(parts[2])) current.ioRead += parseLong(parts[3]);
+                            else if ("Write".equals(parts[2])) current.ioWrite += parseLong(parts[3]);
+                        }
+                        break;
+                    case "N":
+                        int colon = line.indexOf(':');
+                        if (colon < 0) break;
+                        String iface = line.substring(2, colon).trim();
+                        String[] fields = line.substring(colon + 1).trim().split("\\s+");
+                        if (!"lo".equals(iface) && fields.length >= 9) {
+                            current.netRx += parseLong(fields[0]);
+                            current.netTx += parseLong(fields[8]);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    static class Snapshot {
+        final long localNs = System.nanoTime();
+        // Метка замера; сводки из закэшированного снимка отдаются с ней же, и история их не дублирует
+        final long sampledAt = System.currentTimeMillis();
+        long remoteNs;
+        int version;
+        int cpus = 1;
+        long hostMemory;
+        final Map<String, Sample> samples = new HashMap<>();
+        Map<String, JsonObject> summaries;
+
+        Snapshot computeSummaries(Snapshot prev) {
+            // Удаленное время точнее (нет задержки канала), но busybox date не поддерживает %N
+            long elapsedNs = remoteNs > 0 && prev.remoteNs > 0 ? remoteNs - prev.remoteNs : localNs - prev.localNs;
+            long timestamp = sampledAt;
+            Map<String, JsonObject> result = new HashMap<>();
+            samples.forEach((id, s) -> {
+                Sample p = prev.samples.get(id);
+                double cpuPercent = 0.0;
+                if (p != null && elapsedNs > 0 && s.cpuNs >= p.cpuNs) {
+                    cpuPercent = (double) (s.cpuNs - p.cpuNs) / elapsedNs * 100.0;
+                }
+                long memUsage = s.inactiveFile > 0 && s.inactiveFile < s.memUsage ? s.memUsage - s.inactiveFile : s.memUsage;
+                long memLimit = s.memLimit > 0 ? s.memLimit : hostMemory;
+                result.put(id, new JsonObject()
+                    .put("id", id)
+                    .put("source", "cgroup")
+                    .put("cpuPercent", Math.round(cpuPercent * 100.0) / 100.0)
+                    .put("onlineCpus", cpus)
+                    .put("memoryUsage", memUsage)
+                    .put("memoryLimit", memLimit)
+                    .put("memoryPercent", memLimit > 0 ? Math.round((double) memUsage / memLimit * 10000.0) / 100.0 : 0.0)
+                    .put("netRx", s.netRx)
+                    .put("netTx", s.netTx)
+                    .put("blockRead", s.ioRead)
+                    .put("blockWrite", s.ioWrite)
+                    .put("pids", s.pids)
+                    .put("timestamp", timestamp));
+            });
+            summaries = Collections.unmodifiableMap(result);
+            return this;
+        }
+    }
+
+    static class Sample {
+        long cpuNs;
+        long memUsage;
+        long memLimit;
+        long inactiveFile;
+        long pids;
+        long ioRead;
+        long ioWrite;
+        long netRx;
+        long netTx;
+    }
+}
@@ -11,6 +11,7 @@ public class Constants {
     public static final String SSH_SESSION_RESTORE = "ssh.session.restore";
     public static final String SSH_SESSION_TERMINATE = "ssh.session.terminate";
     public static final String SSH_SESSION_VIEWMODE_SET = "ssh.session.viewmode.set";
+    public static final String SSH_SESSION_RESIZE = "ssh.session.resize";
     public static final String SSH_SESSION_VIEWMODE_SYNC = "ssh.session.viewmode.sync";
     public static final String SSH_SESSION_WIDGET_LAYOUT = "ssh.session.widget.layout";
     
@@ -32,22 +33,43 @@ public class Constants {
     public static final String DOCKER_PREFIX = "docker.";
     public static final String DOCKER_CONTAINERS_LIST = "docker.containers.list";
     public static final String DOCKER_CONTAINER_STATS = "docker.container.stats";
+    public static final String DOCKER_CONTAINERS_STATS = "docker.containers.stats";
+    public static final String DOCKER_CONTAINER_STATS_HISTORY = "docker.container.stats.history";
     public static final String DOCKER_CONTAINER_RESTART = "docker.container.restart";
     public static final String DOCKER_CONTAINER_LOGS = "docker.container.logs";
+    public static final String DOCKER_CONTAINER_LOGS_SEARCH = "docker.container.logs.search";
+    public static final String DOCKER_CONTAINER_LOGS_SEARCH_CANCEL = "docker.container.logs.search.cancel";
+    public static final String DOCKER_LOGS_SEARCH_RESULTS = ".docker.logs.search";
     public static final String DOCKER_CONTAINER_INSPECT = "docker.container.inspect";
     public static final String DOCKER_CONTAINER_UPDATE_ENV = "docker.container.update_env";
+    public static final String DOCKER_CONTAINERS_BATCH = "docker.containers.batch";
+    public static final String DOCKER_BATCH_PROGRESS = ".docker.batch.progress";
 
     public static final String FILES_PREFIX = "files.";
     public static final String FILES_LIST = "files.list";
-    public static final String FILES_ARCHIVE = "files.archive";
     public static final String FILES_SIZE = "files.size";
+    public static final String FILES_SIZE_CANCEL = "files.size.cancel";
+    public static final String FILES_SIZE_RESULTS = ".files.size";
     public static final String FILES_MKDIR = "files.mkdir";
     public static final String FILES_DELETE = "files.delete";
     public static final String FILES_CHMOD = "files.chmod";
     public static final String FILES_RENAME = "files.rename";
     public static final String FILES_COPY = "files.copy";
     public static final String FILES_COPY_PROGRESS = ".files.copy.progress";
+    public static final String FILES_VIEW = "files.view";
+    public static final String FILES_SEARCH = "files.search";
+    public static final String FILES_SEARCH_CANCEL = "files.search.cancel";
+    public static final String FILES_SEARCH_PAGE = "files.search.page";
+    public static final String FILES_SEARCH_RESULTS = ".files.search";
+    public static final String FILES_INDEX_SEARCH = "files.index.search";
+    public static final String FILES_TRANSFER_LIST = "files.transfer.list";
+    public static final String FILES_TRANSFER_CANCEL = "files.transfer.cancel";
+    public static final String FILES_TRANSFER_UPDATE = "files.transfer.update";
     public static final String FILES_CHANGED = ".files.changed";
+    public static final String FILES_WATCH = "files.watch";
+    public static final String FILES_UNWATCH = "files.unwatch";
+    // Внутренний адрес (не доступен через bridge): изменения файлов, сделанные вне SshVerticle
+    public static final String FILES_MUTATED = "internal.files.mutated";
     public static final String FILES_CHECK_TOOLS = "files.check.tools";
     public static final String FILES_INSTALL_TOOLS = "files.install.tools";
 
@@ -59,4 +81,90 @@ public class Constants {
     public static final int DEFAULT_HTTP_PORT = 8080;
     public static final int MAX_CHANNELS_PER_SESSION = 10;
     public static final long IDLE_TIMEOUT_MS = 3 * 60 * 1000;
+    public static final long SFTP_CHANNEL_IDLE_TIMEOUT_MS = 2 * 60 * 1000;
+    public static final long FILES_LIST_CACHE_MAX_AGE_MS = 30000;
+    public static final int FILES_LIST_CACHE_MAX_DIRS = 256;
+    // Каталоги больше этого размера не кэшируются и отдаются только постранично
+    public static final int FILES_LIST_CACHE_MAX_ENTRIES = 5000;
+    public static final int FILES_LIST_PAGE_SIZE = 500;
+    public static final int FILES_LIST_MAX_PAGE_SIZE = 2000;
+    public static final long FILES_SIZE_CACHE_TTL_MS = 10 * 60 * 1000;
+    // Наблюдение за открытыми каталогами: аренда подписки продлевается клиентом
+    public static final long FILES_WATCH_LEASE_MS = 2 * 60 * 1000;
+    public static final long FILES_WATCH_RESTART_DELAY_MS = 500;
+    public static final long FILES_WATCH_POLL_INTERVAL_MS = 5000;
+    public static final long FILES_WATCH_DEBOUNCE_MS = 300;
+    public static final long FILES_WATCH_MAX_DELAY_MS = 2000;
+    // Просмотр больших файлов: строк и байт на страницу, шаг разреженного индекса строк
+    // и сколько байт индекс досканирует за один запрос
+    public static final int VIEW_PAGE_LINES = 200;
+    public static final int VIEW_MAX_PAGE_LINES = 1000;
+    public static final int VIEW_PAGE_MAX_BYTES = 256 * 1024;
+    public static final int VIEW_MAX_LINE_BYTES = 8192;
+    public static final int VIEW_INDEX_STEP = 1000;
+    // Кусок досканирования индекса за одно занятие общего SFTP-канала сервера; между кусками канал отпускается,
+    // пока запрос не уложится в VIEW_INDEX_SCAN_BUDGET_MS - дальше клиент повторит его сам
+    public static final long VIEW_INDEX_SCAN_BYTES = 2 * 1024 * 1024;
+    public static final long VIEW_INDEX_SCAN_BUDGET_MS = 2000;
+    public static final long VIEW_INDEX_TTL_MS = 10 * 60 * 1000;
+    public static final int VIEW_MAX_INDEXES = 64;
+    // Поиск по содержимому: совпадений на странице (первая приходит потоком), всего хранится
+    // и длина строки совпадения в ответе
+    public static final int FILES_SEARCH_PAGE_SIZE = 200;
+    public static final int FILES_SEARCH_MAX_RESULTS = 10000;
+    public static final int FILES_SEARCH_MAX_LINE_CHARS = 500;
+    public static final long FILES_SEARCH_TTL_MS = 10 * 60 * 1000;
+    // Индекс имен файлов: предел записей на сервер, полное пересканирование, хранение без поисков,
+    // задержка сбора изменений и их число, после которого дешевле пересканировать целиком
+    public static final int FILE_INDEX_MAX_ENTRIES = 1_000_000;
+    public static final long FILE_INDEX_RESCAN_MS = 30 * 60 * 1000;
+    public static final long FILE_INDEX_TTL_MS = 2 * 60 * 60 * 1000;
+    public static final long FILE_INDEX_CHECK_INTERVAL_MS = 60 * 1000;
+    public static final long FILE_INDEX_DEBOUNCE_MS = 2000;
+    public static final int FILE_INDEX_MAX_DIRTY_DIRS = 64;
+    public static final int FILE_INDEX_SEARCH_LIMIT = 50;
+    // Объектов в одном архиве на скачивание (параметры path в URL)
+    public static final int ARCHIVE_MAX_PATHS = 200;
+    // Код выхода проверки перед архивацией: одного из объектов нет (EX_NOINPUT)
+    public static final int ARCHIVE_NOT_FOUND_EXIT = 66;
+    // Параллельные SFTP-потоки на пару серверов при копировании через бекенд
+    public static final int FILES_COPY_DEFAULT_PARALLELISM = 4;
+    public static final int FILES_COPY_MAX_PARALLELISM = 8;
+    // Очередь копирований между серверами: одновременно всего и на один сервер (источник или приемник)
+    public static final int TRANSFER_MAX_CONCURRENT = 4;
+    public static final int TRANSFER_MAX_PER_SERVER = 2;
+    // Приоритет в очереди задает клиент: 0 - обычный, TRANSFER_MAX_PRIORITY - срочный
+    public static final int TRANSFER_MAX_PRIORITY = 10;
+    public static final long TRANSFER_SCHEDULE_INTERVAL_MS = 5000;
+    public static final long TRANSFER_PERSIST_INTERVAL_MS = 2000;
+    public static final long TRANSFER_TTL_SEC = 7 * 86400;
+    // Докачиваемая загрузка: размер части, который предлагается клиенту, и предел тела одной части
+    public static final int UPLOAD_CHUNK_SIZE = 8 * 1024 * 1024;
+    public static final long UPLOAD_MAX_CHUNK_BYTES = 64 * 1024 * 1024;
+    public static final long UPLOAD_SESSION_TTL_SEC = 24 * 60 * 60;
+    // Сколько хранится маркер завершенной загрузки для повторов commit, чей ответ потерялся
+    public static final long UPLOAD_COMMITTED_TTL_SEC = 60 * 60;
+    public static final String DOCKER_SOCKET_PATH = "/var/run/docker.sock";
+    public static final int DOCKER_MAX_CONCURRENT_PER_SERVER = 4;
+    public static final long DOCKER_QUEUE_TIMEOUT_MS = 15000;
+    // Пакетная статистика через Docker API: /stats?stream=false отвечает за 1-2 с (Docker ждет второй замер).
+    // Все слоты сервера, кроме одного для действий пользователя: за 10 с (меньше интервала опроса клиента в 15 с)
+    // успевают ~15-30 контейнеров, остальные идут первыми в следующем запросе
+    public static final int DOCKER_STATS_BATCH_CONCURRENCY = DOCKER_MAX_CONCURRENT_PER_SERVER - 1;
+    public static final long DOCKER_STATS_BATCH_TIMEOUT_MS = 10000;
+    public static final int DOCKER_LIST_MAX_PAGE_SIZE = 500;
+    public static final int DOCKER_BATCH_DEFAULT_PARALLELISM = 2;
+    public static final int DOCKER_BATCH_MAX_PARALLELISM = 8;
+    public static final int DOCKER_LOG_SEARCH_DEFAULT_LIMIT = 500;
+    public static final int DOCKER_LOG_SEARCH_MAX_LIMIT = 5000;
+    public static final int DOCKER_LOG_SEARCH_MAX_CONTEXT = 10;
+    // Индексы строк для повторного поиска по логам: предел одного индекса и всех вместе
+    // (общий предел переопределяется переменной окружения DOCKER_LOG_INDEX_TOTAL_MB)
+    public static final int DOCKER_LOG_INDEX_MAX_BYTES = 16 * 1024 * 1024;
+    public static final long DOCKER_LOG_INDEX_TOTAL_BYTES = 64L * 1024 * 1024;
+    // История статистики: 1 час с шагом 5 секунд, затем 24 часа с шагом 1 минута
+    public static final long STATS_HISTORY_FINE_STEP_MS = 5000;
+    public static final int STATS_HISTORY_FINE_SLOTS = 720;
+    public static final long STATS_HISTORY_COARSE_STEP_MS = 60000;
+    public static final int STATS_HISTORY_COARSE_SLOTS = 1440;
 }
@@ -0,0 +1,269 @@
+package org.console;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static org.console.Constants.*;
+
+// Поиск по логам контейнера построчно, без загрузки лога в память целиком.
+// Дополнительно держит короткоживущие индексы строк, чтобы повторный поиск по тому же окну
+// не запрашивал лог у Docker заново. Все индексы вместе занимают не больше maxTotalBytes.
+public class ContainerLogSearch {
+    private static final long INDEX_TTL_MS = 2 * 60 * 1000;
+    private static final int INDEX_MAX_ENTRIES = 8;
+    private static final int MAX_LINE_LENGTH = 4096;
+    private static final int BATCH_SIZE = 50;
+
+    private final Map<String, LineIndex> indexes = new ConcurrentHashMap<>();
+    private final long maxTotalBytes;
+
+    public ContainerLogSearch(long maxTotalBytes) {
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    public interface LineSource {
+        // null - конец лога
+        String next() throws IOException;
+    }
+
+    public LineIndex getIndex(String key) {
+        LineIndex index = indexes.get(key);
+        if (index != null && index.expiresAt < System.currentTimeMillis()) {
+            indexes.remove(key, index);
+            return null;
+        }
+        return index;
+    }
+
+    // Построитель индекса: один индекс не больше DOCKER_LOG_INDEX_MAX_BYTES и не больше общего предела
+    public LineIndex.Builder newIndexBuilder() {
+        return new LineIndex.Builder((int) Math.min(DOCKER_LOG_INDEX_MAX_BYTES, maxTotalBytes));
+    }
+
+    public synchronized void putIndex(String key, LineIndex index) {
+        long now = System.currentTimeMillis();
+        indexes.values().removeIf(i -> i.expiresAt < now);
+        indexes.remove(key);
+        // Вытесняем индексы, которые истекают раньше остальных, пока новый не уложится в пределы
+        while (!indexes.isEmpty() && (indexes.size() >= INDEX_MAX_ENTRIES || totalBytes() + index.bytes() > maxTotalBytes)) {
+            indexes.entrySet().stream()
+                .min((a, b) -> Long.compare(a.getValue().expiresAt, b.getValue().expiresAt))
+                .ifPresent(e -> indexes.remove(e.getKey()));
+        }
+        if (index.bytes() > maxTotalBytes) return;
+        index.expiresAt = now + INDEX_TTL_MS;
+        indexes.put(key, index);
+    }
+
+    private long totalBytes() {
+        return indexes.values().stream().mapToLong(LineIndex::bytes).sum();
+    }
+
+    // Строки потока лога; длинные строки обрезаются при чтении, остаток до перевода строки пропускается,
+    // так что одна огромная строка не собирается в памяти целиком
+    public static LineSource lines(InputStream stream) {
+        InputStream in = new BufferedInputStream(stream, 64 * 1024);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        // Не больше MAX_LINE_LENGTH символов: до 4 байт на символ UTF-8
+        int limit = MAX_LINE_LENGTH * 4;
+        return () -> {
+            line.reset();
+            int b;
+            boolean any = false;
+            while ((b = in.read()) != -1) {
+                any = true;
+                if (b == '\n') break;
+                if (line.size() < limit) line.write(b);
+            }
+            if (!any) return null;
+            String text = line.toString(StandardCharsets.UTF_8);
+            if (text.endsWith("\r")) text = text.substring(0, text.length() - 1);
+            return text.length() > MAX_LINE_LENGTH ? text.substring(0, MAX_LINE_LENGTH) : text;
+        };
+    }
+
+    // Блокирующий проход по строкам. Совпадения с контекстом отдаются пачками через onBatch.
+    // indexBuilder (может быть null) получает все прочитанные строки.
+    public static JsonObject scan(LineSource source, Predicate<String> matcher, int context, int limit,
+                                  BooleanSupplier cancelled, LineIndex.Builder indexBuilder, Consumer<JsonArray> onBatch) throws IOException {
+        ArrayDeque<String> before = new ArrayDeque<>(context + 1);
+        List<PendingMatch> pending = new ArrayList<>();
+        JsonArray batch = new JsonArray();
+        long lineNumber = 0;
+        int matches = 0;
+        boolean truncated = false;
+        boolean wasCancelled = false;
+
+        String line;
+        while ((line = source.next()) != null) {
+            if (cancelled.getAsBoolean()) {
+                wasCancelled = true;
+                break;
+            }
+            lineNumber++;
+            if (indexBuilder != null) {
+                indexBuilder.add(line);
+            }
+            String text = line.length() > MAX_LINE_LENGTH ? line.substring(0, MAX_LINE_LENGTH) : line;
+
+            Iterator<PendingMatch> it = pending.iterator();
+            while (it.hasNext()) {
+                PendingMatch m = it.next();
+                m.after.add(text);
+                if (--m.remaining == 0) {
+                    batch.add(m.json.put("after", m.after));
+                    it.remove();
+                }
+            }
+
+            if (matcher.test(line)) {
+                if (matches >= limit) {
+                    truncated = true;
+                } else {
+                    matches++;
+                    JsonObject match = new JsonObject()
+                        .put("line", lineNumber)
+                        .put("text", text)
+                        .put("before", new JsonArray(new ArrayList<>(before)));
+                    if (context == 0) {
+                        batch.add(match.put("after", new JsonArray()));
+                    } else {
+                        pending.add(new PendingMatch(match, context));
+                    }
+                }
+            }
+
+            if (context > 0) {
+                before.addLast(text);
+                if (before.size() > context) before.pollFirst();
+            }
+
+            if (batch.size() >= BATCH_SIZE) {
+                onBatch.accept(batch);
+                batch = new JsonArray();
+            }
+            // Лимит достигнут: без индекса дочитывать лог незачем
+            if (matches >= limit && pending.isEmpty() && (indexBuilder == null || indexBuilder.isFull())) {
+                truncated = true;
+                break;
+            }
+        }
+
+        for (PendingMatch m : pending) {
+            batch.add(m.json.put("after", m.after));
+        }
+        if (!batch.isEmpty()) {
+            onBatch.accept(batch);
+        }
+        return new JsonObject()
+            .put("scannedLines", lineNumber)
+            .put("matches", matches)
+            .put("truncated", truncated)
+            .put("cancelled", wasCancelled);
+    }
+
+    private static class PendingMatch {
+        final JsonObject json;
+        final JsonArray after = new JsonArray();
+        int remaining;
+
+        PendingMatch(JsonObject json, int remaining) {
+            this.json = json;
+            this.remaining = remaining;
+        }
+    }
+
+    // Строки лога одним массивом байт UTF-8 и массивом смещений - без объекта на каждую строку
+    public static class LineIndex {
+        private final byte[] data;
+        private final int[] offsets;
+        private final int count;
+        volatile long expiresAt;
+
+        private LineIndex(byte[] data, int[] offsets, int count) {
+            this.data = data;
+            this.offsets = offsets;
+            this.count = count;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        long bytes() {
+            return data.length + (long) offsets.length * Integer.BYTES;
+        }
+
+        public LineSource source() {
+            int[] position = {0};
+            return () -> {
+                int i = position[0];
+                if (i >= count) return null;
+                position[0]++;
+                return new String(data, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+            };
+        }
+
+        public static class Builder {
+            private final int maxBytes;
+            private byte[] data = new byte[64 * 1024];
+            private int[] offsets = new int[1024];
+            private int size;
+            private int count;
+            private boolean full;
+
+            Builder(int maxBytes) {
+                this.maxBytes = maxBytes;
+            }
+
+            public void add(String line) {
+                if (full) return;
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                if (size + bytes.length > maxBytes) {
+                    // Окно слишком большое для индекса - дальше просто ищем по потоку
+                    full = true;
+                    data = null;
+                    offsets = null;
+                    return;
+                }
+                if (size + bytes.length > data.length) {
+                    data = Arrays.copyOf(data, Math.min(maxBytes, Math.max(data.length * 2, size + bytes.length)));
+                }
+                if (count + 2 > offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                }
+                offsets[count] = size;
+                System.arraycopy(bytes, 0, data, size, bytes.length);
+                size += bytes.length;
+                count++;
+                offsets[count] = size;
+            }
+
+            public boolean isFull() {
+                return full;
+            }
+
+            // null, если лог не поместился в лимит
+            public LineIndex build() {
+                if (full) return null;
+                return new LineIndex(Arrays.copyOf(data, size), Arrays.copyOf(offsets, count + 1), count);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.console;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.console.Constants.*;
+
+// История статистики контейнеров в кольцевых буферах примитивов.
+// Память на контейнер фиксирована: два кольца (детальное и прореженное) с колонками float/long,
+// без объектов на каждый замер. Сетевые и дисковые счетчики хранятся как скорость (байт/с).
+public class ContainerStatsHistory {
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+
+    public void record(String serverId, JsonObject summary) {
+        String containerId = summary.getString("id");
+        if (serverId == null || containerId == null) return;
+        series.computeIfAbsent(serverId + ":" + containerId, k -> new Series()).add(summary);
+    }
+
+    // Возвращает null, если по контейнеру нет данных
+    public JsonObject query(String serverId, String containerId, long from, long to, String resolution) {
+        Series s = series.get(serverId + ":" + containerId);
+        return s != null ? s.query(from, to, resolution) : null;
+    }
+
+    // Убираем контейнеры, по которым давно не было замеров (удалены или никто не смотрит)
+    // Время последнего записанного замера; 0 - замеров нет
+    public long lastSampleTime(String serverId, String containerId) {
+        Series s = series.get(serverId + ":" + containerId);
+        return s != null ? s.lastTimestamp : 0;
+    }
+
+    public void evictStale() {
+        long threshold = System.currentTimeMillis() - STATS_HISTORY_COARSE_STEP_MS * STATS_HISTORY_COARSE_SLOTS;
+        series.values().removeIf(s -> s.lastTimestamp < threshold);
+    }
+
+    private static class Series {
+        final Ring fine = new Ring(STATS_HISTORY_FINE_SLOTS, STATS_HISTORY_FINE_STEP_MS);
+        final Ring coarse = new Ring(STATS_HISTORY_COARSE_SLOTS, STATS_HISTORY_COARSE_STEP_MS);
+        long lastTimestamp;
+        long lastNetRx = -1, lastNetTx, lastBlockRead, lastBlockWrite;
+        long memoryLimit;
+
+        synchronized void add(JsonObject summary) {
+            long ts = summary.getLong("timestamp", System.currentTimeMillis());
+            // Одна и та же сводка может прийти повторно из кэша
+            if (ts <= lastTimestamp) return;
+
+            long netRx = summary.getLong("netRx", 0L);
+            long netTx = summary.getLong("netTx", 0L);
+            long blockRead = summary.getLong("blockRead", 0L);
+            long blockWrite = summary.getLong("blockWrite", 0L);
+            float rxRate = 0, txRate = 0, readRate = 0, writeRate = 0;
+            if (lastNetRx >= 0) {
+                double seconds = (ts - lastTimestamp) / 1000.0;
+                rxRate = rate(netRx, lastNetRx, seconds);
+                txRate = rate(netTx, lastNetTx, seconds);
+                readRate = rate(blockRead, lastBlockRead, seconds);
+                writeRate = rate(blockWrite, lastBlockWrite, seconds);
+            }
+            lastTimestamp = ts;
+            lastNetRx = netRx;
+            lastNetTx = netTx;
+            lastBlockRead = blockRead;
+            lastBlockWrite = blockWrite;
+            memoryLimit = summary.getLong("memoryLimit", 0L);
+
+            float cpu = summary.getDouble("cpuPercent", 0.0).floatValue();
+            long memory = summary.getLong("memoryUsage", 0L);
+            fine.add(ts, cpu, memory, rxRate, txRate, readRate, writeRate);
+            coarse.add(ts, cpu, memory, rxRate, txRate, readRate, writeRate);
+        }
+
+        // Счетчики сбрасываются при перезапуске контейнера - такой интервал считаем нулевым
+        private static float rate(long current, long previous, double seconds) {
+            return seconds > 0 && current >= previous ? (float) ((current - previous) / seconds) : 0f;
+        }
+
+        synchronized JsonObject query(long from, long to, String resolution) {
+            Ring ring;
+            if ("fine".equals(resolution)) {
+                ring = fine;
+            } else if ("coarse".equals(resolution)) {
+                ring = coarse;
+            } else {
+                // Детальное кольцо, если запрошенный диапазон в него помещается
+                ring = from >= lastTimestamp - fine.step * fine.slots ? fine : coarse;
+            }
+            return ring.query(from, to).put("memoryLimit", memoryLimit);
+        }
+    }
+
+    private static class Ring {
+        final int slots;
+        final long step;
+        // Номер интервала (timestamp / step), записанного в ячейку; 0 - ячейка пуста
+        final long[] epoch;
+        final int[] count;
+        final float[] cpu;
+        final long[] memory;
+        final float[] netRx;
+        final float[] netTx;
+        final float[] blockRead;
+        final float[] blockWrite;
+
+        Ring(int slots, long step) {
+            this.slots = slots;
+            this.step = step;
+            epoch = new long[slots];
+            count = new int[slots];
+            cpu = new float[slots];
+            memory = new long[slots];
+            netRx = new float[slots];
+            netTx = new float[slots];
+            blockRead = new float[slots];
+            blockWrite = new float[slots];
+        }
+
+        void add(long ts, float c, long mem, float rx, float tx, float read, float write) {
+            long e = ts / step;
+            int i = (int) (e % slots);
+            if (epoch[i] != e) {
+                // Ячейка принадлежала прошлому кругу - перезаписываем
+                epoch[i] = e;
+                count[i] = 0;
+                cpu[i] = 0;
+                memory[i] = 0;
+                netRx[i] = netTx[i] = blockRead[i] = blockWrite[i] = 0;
+            }
+            // Несколько замеров в одном интервале усредняются
+            int n = ++count[i];
+            cpu[i] += (c - cpu[i]) / n;
+            memory[i] += (mem - memory[i]) / n;
+            netRx[i] += (rx - netRx[i]) / n;
+            netTx[i] += (tx - netTx[i]) / n;
+            blockRead[i] += (read - blockRead[i]) / n;
+            blockWrite[i] += (write - blockWrite[i]) / n;
+        }
+
+        // Колоночный ответ: t - начало интервала в мс, остальные массивы выровнены по t
+        JsonObject query(long from, long to) {
+            long toEpoch = to / step;
+            long fromEpoch = Math.max(from / step, toEpoch - slots + 1);
+            JsonArray t = new JsonArray(), c = new JsonArray(), mem = new JsonArray();
+            JsonArray rx = new JsonArray(), tx = new JsonArray(), read = new JsonArray(), write = new JsonArray();
+            for (long e = fromEpoch; e <= toEpoch; e++) {
+                int i = (int) (e % slots);
+                if (epoch[i] != e) continue;
+                t.add(e * step);
+                c.add(cpu[i]);
+                mem.add(memory[i]);
+                rx.add(netRx[i]);
+                tx.add(netTx[i]);
+                read.add(blockRead[i]);
+                write.add(blockWrite[i]);
+            }
+            return new JsonObject()
+                .put("step", step)
+                .put("t", t)
+                .put("cpuPercent", c)
+                .put("memoryUsage", mem)
+                .put("netRxRate", rx)
+                .put("netTxRate", tx)
+                .put("blockReadRate", read)
+                .put("blockWriteRate", write);
+        }
+    }
+}
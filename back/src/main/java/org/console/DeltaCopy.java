@@ -0,0 +1,393 @@
+package org.console;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.Session;
+import org.console.utils.RateLimiter;
+import org.console.utils.ShellUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+import java.util.zip.Adler32;
+
+// Дельта-копирование файла поверх существующего на приемнике (по схеме rsync).
+// Приемник считает сигнатуры своих блоков (adler32 + md5) скриптом python3, бекенд проходит источник
+// скользящей adler32 и отправляет на приемник только литералы и ссылки на совпавшие блоки;
+// там второй скрипт собирает новый файл во временном и атомарно подменяет старый.
+public class DeltaCopy {
+    private static final int ADLER_MOD = 65521;
+    private static final int MAX_LITERAL = 64 * 1024;
+
+    // Нет python3, нет файла на приемнике или он изменился во время копирования - нужно обычное копирование
+    public static class UnavailableException extends Exception {
+        final boolean toolingMissing;
+
+        UnavailableException(String message, boolean toolingMissing) {
+            super(message);
+            this.toolingMissing = toolingMissing;
+        }
+
+        public boolean isToolingMissing() {
+            return toolingMissing;
+        }
+    }
+
+    public static class Result {
+        public long sourceBytes;
+        public long literalBytes;
+        public long matchedBytes;
+        public long signatureBytes;
+        public long deltaBytes;
+
+        // Сколько не пришлось передавать по сравнению с полным копированием
+        public long bytesSaved() {
+            return Math.max(0, sourceBytes - deltaBytes - signatureBytes);
+        }
+    }
+
+    private static final String SIGNATURE_SCRIPT = String.join("\n",
+        "import sys,zlib,hashlib",
+        "p,n=sys.argv[1],int(sys.argv[2])",
+        "o=sys.stdout.buffer",
+        "try:",
+        "    f=open(p,'rb')",
+        "except OSError:",
+        "    sys.exit(2)",
+        "with f:",
+        "    while True:",
+        "        b=f.read(n)",
+        "        if len(b)<n: break",
+        "        o.write(zlib.adler32(b).to_bytes(4,'big')+hashlib.md5(b).digest())");
+
+    // Поток операций: C <номер блока:8> <блоков:4> | L <длина:4> <данные> | E <md5 всего файла:16>
+    private static final String PATCH_SCRIPT = String.join("\n",
+        "import sys,os,hashlib,struct,tempfile",
+        "t,n=sys.argv[1],int(sys.argv[2])",
+        "i=sys.stdin.buffer",
+        "fd,tmp=tempfile.mkstemp(dir=os.path.dirname(t) or '.',prefix='.'+os.path.basename(t)+'.')",
+        "h=hashlib.md5()",
+        "def rd(k):",
+        "    b=i.read(k)",
+        "    if len(b)!=k: raise EOFError('truncated delta')",
+        "    return b",
+        "try:",
+        "    with open(t,'rb') as old, os.fdopen(fd,'wb') as out:",
+        "        while True:",
+        "            c=rd(1)",
+        "            if c==b'C':",
+        "                x,k=struct.unpack('>QI',rd(12))",
+        "                old.seek(x*n)",
+        "                r=k*n",
+        "                while r:",
+        "                    b=old.read(min(r,1<<20))",
+        "                    if not b: sys.exit(3)",
+        "                    out.write(b);h.update(b);r-=len(b)",
+        "            elif c==b'L':",
+        "                k,=struct.unpack('>I',rd(4))",
+        "                b=rd(k);out.write(b);h.update(b)",
+        "            elif c==b'E':",
+        "                if rd(16)!=h.digest(): sys.exit(3)",
+        "                break",
+        "            else:",
+        "                sys.exit(4)",
+        "    os.chmod(tmp,os.stat(t).st_mode&0o7777)",
+        "    os.replace(tmp,t)",
+        "    print('OK')",
+        "finally:",
+        "    if os.path.exists(tmp): os.unlink(tmp)");
+
+    // Блок ~ sqrt(размера), как у rsync: сигнатура остается небольшой, а совпадения - достаточно мелкими
+    static int blockSize(long size) {
+        long root = (long) Math.sqrt((double) size);
+        return (int) Math.max(2048, Math.min(128 * 1024, Long.highestOneBit(Math.max(1, root))));
+    }
+
+    // Блокирующий вызов. source - поток источника с начала файла; onScanned получает число прочитанных байт.
+    // rateLimiter (может быть null) - ограничение задания: через него идут чтение источника, сигнатура и дельта
+    public static Result copy(InputStream source, Session destSession, String destPath, long destSize,
+                              LongConsumer onScanned, BooleanSupplier cancelled, RateLimiter rateLimiter) throws Exception {
+        int n = blockSize(destSize);
+        Result result = new Result();
+
+        // 1. Сигнатура файла на приемнике
+        byte[] signature;
+        ChannelExec sigChannel = (ChannelExec) destSession.openChannel("exec");
+        try {
+            sigChannel.setCommand(pythonCommand(SIGNATURE_SCRIPT, destPath, n));
+            InputStream sigIn = sigChannel.getInputStream();
+            sigChannel.connect(15000);
+            signature = readLimited(sigIn, rateLimiter);
+            int status = waitForExit(sigChannel, cancelled);
+            if (status == 127) throw new UnavailableException("python3 is not available on the destination", true);
+            if (status == 2) throw new UnavailableException("Destination file is not readable", false);
+            if (status != 0) throw new IOException("Signature failed with status " + status);
+        } finally {
+            sigChannel.disconnect();
+        }
+        result.signatureBytes = signature.length;
+        int blocks = signature.length / 20;
+        Map<Integer, List<Integer>> weakIndex = new HashMap<>(blocks * 2);
+        for (int i = 0; i < blocks; i++) {
+            int weak = ((signature[i * 20] & 0xff) << 24) | ((signature[i * 20 + 1] & 0xff) << 16)
+                | ((signature[i * 20 + 2] & 0xff) << 8) | (signature[i * 20 + 3] & 0xff);
+            weakIndex.computeIfAbsent(weak, k -> new ArrayList<>(1)).add(i);
+        }
+
+        // 2. Проход источника и отправка дельты
+        ChannelExec patchChannel = (ChannelExec) destSession.openChannel("exec");
+        ByteArrayOutputStream patchErr = new ByteArrayOutputStream();
+        try {
+            patchChannel.setCommand(pythonCommand(PATCH_SCRIPT, destPath, n));
+            patchChannel.setErrStream(patchErr);
+            InputStream patchIn = patchChannel.getInputStream();
+            OutputStream patchOut = patchChannel.getOutputStream();
+            if (rateLimiter != null) patchOut = new LimitedOutputStream(patchOut, rateLimiter);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(patchOut, 64 * 1024));
+            patchChannel.connect(15000);
+
+            new Scanner(source, out, n, signature, weakIndex, result, onScanned, cancelled, rateLimiter).run();
+            out.close();
+
+            String reply = new String(patchIn.readAllBytes(), StandardCharsets.UTF_8).trim();
+            int status = waitForExit(patchChannel, cancelled);
+            if (status == 127) throw new UnavailableException("python3 is not available on the destination", true);
+            // 3 - собранный файл не совпал с источником (файл на приемнике менялся) - старый файл не тронут
+            if (status == 3) throw new UnavailableException("Destination file changed during delta copy", false);
+            if (status != 0 || !"OK".equals(reply)) {
+                String error = patchErr.toString(StandardCharsets.UTF_8).trim();
+                throw new IOException(error.isEmpty() ? "Delta apply failed with status " + status : error);
+            }
+        } finally {
+            patchChannel.disconnect();
+        }
+        return result;
+    }
+
+    private static String pythonCommand(String script, String path, int blockSize) {
+        return "command -v python3 >/dev/null 2>&1 || exit 127; exec python3 -c " + ShellUtils.sanitize(script)
+            + " " + ShellUtils.sanitize(path) + " " + blockSize;
+    }
+
+    private static byte[] readLimited(InputStream in, RateLimiter rateLimiter) throws IOException, InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            if (rateLimiter != null) rateLimiter.acquire(read);
+            out.write(chunk, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    // Поток дельты на приемник: каждый сброс буфера проходит через ограничение скорости
+    private static class LimitedOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final RateLimiter rateLimiter;
+
+        LimitedOutputStream(OutputStream out, RateLimiter rateLimiter) {
+            this.out = out;
+            this.rateLimiter = rateLimiter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                rateLimiter.acquire(len);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while rate limiting", e);
+            }
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private static int waitForExit(ChannelExec channel, BooleanSupplier cancelled) throws InterruptedException {
+        while (!channel.isClosed()) {
+            if (cancelled.getAsBoolean()) throw new InterruptedException("Cancelled");
+            Thread.sleep(50);
+        }
+        return channel.getExitStatus();
+    }
+
+    private static class Scanner {
+        private final InputStream in;
+        private final DataOutputStream out;
+        private final int n;
+        private final byte[] signature;
+        private final Map<Integer, List<Integer>> weakIndex;
+        private final Result result;
+        private final LongConsumer onScanned;
+        private final BooleanSupplier cancelled;
+        private final RateLimiter rateLimiter;
+        private final MessageDigest whole = MessageDigest.getInstance("MD5");
+        private final MessageDigest blockDigest = MessageDigest.getInstance("MD5");
+        private final byte[] buf;
+        private int start;
+        private int end;
+        private int literal;
+        private boolean eof;
+        // Ожидающая отправки серия подряд идущих блоков
+        private long copyIndex = -1;
+        private int copyCount;
+
+        Scanner(InputStream in, DataOutputStream out, int n, byte[] signature, Map<Integer, List<Integer>> weakIndex,
+                Result result, LongConsumer onScanned, BooleanSupplier cancelled, RateLimiter rateLimiter) throws Exception {
+            this.in = in;
+            this.out = out;
+            this.n = n;
+            this.signature = signature;
+            this.weakIndex = weakIndex;
+            this.result = result;
+            this.onScanned = onScanned;
+            this.cancelled = cancelled;
+            this.rateLimiter = rateLimiter;
+            this.buf = new byte[Math.max(4 * n, 1024 * 1024)];
+        }
+
+        void run() throws Exception {
+            int a = 0;
+            int b = 0;
+            boolean rolled = false;
+            while (true) {
+                if (cancelled.getAsBoolean()) throw new InterruptedException("Cancelled");
+                if (start - literal >= MAX_LITERAL) {
+                    flushLiteral(start);
+                }
+                if (!eof && end - start < n + 1) {
+                    fill();
+                }
+                if (end - start < n) break;
+
+                if (!rolled) {
+                    Adler32 adler = new Adler32();
+                    adler.update(buf, start, n);
+                    int value = (int) adler.getValue();
+                    a = value & 0xffff;
+                    b = value >>> 16;
+                    rolled = true;
+                }
+                long match = findBlock((b << 16) | a);
+                if (match >= 0) {
+                    flushLiteral(start);
+                    emitCopy(match);
+                    start += n;
+                    literal = start;
+                    rolled = false;
+                    continue;
+                }
+                if (end - start < n + 1) break;
+
+                // Сдвиг окна на байт: a = 1 + sum(x), b = sum префиксных a (как у zlib adler32)
+                int outByte = buf[start] & 0xff;
+                int inByte = buf[start + n] & 0xff;
+                a = Math.floorMod(a - outByte + inByte, ADLER_MOD);
+                b = (int) Math.floorMod((long) b - (long) (n % ADLER_MOD) * outByte + a - 1, (long) ADLER_MOD);
+                start++;
+            }
+            flushLiteral(end);
+            flushCopy();
+            out.writeByte('E');
+            out.write(whole.digest());
+            result.deltaBytes += 17;
+        }
+
+        // Сдвигает непрочитанный остаток в начало буфера и дочитывает источник
+        private void fill() throws IOException, InterruptedException {
+            flushLiteral(start);
+            if (start > 0) {
+                System.arraycopy(buf, start, buf, 0, end - start);
+                end -= start;
+                start = 0;
+                literal = 0;
+            }
+            while (end - start < n + 1) {
+                int read = in.read(buf, end, buf.length - end);
+                if (read == -1) {
+                    eof = true;
+                    return;
+                }
+                if (rateLimiter != null) rateLimiter.acquire(read);
+                whole.update(buf, end, read);
+                end += read;
+                result.sourceBytes += read;
+                onScanned.accept(read);
+            }
+        }
+
+        // Номер блока приемника с тем же содержимым; продолжение текущей серии предпочтительнее
+        private long findBlock(int weak) {
+            List<Integer> candidates = weakIndex.get(weak);
+            if (candidates == null) return -1;
+            blockDigest.update(buf, start, n);
+            byte[] strong = blockDigest.digest();
+            long preferred = copyCount > 0 ? copyIndex + copyCount : -1;
+            long found = -1;
+            for (int index : candidates) {
+                if (Arrays.equals(signature, index * 20 + 4, index * 20 + 20, strong, 0, 16)) {
+                    if (index == preferred) return index;
+                    if (found < 0) found = index;
+                }
+            }
+            return found;
+        }
+
+        private void emitCopy(long index) throws IOException {
+            result.matchedBytes += n;
+            if (copyCount > 0 && index == copyIndex + copyCount) {
+                copyCount++;
+                return;
+            }
+            flushCopy();
+            copyIndex = index;
+            copyCount = 1;
+        }
+
+        private void flushCopy() throws IOException {
+            if (copyCount == 0) return;
+            out.writeByte('C');
+            out.writeLong(copyIndex);
+            out.writeInt(copyCount);
+            result.deltaBytes += 13;
+            copyCount = 0;
+        }
+
+        private void flushLiteral(int upTo) throws IOException {
+            int length = upTo - literal;
+            if (length <= 0) return;
+            flushCopy();
+            out.writeByte('L');
+            out.writeInt(length);
+            out.write(buf, literal, length);
+            result.literalBytes += length;
+            result.deltaBytes += 5 + length;
+            literal = upTo;
+        }
+    }
+}
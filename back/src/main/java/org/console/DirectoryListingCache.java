@@ -0,0 +1,139 @@
+package org.console;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Кэш листингов каталогов по серверу и абсолютному пути.
+// Листинг действителен, пока mtime каталога не изменился и не истек maxAgeMs: mtime каталога меняется
+// только при добавлении/удалении/переименовании записей, размеры файлов внутри он не отражает.
+// Часы сервера и бекенда не сравниваются: проверяется только удаленный mtime, сохраненный при листинге.
+public class DirectoryListingCache {
+    // Версии уникальны и между перезапусками бекенда, чтобы клиентская версия не совпала случайно
+    private static final AtomicLong VERSIONS = new AtomicLong(System.currentTimeMillis());
+
+    private final Map<String, Map<String, Listing>> servers = new ConcurrentHashMap<>();
+    private final long maxAgeMs;
+    private final int maxDirsPerServer;
+
+    public DirectoryListingCache(long maxAgeMs, int maxDirsPerServer) {
+        this.maxAgeMs = maxAgeMs;
+        this.maxDirsPerServer = maxDirsPerServer;
+    }
+
+    public static class Listing {
+        public final String path;
+        public final JsonArray files;
+        public final JsonObject diskInfo;
+        public final long dirMtime;
+        public final long listedAt;
+        public final long version;
+        // Когда (по часам бекенда) этот mtime каталога впервые увидели
+        final long mtimeSeenAt;
+
+        Listing(String path, JsonArray files, JsonObject diskInfo, long dirMtime, long listedAt, long version, long mtimeSeenAt) {
+            this.path = path;
+            this.files = files;
+            this.diskInfo = diskInfo;
+            this.dirMtime = dirMtime;
+            this.listedAt = listedAt;
+            this.version = version;
+            this.mtimeSeenAt = mtimeSeenAt;
+        }
+
+        // mtime секундной точности: изменение в ту же секунду, что и листинг, его не меняет. Листинг, снятый
+        // через секунду после того, как этот mtime уже был виден, заведомо позже той секунды на сервере
+        boolean settled() {
+            return listedAt - mtimeSeenAt >= 1000;
+        }
+    }
+
+    public Listing get(String serverId, String path) {
+        Map<String, Listing> dirs = servers.get(serverId);
+        return dirs != null ? dirs.get(path) : null;
+    }
+
+    // null, если листинга нет или он мог устареть
+    public Listing getValid(String serverId, String path, long dirMtime) {
+        Listing listing = get(serverId, path);
+        if (listing == null || listing.dirMtime != dirMtime || !listing.settled()) return null;
+        if (System.currentTimeMillis() - listing.listedAt > maxAgeMs) return null;
+        return listing;
+    }
+
+    // Если содержимое не изменилось, версия сохраняется - клиент получит "not modified"
+    public Listing put(String serverId, String path, JsonArray files, JsonObject diskInfo, long dirMtime, long listedAt) {
+        Map<String, Listing> dirs = servers.computeIfAbsent(serverId, k -> new ConcurrentHashMap<>());
+        Listing previous = dirs.get(path);
+        long version = previous != null && previous.files.equals(files) ? previous.version : VERSIONS.incrementAndGet();
+        long mtimeSeenAt = previous != null && previous.dirMtime == dirMtime ? Math.min(previous.mtimeSeenAt, listedAt) : listedAt;
+        Listing listing = new Listing(path, files, diskInfo, dirMtime, listedAt, version, mtimeSeenAt);
+        dirs.put(path, listing);
+        if (dirs.size() > maxDirsPerServer) {
+            dirs.values().stream()
+                .min((a, b) -> Long.compare(a.listedAt, b.listedAt))
+                .ifPresent(oldest -> dirs.remove(oldest.path, oldest));
+        }
+        return listing;
+    }
+
+    // Сбрасывает один каталог (изменились его записи)
+    public void invalidate(String serverId, String path) {
+        Map<String, Listing> dirs = servers.get(serverId);
+        if (dirs == null || path == null) return;
+        if (!path.startsWith("/")) {
+            dirs.clear();
+            return;
+        }
+        dirs.remove(path);
+    }
+
+    // Сбрасывает каталог и все вложенные (удаление или переименование каталога)
+    public void invalidateTree(String serverId, String path) {
+        Map<String, Listing> dirs = servers.get(serverId);
+        if (dirs == null || path == null) return;
+        if (!path.startsWith("/")) {
+            // Относительный путь не сопоставить с ключами - сбрасываем сервер целиком
+            dirs.clear();
+            return;
+        }
+        String prefix = path.endsWith("/") ? path : path + "/";
+        dirs.keySet().removeIf(p -> p.equals(path) || p.startsWith(prefix));
+    }
+
+    // Устаревшие листинги какое-то время еще нужны как база для дельты в FILES_CHANGED
+    public void evictStale() {
+        long threshold = System.currentTimeMillis() - maxAgeMs * 10;
+        servers.values().forEach(dirs -> dirs.values().removeIf(l -> l.listedAt < threshold));
+        servers.values().removeIf(Map::isEmpty);
+    }
+
+    // Поэлементная разница двух листингов одного каталога
+    public static JsonObject diff(Listing previous, Listing current) {
+        Map<String, JsonObject> before = new HashMap<>();
+        for (int i = 0; i < previous.files.size(); i++) {
+            JsonObject f = previous.files.getJsonObject(i);
+            before.put(f.getString("name"), f);
+        }
+        JsonArray added = new JsonArray();
+        JsonArray changed = new JsonArray();
+        for (int i = 0; i < current.files.size(); i++) {
+            JsonObject f = current.files.getJsonObject(i);
+            JsonObject old = before.remove(f.getString("name"));
+            if (old == null) {
+                added.add(f);
+            } else if (!old.equals(f)) {
+                changed.add(f);
+            }
+        }
+        return new JsonObject()
+            .put("added", added)
+            .put("changed", changed)
+            .put("removed", new JsonArray(new ArrayList<>(before.keySet())));
+    }
+}
@@ -0,0 +1,50 @@
+package org.console;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Размеры каталогов (du) по серверу и абсолютному пути с TTL.
+// Изменение внутри каталога меняет размер всех его предков, поэтому инвалидация идет вверх и вниз по дереву.
+public class DirectorySizeCache {
+    private final Map<String, Map<String, long[]>> servers = new ConcurrentHashMap<>();
+    private final long ttlMs;
+
+    public DirectorySizeCache(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    // null - размера нет или он устарел
+    public Long get(String serverId, String path) {
+        Map<String, long[]> sizes = servers.get(serverId);
+        long[] entry = sizes != null ? sizes.get(path) : null;
+        if (entry == null || System.currentTimeMillis() - entry[1] > ttlMs) return null;
+        return entry[0];
+    }
+
+    public void put(String serverId, String path, long bytes) {
+        servers.computeIfAbsent(serverId, k -> new ConcurrentHashMap<>())
+            .put(path, new long[]{bytes, System.currentTimeMillis()});
+    }
+
+    // subtree=false - изменились только записи прямо в каталоге (например, загрузка файлов),
+    // размеры его подкаталогов остаются верными
+    public void invalidate(String serverId, String path, boolean subtree) {
+        Map<String, long[]> sizes = servers.get(serverId);
+        if (sizes == null || path == null) return;
+        if (!path.startsWith("/")) {
+            sizes.clear();
+            return;
+        }
+        String normalized = path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        String prefix = normalized.equals("/") ? "/" : normalized + "/";
+        sizes.keySet().removeIf(p -> p.equals(normalized)
+            || (subtree && p.startsWith(prefix))
+            || normalized.startsWith(p.equals("/") ? "/" : p + "/"));
+    }
+
+    public void evictStale() {
+        long threshold = System.currentTimeMillis() - ttlMs;
+        servers.values().forEach(sizes -> sizes.values().removeIf(e -> e[1] < threshold));
+        servers.values().removeIf(Map::isEmpty);
+    }
+}
@@ -0,0 +1,202 @@
+package org.console;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Неблокирующий планировщик запросов к Docker API.
+// Лимит одновременных запросов считается отдельно для каждого сервера, внутри сервера
+// очередь обслуживается по приоритетам, а внутри приоритета - по кругу между пользователями.
+// Ожидание в очереди не занимает рабочие потоки: таймаут очереди реализован таймером Vert.x.
+public class DockerApiScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(DockerApiScheduler.class);
+
+    public enum Priority {
+        // Действия пользователя: inspect, restart, логи, изменение ENV
+        INTERACTIVE,
+        // Фоновое обновление: список контейнеров, статистика
+        BACKGROUND
+    }
+
+    private final Vertx vertx;
+    private final int defaultLimit;
+    private final long queueTimeoutMs;
+    private final Map<String, ServerQueue> queues = new HashMap<>();
+    private final Map<String, Integer> limits = new HashMap<>();
+
+    public DockerApiScheduler(Vertx vertx, int defaultLimit, long queueTimeoutMs) {
+        this.vertx = vertx;
+        this.defaultLimit = defaultLimit;
+        this.queueTimeoutMs = queueTimeoutMs;
+    }
+
+    public synchronized void setServerLimit(String serverId, int limit) {
+        limits.put(serverId, Math.max(1, limit));
+        ServerQueue queue = queues.get(serverId);
+        if (queue != null) {
+            queue.limit = limits.get(serverId);
+        }
+    }
+
+    public synchronized int getServerLimit(String serverId) {
+        return limits.getOrDefault(serverId, defaultLimit);
+    }
+
+    public <T> Future<T> submit(String serverId, String userId, Priority priority, Supplier<Future<T>> task) {
+        Promise<T> promise = Promise.promise();
+        PendingTask<T> pending = new PendingTask<>(serverId, userId != null ? userId : "", priority, task, promise);
+        synchronized (this) {
+            ServerQueue queue = queue(serverId);
+            if (queue.active < queue.limit && queue.isEmpty()) {
+                queue.active++;
+            } else {
+                queue.enqueue(pending);
+                pending.timerId = vertx.setTimer(queueTimeoutMs, id -> expire(pending));
+                logger.debug("Docker API request queued for server {} (active: {}, queued: {})", serverId, queue.active, queue.size());
+                return promise.future();
+            }
+        }
+        run(pending);
+        return promise.future();
+    }
+
+    private <T> void run(PendingTask<T> pending) {
+        Future<T> future;
+        try {
+            future = pending.task.get();
+        } catch (Exception e) {
+            future = Future.failedFuture(e);
+        }
+        future.onComplete(ar -> {
+            release(pending.serverId);
+            if (ar.succeeded()) {
+                pending.promise.tryComplete(ar.result());
+            } else {
+                pending.promise.tryFail(ar.cause());
+            }
+        });
+    }
+
+    private void release(String serverId) {
+        PendingTask<?> next;
+        synchronized (this) {
+            ServerQueue queue = queue(serverId);
+            next = queue.poll();
+            if (next == null) {
+                queue.active--;
+                if (queue.active <= 0 && queue.isEmpty()) {
+                    queues.remove(serverId);
+                }
+                return;
+            }
+            // Слот переходит к следующей задаче без освобождения
+            vertx.cancelTimer(next.timerId);
+        }
+        run(next);
+    }
+
+    private void expire(PendingTask<?> pending) {
+        boolean removed;
+        synchronized (this) {
+            ServerQueue queue = queues.get(pending.serverId);
+            removed = queue != null && queue.remove(pending);
+        }
+        if (removed) {
+            logger.warn("Docker API request for server {} timed out in queue (user {})", pending.serverId, pending.userId);
+            pending.promise.tryFail("Превышен лимит одновременных запросов к Docker API. Пожалуйста, подождите.");
+        }
+    }
+
+    private ServerQueue queue(String serverId) {
+        return queues.computeIfAbsent(serverId, id -> new ServerQueue(limits.getOrDefault(id, defaultLimit)));
+    }
+
+    private static class ServerQueue {
+        int limit;
+        int active;
+        // Для каждого приоритета: очереди пользователей в порядке обхода (round-robin)
+        final Map<Priority, LinkedHashMap<String, ArrayDeque<PendingTask<?>>>> byPriority = new EnumMap<>(Priority.class);
+
+        ServerQueue(int limit) {
+            this.limit = limit;
+            for (Priority p : Priority.values()) {
+                byPriority.put(p, new LinkedHashMap<>());
+            }
+        }
+
+        void enqueue(PendingTask<?> task) {
+            byPriority.get(task.priority).computeIfAbsent(task.userId, u -> new ArrayDeque<>()).addLast(task);
+        }
+
+        PendingTask<?> poll() {
+            for (Priority p : Priority.values()) {
+                LinkedHashMap<String, ArrayDeque<PendingTask<?>>> users = byPriority.get(p);
+                Iterator<Map.Entry<String, ArrayDeque<PendingTask<?>>>> it = users.entrySet().iterator();
+                if (!it.hasNext()) continue;
+                Map.Entry<String, ArrayDeque<PendingTask<?>>> first = it.next();
+                String userId = first.getKey();
+                ArrayDeque<PendingTask<?>> tasks = first.getValue();
+                PendingTask<?> task = tasks.pollFirst();
+                // Пользователь уходит в конец очереди, чтобы остальные получили свой слот
+                users.remove(userId);
+                if (!tasks.isEmpty()) {
+                    users.put(userId, tasks);
+                }
+                return task;
+            }
+            return null;
+        }
+
+        boolean remove(PendingTask<?> task) {
+            LinkedHashMap<String, ArrayDeque<PendingTask<?>>> users = byPriority.get(task.priority);
+            ArrayDeque<PendingTask<?>> tasks = users.get(task.userId);
+            if (tasks == null || !tasks.remove(task)) return false;
+            if (tasks.isEmpty()) users.remove(task.userId);
+            return true;
+        }
+
+        boolean isEmpty() {
+            for (LinkedHashMap<String, ArrayDeque<PendingTask<?>>> users : byPriority.values()) {
+                if (!users.isEmpty()) return false;
+            }
+            return true;
+        }
+
+        int size() {
+            int size = 0;
+            for (LinkedHashMap<String, ArrayDeque<PendingTask<?>>> users : byPriority.values()) {
+                for (ArrayDeque<PendingTask<?>> tasks : users.values()) {
+                    size += tasks.size();
+                }
+            }
+            return size;
+        }
+    }
+
+    private static class PendingTask<T> {
+        final String serverId;
+        final String userId;
+        final Priority priority;
+        final Supplier<Future<T>> task;
+        final Promise<T> promise;
+        long timerId = -1;
+
+        PendingTask(String serverId, String userId, Priority priority, Supplier<Future<T>> task, Promise<T> promise) {
+            this.serverId = serverId;
+            this.userId = userId;
+            this.priority = priority;
+            this.task = task;
+            this.promise = promise;
+        }
+    }
+}
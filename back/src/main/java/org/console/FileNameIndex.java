@@ -0,0 +1,576 @@
+package org.console;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.Session;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.console.utils.ShellUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.console.Constants.*;
+
+// Индекс имен файлов сервера для мгновенного нечеткого поиска без обращения к серверу.
+// Строится одним проходом find по корням (fileIndexRoots в servers.json, по умолчанию - домашний каталог)
+// при первом поиске, дальше поддерживается по уведомлениям об изменении каталогов (операции приложения
+// и наблюдатель) и полным пересканированием раз в FILE_INDEX_RESCAN_MS, пока индексом пользуются.
+// Пути хранятся отсортированными с фронтальным сжатием: в блоке из 16 первый путь целиком,
+// остальные - длина общего префикса с предыдущим и хвост. Для глубоких деревьев это в разы меньше массива строк.
+// Состояние меняется только в контексте verticle, проходы find и поиск по снимку - в executeBlocking.
+public class FileNameIndex {
+    private static final Logger logger = LoggerFactory.getLogger(FileNameIndex.class);
+    // Служебные каталоги с большим числом файлов, которые в поиске по имени только мешают
+    private static final String PRUNE = "\\( -name .git -o -name node_modules \\) -prune -o";
+
+    private final Vertx vertx;
+    private final Function<String, Session> sessions;
+    private final Function<String, List<String>> roots;
+    private final Map<String, ServerIndex> servers = new HashMap<>();
+
+    public FileNameIndex(Vertx vertx, Function<String, Session> sessions, Function<String, List<String>> roots) {
+        this.vertx = vertx;
+        this.sessions = sessions;
+        this.roots = roots;
+        vertx.setPeriodic(FILE_INDEX_CHECK_INTERVAL_MS, id -> maintain());
+    }
+
+    private static class ServerIndex {
+        // null - еще не построен
+        PathList paths;
+        List<String> rootPaths = List.of();
+        boolean truncated;
+        boolean building;
+        boolean updating;
+        long builtAt;
+        long lastSearch = System.currentTimeMillis();
+        final Set<String> dirty = new LinkedHashSet<>();
+        long flushTimer = -1;
+    }
+
+    // Результат прохода find: записи по каждому просканированному каталогу (каталоги - с '/' в конце)
+    private static class Scan {
+        final Map<String, List<String>> entries = new LinkedHashMap<>();
+        int count;
+        boolean truncated;
+    }
+
+    public Future<JsonObject> search(String serverId, String query, int limit) {
+        ServerIndex index = servers.computeIfAbsent(serverId, k -> new ServerIndex());
+        index.lastSearch = System.currentTimeMillis();
+        PathList paths = index.paths;
+        if (paths == null) {
+            if (!index.building && !build(serverId, index)) {
+                servers.remove(serverId);
+                return Future.failedFuture("SSH session not active");
+            }
+            // Первый поиск на сервере: клиент повторит запрос, когда индекс будет готов
+            return Future.succeededFuture(new JsonObject().put("indexing", true).put("results", new JsonArray()));
+        }
+        boolean indexing = index.building || index.updating;
+        boolean truncated = index.truncated;
+        long builtAt = index.builtAt;
+        return vertx.<JsonArray>executeBlocking(() -> paths.search(query, limit), false)
+            .map(results -> new JsonObject()
+                .put("indexing", indexing)
+                .put("results", results)
+                .put("entries", paths.size())
+                .put("truncated", truncated)
+                .put("builtAt", builtAt));
+    }
+
+    // Каталог изменился: его прямые потомки будут перечитаны (с задержкой, чтобы собрать серию изменений)
+    public void markDirty(String serverId, String dir) {
+        ServerIndex index = servers.get(serverId);
+        if (index == null || index.paths == null || dir == null || !dir.startsWith("/")) return;
+        String normalized = dir.length() > 1 && dir.endsWith("/") ? dir.substring(0, dir.length() - 1) : dir;
+        if (!underRoot(index.rootPaths, normalized) || isPruned(normalized)) return;
+        index.dirty.add(normalized);
+        scheduleFlush(serverId, index);
+    }
+
+    private void scheduleFlush(String serverId, ServerIndex index) {
+        if (index.flushTimer != -1) return;
+        index.flushTimer = vertx.setTimer(FILE_INDEX_DEBOUNCE_MS, id -> {
+            index.flushTimer = -1;
+            flush(serverId, index);
+        });
+    }
+
+    private boolean build(String serverId, ServerIndex index) {
+        Session session = sessions.apply(serverId);
+        if (session == null) return false;
+        List<String> configured = roots.apply(serverId);
+        index.building = true;
+        long started = System.currentTimeMillis();
+        vertx.<Scan>executeBlocking(() -> scan(session, configured.isEmpty() ? List.of("~") : configured, false, FILE_INDEX_MAX_ENTRIES), false)
+            .onComplete(ar -> {
+                index.building = false;
+                if (servers.get(serverId) != index) return;
+                if (ar.failed()) {
+                    logger.warn("File name index build failed on server {}: {}", serverId, ar.cause().getMessage());
+                    if (index.paths == null) {
+                        servers.remove(serverId);
+                    }
+                    return;
+                }
+                Scan scan = ar.result();
+                List<String> all = new ArrayList<>(scan.count);
+                scan.entries.values().forEach(all::addAll);
+                index.paths = PathList.build(all);
+                index.rootPaths = new ArrayList<>(scan.entries.keySet());
+                index.truncated = scan.truncated;
+                index.builtAt = System.currentTimeMillis();
+                logger.info("File name index for server {} built in {} ms: {} entries, {} KB{}", serverId,
+                    index.builtAt - started, index.paths.size(), index.paths.memoryBytes() / 1024, scan.truncated ? " (truncated)" : "");
+                // Изменения во время прохода могли в него не попасть
+                if (!index.dirty.isEmpty()) {
+                    scheduleFlush(serverId, index);
+                }
+            });
+        return true;
+    }
+
+    private void flush(String serverId, ServerIndex index) {
+        if (servers.get(serverId) != index || index.paths == null) return;
+        if (index.building || index.updating) {
+            scheduleFlush(serverId, index);
+            return;
+        }
+        Session session = sessions.apply(serverId);
+        if (session == null) return; // Наверстает периодическое пересканирование
+        List<String> dirs = new ArrayList<>(index.dirty);
+        index.dirty.clear();
+        if (dirs.size() > FILE_INDEX_MAX_DIRTY_DIRS) {
+            // Массовые изменения дешевле пересканировать целиком
+            build(serverId, index);
+            return;
+        }
+        PathList base = index.paths;
+        index.updating = true;
+        vertx.<PathList>executeBlocking(() -> applyChanges(session, base, dirs), false)
+            .onComplete(ar -> {
+                index.updating = false;
+                if (ar.failed()) {
+                    logger.warn("File name index update failed on server {}: {}", serverId, ar.cause().getMessage());
+                } else if (index.paths == base) {
+                    // Полное пересканирование за это время уже заменило индекс - результат устарел
+                    index.paths = ar.result();
+                }
+                if (!index.dirty.isEmpty()) {
+                    scheduleFlush(serverId, index);
+                }
+            });
+    }
+
+    private void maintain() {
+        long now = System.currentTimeMillis();
+        servers.entrySet().removeIf(e -> {
+            ServerIndex index = e.getValue();
+            if (now - index.lastSearch > FILE_INDEX_TTL_MS) {
+                if (index.flushTimer != -1) {
+                    vertx.cancelTimer(index.flushTimer);
+                }
+                return true;
+            }
+            return false;
+        });
+        servers.forEach((serverId, index) -> {
+            if (index.paths != null && !index.building && now - index.builtAt > FILE_INDEX_RESCAN_MS) {
+                build(serverId, index);
+            }
+        });
+    }
+
+    // Блокирующий вызов: сравнение прямых потомков измененных каталогов с индексом,
+    // новые подкаталоги сканируются целиком, удаленные уходят вместе с поддеревом
+    private PathList applyChanges(Session session, PathList base, List<String> dirs) throws Exception {
+        Scan shallow = scan(session, dirs, true, FILE_INDEX_MAX_ENTRIES);
+        Set<String> removed = new HashSet<>();
+        List<String> added = new ArrayList<>();
+        List<String> newDirs = new ArrayList<>();
+        for (String dir : dirs) {
+            String prefix = dir.equals("/") ? "/" : dir + "/";
+            Set<String> current = new HashSet<>();
+            for (String entry : base.withPrefix(prefix)) {
+                int slash = entry.indexOf('/', prefix.length());
+                if (slash == -1 || slash == entry.length() - 1) {
+                    current.add(entry);
+                }
+            }
+            // Пропавший каталог - пустой список, его содержимое удаляется
+            List<String> listed = shallow.entries.getOrDefault(dir, List.of());
+            for (String entry : listed) {
+                if (!current.remove(entry)) {
+                    added.add(entry);
+                    if (entry.endsWith("/")) {
+                        newDirs.add(entry.substring(0, entry.length() - 1));
+                    }
+                }
+            }
+            removed.addAll(current);
+        }
+        if (!newDirs.isEmpty()) {
+            Scan deep = scan(session, newDirs, false, Math.max(0, FILE_INDEX_MAX_ENTRIES - base.size()));
+            deep.entries.values().forEach(added::addAll);
+        }
+        if (removed.isEmpty() && added.isEmpty()) return base;
+        return base.update(removed, added);
+    }
+
+    // Блокирующий вызов: find по каждому каталогу. Формат вывода - записи через \0:
+    // "\n<каталог>" начинает каталог, дальше его подкаталоги, запись "\n" - переход к файлам
+    private static Scan scan(Session session, List<String> dirs, boolean shallow, int limit) throws Exception {
+        String depth = shallow ? " -maxdepth 1" : "";
+        StringBuilder command = new StringBuilder();
+        for (String dir : dirs) {
+            // ~ в кавычках не раскрывается - домашний каталог подставляет сам cd
+            String cd = dir.equals("~") ? "cd" : dir.startsWith("~/") ? "cd ~/" + ShellUtils.sanitize(dir.substring(2)) : "cd " + ShellUtils.sanitize(dir);
+            command.append("if ").append(cd).append(" 2>/dev/null; then printf '\\n%s\\0' \"$PWD\"; ")
+                .append("find \"$PWD\" -xdev -mindepth 1").append(depth).append(' ').append(PRUNE).append(" -type d -print0; ")
+                .append("printf '\\n\\0'; ")
+                .append("find \"$PWD\" -xdev -mindepth 1").append(depth).append(' ').append(PRUNE).append(" ! -type d -print0; ")
+                .append("fi; ");
+        }
+        command.append("exit 0");
+
+        Scan scan = new Scan();
+        ChannelExec channel = (ChannelExec) session.openChannel("exec");
+        try {
+            channel.setCommand(command.toString());
+            channel.setErrStream(new ByteArrayOutputStream());
+            InputStream in = new BufferedInputStream(channel.getInputStream(), 64 * 1024);
+            channel.connect(15000);
+            List<String> current = null;
+            boolean files = false;
+            byte[] record;
+            while ((record = readRecord(in)) != null) {
+                if (record.length > 0 && record[0] == '\n') {
+                    if (record.length > 1) {
+                        current = scan.entries.computeIfAbsent(new String(record, 1, record.length - 1, StandardCharsets.UTF_8), k -> new ArrayList<>());
+                        files = false;
+                    } else {
+                        files = true;
+                    }
+                    continue;
+                }
+                if (current == null || record.length == 0) continue;
+                if (scan.count >= limit) {
+                    scan.truncated = true;
+                    break;
+                }
+                String path = new String(record, StandardCharsets.UTF_8);
+                current.add(files ? path : path + "/");
+                scan.count++;
+            }
+        } finally {
+            channel.disconnect();
+        }
+        return scan;
+    }
+
+    private static byte[] readRecord(InputStream in) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == 0) return record.toByteArray();
+            // Пути длиннее PATH_MAX не бывают; защита от мусора в выводе
+            if (record.size() < 8192) record.write(b);
+        }
+        return record.size() > 0 ? record.toByteArray() : null;
+    }
+
+    private static boolean underRoot(List<String> rootPaths, String dir) {
+        for (String root : rootPaths) {
+            if (root.equals("/") || dir.equals(root) || dir.startsWith(root + "/")) return true;
+        }
+        return false;
+    }
+
+    private static boolean isPruned(String dir) {
+        for (String part : dir.split("/")) {
+            if (part.equals(".git") || part.equals("node_modules")) return true;
+        }
+        return false;
+    }
+
+    // Неизменяемый отсортированный (по байтам UTF-8) список путей с фронтальным сжатием.
+    // Обновление строит новый список, поэтому поиск по снимку идет без блокировок.
+    static final class PathList {
+        private static final int BLOCK = 16;
+        private final byte[] data;
+        // Смещение начала каждого блока в data
+        private final int[] blocks;
+        private final int size;
+
+        private PathList(byte[] data, int[] blocks, int size) {
+            this.data = data;
+            this.blocks = blocks;
+            this.size = size;
+        }
+
+        interface Visitor {
+            // false - остановить обход
+            boolean visit(byte[] path, int length);
+        }
+
+        static PathList build(List<String> paths) {
+            List<byte[]> encoded = new ArrayList<>(paths.size());
+            for (String path : paths) {
+                encoded.add(path.getBytes(StandardCharsets.UTF_8));
+            }
+            return fromBytes(encoded);
+        }
+
+        private static PathList fromBytes(List<byte[]> paths) {
+            paths.sort(Arrays::compareUnsigned);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(1024, paths.size() * 16));
+            int[] blocks = new int[(paths.size() + BLOCK - 1) / BLOCK];
+            byte[] previous = null;
+            int size = 0;
+            for (byte[] path : paths) {
+                if (previous != null && Arrays.equals(previous, path)) continue;
+                int shared = 0;
+                if (size % BLOCK == 0) {
+                    blocks[size / BLOCK] = out.size();
+                } else {
+                    int max = Math.min(previous.length, path.length);
+                    while (shared < max && previous[shared] == path[shared]) shared++;
+                    writeVarint(out, shared);
+                }
+                writeVarint(out, path.length - shared);
+                out.write(path, shared, path.length - shared);
+                previous = path;
+                size++;
+            }
+            return new PathList(out.toByteArray(), Arrays.copyOf(blocks, (size + BLOCK - 1) / BLOCK), size);
+        }
+
+        int size() {
+            return size;
+        }
+
+        long memoryBytes() {
+            return data.length + blocks.length * 4L;
+        }
+
+        void forEach(Visitor visitor) {
+            forEachFrom(0, visitor);
+        }
+
+        // Обход с начала блока; буфер общий для всех путей - visitor не должен его сохранять
+        private void forEachFrom(int block, Visitor visitor) {
+            byte[] buf = new byte[256];
+            int[] pos = new int[1];
+            for (int b = block; b < blocks.length; b++) {
+                pos[0] = blocks[b];
+                int length = 0;
+                int count = Math.min(BLOCK, size - b * BLOCK);
+                for (int i = 0; i < count; i++) {
+                    int shared = i == 0 ? 0 : readVarint(pos);
+                    int suffix = readVarint(pos);
+                    length = shared + suffix;
+                    if (length > buf.length) buf = Arrays.copyOf(buf, Math.max(length, buf.length * 2));
+                    System.arraycopy(data, pos[0], buf, shared, suffix);
+                    pos[0] += suffix;
+                    if (!visitor.visit(buf, length)) return;
+                }
+            }
+        }
+
+        // Пути с заданным префиксом: двоичный поиск блока по первым путям и проход от него
+        List<String> withPrefix(String prefix) {
+            byte[] p = prefix.getBytes(StandardCharsets.UTF_8);
+            int lo = 0;
+            int hi = blocks.length - 1;
+            int start = 0;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int[] pos = {blocks[mid]};
+                int length = readVarint(pos);
+                if (Arrays.compareUnsigned(data, pos[0], pos[0] + length, p, 0, p.length) < 0) {
+                    start = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            List<String> result = new ArrayList<>();
+            forEachFrom(start, (path, length) -> {
+                if (length >= p.length && Arrays.equals(path, 0, p.length, p, 0, p.length)) {
+                    result.add(new String(path, 0, length, StandardCharsets.UTF_8));
+                    return true;
+                }
+                // Пути с префиксом идут подряд - после них искать нечего
+                return Arrays.compareUnsigned(path, 0, length, p, 0, p.length) < 0;
+            });
+            return result;
+        }
+
+        // Новый список без удаленных путей (удаленный каталог уносит поддерево) и с добавленными
+        PathList update(Set<String> removed, List<String> added) {
+            List<byte[]> removedDirs = new ArrayList<>();
+            Set<String> removedFiles = new HashSet<>();
+            for (String path : removed) {
+                if (path.endsWith("/")) {
+                    removedDirs.add(path.getBytes(StandardCharsets.UTF_8));
+                } else {
+                    removedFiles.add(path);
+                }
+            }
+            List<byte[]> result = new ArrayList<>(size + added.size());
+            forEach((path, length) -> {
+                for (byte[] dir : removedDirs) {
+                    if (length >= dir.length && Arrays.equals(path, 0, dir.length, dir, 0, dir.length)) return true;
+                }
+                if (removedFiles.isEmpty() || !removedFiles.contains(new String(path, 0, length, StandardCharsets.UTF_8))) {
+                    result.add(Arrays.copyOf(path, length));
+                }
+                return true;
+            });
+            for (String path : added) {
+                result.add(path.getBytes(StandardCharsets.UTF_8));
+            }
+            return fromBytes(result);
+        }
+
+        // Нечеткий поиск: символы запроса по порядку (без учета регистра для ASCII), сначала в имени, потом во всем пути.
+        // Очки за подряд идущие символы, начала слов, совпадение в имени; короткие пути выше.
+        JsonArray search(String query, int limit) {
+            byte[] q = query.replaceAll("\\s+", "").getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < q.length; i++) {
+                q[i] = lower(q[i]);
+            }
+            if (q.length == 0) return new JsonArray();
+            PriorityQueue<Hit> top = new PriorityQueue<>();
+            forEach((path, length) -> {
+                int score = score(path, length, q);
+                if (score == Integer.MIN_VALUE) return true;
+                if (top.size() < limit) {
+                    top.add(new Hit(Arrays.copyOf(path, length), score));
+                } else if (score > top.peek().score) {
+                    top.poll();
+                    top.add(new Hit(Arrays.copyOf(path, length), score));
+                }
+                return true;
+            });
+            List<Hit> hits = new ArrayList<>(top);
+            hits.sort((a, b) -> b.compareTo(a));
+            JsonArray results = new JsonArray();
+            for (Hit hit : hits) {
+                boolean dir = hit.path[hit.path.length - 1] == '/';
+                results.add(new JsonObject()
+                    .put("path", new String(hit.path, 0, dir && hit.path.length > 1 ? hit.path.length - 1 : hit.path.length, StandardCharsets.UTF_8))
+                    .put("isDir", dir)
+                    .put("score", hit.score));
+            }
+            return results;
+        }
+
+        static int score(byte[] path, int length, byte[] q) {
+            int end = length > 1 && path[length - 1] == '/' ? length - 1 : length;
+            int name = end;
+            while (name > 0 && path[name - 1] != '/') name--;
+            int score = match(path, name, end, q, name);
+            if (score != Integer.MIN_VALUE) {
+                // Имя целиком совпало с запросом или начинается с него
+                if (end - name == q.length) {
+                    score += 40;
+                } else if (startsWith(path, name, end, q)) {
+                    score += 20;
+                }
+                return score + 50 - Math.min(end - name, 50) / 2 - Math.min(end, 200) / 20;
+            }
+            score = match(path, 0, end, q, name);
+            if (score == Integer.MIN_VALUE) return score;
+            return score - Math.min(end, 200) / 10;
+        }
+
+        private static int match(byte[] path, int from, int to, byte[] q, int name) {
+            int qi = 0;
+            int score = 0;
+            int previous = -2;
+            for (int i = from; i < to && qi < q.length; i++) {
+                if (lower(path[i]) != q[qi]) continue;
+                score += 1;
+                if (previous == i - 1) score += 5;
+                if (i == 0 || isBoundary(path[i - 1])) score += 4;
+                if (i >= name) score += 2;
+                previous = i;
+                qi++;
+            }
+            return qi == q.length ? score : Integer.MIN_VALUE;
+        }
+
+        private static boolean startsWith(byte[] path, int from, int to, byte[] q) {
+            if (to - from < q.length) return false;
+            for (int i = 0; i < q.length; i++) {
+                if (lower(path[from + i]) != q[i]) return false;
+            }
+            return true;
+        }
+
+        private static boolean isBoundary(byte b) {
+            return b == '/' || b == '_' || b == '-' || b == '.' || b == ' ';
+        }
+
+        private static byte lower(byte b) {
+            return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+        }
+
+        private static void writeVarint(ByteArrayOutputStream out, int value) {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+        private int readVarint(int[] pos) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos[0]++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private static final class Hit implements Comparable<Hit> {
+            final byte[] path;
+            final int score;
+
+            Hit(byte[] path, int score) {
+                this.path = path;
+                this.score = score;
+            }
+
+            // Меньший - хуже: ниже очки, при равных - длиннее путь
+            @Override
+            public int compareTo(Hit other) {
+                if (score != other.score) return Integer.compare(score, other.score);
+                return Integer.compare(other.path.length, path.length);
+            }
+        }
+    }
+}
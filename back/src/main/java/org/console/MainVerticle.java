@@ -4,8 +4,11 @@ import com.jcraft.jsch.ChannelExec;
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
 import io.vertx.core.Promise;
+import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.bridge.BridgeEventType;
@@ -22,22 +25,41 @@ import io.vertx.redis.client.Redis;
 import io.vertx.redis.client.RedisOptions;
 import io.vertx.redis.client.Request;
 import org.console.utils.ConfigUtils;
+import org.console.utils.DockerSocketUtils;
+import org.console.utils.RequestInputStream;
+import org.console.utils.ResponseOutputStream;
+import org.console.utils.SftpUtils;
 import org.console.utils.ShellUtils;
 import org.mindrot.jbcrypt.BCrypt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.console.Constants.*;
 
 public class MainVerticle extends AbstractVerticle {
     private static final Logger logger = LoggerFactory.getLogger(MainVerticle.class);
+    private static final String UPLOAD_BODY_KEY = "uploadBody";
     private Redis redis;
+    private SshVerticle sshVerticle;
     private Map<String, JsonObject> users;
+    // Докачиваемые загрузки, в которые сейчас пишется часть: вторая часть той же загрузки получает 409
+    private final Set<String> uploadsInFlight = ConcurrentHashMap.newKeySet();
 
     @Override
     public void start(Promise<Void> startPromise) {
@@ -56,15 +78,28 @@ public class MainVerticle extends AbstractVerticle {
 
         Router router = Router.router(vertx);
 
+        // Потоковая загрузка: тело запроса идет прямо в SFTP, мимо BodyHandler и временных файлов.
+        // Запрос на паузе, пока грузится сессия, иначе начало тела потеряется
+        router.put("/api/upload").handler(this::pauseRequest);
+        router.put("/api/upload/chunk").handler(this::pauseRequest);
+
         // Session handling
         router.route().handler(SessionHandler.create(RedisSessionStore.create(vertx, redis)));
-        router.route().handler(BodyHandler.create());
+        router.put("/api/upload").handler(this::handleUploadStream);
+        router.put("/api/upload/chunk").handler(this::handleUploadChunk);
+        router.route().handler(BodyHandler.create(false));
 
         router.post("/api/login").handler(this::handleLogin);
         router.get("/api/user").handler(this::handleGetUser);
         router.post("/api/logout").handler(this::handleLogout);
         router.get("/api/download").handler(this::handleDownload);
-        router.post("/api/upload").handler(this::handleUpload);
+        router.get("/api/download/archive").handler(this::handleArchiveDownload);
+        router.head("/api/download").handler(this::handleDownload);
+        router.get("/api/docker/logs").handler(this::handleDockerLogsDownload);
+        router.post("/api/upload/session").handler(this::handleUploadSessionCreate);
+        router.get("/api/upload/session").handler(this::handleUploadSessionStatus);
+        router.delete("/api/upload/session").handler(this::handleUploadSessionCancel);
+        router.post("/api/upload/commit").handler(this::handleUploadCommit);
 
         // Настройка SockJS Bridge
         SockJSBridgeOptions options = new SockJSBridgeOptions()
@@ -83,7 +118,8 @@ public class MainVerticle extends AbstractVerticle {
         router.route("/eventbus/*").subRouter(SockJSHandler.create(vertx).bridge(options, this::handleBridgeEvent));
 
         // Развертывание SshVerticle
-        vertx.deployVerticle(new SshVerticle(redis, serverConfigs, userConfigs))
+        sshVerticle = new SshVerticle(redis, serverConfigs, userConfigs);
+        vertx.deployVerticle(sshVerticle)
             .onSuccess(id -> {
                 logger.info("SshVerticle deployed");
                 startHttpServer(router, startPromise);
@@ -169,50 +205,450 @@ public class MainVerticle extends AbstractVerticle {
             .onFailure(err -> ctx.response().setStatusCode(500).end(err.getMessage()));
     }
 
+    // Скачивание через SFTP на уже открытом SSH-соединении сервера (новый канал без рукопожатия),
+    // с Range/If-Range, ETag и Content-Length из stat и ожиданием drain при медленном клиенте
     private void streamFileFromSsh(RoutingContext ctx, JsonObject config, String path) {
+        boolean headOnly = ctx.request().method() == HttpMethod.HEAD;
         vertx.executeBlocking(() -> {
-            Session jschSession = null;
-            ChannelExec channel = null;
-            try {
-                JSch jsch = new JSch();
-                jschSession = jsch.getSession(config.getString("user"), config.getString("host"), config.getInteger("port", 22));
-                jschSession.setPassword(config.getString("password"));
-                Properties prop = new Properties();
-                prop.put("StrictHostKeyChecking", "no");
-                jschSession.setConfig(prop);
-                jschSession.connect(15000);
-
-                channel = (ChannelExec) jschSession.openChannel("exec");
+            HttpServerResponse response = ctx.response();
+            try (SftpTransfer transfer = openTransfer(config)) {
+                ChannelSftp sftp = transfer.sftp;
+                SftpATTRS attrs = sftp.stat(path);
+                if (attrs.isDir()) {
+                    response.setStatusCode(400).end("Path is a directory");
+                    return null;
+                }
+                long size = attrs.getSize();
+                String etag = "\"" + Long.toHexString(size) + "-" + Integer.toHexString(attrs.getMTime()) + "\"";
                 String filename = path.contains("/") ? path.substring(path.lastIndexOf('/') + 1) : path;
                 if (filename.isEmpty()) filename = "download";
 
-                channel.setCommand("cat " + ShellUtils.sanitize(path));
-                InputStream in = channel.getInputStream();
-                channel.connect(15000);
+                response.putHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
+                response.putHeader("Content-Type", "application/octet-stream");
+                response.putHeader("Accept-Ranges", "bytes");
+                response.putHeader("ETag", etag);
+                response.putHeader("Last-Modified", java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME
+                    .format(java.time.Instant.ofEpochSecond(attrs.getMTime()).atZone(java.time.ZoneOffset.UTC)));
+
+                long start = 0;
+                long length = size;
+                String ifRange = ctx.request().getHeader("If-Range");
+                String rangeHeader = ifRange == null || ifRange.equals(etag) ? ctx.request().getHeader("Range") : null;
+                if (rangeHeader != null) {
+                    long[] range = parseByteRange(rangeHeader, size);
+                    if (range == null) {
+                        response.setStatusCode(416).putHeader("Content-Range", "bytes */" + size).end();
+                        return null;
+                    }
+                    if (range.length == 2) {
+                        start = range[0];
+                        length = range[1] - range[0] + 1;
+                        response.setStatusCode(206).putHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + size);
+                    }
+                }
+                response.putHeader("Content-Length", String.valueOf(length));
+                if (headOnly || length == 0) {
+                    response.end();
+                    return null;
+                }
+
+                try (InputStream in = sftp.get(path, null, start); ResponseOutputStream out = new ResponseOutputStream(response)) {
+                    byte[] buffer = new byte[64 * 1024];
+                    long remaining = length;
+                    int read;
+                    while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                        out.write(buffer, 0, read);
+                        remaining -= read;
+                    }
+                }
+                return null;
+            } catch (Exception e) {
+                if (!response.headWritten()) {
+                    logger.error("Download failed", e);
+                    response.setStatusCode(e instanceof com.jcraft.jsch.SftpException ? 404 : 500).end(e.getMessage());
+                } else {
+                    // Клиент ушел или оборвалась передача - Content-Length уже обещан, только рвем соединение
+                    logger.debug("Download of {} interrupted: {}", path, e.getMessage());
+                    response.reset();
+                }
+                return null;
+            }
+        }, false);
+    }
+
+    // Каталоги и группы файлов: tar.gz (или zip) собирается на сервере и идет из exec-канала прямо в ответ,
+    // без временного архива на удаленном диске; первые байты уходят сразу
+    private void handleArchiveDownload(RoutingContext ctx) {
+        String userId = ctx.session().get(SESSION_USER_ID);
+        if (userId == null) {
+            ctx.response().setStatusCode(401).end("Unauthorized");
+            return;
+        }
+
+        String sessionId = ctx.request().getParam("sessionId");
+        List<String> paths = ctx.queryParam("path");
+        boolean zip = "zip".equals(ctx.request().getParam("format"));
+        if (sessionId == null || paths.isEmpty() || paths.size() > ARCHIVE_MAX_PATHS
+            || paths.stream().anyMatch(p -> p.contains("..") || p.equals("/") || p.endsWith("/"))) {
+            ctx.response().setStatusCode(400).end("Invalid parameters");
+            return;
+        }
+
+        // Каждый объект попадает в архив под своим именем, без полного пути; "./" - имя не примется за опцию.
+        // Сначала проверяется, что все объекты существуют: иначе 404 до заголовков, а не обрезанный архив
+        StringBuilder command = new StringBuilder("for p in");
+        paths.forEach(p -> command.append(' ').append(ShellUtils.sanitize(p)));
+        command.append("; do [ -e \"$p\" ] || [ -L \"$p\" ] || { printf '%s: No such file or directory\\n' \"$p\" >&2; exit ")
+            .append(ARCHIVE_NOT_FOUND_EXIT).append("; }; done; ");
+        String commonParent = parentDir(paths.get(0));
+        if (zip) {
+            if (paths.stream().anyMatch(p -> !parentDir(p).equals(commonParent))) {
+                ctx.response().setStatusCode(400).end("zip: объекты должны лежать в одном каталоге");
+                return;
+            }
+            command.append("cd ").append(ShellUtils.sanitize(commonParent)).append(" && zip -q -r -");
+            paths.forEach(p -> command.append(' ').append(ShellUtils.sanitize("./" + baseName(p))));
+        } else {
+            command.append("tar -czf -");
+            paths.forEach(p -> command.append(" -C ").append(ShellUtils.sanitize(parentDir(p)))
+                .append(' ').append(ShellUtils.sanitize("./" + baseName(p))));
+        }
+        String filename = (paths.size() == 1 ? baseName(paths.get(0)) : baseName(commonParent).isEmpty() ? "archive" : baseName(commonParent))
+            + (zip ? ".zip" : ".tar.gz");
+
+        redis.send(Request.cmd(Command.GET).arg("ssh:session:" + sessionId))
+            .onSuccess(res -> {
+                if (res == null) {
+                    ctx.response().setStatusCode(404).end("Session not found");
+                    return;
+                }
+                JsonObject config = new JsonObject(res.toString());
+                if (!userId.equals(config.getString(SESSION_USER_ID))) {
+                    ctx.response().setStatusCode(403).end("Forbidden");
+                    return;
+                }
+
+                streamArchiveFromSsh(ctx, config, command.toString(), filename, zip);
+            })
+            .onFailure(err -> ctx.response().setStatusCode(500).end(err.getMessage()));
+    }
+
+    private void streamArchiveFromSsh(RoutingContext ctx, JsonObject config, String command, String filename, boolean zip) {
+        vertx.executeBlocking(() -> {
+            HttpServerResponse response = ctx.response();
+            ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+            long total = 0;
+            try (ExecTransfer transfer = openExec(config, command, stderr)) {
+                ChannelExec channel = transfer.channel;
+                InputStream in = transfer.stdout;
+
+                // Первое чтение до заголовков: нет архиватора или объекта - обычная ошибка вместо битого файла
+                byte[] buffer = new byte[64 * 1024];
+                int read = in.read(buffer);
+                if (read == -1) {
+                    waitClosed(channel);
+                    String error = stderr.toString(StandardCharsets.UTF_8).trim();
+                    int status = channel.getExitStatus();
+                    response.setStatusCode(status == ARCHIVE_NOT_FOUND_EXIT ? 404 : status == 127 ? 501 : 500)
+                        .end(error.isEmpty() ? "Archive failed with exit code " + channel.getExitStatus() : error);
+                    return null;
+                }
 
-                HttpServerResponse response = ctx.response();
                 response.setChunked(true);
                 response.putHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
-                response.putHeader("Content-Type", "application/octet-stream");
+                response.putHeader("Content-Type", zip ? "application/zip" : "application/gzip");
+                ResponseOutputStream out = new ResponseOutputStream(response);
+                do {
+                    out.write(buffer, 0, read);
+                    total += read;
+                } while ((read = in.read(buffer)) != -1);
+                waitClosed(channel);
+                // Ненулевой код (нет доступа к части файлов, файл менялся при чтении, архиватор упал) - в архиве
+                // чего-то не хватает: соединение рвется, чтобы браузер не счел загрузку завершенной
+                if (channel.getExitStatus() != 0) {
+                    logger.warn("Archive {} failed with exit code {} after {} bytes: {}", filename, channel.getExitStatus(),
+                        total, stderr.toString(StandardCharsets.UTF_8).trim());
+                    response.reset();
+                    return null;
+                }
+                out.close();
+                logger.info("Archive download finished: {} ({} bytes)", filename, total);
+                return null;
+            } catch (Exception e) {
+                if (!response.headWritten()) {
+                    logger.error("Archive download failed", e);
+                    response.setStatusCode(500).end(e.getMessage());
+                } else if (!response.ended()) {
+                    // Клиент ушел или оборвался канал - рвем соединение, чтобы архив не выглядел скачанным целиком;
+                    // закрытие канала завершает архиватор на сервере
+                    logger.debug("Archive download of {} interrupted after {} bytes: {}", filename, total, e.getMessage());
+                    response.reset();
+                }
+                return null;
+            }
+        }, false);
+    }
+
+    private static void waitClosed(ChannelExec channel) throws InterruptedException {
+        for (int i = 0; i < 100 && !channel.isClosed(); i++) {
+            Thread.sleep(50);
+        }
+    }
+
+    private static String parentDir(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash <= 0 ? (slash == 0 ? "/" : ".") : path.substring(0, slash);
+    }
+
+    private static String baseName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    // Один диапазон bytes=a-b | a- | -n. null - диапазон невыполним (416);
+    // пустой массив - заголовок не поддерживается (несколько диапазонов и т.п.), отдаем файл целиком
+    private static long[] parseByteRange(String header, long size) {
+        if (!header.startsWith("bytes=") || header.contains(",")) return new long[0];
+        String spec = header.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return new long[0];
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) return null;
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? size - 1 : Math.min(Long.parseLong(spec.substring(dash + 1)), size - 1);
+            }
+            if (start >= size || start > end) return null;
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private Session connectSession(JsonObject config) throws com.jcraft.jsch.JSchException {
+        JSch jsch = new JSch();
+        Session session = jsch.getSession(config.getString("user"), config.getString("host"), config.getInteger("port", 22));
+        session.setPassword(config.getString("password"));
+        Properties prop = new Properties();
+        prop.put("StrictHostKeyChecking", "no");
+        session.setConfig(prop);
+        session.connect(15000);
+        return session;
+    }
+
+    private static ChannelSftp openSftp(Session session) throws com.jcraft.jsch.JSchException {
+        ChannelSftp sftp = (ChannelSftp) session.openChannel("sftp");
+        sftp.connect(15000);
+        return sftp;
+    }
+
+    // SFTP-канал для передачи файла: на уже открытом SSH-соединении сервера (без рукопожатия),
+    // а если его нет или каналы исчерпаны (MaxSessions) - отдельным соединением
+    private static final class SftpTransfer implements AutoCloseable {
+        final ChannelSftp sftp;
+        final Session dedicated;
+
+        SftpTransfer(ChannelSftp sftp, Session dedicated) {
+            this.sftp = sftp;
+            this.dedicated = dedicated;
+        }
+
+        @Override
+        public void close() {
+            sftp.disconnect();
+            if (dedicated != null) dedicated.disconnect();
+        }
+    }
+
+    private SftpTransfer openTransfer(JsonObject config) throws com.jcraft.jsch.JSchException {
+        Session pooled = sshVerticle.getAnyActiveJschSession(config.getString("serverId"));
+        if (pooled != null) {
+            try {
+                return new SftpTransfer(openSftp(pooled), null);
+            } catch (Exception e) {
+                logger.debug("Pooled SSH session unavailable for transfer: {}", e.getMessage());
+            }
+        }
+        Session dedicated = connectSession(config);
+        try {
+            return new SftpTransfer(openSftp(dedicated), dedicated);
+        } catch (com.jcraft.jsch.JSchException e) {
+            dedicated.disconnect();
+            throw e;
+        }
+    }
+
+    // exec-канал для потоковой команды - так же на открытом соединении сервера или отдельном
+    private static final class ExecTransfer implements AutoCloseable {
+        final ChannelExec channel;
+        final InputStream stdout;
+        final Session dedicated;
+
+        ExecTransfer(ChannelExec channel, InputStream stdout, Session dedicated) {
+            this.channel = channel;
+            this.stdout = stdout;
+            this.dedicated = dedicated;
+        }
+
+        @Override
+        public void close() {
+            channel.disconnect();
+            if (dedicated != null) dedicated.disconnect();
+        }
+    }
+
+    private static ExecTransfer startExec(Session session, String command, OutputStream stderr, Session dedicated) throws Exception {
+        ChannelExec channel = (ChannelExec) session.openChannel("exec");
+        channel.setCommand(command);
+        channel.setErrStream(stderr);
+        InputStream stdout = channel.getInputStream();
+        channel.connect(15000);
+        return new ExecTransfer(channel, stdout, dedicated);
+    }
+
+    private ExecTransfer openExec(JsonObject config, String command, OutputStream stderr) throws Exception {
+        Session pooled = sshVerticle.getAnyActiveJschSession(config.getString("serverId"));
+        if (pooled != null) {
+            try {
+                return startExec(pooled, command, stderr, null);
+            } catch (Exception e) {
+                logger.debug("Pooled SSH session unavailable for exec: {}", e.getMessage());
+            }
+        }
+        Session dedicated = connectSession(config);
+        try {
+            return startExec(dedicated, command, stderr, dedicated);
+        } catch (Exception e) {
+            dedicated.disconnect();
+            throw e;
+        }
+    }
+
+    private void handleDockerLogsDownload(RoutingContext ctx) {
+        String userId = ctx.session().get(SESSION_USER_ID);
+        if (userId == null) {
+            ctx.response().setStatusCode(401).end("Unauthorized");
+            return;
+        }
+
+        String sessionId = ctx.request().getParam("sessionId");
+        String containerId = ctx.request().getParam("containerId");
+        String since = ctx.request().getParam("since");
+        String until = ctx.request().getParam("until");
+        String name = ctx.request().getParam("name");
+        boolean gzip = "true".equals(ctx.request().getParam("gzip"));
+
+        // since/until - unix-время в секундах (как принимает Docker API)
+        if (sessionId == null || !ShellUtils.isValidContainerId(containerId) || !isValidLogTime(since) || !isValidLogTime(until)) {
+            ctx.response().setStatusCode(400).end("Invalid parameters");
+            return;
+        }
+
+        StringBuilder query = new StringBuilder("/containers/").append(containerId)
+            .append("/logs?stdout=true&stderr=true&timestamps=").append("true".equals(ctx.request().getParam("timestamps")));
+        if (since != null) query.append("&since=").append(since);
+        if (until != null) query.append("&until=").append(until);
+        String baseName = name != null && name.matches("^[a-zA-Z0-9_.-]{1,128}$") ? name : containerId;
+        String filename = baseName + "_" + System.currentTimeMillis() + ".log" + (gzip ? ".gz" : "");
+
+        redis.send(Request.cmd(Command.GET).arg("ssh:session:" + sessionId))
+            .onSuccess(res -> {
+                if (res == null) {
+                    ctx.response().setStatusCode(404).end("Session not found");
+                    return;
+                }
+                JsonObject config = new JsonObject(res.toString());
+                if (!userId.equals(config.getString(SESSION_USER_ID))) {
+                    ctx.response().setStatusCode(403).end("Forbidden");
+                    return;
+                }
+
+                streamDockerLogs(ctx, config, query.toString(), filename, gzip);
+            })
+            .onFailure(err -> ctx.response().setStatusCode(500).end(err.getMessage()));
+    }
+
+    private static boolean isValidLogTime(String value) {
+        return value == null || value.matches("^[0-9]{1,12}(\\.[0-9]{1,9})?$");
+    }
+
+    // Логи идут из сокета Docker в ответ HTTP потоково: разбор мультиплексирования и gzip на лету,
+    // запись ждет drain, поэтому память не зависит от размера лога
+    private void streamDockerLogs(RoutingContext ctx, JsonObject config, String path, String filename, boolean gzip) {
+        vertx.executeBlocking(() -> {
+            Session dedicated = null;
+            InputStream logs = null;
+            ResponseOutputStream sink = null;
+            HttpServerResponse response = ctx.response();
+            try {
+                // Канал к сокету Docker - на уже открытом соединении сервера, отдельное - только если его нет
+                InputStream stream = null;
+                Session pooled = sshVerticle.getAnyActiveJschSession(config.getString("serverId"));
+                if (pooled != null) {
+                    try {
+                        stream = DockerSocketUtils.openStream(pooled, DOCKER_SOCKET_PATH, "GET", path, null);
+                    } catch (com.jcraft.jsch.JSchException e) {
+                        logger.debug("Pooled SSH session unavailable for logs export: {}", e.getMessage());
+                    }
+                }
+                if (stream == null) {
+                    dedicated = connectSession(config);
+                    stream = DockerSocketUtils.openStream(dedicated, DOCKER_SOCKET_PATH, "GET", path, null);
+                }
+                logs = new DockerSocketUtils.LogDemuxInputStream(stream);
+
+                response.setChunked(true);
+                response.putHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
+                response.putHeader("Content-Type", gzip ? "application/gzip" : "text/plain; charset=utf-8");
 
-                byte[] buffer = new byte[8192];
+                sink = new ResponseOutputStream(response);
+                OutputStream out = gzip ? new GZIPOutputStream(sink, 64 * 1024) : sink;
+                byte[] buffer = new byte[64 * 1024];
+                long total = 0;
                 int read;
-                while ((read = in.read(buffer)) != -1) {
-                    response.write(io.vertx.core.buffer.Buffer.buffer(java.util.Arrays.copyOf(buffer, read)));
+                while ((read = logs.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    total += read;
                 }
-                response.end();
+                out.close();
+                logger.info("Docker logs export finished: {} ({} bytes)", filename, total);
                 return null;
             } catch (Exception e) {
-                logger.error("Download failed", e);
-                if (!ctx.response().ended()) {
-                    ctx.response().setStatusCode(500).end(e.getMessage());
+                if (sink != null && sink.isClosed()) {
+                    // Пользователь отменил скачивание - штатная ситуация
+                    logger.debug("Docker logs export aborted by client: {}", filename);
+                    return null;
+                }
+                if (e instanceof DockerSocketUtils.DockerApiException api && api.getStatus() == 404) {
+                    logger.debug("Docker logs export: {}", e.getMessage());
+                    if (!response.ended()) response.setStatusCode(404).end("Container not found");
+                    return null;
+                }
+                logger.error("Docker logs export failed", e);
+                if (!response.ended()) {
+                    if (response.headWritten()) {
+                        // Заголовки уже ушли - обрываем соединение, чтобы файл не выглядел скачанным целиком
+                        response.reset();
+                    } else {
+                        response.setStatusCode(500).end(e.getMessage());
+                    }
                 }
                 return null;
             } finally {
-                if (channel != null) channel.disconnect();
-                if (jschSession != null) jschSession.disconnect();
+                if (logs != null) {
+                    try {
+                        logs.close();
+                    } catch (Exception ignored) {
+                    }
+                }
+                if (dedicated != null) dedicated.disconnect();
             }
-        });
+        }, false);
     }
 
     private void handleBridgeEvent(io.vertx.ext.web.handler.sockjs.BridgeEvent event) {
@@ -279,21 +715,29 @@ public class MainVerticle extends AbstractVerticle {
         }
     }
 
-    private void handleUpload(RoutingContext ctx) {
-        String userId = ctx.session().get(SESSION_USER_ID);
-        if (userId == null) {
-            ctx.response().setStatusCode(401).end("Unauthorized");
-            return;
-        }
-
-        String sessionId = ctx.request().getParam("sessionId");
-        String path = ctx.request().getParam("path");
+    private void pauseRequest(RoutingContext ctx) {
+        ctx.request().pause();
+        // Ранний отказ (401/400/403/404) отвечает, не прочитав тело: остаток сбрасывается,
+        // иначе запрос так и останется на паузе вместе с keep-alive соединением клиента
+        ctx.addHeadersEndHandler(v -> {
+            if (ctx.get(UPLOAD_BODY_KEY) == null && !ctx.request().isEnded()) {
+                ctx.request().handler(buffer -> {
+                });
+                ctx.request().resume();
+            }
+        });
+        ctx.next();
+    }
 
-        if (sessionId == null || path == null) {
-            ctx.response().setStatusCode(400).end("Missing parameters");
-            return;
-        }
+    // Тело загрузки забирает RequestInputStream; после этого сбросом остатка занимается он сам
+    private RequestInputStream uploadBody(RoutingContext ctx, long maxBytes) {
+        RequestInputStream body = new RequestInputStream(ctx.request(), vertx.getOrCreateContext(), maxBytes);
+        ctx.put(UPLOAD_BODY_KEY, body);
+        return body;
+    }
 
+    // Конфигурация SSH-сессии пользователя из Redis. Если action не вызван, ответ с ошибкой уже отправлен
+    private void withSessionConfig(RoutingContext ctx, String userId, String sessionId, Consumer<JsonObject> action) {
         redis.send(Request.cmd(Command.GET).arg("ssh:session:" + sessionId))
             .onSuccess(res -> {
                 if (res == null) {
@@ -305,60 +749,388 @@ public class MainVerticle extends AbstractVerticle {
                     ctx.response().setStatusCode(403).end("Forbidden");
                     return;
                 }
+                action.accept(config);
+            })
+            .onFailure(err -> ctx.response().setStatusCode(500).end(err.getMessage()));
+    }
 
-                uploadFilesToSsh(ctx, config, path);
+    // Состояние докачиваемой загрузки: userId, sessionId, part (временный файл рядом с целевым), target, size
+    private void withUpload(RoutingContext ctx, String userId, String uploadId, Consumer<JsonObject> action) {
+        if (uploadId == null || !uploadId.matches("^[0-9a-f-]{36}$")) {
+            ctx.response().setStatusCode(400).end("Invalid uploadId");
+            return;
+        }
+        redis.send(Request.cmd(Command.GET).arg("ssh:upload:" + uploadId))
+            .onSuccess(res -> {
+                if (res == null) {
+                    jsonResponse(ctx, 404, new JsonObject().put("status", "error").put("message", "Загрузка не найдена или истекла"));
+                    return;
+                }
+                JsonObject upload = new JsonObject(res.toString());
+                if (!userId.equals(upload.getString(SESSION_USER_ID))) {
+                    ctx.response().setStatusCode(403).end("Forbidden");
+                    return;
+                }
+                action.accept(upload);
             })
             .onFailure(err -> ctx.response().setStatusCode(500).end(err.getMessage()));
     }
 
-    private void uploadFilesToSsh(RoutingContext ctx, JsonObject config, String remotePath) {
-        vertx.executeBlocking(() -> {
-            Session jschSession = null;
-            ChannelSftp sftp = null;
+    // Завершенная загрузка: состояние уже удалено, но маркер еще отвечает успехом повтору commit
+    // и запросу смещения, если ответ на commit до клиента не дошел
+    private void withUploadOrCommitted(RoutingContext ctx, String userId, String uploadId,
+                                       Consumer<JsonObject> committed, Consumer<JsonObject> action) {
+        if (uploadId == null || !uploadId.matches("^[0-9a-f-]{36}$")) {
+            ctx.response().setStatusCode(400).end("Invalid uploadId");
+            return;
+        }
+        redis.send(Request.cmd(Command.GET).arg("ssh:upload:committed:" + uploadId))
+            .onSuccess(res -> {
+                if (res == null) {
+                    withUpload(ctx, userId, uploadId, action);
+                    return;
+                }
+                JsonObject marker = new JsonObject(res.toString());
+                if (!userId.equals(marker.getString(SESSION_USER_ID))) {
+                    ctx.response().setStatusCode(403).end("Forbidden");
+                    return;
+                }
+                committed.accept(marker);
+            })
+            .onFailure(err -> ctx.response().setStatusCode(500).end(err.getMessage()));
+    }
+
+    private static boolean isValidUploadName(String name) {
+        return name != null && !name.isEmpty() && name.length() <= 255 && !name.contains("/")
+            && !name.equals(".") && !name.equals("..");
+    }
+
+    // Временный скрытый файл в том же каталоге: rename в целевой атомарен и не задевает существующий файл,
+    // пока загрузка не завершена
+    private static String uploadPartPath(String dir, String name, String uploadId) {
+        return SftpUtils.childPath(dir, "." + name + "." + uploadId.substring(0, 8) + ".part");
+    }
+
+    private static void commitUpload(ChannelSftp sftp, String part, String target) throws com.jcraft.jsch.SftpException {
+        try {
+            // posix-rename@openssh.com заменяет существующий файл; без расширения rename на занятое имя падает
+            sftp.rename(part, target);
+        } catch (com.jcraft.jsch.SftpException e) {
             try {
-                JSch jsch = new JSch();
-                jschSession = jsch.getSession(config.getString("user"), config.getString("host"), config.getInteger("port", 22));
-                jschSession.setPassword(config.getString("password"));
-                Properties prop = new Properties();
-                prop.put("StrictHostKeyChecking", "no");
-                jschSession.setConfig(prop);
-                jschSession.connect(15000);
-
-                sftp = (ChannelSftp) jschSession.openChannel("sftp");
-                sftp.connect(15000);
-
-                try {
-                    sftp.cd(remotePath);
+                sftp.rm(target);
+            } catch (com.jcraft.jsch.SftpException ignored) {
+                throw e;
+            }
+            sftp.rename(part, target);
+        }
+    }
+
+    // Отбрасывает непроверенный хвост части (SETSTAT size - ftruncate на стороне сервера)
+    private static void truncateQuietly(ChannelSftp sftp, String path, long size) {
+        try {
+            SftpATTRS attrs = sftp.stat(path);
+            attrs.setSIZE(size);
+            sftp.setStat(path, attrs);
+        } catch (Exception e) {
+            logger.warn("Failed to truncate {} to {} bytes: {}", path, size, e.getMessage());
+        }
+    }
+
+    private void notifyUploaded(JsonObject config, String dir) {
+        // SshVerticle сбросит кэш листинга и разошлет FILES_CHANGED с дельтой
+        vertx.eventBus().send(FILES_MUTATED, new JsonObject()
+            .put(SESSION_USER_ID, config.getString(SESSION_USER_ID))
+            .put("serverId", config.getString("serverId"))
+            .put("path", dir));
+    }
+
+    private void failUpload(RoutingContext ctx, String what, Exception e) {
+        logger.error("{} failed", what, e);
+        if (!ctx.response().ended()) {
+            int status = e instanceof com.jcraft.jsch.SftpException ? 409 : 500;
+            jsonResponse(ctx, status, new JsonObject().put("status", "error").put("message", e.getMessage()));
+        }
+    }
+
+    // PUT /api/upload?sessionId&path&name - тело запроса целиком и есть файл
+    private void handleUploadStream(RoutingContext ctx) {
+        String userId = ctx.session().get(SESSION_USER_ID);
+        if (userId == null) {
+            ctx.response().setStatusCode(401).end("Unauthorized");
+            return;
+        }
+        String sessionId = ctx.request().getParam("sessionId");
+        String dir = ctx.request().getParam("path");
+        String name = ctx.request().getParam("name");
+        if (sessionId == null || dir == null || dir.contains("..") || !isValidUploadName(name)) {
+            ctx.response().setStatusCode(400).end("Invalid parameters");
+            return;
+        }
+
+        withSessionConfig(ctx, userId, sessionId, config -> {
+            String target = SftpUtils.childPath(dir, name);
+            String part = uploadPartPath(dir, name, UUID.randomUUID().toString());
+            RequestInputStream body = uploadBody(ctx, -1);
+            vertx.executeBlocking(() -> {
+                try (body; SftpTransfer transfer = openTransfer(config)) {
+                    long written;
+                    try (OutputStream out = transfer.sftp.put(part, ChannelSftp.OVERWRITE)) {
+                        written = body.transferTo(out);
+                    } catch (Exception e) {
+                        try {
+                            transfer.sftp.rm(part);
+                        } catch (Exception ignored) {
+                        }
+                        throw e;
+                    }
+                    commitUpload(transfer.sftp, part, target);
+                    logger.info("Uploaded {} ({} bytes) to server {}", target, written, config.getString("serverId"));
+                    jsonResponse(ctx, 200, new JsonObject().put("status", "ok").put("size", written));
+                    notifyUploaded(config, dir);
                 } catch (Exception e) {
-                    logger.warn("Could not cd to {}, attempting to use absolute paths if provided", remotePath);
+                    failUpload(ctx, "Upload of " + target, e);
                 }
+                return null;
+            }, false);
+        });
+    }
 
-                for (io.vertx.ext.web.FileUpload fileUpload : ctx.fileUploads()) {
-                    sftp.put(fileUpload.uploadedFileName(), fileUpload.fileName());
-                }
+    // POST /api/upload/session {sessionId, path, name, size} - начало докачиваемой загрузки
+    private void handleUploadSessionCreate(RoutingContext ctx) {
+        String userId = ctx.session().get(SESSION_USER_ID);
+        if (userId == null) {
+            ctx.response().setStatusCode(401).end("Unauthorized");
+            return;
+        }
+        JsonObject body;
+        try {
+            body = ctx.body().asJsonObject();
+        } catch (Exception e) {
+            body = null;
+        }
+        String sessionId = body != null ? body.getString("sessionId") : null;
+        String dir = body != null ? body.getString("path") : null;
+        String name = body != null ? body.getString("name") : null;
+        long size = body != null ? body.getLong("size", -1L) : -1;
+        if (sessionId == null || dir == null || dir.contains("..") || !isValidUploadName(name) || size < 0) {
+            ctx.response().setStatusCode(400).end("Invalid parameters");
+            return;
+        }
 
-                ctx.response().setStatusCode(200).end(new JsonObject().put("status", "ok").encode());
-                
-                // Оповещаем об изменении файлов в директории
-                String userId = config.getString(SESSION_USER_ID);
-                String serverId = config.getString("serverId");
-                vertx.eventBus().publish(SSH_COMMAND_OUT_PREFIX + userId + FILES_CHANGED, new JsonObject()
-                    .put("serverId", serverId)
-                    .put("path", remotePath));
-                return null;
-            } catch (Exception e) {
-                logger.error("Upload failed", e);
-                if (!ctx.response().ended()) {
-                    ctx.response().setStatusCode(500).end(e.getMessage());
+        withSessionConfig(ctx, userId, sessionId, config -> {
+            String uploadId = UUID.randomUUID().toString();
+            JsonObject upload = new JsonObject()
+                .put(SESSION_USER_ID, userId)
+                .put("sessionId", sessionId)
+                .put("dir", dir)
+                .put("target", SftpUtils.childPath(dir, name))
+                .put("part", uploadPartPath(dir, name, uploadId))
+                .put("size", size);
+            vertx.executeBlocking(() -> {
+                try (SftpTransfer transfer = openTransfer(config)) {
+                    transfer.sftp.put(upload.getString("part"), ChannelSftp.OVERWRITE).close();
                 }
                 return null;
-            } finally {
-                if (sftp != null) sftp.disconnect();
-                if (jschSession != null) jschSession.disconnect();
-            }
+            }, false)
+                .compose(v -> redis.send(Request.cmd(Command.SET).arg("ssh:upload:" + uploadId).arg(upload.encode())
+                    .arg("EX").arg(String.valueOf(UPLOAD_SESSION_TTL_SEC))))
+                .onSuccess(v -> jsonResponse(ctx, 200, new JsonObject()
+                    .put("status", "ok")
+                    .put("uploadId", uploadId)
+                    .put("offset", 0)
+                    .put("chunkSize", UPLOAD_CHUNK_SIZE)))
+                .onFailure(err -> failUpload(ctx, "Upload session for " + upload.getString("target"),
+                    err instanceof Exception e ? e : new Exception(err)));
         });
     }
 
+    // GET /api/upload/session?uploadId - подтвержденное смещение (размер временного файла) для докачки,
+    // committed - загрузка уже завершена
+    private void handleUploadSessionStatus(RoutingContext ctx) {
+        String userId = ctx.session().get(SESSION_USER_ID);
+        if (userId == null) {
+            ctx.response().setStatusCode(401).end("Unauthorized");
+            return;
+        }
+        withUploadOrCommitted(ctx, userId, ctx.request().getParam("uploadId"),
+            marker -> jsonResponse(ctx, 200, new JsonObject()
+                .put("status", "ok")
+                .put("offset", marker.getLong("size"))
+                .put("size", marker.getLong("size"))
+                .put("committed", true)),
+            upload -> withSessionConfig(ctx, userId, upload.getString("sessionId"), config ->
+                vertx.executeBlocking(() -> {
+                    try (SftpTransfer transfer = openTransfer(config)) {
+                        long offset = transfer.sftp.stat(upload.getString("part")).getSize();
+                        jsonResponse(ctx, 200, new JsonObject()
+                            .put("status", "ok")
+                            .put("offset", offset)
+                            .put("size", upload.getLong("size"))
+                            .put("committed", false));
+                    } catch (Exception e) {
+                        failUpload(ctx, "Upload status", e);
+                    }
+                    return null;
+                }, false)));
+    }
+
+    // DELETE /api/upload/session?uploadId - отмена: временный файл удаляется
+    private void handleUploadSessionCancel(RoutingContext ctx) {
+        String userId = ctx.session().get(SESSION_USER_ID);
+        if (userId == null) {
+            ctx.response().setStatusCode(401).end("Unauthorized");
+            return;
+        }
+        String uploadId = ctx.request().getParam("uploadId");
+        withUpload(ctx, userId, uploadId, upload ->
+            withSessionConfig(ctx, userId, upload.getString("sessionId"), config -> {
+                redis.send(Request.cmd(Command.DEL).arg("ssh:upload:" + uploadId));
+                vertx.executeBlocking(() -> {
+                    try (SftpTransfer transfer = openTransfer(config)) {
+                        transfer.sftp.rm(upload.getString("part"));
+                    } catch (Exception e) {
+                        logger.debug("Failed to remove upload part {}: {}", upload.getString("part"), e.getMessage());
+                    }
+                    jsonResponse(ctx, 200, new JsonObject().put("status", "ok"));
+                    notifyUploaded(config, upload.getString("dir"));
+                    return null;
+                }, false);
+            }));
+    }
+
+    // PUT /api/upload/chunk?uploadId&offset, X-Chunk-CRC32 - часть файла с позиции offset.
+    // Часть пишется в SFTP по мере приема; при несовпадении CRC записанный хвост отрезается,
+    // так что временный файл всегда содержит только подтвержденные части и его размер - смещение докачки.
+    // complete - получены все байты; целевой файл появляется только после POST /api/upload/commit
+    private void handleUploadChunk(RoutingContext ctx) {
+        String userId = ctx.session().get(SESSION_USER_ID);
+        if (userId == null) {
+            ctx.response().setStatusCode(401).end("Unauthorized");
+            return;
+        }
+        long offset;
+        Long expectedCrc = null;
+        try {
+            offset = Long.parseLong(ctx.request().getParam("offset"));
+            String crcHeader = ctx.request().getHeader("X-Chunk-CRC32");
+            if (crcHeader != null) expectedCrc = Long.parseLong(crcHeader.trim(), 16);
+        } catch (NumberFormatException e) {
+            ctx.response().setStatusCode(400).end("Invalid parameters");
+            return;
+        }
+        Long crcValue = expectedCrc;
+
+        String uploadId = ctx.request().getParam("uploadId");
+        withUpload(ctx, userId, uploadId, upload ->
+            withSessionConfig(ctx, userId, upload.getString("sessionId"), config -> {
+                // Повтор части, пока предыдущая запись еще идет (клиент не дождался ответа), не должен
+                // писать в тот же временный файл параллельно - клиент перечитает смещение и повторит
+                if (!uploadsInFlight.add(uploadId)) {
+                    jsonResponse(ctx, 409, new JsonObject().put("status", "error")
+                        .put("message", "Another chunk of this upload is in progress"));
+                    return;
+                }
+                String part = upload.getString("part");
+                long size = upload.getLong("size");
+                RequestInputStream body = uploadBody(ctx, UPLOAD_MAX_CHUNK_BYTES);
+                vertx.executeBlocking(() -> {
+                    try (body; SftpTransfer transfer = openTransfer(config)) {
+                        ChannelSftp sftp = transfer.sftp;
+                        long confirmed = sftp.stat(part).getSize();
+                        if (confirmed != offset) {
+                            jsonResponse(ctx, 409, new JsonObject().put("status", "error")
+                                .put("message", "Offset mismatch").put("offset", confirmed));
+                            return null;
+                        }
+
+                        CRC32 crc = new CRC32();
+                        long written;
+                        // RESUME с offset 0 - запись с конца файла, без усечения
+                        try (OutputStream out = sftp.put(part, null, ChannelSftp.RESUME, 0)) {
+                            written = new CheckedInputStream(body, crc).transferTo(out);
+                        } catch (Exception e) {
+                            truncateQuietly(sftp, part, offset);
+                            throw e;
+                        }
+                        if ((crcValue != null && crcValue != crc.getValue()) || offset + written > size) {
+                            truncateQuietly(sftp, part, offset);
+                            jsonResponse(ctx, 422, new JsonObject().put("status", "error")
+                                .put("message", "Chunk checksum mismatch").put("offset", offset));
+                            return null;
+                        }
+
+                        long newOffset = offset + written;
+                        jsonResponse(ctx, 200, new JsonObject()
+                            .put("status", "ok")
+                            .put("offset", newOffset)
+                            .put("complete", newOffset == size));
+                    } catch (Exception e) {
+                        failUpload(ctx, "Upload chunk", e);
+                    } finally {
+                        uploadsInFlight.remove(uploadId);
+                    }
+                    return null;
+                }, false);
+            }));
+    }
+
+    // POST /api/upload/commit?uploadId - временный файл переименовывается в целевой, когда получены все байты.
+    // Повтор после успеха отвечает по маркеру; после ошибки rename состояние загрузки остается и commit можно повторить
+    private void handleUploadCommit(RoutingContext ctx) {
+        String userId = ctx.session().get(SESSION_USER_ID);
+        if (userId == null) {
+            ctx.response().setStatusCode(401).end("Unauthorized");
+            return;
+        }
+        String uploadId = ctx.request().getParam("uploadId");
+        withUploadOrCommitted(ctx, userId, uploadId,
+            marker -> jsonResponse(ctx, 200, new JsonObject().put("status", "ok").put("committed", true)),
+            upload -> withSessionConfig(ctx, userId, upload.getString("sessionId"), config -> {
+                if (!uploadsInFlight.add(uploadId)) {
+                    jsonResponse(ctx, 409, new JsonObject().put("status", "error")
+                        .put("message", "Another chunk of this upload is in progress"));
+                    return;
+                }
+                String part = upload.getString("part");
+                String target = upload.getString("target");
+                long size = upload.getLong("size");
+                vertx.executeBlocking(() -> {
+                    try (SftpTransfer transfer = openTransfer(config)) {
+                        long confirmed = transfer.sftp.stat(part).getSize();
+                        if (confirmed == size) commitUpload(transfer.sftp, part, target);
+                        return confirmed;
+                    }
+                }, false)
+                    .compose(confirmed -> {
+                        if (confirmed != size) return Future.succeededFuture(confirmed);
+                        // Маркер пишется до удаления состояния, чтобы между ними повтор не получил 404.
+                        // Файл уже на месте, поэтому ошибка Redis здесь не делает загрузку неудачной
+                        JsonObject marker = new JsonObject().put(SESSION_USER_ID, userId).put("size", size);
+                        return redis.send(Request.cmd(Command.SET).arg("ssh:upload:committed:" + uploadId).arg(marker.encode())
+                                .arg("EX").arg(String.valueOf(UPLOAD_COMMITTED_TTL_SEC)))
+                            .compose(v -> redis.send(Request.cmd(Command.DEL).arg("ssh:upload:" + uploadId)))
+                            .recover(err -> {
+                                logger.warn("Failed to record commit of upload {}: {}", uploadId, err.getMessage());
+                                return Future.succeededFuture();
+                            })
+                            .map(confirmed);
+                    })
+                    .onComplete(ar -> uploadsInFlight.remove(uploadId))
+                    .onSuccess(confirmed -> {
+                        if (confirmed != size) {
+                            jsonResponse(ctx, 409, new JsonObject().put("status", "error")
+                                .put("message", "Upload is incomplete").put("offset", confirmed));
+                            return;
+                        }
+                        logger.info("Uploaded {} ({} bytes) to server {}", target, size, config.getString("serverId"));
+                        jsonResponse(ctx, 200, new JsonObject().put("status", "ok").put("committed", true));
+                        notifyUploaded(config, upload.getString("dir"));
+                    })
+                    .onFailure(err -> failUpload(ctx, "Upload commit of " + target,
+                        err instanceof Exception e ? e : new Exception(err)));
+            }));
+    }
+
     private void jsonResponse(RoutingContext ctx, int statusCode, JsonObject payload) {
         ctx.response().setStatusCode(statusCode)
             .putHeader("Content-Type", "application/json")
@@ -0,0 +1,325 @@
+package org.console;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.Session;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import org.console.utils.LineOutputStream;
+import org.console.utils.ShellUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.console.Constants.*;
+
+// Наблюдение за каталогами, открытыми в FilesView, на удаленных серверах.
+// На сервер - один процесс inotifywait на все открытые каталоги; без inotify-tools - опрос mtime через SFTP.
+// Подписки - аренды с продлением: каталог наблюдается, пока его держит хотя бы один просмотр.
+// Состояние меняется только в контексте verticle.
+public class RemoteDirectoryWatcher {
+    private static final Logger logger = LoggerFactory.getLogger(RemoteDirectoryWatcher.class);
+    private static final String NO_INOTIFY = "NO_INOTIFY";
+
+    public interface ChangeListener {
+        void onChanged(String serverId, String dir, Set<String> userIds);
+    }
+
+    public interface MtimeProbe {
+        // Блокирующий вызов: mtime каталогов (отсутствующий каталог - -1)
+        Map<String, Long> stat(String serverId, List<String> dirs) throws Exception;
+    }
+
+    private final Vertx vertx;
+    private final Context context;
+    private final Function<String, Session> sessions;
+    private final MtimeProbe probe;
+    private final ChangeListener listener;
+    private final Map<String, ServerWatch> servers = new HashMap<>();
+
+    public RemoteDirectoryWatcher(Vertx vertx, Function<String, Session> sessions, MtimeProbe probe, ChangeListener listener) {
+        this.vertx = vertx;
+        this.context = vertx.getOrCreateContext();
+        this.sessions = sessions;
+        this.probe = probe;
+        this.listener = listener;
+        vertx.setPeriodic(FILES_WATCH_LEASE_MS / 2, id -> expireLeases());
+    }
+
+    private static class ServerWatch {
+        final String serverId;
+        final boolean pollOnly;
+        // каталог -> (userId:watchId -> окончание аренды)
+        final Map<String, Map<String, Long>> dirs = new HashMap<>();
+        final Map<String, Long> mtimes = new HashMap<>();
+        final Set<String> dirty = new LinkedHashSet<>();
+        ChannelExec channel;
+        boolean polling;
+        boolean pollInFlight;
+        long pollTimer = -1;
+        long restartTimer = -1;
+        long flushTimer = -1;
+        long firstDirtyAt;
+        int failures;
+
+        ServerWatch(String serverId, boolean pollOnly) {
+            this.serverId = serverId;
+            this.pollOnly = pollOnly;
+        }
+
+        Set<String> subscribers(String dir) {
+            Set<String> userIds = new HashSet<>();
+            Map<String, Long> leases = dirs.get(dir);
+            if (leases != null) {
+                leases.keySet().forEach(key -> userIds.add(key.substring(0, key.indexOf(':'))));
+            }
+            return userIds;
+        }
+    }
+
+    // Новая подписка или продление аренды. pollOnly - сервер настроен без inotify.
+    public void watch(String serverId, String userId, String watchId, String dir, boolean pollOnly) {
+        String path = normalize(dir);
+        ServerWatch server = servers.computeIfAbsent(serverId, id -> new ServerWatch(id, pollOnly));
+        String key = userId + ":" + watchId;
+        // Подписка переезжает на новый каталог при навигации
+        boolean changed = removeLease(server, key, path);
+        Map<String, Long> leases = server.dirs.computeIfAbsent(path, p -> new HashMap<>());
+        changed |= leases.isEmpty();
+        leases.put(key, System.currentTimeMillis() + FILES_WATCH_LEASE_MS);
+        if (changed) {
+            scheduleRestart(server);
+        }
+    }
+
+    public void unwatch(String userId, String watchId) {
+        String key = userId + ":" + watchId;
+        for (ServerWatch server : new ArrayList<>(servers.values())) {
+            if (removeLease(server, key, null)) {
+                scheduleRestart(server);
+            }
+        }
+    }
+
+    // true, если набор наблюдаемых каталогов изменился
+    private boolean removeLease(ServerWatch server, String key, String except) {
+        boolean changed = false;
+        var it = server.dirs.entrySet().iterator();
+        while (it.hasNext()) {
+            var entry = it.next();
+            if (entry.getKey().equals(except)) continue;
+            if (entry.getValue().remove(key) != null && entry.getValue().isEmpty()) {
+                it.remove();
+                server.mtimes.remove(entry.getKey());
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private void expireLeases() {
+        long now = System.currentTimeMillis();
+        for (ServerWatch server : new ArrayList<>(servers.values())) {
+            boolean changed = false;
+            var it = server.dirs.entrySet().iterator();
+            while (it.hasNext()) {
+                var entry = it.next();
+                entry.getValue().values().removeIf(expiresAt -> expiresAt < now);
+                if (entry.getValue().isEmpty()) {
+                    it.remove();
+                    server.mtimes.remove(entry.getKey());
+                    changed = true;
+                }
+            }
+            if (changed) {
+                scheduleRestart(server);
+            }
+        }
+    }
+
+    // Переход между наборами каталогов (навигация) дает серию изменений - процесс перезапускается один раз
+    private void scheduleRestart(ServerWatch server) {
+        if (server.restartTimer != -1) {
+            vertx.cancelTimer(server.restartTimer);
+        }
+        server.restartTimer = vertx.setTimer(FILES_WATCH_RESTART_DELAY_MS, id -> {
+            server.restartTimer = -1;
+            restart(server);
+        });
+    }
+
+    private void restart(ServerWatch server) {
+        stopProcess(server);
+        if (server.dirs.isEmpty()) {
+            stopPolling(server);
+            servers.remove(server.serverId, server);
+            logger.debug("Stopped watching server {}", server.serverId);
+            return;
+        }
+        if (server.pollOnly || server.polling) {
+            startPolling(server);
+            return;
+        }
+        Session session = sessions.apply(server.serverId);
+        if (session == null) {
+            // Без SSH-сессии наблюдать нечем; пробуем снова, пока каталоги кто-то держит
+            server.restartTimer = vertx.setTimer(FILES_WATCH_POLL_INTERVAL_MS, id -> {
+                server.restartTimer = -1;
+                restart(server);
+            });
+            return;
+        }
+        startProcess(server, session);
+    }
+
+    private void startProcess(ServerWatch server, Session session) {
+        StringBuilder paths = new StringBuilder();
+        for (String dir : server.dirs.keySet()) {
+            paths.append(' ').append(ShellUtils.sanitize(dir));
+        }
+        // %w - наблюдаемый каталог; события внутри вложенных каталогов не нужны
+        String command = "command -v inotifywait >/dev/null 2>&1 || { echo " + NO_INOTIFY + "; exit 0; }; "
+            + "exec inotifywait -m -q -e create,delete,moved_to,moved_from,close_write,attrib --format '%w' --" + paths;
+        ChannelExec channel;
+        try {
+            channel = (ChannelExec) session.openChannel("exec");
+        } catch (Exception e) {
+            logger.warn("Failed to start directory watcher on server {}: {}", server.serverId, e.getMessage());
+            onProcessExit(server, null);
+            return;
+        }
+        channel.setCommand(command);
+        channel.setOutputStream(new LineOutputStream(8192, line -> context.runOnContext(v -> onLine(server, channel, new String(line, StandardCharsets.UTF_8))),
+            () -> context.runOnContext(v -> onProcessExit(server, channel))));
+        // Канал назначается сразу: перезапуск во время подключения закроет и его
+        server.channel = channel;
+        // Подключение ждет ответа сервера до 15 с - не в event loop
+        vertx.<Void>executeBlocking(() -> {
+            channel.connect(15000);
+            return null;
+        }, false).onComplete(ar -> {
+            if (server.channel != channel) {
+                // Набор каталогов сменился, пока канал подключался
+                channel.disconnect();
+                return;
+            }
+            if (ar.failed()) {
+                logger.warn("Failed to start directory watcher on server {}: {}", server.serverId, ar.cause().getMessage());
+                channel.disconnect();
+                onProcessExit(server, channel);
+                return;
+            }
+            logger.debug("Watching {} directories on server {} with inotifywait", server.dirs.size(), server.serverId);
+        });
+    }
+
+    private void stopProcess(ServerWatch server) {
+        ChannelExec channel = server.channel;
+        server.channel = null;
+        if (channel != null) {
+            channel.disconnect();
+        }
+    }
+
+    private void onLine(ServerWatch server, ChannelExec channel, String line) {
+        if (server.channel != channel) return;
+        if (NO_INOTIFY.equals(line)) {
+            logger.info("inotifywait is not available on server {}, falling back to polling", server.serverId);
+            server.polling = true;
+            stopProcess(server);
+            startPolling(server);
+            return;
+        }
+        server.failures = 0;
+        markDirty(server, normalize(line));
+    }
+
+    // Процесс завершился сам (обрыв, лимит inotify watches, удален каталог) - перезапуск с задержкой,
+    // после нескольких неудач подряд - опрос
+    private void onProcessExit(ServerWatch server, ChannelExec channel) {
+        if (channel != null && server.channel != channel) return;
+        server.channel = null;
+        if (server.polling || server.dirs.isEmpty() || servers.get(server.serverId) != server) return;
+        if (++server.failures >= 3) {
+            logger.info("Directory watcher on server {} keeps failing, falling back to polling", server.serverId);
+            server.polling = true;
+            startPolling(server);
+            return;
+        }
+        server.restartTimer = vertx.setTimer(FILES_WATCH_RESTART_DELAY_MS * 10L * server.failures, id -> {
+            server.restartTimer = -1;
+            restart(server);
+        });
+    }
+
+    private void startPolling(ServerWatch server) {
+        if (server.pollTimer != -1) return;
+        server.pollTimer = vertx.setPeriodic(FILES_WATCH_POLL_INTERVAL_MS, id -> poll(server));
+    }
+
+    private void stopPolling(ServerWatch server) {
+        if (server.pollTimer != -1) {
+            vertx.cancelTimer(server.pollTimer);
+            server.pollTimer = -1;
+        }
+    }
+
+    private void poll(ServerWatch server) {
+        if (server.pollInFlight || server.dirs.isEmpty()) return;
+        server.pollInFlight = true;
+        List<String> dirs = new ArrayList<>(server.dirs.keySet());
+        vertx.<Map<String, Long>>executeBlocking(() -> probe.stat(server.serverId, dirs), false)
+            .onComplete(ar -> {
+                server.pollInFlight = false;
+                if (ar.failed()) {
+                    logger.debug("Directory poll failed on server {}: {}", server.serverId, ar.cause().getMessage());
+                    return;
+                }
+                ar.result().forEach((dir, mtime) -> {
+                    Long previous = server.mtimes.put(dir, mtime);
+                    if (previous != null && !previous.equals(mtime)) {
+                        markDirty(server, dir);
+                    }
+                });
+            });
+    }
+
+    // Серия событий (копирование сотен файлов) схлопывается в одно уведомление на каталог:
+    // отправка после паузы в событиях, но не позже FILES_WATCH_MAX_DELAY_MS от первого
+    private void markDirty(ServerWatch server, String dir) {
+        if (!server.dirs.containsKey(dir)) return;
+        long now = System.currentTimeMillis();
+        if (server.dirty.isEmpty()) {
+            server.firstDirtyAt = now;
+        }
+        server.dirty.add(dir);
+        if (server.flushTimer != -1) {
+            vertx.cancelTimer(server.flushTimer);
+        }
+        long delay = Math.max(1, Math.min(FILES_WATCH_DEBOUNCE_MS, server.firstDirtyAt + FILES_WATCH_MAX_DELAY_MS - now));
+        server.flushTimer = vertx.setTimer(delay, id -> {
+            server.flushTimer = -1;
+            List<String> dirty = new ArrayList<>(server.dirty);
+            server.dirty.clear();
+            for (String d : dirty) {
+                Set<String> userIds = server.subscribers(d);
+                if (!userIds.isEmpty()) {
+                    listener.onChanged(server.serverId, d, userIds);
+                }
+            }
+        });
+    }
+
+    private static String normalize(String dir) {
+        String path = dir.trim();
+        return path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+}
@@ -0,0 +1,283 @@
+package org.console;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.console.utils.LineOutputStream;
+import org.console.utils.ShellUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static org.console.Constants.*;
+
+// Поиск по содержимому файлов на сервере: rg, если установлен, иначе grep -r.
+// Вывод разбирается построчно по мере поиска: первая страница совпадений уходит клиенту сразу пачками,
+// остальные (до FILES_SEARCH_MAX_RESULTS) хранятся здесь и отдаются страницами по запросу.
+// Строки приходят из потока сессии JSch в контекст verticle - рабочий поток на время поиска не занимается.
+// Отмена и достижение лимита закрывают exec-канал, что завершает поиск на сервере.
+public class RemoteFileSearch {
+    public static class Options {
+        public String query;
+        public boolean regex;
+        public boolean caseSensitive;
+        public String glob;
+        public int pageSize;
+    }
+
+    public static class Search {
+        final String id;
+        final List<JsonObject> matches = new ArrayList<>();
+        volatile boolean cancelled;
+        volatile boolean done;
+        volatile boolean truncated;
+        volatile ChannelExec channel;
+        volatile long finishedAt;
+        // Состояние разбора вывода - только в контексте verticle
+        String tool;
+        JsonArray batch = new JsonArray();
+        long lastFlush = System.currentTimeMillis();
+        long flushTimer = -1;
+
+        Search(String id) {
+            this.id = id;
+        }
+
+        public void cancel() {
+            cancelled = true;
+            ChannelExec c = channel;
+            if (c != null) {
+                c.disconnect();
+            }
+        }
+
+        public synchronized int total() {
+            return matches.size();
+        }
+    }
+
+    private final Map<String, Search> searches = new ConcurrentHashMap<>();
+
+    public Search start(String userId, String searchId) {
+        Search search = new Search(searchId);
+        Search previous = searches.put(userId + ":" + searchId, search);
+        if (previous != null) {
+            previous.cancel();
+        }
+        return search;
+    }
+
+    public Search get(String userId, String searchId) {
+        return searches.get(userId + ":" + searchId);
+    }
+
+    public JsonObject page(Search search, int offset, int limit) {
+        JsonArray items = new JsonArray();
+        int total;
+        synchronized (search) {
+            total = search.matches.size();
+            for (int i = Math.max(0, offset); i < Math.min(total, offset + limit); i++) {
+                items.add(search.matches.get(i));
+            }
+        }
+        return new JsonObject()
+            .put("searchId", search.id)
+            .put("matches", items)
+            .put("offset", offset)
+            .put("total", total)
+            .put("done", search.done)
+            .put("truncated", search.truncated);
+    }
+
+    public void evictStale() {
+        long now = System.currentTimeMillis();
+        searches.values().removeIf(s -> s.done && now - s.finishedAt > FILES_SEARCH_TTL_MS);
+    }
+
+    // Вызывать из контекста verticle. onBatch получает совпадения первой страницы пачками не чаще раза в 250 мс,
+    // onProgress - число найденных после нее. Результат - итог поиска.
+    public Future<JsonObject> run(Vertx vertx, Session jschSession, String dir, Options options, Search search,
+                                  Consumer<JsonArray> onBatch, Consumer<Integer> onProgress) {
+        ChannelExec channel;
+        try {
+            channel = (ChannelExec) jschSession.openChannel("exec");
+        } catch (JSchException e) {
+            finish(search);
+            return Future.failedFuture(e);
+        }
+        search.channel = channel;
+        Context context = vertx.getOrCreateContext();
+        Promise<JsonObject> done = Promise.promise();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        channel.setCommand(buildCommand(dir, options));
+        channel.setErrStream(stderr);
+        // Длинные строки (минифицированные файлы) обрезаются, остаток пропускается
+        channel.setOutputStream(new LineOutputStream(FILES_SEARCH_MAX_LINE_CHARS * 4 + 4096,
+            line -> context.runOnContext(v -> onLine(vertx, dir, options, search, line, onBatch, onProgress)),
+            () -> context.runOnContext(v -> {
+                flush(vertx, search, onBatch, onProgress);
+                // Код выхода приходит после конца вывода - ждем закрытия канала, не дольше 5 с
+                whenClosed(vertx, channel, 100, () -> {
+                    JsonObject result = new JsonObject()
+                        .put("total", search.total())
+                        .put("truncated", search.truncated)
+                        .put("cancelled", search.cancelled)
+                        .put("tool", search.tool);
+                    // rg и grep: 1 - ничего не найдено, 2 - ошибка (например, неверное выражение)
+                    if (!search.cancelled && !search.truncated && channel.getExitStatus() >= 2 && search.total() == 0) {
+                        String error = stderr.toString(StandardCharsets.UTF_8).trim();
+                        result.put("error", error.isEmpty() ? "Search failed with exit code " + channel.getExitStatus() : error);
+                    }
+                    channel.disconnect();
+                    finish(search);
+                    done.tryComplete(result);
+                });
+            })));
+        vertx.<Void>executeBlocking(() -> {
+            channel.connect(15000);
+            return null;
+        }, false).onComplete(ar -> {
+            if (ar.failed()) {
+                channel.disconnect();
+                finish(search);
+                done.tryFail(ar.cause());
+            } else if (search.cancelled) {
+                channel.disconnect();
+            }
+        });
+        return done.future();
+    }
+
+    // Строка вывода - в контексте verticle
+    private void onLine(Vertx vertx, String dir, Options options, Search search, byte[] line,
+                        Consumer<JsonArray> onBatch, Consumer<Integer> onProgress) {
+        if (search.cancelled || search.truncated) return;
+        if (search.tool == null) {
+            // Первая строка - каким инструментом ищем
+            search.tool = new String(line, StandardCharsets.UTF_8);
+            return;
+        }
+        JsonObject match = parseMatch(line, dir);
+        if (match == null) return;
+        int total;
+        synchronized (search) {
+            search.matches.add(match);
+            total = search.matches.size();
+        }
+        if (total <= options.pageSize) {
+            search.batch.add(match);
+        }
+        if (total >= FILES_SEARCH_MAX_RESULTS) {
+            search.truncated = true;
+            // Закрытие канала останавливает поиск на сервере; итог придет через закрытие вывода
+            search.channel.disconnect();
+            return;
+        }
+        if (search.flushTimer == -1) {
+            long delay = Math.max(1, 250 - (System.currentTimeMillis() - search.lastFlush));
+            search.flushTimer = vertx.setTimer(delay, id -> {
+                search.flushTimer = -1;
+                flush(vertx, search, onBatch, onProgress);
+            });
+        }
+    }
+
+    private static void flush(Vertx vertx, Search search, Consumer<JsonArray> onBatch, Consumer<Integer> onProgress) {
+        if (search.flushTimer != -1) {
+            vertx.cancelTimer(search.flushTimer);
+            search.flushTimer = -1;
+        }
+        if (!search.batch.isEmpty()) {
+            onBatch.accept(search.batch);
+            search.batch = new JsonArray();
+        } else if (search.total() > 0) {
+            onProgress.accept(search.total());
+        }
+        search.lastFlush = System.currentTimeMillis();
+    }
+
+    private static void finish(Search search) {
+        search.done = true;
+        search.finishedAt = System.currentTimeMillis();
+    }
+
+    private static void whenClosed(Vertx vertx, ChannelExec channel, int attempts, Runnable action) {
+        if (channel.isClosed() || attempts <= 0) {
+            action.run();
+            return;
+        }
+        vertx.setTimer(50, id -> whenClosed(vertx, channel, attempts - 1, action));
+    }
+
+    private static String buildCommand(String dir, Options o) {
+        String pattern = ShellUtils.sanitize(o.query);
+        // --hidden --no-ignore: как и grep -r, ищем и в скрытых файлах, и в перечисленном в .gitignore
+        StringBuilder rg = new StringBuilder("rg --null --line-number --with-filename --no-heading --color never --no-messages --hidden --no-ignore")
+            .append(" --max-columns ").append(FILES_SEARCH_MAX_LINE_CHARS).append(" --max-columns-preview");
+        StringBuilder grep = new StringBuilder("grep -r -n -H -I --null -s");
+        if (!o.caseSensitive) {
+            rg.append(" -i");
+            grep.append(" -i");
+        }
+        if (!o.regex) {
+            rg.append(" -F");
+            grep.append(" -F");
+        } else {
+            grep.append(" -E");
+        }
+        if (o.glob != null && !o.glob.isEmpty()) {
+            rg.append(" -g ").append(ShellUtils.sanitize(o.glob));
+            grep.append(" --include=").append(ShellUtils.sanitize(o.glob));
+        }
+        rg.append(" -e ").append(pattern).append(" .");
+        grep.append(" -e ").append(pattern).append(" .");
+        // rg обходит дерево в несколько потоков
+        return String.format("cd %s || exit 2; if command -v rg >/dev/null 2>&1; then echo rg; exec %s; else echo grep; exec %s; fi",
+            ShellUtils.sanitize(dir), rg, grep);
+    }
+
+    // Формат вывода: путь\0номер:текст
+    private static JsonObject parseMatch(byte[] line, String dir) {
+        int nul = -1;
+        for (int i = 0; i < line.length; i++) {
+            if (line[i] == 0) {
+                nul = i;
+                break;
+            }
+        }
+        if (nul <= 0) return null;
+        int colon = -1;
+        for (int i = nul + 1; i < line.length; i++) {
+            if (line[i] == ':') {
+                colon = i;
+                break;
+            }
+        }
+        if (colon < 0) return null;
+        long lineNumber;
+        try {
+            lineNumber = Long.parseLong(new String(line, nul + 1, colon - nul - 1, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        String path = new String(line, 0, nul, StandardCharsets.UTF_8);
+        if (path.startsWith("./")) path = path.substring(2);
+        int end = line.length > 0 && line[line.length - 1] == '\r' ? line.length - 1 : line.length;
+        int textLength = Math.min(end - colon - 1, FILES_SEARCH_MAX_LINE_CHARS);
+        return new JsonObject()
+            .put("path", dir.endsWith("/") ? dir + path : dir + "/" + path)
+            .put("line", lineNumber)
+            .put("text", new String(line, colon + 1, Math.max(0, textLength), StandardCharsets.UTF_8));
+    }
+}
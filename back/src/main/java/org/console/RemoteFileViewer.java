@@ -0,0 +1,294 @@
+package org.console;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.console.Constants.*;
+
+// Постраничный просмотр больших файлов: каждая страница - чтение окна байт по SFTP с нужного смещения,
+// поэтому конец многогигабайтного лога стоит несколько килобайт передачи.
+// Номера строк - из разреженного индекса (смещение каждой VIEW_INDEX_STEP-й строки), который достраивается
+// от начала файла по мере прокрутки и переходов к строке, не больше VIEW_INDEX_SCAN_BYTES за вызов.
+// Рост файла (дописывание в конец) индекс сохраняет; уменьшение или изменение без роста - сбрасывает.
+// Вызовы блокирующие - только из executeBlocking, обращения к одному серверу идут через SftpChannelPool по очереди.
+public class RemoteFileViewer {
+    private final Map<String, LineIndex> indexes = new ConcurrentHashMap<>();
+
+    private static class LineIndex {
+        final String key;
+        long size;
+        long mtime;
+        // checkpoints[k] - смещение начала строки k * VIEW_INDEX_STEP
+        long[] checkpoints = new long[64];
+        int count = 1;
+        // Просканировано подряд от начала файла: байт и полных строк в них
+        long scannedTo;
+        long scannedLines;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        LineIndex(String key, long size, long mtime) {
+            this.key = key;
+            this.size = size;
+            this.mtime = mtime;
+        }
+
+        void feed(byte[] buf, int len) {
+            for (int i = 0; i < len; i++) {
+                if (buf[i] == '\n' && ++scannedLines % VIEW_INDEX_STEP == 0) {
+                    if (count == checkpoints.length) checkpoints = Arrays.copyOf(checkpoints, count * 2);
+                    checkpoints[count++] = scannedTo + i + 1;
+                }
+            }
+            scannedTo += len;
+        }
+
+        int floor(long offset) {
+            int lo = 0;
+            int hi = count - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (checkpoints[mid] <= offset) lo = mid; else hi = mid - 1;
+            }
+            return lo;
+        }
+    }
+
+    // Страница файла. Запрос: offset (вперед с начала строки на этом смещении или следующей), line (с номера строки),
+    // before (строки, заканчивающиеся до смещения), tail (последние строки); limit - строк на странице.
+    public JsonObject read(ChannelSftp sftp, String serverId, String path, JsonObject request) throws Exception {
+        SftpATTRS attrs = sftp.stat(path);
+        if (attrs.isDir()) {
+            throw new IllegalArgumentException("Path is a directory");
+        }
+        long size = attrs.getSize();
+        LineIndex index = index(serverId + ":" + path, size, attrs.getMTime());
+        int limit = Math.max(1, Math.min(request.getInteger("limit", VIEW_PAGE_LINES), VIEW_MAX_PAGE_LINES));
+
+        JsonObject page;
+        synchronized (index) {
+            index.lastUsed = System.currentTimeMillis();
+            if (request.getBoolean("tail", false)) {
+                page = readBackward(sftp, path, index, size, limit);
+            } else if (request.getLong("before") != null) {
+                page = readBackward(sftp, path, index, Math.min(request.getLong("before"), size), limit);
+            } else if (request.getLong("line") != null) {
+                long line = Math.max(0, request.getLong("line"));
+                Long offset = lineOffset(sftp, path, index, line);
+                if (offset == null) {
+                    // Индекс до этой строки еще не построен - клиент повторит запрос
+                    page = new JsonObject().put("indexing", true).put("lines", new JsonArray()).put("startOffset", index.scannedTo);
+                } else {
+                    page = readForward(sftp, path, index, offset, limit);
+                }
+            } else {
+                page = readForward(sftp, path, index, alignToLine(sftp, path, Math.max(0, request.getLong("offset", 0L)), size), limit);
+            }
+        }
+        return page
+            .put("path", path)
+            .put("size", size)
+            .put("mtime", attrs.getMTime())
+            .put("indexedBytes", index.scannedTo)
+            .put("indexedLines", index.scannedLines);
+    }
+
+    public void evictStale() {
+        long now = System.currentTimeMillis();
+        indexes.values().removeIf(index -> now - index.lastUsed > VIEW_INDEX_TTL_MS);
+        while (indexes.size() > VIEW_MAX_INDEXES) {
+            indexes.values().stream()
+                .min((a, b) -> Long.compare(a.lastUsed, b.lastUsed))
+                .ifPresent(oldest -> indexes.remove(oldest.key, oldest));
+        }
+    }
+
+    private LineIndex index(String key, long size, int mtime) {
+        return indexes.compute(key, (k, existing) -> {
+            if (existing == null || size < existing.size || (size == existing.size && mtime != existing.mtime)) {
+                return new LineIndex(k, size, mtime);
+            }
+            existing.size = size;
+            existing.mtime = mtime;
+            return existing;
+        });
+    }
+
+    // Смещение внутри строки сдвигается на начало следующей
+    private static long alignToLine(ChannelSftp sftp, String path, long offset, long size) throws Exception {
+        if (offset == 0 || offset >= size) return Math.min(offset, size);
+        byte[] buf = new byte[(int) Math.min(64 * 1024, size - offset + 1)];
+        int len = readRange(sftp, path, offset - 1, buf);
+        for (int i = 0; i < len; i++) {
+            if (buf[i] == '\n') return offset + i;
+        }
+        return offset - 1 + len;
+    }
+
+    // Досканирование индекса до target, не больше VIEW_INDEX_SCAN_BYTES за вызов
+    private static boolean scanTo(ChannelSftp sftp, String path, LineIndex index, long target) throws IOException, com.jcraft.jsch.SftpException {
+        long limit = Math.min(Math.min(target, index.size), index.scannedTo + VIEW_INDEX_SCAN_BYTES);
+        if (index.scannedTo < limit) {
+            try (InputStream in = sftp.get(path, null, index.scannedTo)) {
+                byte[] buf = new byte[64 * 1024];
+                int read;
+                while (index.scannedTo < limit && (read = in.read(buf, 0, (int) Math.min(buf.length, limit - index.scannedTo))) != -1) {
+                    index.feed(buf, read);
+                }
+            }
+        }
+        return index.scannedTo >= Math.min(target, index.size);
+    }
+
+    // Номер строки, начинающейся на смещении offset, или null, если индекс до нее не дошел
+    private static Long lineNumber(ChannelSftp sftp, String path, LineIndex index, long offset) throws Exception {
+        if (offset > index.scannedTo && (offset - index.scannedTo > VIEW_INDEX_SCAN_BYTES || !scanTo(sftp, path, index, offset))) {
+            return null;
+        }
+        int k = index.floor(offset);
+        long line = (long) k * VIEW_INDEX_STEP;
+        long pos = index.checkpoints[k];
+        if (pos < offset) {
+            try (InputStream in = sftp.get(path, null, pos)) {
+                byte[] buf = new byte[64 * 1024];
+                int read;
+                while (pos < offset && (read = in.read(buf, 0, (int) Math.min(buf.length, offset - pos))) != -1) {
+                    for (int i = 0; i < read; i++) {
+                        if (buf[i] == '\n') line++;
+                    }
+                    pos += read;
+                }
+            }
+        }
+        return line;
+    }
+
+    private static Long lineOffset(ChannelSftp sftp, String path, LineIndex index, long line) throws Exception {
+        if (line > index.scannedLines && index.scannedTo < index.size) {
+            scanTo(sftp, path, index, index.size);
+            if (line > index.scannedLines && index.scannedTo < index.size) return null;
+        }
+        // Строки дальше последней - показываем конец файла
+        long target = Math.min(line, index.scannedLines);
+        int k = (int) (target / VIEW_INDEX_STEP);
+        long pos = index.checkpoints[k];
+        long skip = target - (long) k * VIEW_INDEX_STEP;
+        if (skip == 0) return pos;
+        try (InputStream in = sftp.get(path, null, pos)) {
+            byte[] buf = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    if (buf[i] == '\n' && --skip == 0) return pos + i + 1;
+                }
+                pos += read;
+            }
+        }
+        return pos;
+    }
+
+    private static JsonObject readForward(ChannelSftp sftp, String path, LineIndex index, long start, int limit) throws Exception {
+        byte[] buf = new byte[(int) Math.max(0, Math.min(VIEW_PAGE_MAX_BYTES, index.size - start))];
+        int len = buf.length > 0 ? readRange(sftp, path, start, buf) : 0;
+        JsonArray lines = new JsonArray();
+        int lineStart = 0;
+        boolean partialLast = false;
+        for (int i = 0; i < len && lines.size() < limit; i++) {
+            if (buf[i] == '\n') {
+                lines.add(decode(buf, lineStart, i));
+                lineStart = i + 1;
+            }
+        }
+        if (lines.size() < limit && lineStart < len) {
+            // Строка без перевода в конце файла (может дописываться) или длиннее окна страницы
+            lines.add(decode(buf, lineStart, len));
+            partialLast = start + len >= index.size;
+            lineStart = partialLast ? lineStart : len;
+        }
+        long end = start + lineStart;
+        // Чтение подряд от просканированной границы заодно продлевает индекс
+        if (start <= index.scannedTo && end > index.scannedTo) {
+            int from = (int) (index.scannedTo - start);
+            index.feed(Arrays.copyOfRange(buf, from, lineStart), lineStart - from);
+        }
+        return new JsonObject()
+            .put("lines", lines)
+            .put("startOffset", start)
+            .put("endOffset", end)
+            .put("startLine", lineNumber(sftp, path, index, start))
+            .put("partialLast", partialLast)
+            .put("eof", start + len >= index.size);
+    }
+
+    private static JsonObject readBackward(ChannelSftp sftp, String path, LineIndex index, long end, int limit) throws Exception {
+        long from = Math.max(0, end - VIEW_PAGE_MAX_BYTES);
+        byte[] buf = new byte[(int) (end - from)];
+        int len = buf.length > 0 ? readRange(sftp, path, from, buf) : 0;
+        // Последний перевод строки закрывает последнюю строку; без него строка неполная (конец дописывается)
+        int contentEnd = len > 0 && buf[len - 1] == '\n' ? len - 1 : len;
+        boolean partialLast = len > 0 && buf[len - 1] != '\n' && from + len >= index.size;
+        // Начала последних limit строк; кусок в начале окна - не целая строка, если окно не с начала файла
+        int startIdx = contentEnd;
+        int cursor = contentEnd;
+        int found = 0;
+        while (len > 0 && found < limit) {
+            int nl = cursor - 1;
+            while (nl >= 0 && buf[nl] != '\n') nl--;
+            if (nl < 0) {
+                if (from == 0 || found == 0) {
+                    startIdx = 0;
+                }
+                break;
+            }
+            startIdx = nl + 1;
+            cursor = nl;
+            found++;
+        }
+        JsonArray lines = new JsonArray();
+        int lineStart = startIdx;
+        for (int i = startIdx; i < contentEnd; i++) {
+            if (buf[i] == '\n') {
+                lines.add(decode(buf, lineStart, i));
+                lineStart = i + 1;
+            }
+        }
+        if (len > 0) {
+            lines.add(decode(buf, lineStart, contentEnd));
+        }
+        long start = from + startIdx;
+        return new JsonObject()
+            .put("lines", lines)
+            .put("startOffset", start)
+            .put("endOffset", partialLast ? from + lineStart : from + len)
+            .put("startLine", lineNumber(sftp, path, index, start))
+            .put("partialLast", partialLast)
+            .put("eof", from + len >= index.size);
+    }
+
+    private static int readRange(ChannelSftp sftp, String path, long offset, byte[] buf) throws IOException, com.jcraft.jsch.SftpException {
+        int total = 0;
+        try (InputStream in = sftp.get(path, null, offset)) {
+            int read;
+            while (total < buf.length && (read = in.read(buf, total, buf.length - total)) != -1) {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    private static String decode(byte[] buf, int from, int to) {
+        int end = to > from && buf[to - 1] == '\r' ? to - 1 : to;
+        if (end - from > VIEW_MAX_LINE_BYTES) {
+            return new String(buf, from, VIEW_MAX_LINE_BYTES, StandardCharsets.UTF_8) + " …";
+        }
+        return new String(buf, from, end - from, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,106 @@
+package org.console;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Один долгоживущий SFTP-канал на сервер: навигация по файлам не открывает канал на каждый запрос.
+// ChannelSftp не потокобезопасен, поэтому запросы к одному серверу выполняются по очереди.
+// Вызовы блокирующие - только из executeBlocking.
+public class SftpChannelPool {
+    private static final Logger logger = LoggerFactory.getLogger(SftpChannelPool.class);
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+
+    private final Map<String, Entry> channels = new ConcurrentHashMap<>();
+    private final long idleTimeoutMs;
+
+    public interface SftpAction<T> {
+        T apply(ChannelSftp sftp) throws Exception;
+    }
+
+    public SftpChannelPool(long idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    // sessionSupplier вызывается только при (пере)открытии канала и может вернуть null, если SSH-сессии нет
+    public <T> T execute(String serverId, Supplier<Session> sessionSupplier, SftpAction<T> action) throws Exception {
+        Entry entry = channels.computeIfAbsent(serverId, k -> new Entry());
+        entry.lock.lock();
+        try {
+            entry.lastUsed = System.currentTimeMillis();
+            ChannelSftp sftp = entry.open(serverId, sessionSupplier);
+            try {
+                return action.apply(sftp);
+            } catch (Exception e) {
+                if (sftp.isConnected() && entry.session.isConnected()) {
+                    throw e;
+                }
+                // Канал закрылся посреди запроса (обрыв, перезапуск sshd) - повторяем один раз на новом
+                logger.info("SFTP channel for server {} was closed, reopening", serverId);
+                entry.close();
+                return action.apply(entry.open(serverId, sessionSupplier));
+            }
+        } finally {
+            entry.lastUsed = System.currentTimeMillis();
+            entry.lock.unlock();
+        }
+    }
+
+    // Вызывается периодически из event loop: закрывает каналы, которыми давно не пользовались.
+    // Занятый канал пропускается, а не ожидается.
+    public void closeIdle() {
+        long now = System.currentTimeMillis();
+        channels.forEach((serverId, entry) -> {
+            if (entry.channel == null || now - entry.lastUsed < idleTimeoutMs) return;
+            if (!entry.lock.tryLock()) return;
+            try {
+                // Запись остается в карте: следующий запрос просто откроет канал заново
+                if (entry.channel != null && now - entry.lastUsed >= idleTimeoutMs) {
+                    logger.info("Closing idle SFTP channel for server {}", serverId);
+                    entry.close();
+                }
+            } finally {
+                entry.lock.unlock();
+            }
+        });
+    }
+
+    private static class Entry {
+        final ReentrantLock lock = new ReentrantLock();
+        volatile ChannelSftp channel;
+        Session session;
+        volatile long lastUsed;
+
+        ChannelSftp open(String serverId, Supplier<Session> sessionSupplier) throws JSchException {
+            if (channel != null && channel.isConnected() && session.isConnected()) {
+                return channel;
+            }
+            close();
+            Session current = sessionSupplier.get();
+            if (current == null || !current.isConnected()) {
+                throw new JSchException("SSH session not active");
+            }
+            ChannelSftp sftp = (ChannelSftp) current.openChannel("sftp");
+            sftp.connect(CONNECT_TIMEOUT_MS);
+            logger.debug("Opened SFTP channel for server {}", serverId);
+            channel = sftp;
+            session = current;
+            return sftp;
+        }
+
+        void close() {
+            if (channel != null) {
+                channel.disconnect();
+            }
+            channel = null;
+            session = null;
+        }
+    }
+}
@@ -5,7 +5,6 @@ import com.jcraft.jsch.ChannelExec;
 import com.jcraft.jsch.ChannelShell;
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.Session;
-import com.jcraft.jsch.SftpProgressMonitor;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
@@ -15,6 +14,13 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.redis.client.Command;
 import io.vertx.redis.client.Redis;
 import io.vertx.redis.client.Request;
+import org.console.utils.DirectoryPaging;
+import org.console.utils.DockerJsonUtils;
+import org.console.utils.DockerSocketUtils;
+import org.console.utils.DockerStatsUtils;
+import org.console.utils.FutureUtils;
+import org.console.utils.LineOutputStream;
+import org.console.utils.SftpUtils;
 import org.console.utils.ShellUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,18 +29,22 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
 
 import static org.console.Constants.*;
 
 public class SshVerticle extends AbstractVerticle {
     private static final Logger logger = LoggerFactory.getLogger(SshVerticle.class);
+    private static final java.util.Set<String> DOCKER_CONTAINER_STATUSES = java.util.Set.of("created", "restarting", "running", "removing", "paused", "exited", "dead");
+    private static final java.util.Set<String> DOCKER_BATCH_ACTIONS = java.util.Set.of("restart", "stop", "start", "recreate");
+    // docker exec [-it] <container> <команда> - команда, которую фронтенд открывает для терминала контейнера
+    private static final java.util.regex.Pattern DOCKER_EXEC_PATTERN = java.util.regex.Pattern.compile("^docker exec((?:\\s+-(?:it|ti|i|t))*)\\s+([a-zA-Z0-9_-]+)\\s+(.+)$");
+    private static final Map<String, String> DOCKER_LIST_SORT_FIELDS = Map.of("name", "Names", "state", "State", "status", "Status", "image", "Image", "created", "Created");
     private final Redis redis;
     private final Map<String, SshSession> sessions = new ConcurrentHashMap<>();
     private Map<String, JsonObject> serverConfigs;
@@ -45,7 +55,22 @@ public class SshVerticle extends AbstractVerticle {
     private final Map<String, JsonObject> dockerCache = new ConcurrentHashMap<>();
     private final Map<String, Future<String>> pendingDockerRequests = new ConcurrentHashMap<>();
     private final java.util.Set<String> connectingSessions = java.util.Collections.newSetFromMap(new ConcurrentHashMap<>());
-    private final Semaphore dockerApiSemaphore = new Semaphore(15);
+    private DockerApiScheduler dockerScheduler;
+    private CgroupStatsCollector cgroupStats;
+    private final ContainerStatsHistory statsHistory = new ContainerStatsHistory();
+    private final ContainerLogSearch logSearch = new ContainerLogSearch(Long.parseLong(System.getenv()
+        .getOrDefault("DOCKER_LOG_INDEX_TOTAL_MB", String.valueOf(DOCKER_LOG_INDEX_TOTAL_BYTES / (1024 * 1024)))) * 1024 * 1024);
+    private final SftpChannelPool sftpChannels = new SftpChannelPool(SFTP_CHANNEL_IDLE_TIMEOUT_MS);
+    private final DirectoryListingCache dirCache = new DirectoryListingCache(FILES_LIST_CACHE_MAX_AGE_MS, FILES_LIST_CACHE_MAX_DIRS);
+    private final Map<String, java.util.concurrent.atomic.AtomicBoolean> activeLogSearches = new ConcurrentHashMap<>();
+    private final DirectorySizeCache dirSizes = new DirectorySizeCache(FILES_SIZE_CACHE_TTL_MS);
+    private final RemoteFileViewer fileViewer = new RemoteFileViewer();
+    private final RemoteFileSearch fileSearch = new RemoteFileSearch();
+    private final Map<String, SizeJob> activeSizeJobs = new ConcurrentHashMap<>();
+    private RemoteDirectoryWatcher dirWatcher;
+    private TransferScheduler transfers;
+    private FileNameIndex fileIndex;
+    private final Map<String, String> sizeJobsByPath = new ConcurrentHashMap<>();
 
     public SshVerticle(Redis redis, Map<String, JsonObject> serverConfigs, Map<String, JsonObject> userConfigs) {
         this.redis = redis;
@@ -55,6 +80,34 @@ public class SshVerticle extends AbstractVerticle {
 
     @Override
     public void start(Promise<Void> startPromise) {
+        // Планировщик Docker API с отдельным лимитом для каждого сервера
+        dockerScheduler = new DockerApiScheduler(vertx, DOCKER_MAX_CONCURRENT_PER_SERVER, DOCKER_QUEUE_TIMEOUT_MS);
+        serverConfigs.forEach((id, cfg) -> {
+            Integer limit = cfg.getInteger("dockerMaxConcurrent");
+            if (limit != null) {
+                dockerScheduler.setServerLimit(id, limit);
+            }
+        });
+        cgroupStats = new CgroupStatsCollector(vertx);
+        dirWatcher = new RemoteDirectoryWatcher(vertx, this::getAnyActiveJschSession, this::statDirectories, (serverId, dir, userIds) -> {
+            // Изменение сделано не через приложение: размеры каталога тоже могли измениться
+            dirSizes.invalidate(serverId, dir, false);
+            notifyDirectoryChanged(userIds, serverId, dir, true);
+        });
+        fileIndex = new FileNameIndex(vertx, this::getAnyActiveJschSession, serverId -> {
+            JsonObject cfg = serverConfigs.get(serverId);
+            JsonArray roots = cfg != null ? cfg.getJsonArray("fileIndexRoots") : null;
+            List<String> result = new ArrayList<>();
+            if (roots != null) {
+                roots.forEach(root -> {
+                    if (root instanceof String && !((String) root).isBlank()) result.add((String) root);
+                });
+            }
+            return result;
+        });
+        transfers = new TransferScheduler(vertx, redis, this::getAnyActiveJschSession,
+            (userId, destServerId, destPath) -> notifyFilesChanged(userId, destServerId, destPath));
+
         // Слушаем команды ввода
         vertx.eventBus().<JsonObject>consumer(SSH_COMMAND_IN, message -> {
             Object bodyObj = message.body();
@@ -75,6 +128,19 @@ public class SshVerticle extends AbstractVerticle {
             }
         });
 
+        // Изменение размера терминала (xterm fit)
+        vertx.eventBus().<JsonObject>consumer(SSH_SESSION_RESIZE, message -> {
+            JsonObject body = message.body();
+            String sessionId = body.getString("sessionId");
+            String userId = body.getString(SESSION_USER_ID);
+            Integer cols = body.getInteger("cols");
+            Integer rows = body.getInteger("rows");
+            SshSession session = sessions.get(sessionId);
+            if (session == null || userId == null || !userId.equals(session.userId)) return;
+            if (cols == null || rows == null || cols <= 0 || rows <= 0 || cols > 1000 || rows > 1000) return;
+            resizeSession(session, cols, rows);
+        });
+
         // Установка режима отображения (terminal/docker)
         vertx.eventBus().<JsonObject>consumer(SSH_SESSION_VIEWMODE_SET, message -> {
             JsonObject body = message.body();
@@ -571,8 +637,8 @@ public class SshVerticle extends AbstractVerticle {
             }
         });
 
-        // Загрузка метаданных сессий из Redis при старте
-        loadRestorableSessions().onComplete(ar -> {
+        // Загрузка метаданных сессий и очереди копирований из Redis при старте
+        loadRestorableSessions().compose(v -> transfers.load()).onComplete(ar -> {
             if (ar.succeeded()) {
                 startPromise.complete();
             } else {
@@ -583,11 +649,18 @@ public class SshVerticle extends AbstractVerticle {
 
         // Проверка неактивных сессий каждые 30 секунд
         vertx.setPeriodic(30000, id -> checkIdleSessions());
+        vertx.setPeriodic(60000, id -> {
+            statsHistory.evictStale();
+            dirCache.evictStale();
+            dirSizes.evictStale();
+            fileViewer.evictStale();
+            fileSearch.evictStale();
+        });
+        vertx.setPeriodic(30000, id -> sftpChannels.closeIdle());
     }
 
     private void registerDockerConsumers() {
         Map<String, String[]> endpoints = Map.of(
-            DOCKER_CONTAINERS_LIST, new String[]{"GET", "/containers/json?all=true"},
             DOCKER_CONTAINER_STATS, new String[]{"GET", "/containers/%s/stats?stream=false"},
             DOCKER_CONTAINER_RESTART, new String[]{"POST", "/containers/%s/restart"},
             DOCKER_CONTAINER_LOGS, new String[]{"GET", "/containers/%s/logs?stdout=true&stderr=true&timestamps=%s&tail=%s"},
@@ -613,6 +686,10 @@ public class SshVerticle extends AbstractVerticle {
                         path = String.format(path, containerId);
                     }
                 }
+                if (address.equals(DOCKER_CONTAINER_STATS)) {
+                    handleDockerContainerStats(message, path);
+                    return;
+                }
                 dispatchDockerRequest(body.getString("sessionId"), body.getString(SESSION_USER_ID), params[0], path, null, message);
             });
         });
@@ -620,6 +697,418 @@ public class SshVerticle extends AbstractVerticle {
         vertx.eventBus().<JsonObject>consumer(DOCKER_CONTAINER_UPDATE_ENV, message -> {
             handleDockerUpdateEnv(message);
         });
+
+        vertx.eventBus().<JsonObject>consumer(DOCKER_CONTAINERS_STATS, message -> {
+            handleDockerContainersStats(message);
+        });
+
+        vertx.eventBus().<JsonObject>consumer(DOCKER_CONTAINER_LOGS_SEARCH, message -> {
+            handleDockerLogsSearch(message);
+        });
+
+        vertx.eventBus().<JsonObject>consumer(DOCKER_CONTAINER_LOGS_SEARCH_CANCEL, message -> {
+            java.util.concurrent.atomic.AtomicBoolean cancelled = activeLogSearches.get(message.body().getString(SESSION_USER_ID) + ":" + message.body().getString("searchId"));
+            if (cancelled != null) {
+                cancelled.set(true);
+            }
+            message.reply(new JsonObject().put("status", "ok"));
+        });
+
+        vertx.eventBus().<JsonObject>consumer(DOCKER_CONTAINER_STATS_HISTORY, message -> {
+            handleDockerStatsHistory(message);
+        });
+
+        vertx.eventBus().<JsonObject>consumer(DOCKER_CONTAINERS_LIST, message -> {
+            handleDockerContainersList(message);
+        });
+
+        vertx.eventBus().<JsonObject>consumer(DOCKER_CONTAINERS_BATCH, message -> {
+            handleDockerContainersBatch(message);
+        });
+    }
+
+    private void handleDockerContainersList(Message<JsonObject> message) {
+        JsonObject body = message.body();
+        String sessionId = body.getString("sessionId");
+        String userId = body.getString(SESSION_USER_ID);
+
+        // Фильтры передаются в Docker API, чтобы лишние контейнеры не покидали сервер
+        JsonObject filters = new JsonObject();
+        for (String key : new String[]{"status", "name", "label"}) {
+            Object value = body.getValue(key);
+            if (value == null) continue;
+            JsonArray values = value instanceof JsonArray ? (JsonArray) value : new JsonArray().add(value.toString());
+            // Значения - только строки: getString на числе или объекте бросил бы ClassCastException
+            for (int i = 0; i < values.size(); i++) {
+                Object v = values.getValue(i);
+                if (!(v instanceof String) || ("status".equals(key) && !DOCKER_CONTAINER_STATUSES.contains(v))) {
+                    message.fail(400, "Invalid " + key + " filter: " + v);
+                    return;
+                }
+            }
+            if (!values.isEmpty()) {
+                filters.put(key, values);
+            }
+        }
+
+        StringBuilder path = new StringBuilder("/containers/json?all=").append(body.getBoolean("all", true));
+        if (!filters.isEmpty()) {
+            path.append("&filters=").append(java.net.URLEncoder.encode(filters.encode(), StandardCharsets.UTF_8));
+        }
+
+        String sort = body.getString("sort");
+        Integer offset = body.getInteger("offset");
+        Integer limit = body.getInteger("limit");
+        if (sort != null && !DOCKER_LIST_SORT_FIELDS.containsKey(sort)) {
+            message.fail(400, "Invalid sort field: " + sort);
+            return;
+        }
+
+        dispatchDockerRequestInternal(sessionId, userId, "GET", path.toString(), null)
+            .onSuccess(data -> {
+                if (sort == null && offset == null && limit == null) {
+                    replyWithDockerData(message, data, true);
+                    return;
+                }
+                try {
+                    JsonArray fields = body.getJsonArray("fields");
+                    String source = data.trim();
+                    if (fields != null && !fields.isEmpty()) {
+                        // Сначала отсекаем лишние поля потоково, затем разбираем уже компактный массив
+                        List<String> fieldList = new ArrayList<>();
+                        for (int i = 0; i < fields.size(); i++) {
+                            fieldList.add(fields.getString(i));
+                        }
+                        if (sort != null) {
+                            fieldList.add(DOCKER_LIST_SORT_FIELDS.get(sort));
+                        }
+                        source = DockerJsonUtils.project(source, fieldList);
+                    }
+                    JsonArray containers = new JsonArray(source);
+                    List<JsonObject> items = new ArrayList<>(containers.size());
+                    for (int i = 0; i < containers.size(); i++) {
+                        items.add(containers.getJsonObject(i));
+                    }
+                    if (sort != null) {
+                        java.util.Comparator<JsonObject> comparator = dockerListComparator(sort);
+                        items.sort("desc".equalsIgnoreCase(body.getString("order")) ? comparator.reversed() : comparator);
+                    }
+
+                    int total = items.size();
+                    int from = Math.min(Math.max(offset != null ? offset : 0, 0), total);
+                    int pageSize = Math.min(Math.max(limit != null ? limit : DOCKER_LIST_MAX_PAGE_SIZE, 1), DOCKER_LIST_MAX_PAGE_SIZE);
+                    int to = Math.min(from + pageSize, total);
+
+                    message.reply(new JsonObject()
+                        .put("status", "ok")
+                        .put("data", new JsonArray(new ArrayList<>(items.subList(from, to))))
+                        .put("total", total)
+                        .put("offset", from)
+                        .put("limit", pageSize));
+                } catch (Exception e) {
+                    message.fail(500, "Failed to process container list: " + e.getMessage());
+                }
+            })
+            .onFailure(err -> message.fail(500, err.getMessage()));
+    }
+
+    private java.util.Comparator<JsonObject> dockerListComparator(String sort) {
+        if ("created".equals(sort)) {
+            return java.util.Comparator.comparingLong(c -> c.getLong("Created", 0L));
+        }
+        String field = DOCKER_LIST_SORT_FIELDS.get(sort);
+        return java.util.Comparator.comparing(c -> {
+            Object value = c.getValue(field);
+            if (value instanceof JsonArray) {
+                JsonArray names = (JsonArray) value;
+                value = names.isEmpty() ? "" : names.getString(0);
+            }
+            return value != null ? value.toString().toLowerCase() : "";
+        });
+    }
+
+    private void handleDockerContainerStats(Message<JsonObject> message, String path) {
+        JsonObject body = message.body();
+        String sessionId = body.getString("sessionId");
+        String userId = body.getString(SESSION_USER_ID);
+        String containerId = body.getString("containerId");
+        // Источник cgroup отдает готовую сводку; если контейнера в замере нет - спрашиваем Docker API.
+        // Ответ в обоих случаях - сводка DockerStatsUtils.summarize, как у docker.containers.stats
+        collectCgroupStats(sessionId, userId).onSuccess(cgroupResults -> {
+            JsonObject cgroupSummary = findCgroupStats(cgroupResults, containerId);
+            Future<JsonObject> summary = cgroupSummary != null
+                ? Future.succeededFuture(cgroupSummary)
+                : dispatchDockerRequestInternal(sessionId, userId, "GET", path, null)
+                    .map(data -> DockerStatsUtils.summarize(containerId, new JsonObject(data.trim())));
+            summary
+                .onSuccess(data -> {
+                    statsHistory.record(getServerId(sessionId, userId), data);
+                    message.reply(new JsonObject().put("status", "ok").put("data", data));
+                })
+                .onFailure(err -> message.fail(500, err.getMessage()));
+        });
+    }
+
+    private boolean useCgroupStats(String serverId) {
+        JsonObject cfg = serverId != null ? serverConfigs.get(serverId) : null;
+        return cfg != null && "cgroup".equals(cfg.getString("dockerStatsSource")) && cgroupStats.isAvailable(serverId);
+    }
+
+    // Всегда завершается успешно: пустой результат означает, что нужно идти в Docker API
+    private Future<Map<String, JsonObject>> collectCgroupStats(String sessionId, String userId) {
+        String serverId = getServerId(sessionId, userId);
+        if (!useCgroupStats(serverId)) {
+            return Future.succeededFuture(Map.of());
+        }
+        Session jschSession = getAnyActiveJschSession(serverId);
+        if (jschSession == null) {
+            return Future.succeededFuture(Map.of());
+        }
+        return cgroupStats.collect(serverId, script ->
+                dockerScheduler.submit(serverId, userId, DockerApiScheduler.Priority.BACKGROUND, () -> executeCommand(jschSession, script)))
+            .otherwise(err -> Map.of());
+    }
+
+    // Клиент может прислать короткий ID, а cgroup знает только полный
+    private JsonObject findCgroupStats(Map<String, JsonObject> cgroupResults, String containerId) {
+        if (containerId == null || cgroupResults.isEmpty()) return null;
+        JsonObject exact = cgroupResults.get(containerId);
+        if (exact != null) return exact;
+        for (Map.Entry<String, JsonObject> entry : cgroupResults.entrySet()) {
+            if (entry.getKey().startsWith(containerId)) {
+                return entry.getValue().copy().put("id", containerId);
+            }
+        }
+        return null;
+    }
+
+    private void handleDockerLogsSearch(Message<JsonObject> message) {
+        JsonObject body = message.body();
+        String sessionId = body.getString("sessionId");
+        String userId = body.getString(SESSION_USER_ID);
+        String containerId = body.getString("containerId");
+        String query = body.getString("query");
+        String since = body.getString("since");
+        String until = body.getString("until");
+        boolean timestamps = body.getBoolean("timestamps", false);
+
+        String serverId = getServerId(sessionId, userId);
+        if (serverId == null) {
+            message.fail(403, "Access denied");
+            return;
+        }
+        if (!ShellUtils.isValidContainerId(containerId)) {
+            message.fail(400, "Invalid container ID format");
+            return;
+        }
+        if (query == null || query.isEmpty() || query.length() > 500) {
+            message.fail(400, "Search query is required (max 500 characters)");
+            return;
+        }
+        for (String time : new String[]{since, until}) {
+            if (time != null && !time.matches("^[0-9]{1,12}(\\.[0-9]{1,9})?$")) {
+                message.fail(400, "Invalid time range");
+                return;
+            }
+        }
+
+        java.util.function.Predicate<String> matcher;
+        boolean caseSensitive = body.getBoolean("caseSensitive", false);
+        if (body.getBoolean("regex", false)) {
+            try {
+                java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(query, caseSensitive ? 0 : java.util.regex.Pattern.CASE_INSENSITIVE | java.util.regex.Pattern.UNICODE_CASE);
+                matcher = line -> pattern.matcher(line).find();
+            } catch (java.util.regex.PatternSyntaxException e) {
+                message.fail(400, "Invalid regex: " + e.getDescription());
+                return;
+            }
+        } else if (caseSensitive) {
+            matcher = line -> line.contains(query);
+        } else {
+            String lowerQuery = query.toLowerCase();
+            matcher = line -> line.toLowerCase().contains(lowerQuery);
+        }
+        int context = Math.min(Math.max(body.getInteger("context", 2), 0), DOCKER_LOG_SEARCH_MAX_CONTEXT);
+        int limit = Math.min(Math.max(body.getInteger("limit", DOCKER_LOG_SEARCH_DEFAULT_LIMIT), 1), DOCKER_LOG_SEARCH_MAX_LIMIT);
+
+        // Индекс строк привязан к окну лога: повторный поиск по тому же окну не ходит в Docker
+        String indexKey = serverId + ":" + containerId + ":" + since + ":" + until + ":" + timestamps;
+        ContainerLogSearch.LineIndex index = logSearch.getIndex(indexKey);
+        boolean buildIndex = index == null && body.getBoolean("index", false);
+        Session jschSession = index == null ? getAnyActiveJschSession(serverId) : null;
+        if (index == null && jschSession == null) {
+            message.fail(500, "Нет активного SSH-соединения с сервером. Пожалуйста, подключитесь или разбудите сессию.");
+            return;
+        }
+
+        String searchId = body.getString("searchId", java.util.UUID.randomUUID().toString());
+        java.util.concurrent.atomic.AtomicBoolean cancelled = new java.util.concurrent.atomic.AtomicBoolean();
+        activeLogSearches.put(userId + ":" + searchId, cancelled);
+        message.reply(new JsonObject().put("status", "ok").put("searchId", searchId).put("indexed", index != null));
+
+        String address = SSH_COMMAND_OUT_PREFIX + userId + DOCKER_LOGS_SEARCH_RESULTS;
+        StringBuilder path = new StringBuilder("/containers/").append(containerId)
+            .append("/logs?stdout=true&stderr=true&timestamps=").append(timestamps);
+        if (since != null) path.append("&since=").append(since);
+        if (until != null) path.append("&until=").append(until);
+
+        vertx.<JsonObject>executeBlocking(() -> {
+            java.util.function.Consumer<JsonArray> onBatch = batch -> vertx.eventBus().publish(address, new JsonObject()
+                .put("searchId", searchId)
+                .put("containerId", containerId)
+                .put("matches", batch));
+            if (index != null) {
+                return ContainerLogSearch.scan(index.source(), matcher, context, limit, cancelled::get, null, onBatch);
+            }
+            try (InputStream in = new DockerSocketUtils.LogDemuxInputStream(
+                    DockerSocketUtils.openStream(jschSession, DOCKER_SOCKET_PATH, "GET", path.toString(), null))) {
+                ContainerLogSearch.LineIndex.Builder builder = buildIndex ? logSearch.newIndexBuilder() : null;
+                JsonObject result = ContainerLogSearch.scan(ContainerLogSearch.lines(in), matcher, context, limit, cancelled::get, builder, onBatch);
+                if (builder != null && !result.getBoolean("cancelled")) {
+                    ContainerLogSearch.LineIndex built = builder.build();
+                    if (built != null) {
+                        logSearch.putIndex(indexKey, built);
+                        result.put("indexedLines", built.size());
+                    }
+                }
+                return result;
+            }
+        }, false).onComplete(ar -> {
+            activeLogSearches.remove(userId + ":" + searchId);
+            JsonObject done = new JsonObject()
+                .put("searchId", searchId)
+                .put("containerId", containerId)
+                .put("done", true);
+            if (ar.succeeded()) {
+                done.mergeIn(ar.result());
+            } else {
+                logger.warn("Log search failed for container {} on server {}: {}", containerId, serverId, ar.cause().getMessage());
+                done.put("error", ar.cause().getMessage());
+            }
+            vertx.eventBus().publish(address, done);
+        });
+    }
+
+    private void handleDockerStatsHistory(Message<JsonObject> message) {
+        JsonObject body = message.body();
+        String serverId = getServerId(body.getString("sessionId"), body.getString(SESSION_USER_ID));
+        if (serverId == null) {
+            message.fail(403, "Access denied");
+            return;
+        }
+        String containerId = body.getString("containerId");
+        if (!ShellUtils.isValidContainerId(containerId)) {
+            message.fail(400, "Invalid container ID format");
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long to = body.getLong("to", now);
+        long from = body.getLong("from", to - STATS_HISTORY_FINE_STEP_MS * STATS_HISTORY_FINE_SLOTS);
+        JsonObject history = statsHistory.query(serverId, containerId, from, to, body.getString("resolution"));
+        if (history == null) {
+            // История копится, пока статистику кто-то запрашивает
+            history = new JsonObject().put("t", new JsonArray());
+        }
+        message.reply(new JsonObject().put("status", "ok").put("data", history.put("containerId", containerId)));
+    }
+
+    private void handleDockerContainersStats(Message<JsonObject> message) {
+        JsonObject body = message.body();
+        String sessionId = body.getString("sessionId");
+        String userId = body.getString(SESSION_USER_ID);
+        JsonArray requestedIds = body.getJsonArray("containerIds");
+        long timeout = Math.min(Math.max(body.getLong("timeout", DOCKER_STATS_BATCH_TIMEOUT_MS), 1000L), 60000L);
+
+        List<String> validIds = new ArrayList<>();
+        if (requestedIds != null) {
+            for (int i = 0; i < requestedIds.size(); i++) {
+                String id = requestedIds.getString(i);
+                if (!ShellUtils.isValidContainerId(id)) {
+                    message.fail(400, "Invalid container ID format");
+                    return;
+                }
+                validIds.add(id);
+            }
+        }
+
+        collectCgroupStats(sessionId, userId).onSuccess(cgroupResults ->
+            collectContainersStats(message, requestedIds != null ? validIds : null, cgroupResults, timeout));
+    }
+
+    private void collectContainersStats(Message<JsonObject> message, List<String> requestedIds, Map<String, JsonObject> cgroupResults, long timeout) {
+        JsonObject body = message.body();
+        String sessionId = body.getString("sessionId");
+        String userId = body.getString(SESSION_USER_ID);
+
+        Future<List<String>> idsFuture;
+        if (requestedIds != null) {
+            idsFuture = Future.succeededFuture(requestedIds);
+        } else if (!cgroupResults.isEmpty()) {
+            // В cgroup видны только запущенные контейнеры - это и есть набор по умолчанию
+            idsFuture = Future.succeededFuture(new ArrayList<>(cgroupResults.keySet()));
+        } else {
+            // По умолчанию - все запущенные контейнеры сервера
+            idsFuture = dispatchDockerRequestInternal(sessionId, userId, "GET", "/containers/json", null).map(data -> {
+                List<String> ids = new ArrayList<>();
+                JsonArray containers = new JsonArray(data.trim());
+                for (int i = 0; i < containers.size(); i++) {
+                    ids.add(containers.getJsonObject(i).getString("Id"));
+                }
+                return ids;
+            });
+        }
+
+        String serverId = getServerId(sessionId, userId);
+        idsFuture
+            .onSuccess(ids -> {
+                JsonObject results = new JsonObject();
+                JsonObject errors = new JsonObject();
+                List<String> dockerIds = new ArrayList<>();
+                for (String id : ids) {
+                    JsonObject summary = findCgroupStats(cgroupResults, id);
+                    if (summary != null) {
+                        results.put(id, summary);
+                        statsHistory.record(serverId, summary);
+                    } else {
+                        dockerIds.add(id);
+                    }
+                }
+                // Давно не обновлявшиеся - первыми: при частичном ответе хвост списка не голодает от опроса к опросу
+                dockerIds.sort(Comparator.comparingLong(id -> statsHistory.lastSampleTime(serverId, id)));
+                Promise<Void> done = Promise.promise();
+                long timerId = vertx.setTimer(timeout, t -> done.tryComplete());
+
+                FutureUtils.forEachBounded(dockerIds, DOCKER_STATS_BATCH_CONCURRENCY, () -> done.future().isComplete(), id ->
+                    dispatchDockerRequestInternal(sessionId, userId, "GET", "/containers/" + id + "/stats?stream=false", null)
+                        .onSuccess(data -> {
+                            try {
+                                JsonObject summary = DockerStatsUtils.summarize(id, new JsonObject(data.trim()));
+                                // Пришедшие после таймаута не попадут в ответ, но попадут в историю
+                                statsHistory.record(serverId, summary);
+                                results.put(id, summary);
+                            } catch (Exception e) {
+                                errors.put(id, "Failed to parse stats: " + e.getMessage());
+                            }
+                        })
+                        .onFailure(err -> errors.put(id, err.getMessage()))
+                ).onComplete(ar -> done.tryComplete());
+
+                done.future().onComplete(ar -> {
+                    vertx.cancelTimer(timerId);
+                    // По таймауту отдаем то, что успели собрать
+                    JsonArray pending = new JsonArray();
+                    ids.forEach(id -> {
+                        if (!results.containsKey(id) && !errors.containsKey(id)) pending.add(id);
+                    });
+                    message.reply(new JsonObject()
+                        .put("status", "ok")
+                        .put("data", results.copy())
+                        .put("errors", errors.copy())
+                        .put("pending", pending)
+                        .put("partial", !pending.isEmpty()));
+                });
+            })
+            .onFailure(err -> message.fail(500, err.getMessage()));
     }
 
     private void registerFilesConsumers() {
@@ -635,68 +1124,139 @@ public class SshVerticle extends AbstractVerticle {
                 return;
             }
 
-            Session jschSession = getAnyActiveJschSession(serverId);
-            if (jschSession == null) {
+            if (getAnyActiveJschSession(serverId) == null) {
                 message.fail(503, "SSH session not active");
                 return;
             }
 
-            String sanitizedPath = ShellUtils.sanitize(path);
-            String command = String.format("readlink -f %1$s; echo '---LS---'; ls -la --time-style=long-iso %1$s; echo '---DF---'; df -h %1$s | tail -n 1", sanitizedPath);
-            executeCommand(jschSession, command)
-                .onSuccess(output -> {
-                    String[] lsParts = output.split("---LS---");
-                    String absolutePath = lsParts[0].trim();
-                    String remaining = lsParts.length > 1 ? lsParts[1] : "";
-
-                    String[] parts = remaining.split("---DF---");
-                    JsonArray files = parseLsOutput(parts[0]);
-                    JsonObject diskInfo = parts.length > 1 ? parseDfOutput(parts[1]) : null;
+            // Клиент может прислать версию своего листинга и получить "not modified"
+            Long clientVersion = body.getLong("version");
+            boolean force = body.getBoolean("force", false);
+            DirectoryPaging.Query query = DirectoryPaging.Query.fromJson(body, FILES_LIST_PAGE_SIZE, FILES_LIST_MAX_PAGE_SIZE);
 
-                    JsonObject reply = new JsonObject()
-                        .put("status", "ok")
-                        .put("files", files)
-                        .put("path", absolutePath.isEmpty() ? path : absolutePath);
-                    if (diskInfo != null) {
-                        reply.put("diskInfo", diskInfo);
+            // Один круг SFTP-запросов на постоянном канале вместо нового exec-канала с ls и df
+            vertx.<JsonObject>executeBlocking(() -> sftpChannels.execute(serverId, () -> getAnyActiveJschSession(serverId), sftp -> {
+                String absolutePath = SftpUtils.resolvePath(sftp, path);
+                long dirMtime = sftp.stat(absolutePath).getMTime();
+                DirectoryListingCache.Listing listing = force ? null : dirCache.getValid(serverId, absolutePath, dirMtime);
+                JsonObject page;
+                if (listing != null) {
+                    page = DirectoryPaging.page(listing.files, query);
+                } else {
+                    // Большие каталоги не кэшируются: каждая страница - новый проход readdir с окном в limit записей
+                    long listedAt = System.currentTimeMillis();
+                    DirectoryPaging.Result scan = DirectoryPaging.scan(sftp, absolutePath, query, FILES_LIST_CACHE_MAX_ENTRIES);
+                    page = scan.page;
+                    if (scan.allFiles != null) {
+                        listing = dirCache.put(serverId, absolutePath, scan.allFiles, SftpUtils.diskInfo(sftp, absolutePath), dirMtime, listedAt);
+                    } else {
+                        dirCache.invalidate(serverId, absolutePath);
                     }
-                    message.reply(reply);
-                })
+                }
+
+                JsonObject reply = page
+                    .put("status", "ok")
+                    .put("path", absolutePath);
+                if (listing == null) {
+                    JsonObject diskInfo = query.isFirstPage() ? SftpUtils.diskInfo(sftp, absolutePath) : null;
+                    return diskInfo != null ? reply.put("diskInfo", diskInfo) : reply;
+                }
+                reply.put("version", listing.version);
+                if (clientVersion != null && clientVersion == listing.version && query.isFirstPage()) {
+                    reply.remove("files");
+                    return reply.put("notModified", true);
+                }
+                if (listing.diskInfo != null) {
+                    reply.put("diskInfo", listing.diskInfo);
+                }
+                return reply;
+            }), false)
+                .onSuccess(message::reply)
                 .onFailure(err -> message.fail(500, err.getMessage()));
         });
 
-        vertx.eventBus().<JsonObject>consumer(FILES_ARCHIVE, message -> {
+        vertx.eventBus().<JsonObject>consumer(FILES_WATCH, message -> {
             JsonObject body = message.body();
-            JsonArray paths = body.getJsonArray("paths");
-            String sessionId = body.getString("sessionId");
             String userId = body.getString(SESSION_USER_ID);
-
-            String serverId = getServerId(sessionId, userId);
+            String serverId = getServerId(body.getString("sessionId"), userId);
             if (serverId == null) {
                 message.fail(403, "Access denied");
                 return;
             }
-
-            Session jschSession = getAnyActiveJschSession(serverId);
-            if (jschSession == null) {
-                message.fail(503, "SSH session not active");
+            String path = body.getString("path");
+            String watchId = body.getString("watchId");
+            if (path == null || !path.startsWith("/") || watchId == null) {
+                message.fail(400, "Absolute path and watchId are required");
                 return;
             }
+            // servers.json: "fileWatch": "off" - не наблюдать, "poll" - только опрос, иначе inotify с откатом на опрос
+            JsonObject cfg = serverConfigs.get(serverId);
+            String mode = cfg != null ? cfg.getString("fileWatch", "auto") : "auto";
+            if ("off".equals(mode)) {
+                message.reply(new JsonObject().put("status", "ok").put("watching", false));
+                return;
+            }
+            dirWatcher.watch(serverId, userId, watchId, path, "poll".equals(mode));
+            message.reply(new JsonObject().put("status", "ok").put("watching", true).put("leaseMs", FILES_WATCH_LEASE_MS));
+        });
 
-            String archiveName = "/tmp/archive_" + System.currentTimeMillis() + ".tar.gz";
-            StringBuilder sb = new StringBuilder("tar -czf ").append(archiveName);
-            for (int i = 0; i < paths.size(); i++) {
-                sb.append(" ").append(ShellUtils.sanitize(paths.getString(i)));
+        vertx.eventBus().<JsonObject>consumer(FILES_UNWATCH, message -> {
+            dirWatcher.unwatch(message.body().getString(SESSION_USER_ID), message.body().getString("watchId"));
+            message.reply(new JsonObject().put("status", "ok"));
+        });
+
+        vertx.eventBus().<JsonObject>consumer(FILES_MUTATED, message -> {
+            JsonObject body = message.body();
+            dirSizes.invalidate(body.getString("serverId"), body.getString("path"), false);
+            notifyDirectoryChanged(java.util.Set.of(body.getString(SESSION_USER_ID)), body.getString("serverId"), body.getString("path"), false);
+        });
+
+        vertx.eventBus().<JsonObject>consumer(FILES_SIZE, this::handleFilesSize);
+
+        vertx.eventBus().<JsonObject>consumer(FILES_SEARCH, this::handleFilesSearch);
+
+        vertx.eventBus().<JsonObject>consumer(FILES_SEARCH_CANCEL, message -> {
+            RemoteFileSearch.Search search = fileSearch.get(message.body().getString(SESSION_USER_ID), message.body().getString("searchId"));
+            if (search != null) {
+                search.cancel();
             }
+            message.reply(new JsonObject().put("status", "ok"));
+        });
 
-            executeCommand(jschSession, sb.toString())
-                .onSuccess(v -> message.reply(new JsonObject().put("status", "ok").put("archivePath", archiveName)))
-                .onFailure(err -> message.fail(500, err.getMessage()));
+        vertx.eventBus().<JsonObject>consumer(FILES_SEARCH_PAGE, message -> {
+            JsonObject body = message.body();
+            RemoteFileSearch.Search search = fileSearch.get(body.getString(SESSION_USER_ID), body.getString("searchId"));
+            if (search == null) {
+                message.fail(404, "Результаты поиска устарели, повторите поиск");
+                return;
+            }
+            int limit = Math.min(Math.max(body.getInteger("limit", FILES_SEARCH_PAGE_SIZE), 1), FILES_SEARCH_PAGE_SIZE * 5);
+            message.reply(fileSearch.page(search, Math.max(body.getInteger("offset", 0), 0), limit).put("status", "ok"));
         });
 
-        vertx.eventBus().<JsonObject>consumer(FILES_SIZE, message -> {
+        // Нечеткий поиск по именам файлов сервера из индекса в памяти; пока индекс строится - indexing: true
+        vertx.eventBus().<JsonObject>consumer(FILES_INDEX_SEARCH, message -> {
             JsonObject body = message.body();
-            String path = body.getString("path", ".");
+            String serverId = getServerId(body.getString("sessionId"), body.getString(SESSION_USER_ID));
+            if (serverId == null) {
+                message.fail(403, "Access denied");
+                return;
+            }
+            String query = body.getString("query", "");
+            if (query.length() > 200) {
+                message.fail(400, "Search query is too long");
+                return;
+            }
+            int limit = Math.min(Math.max(body.getInteger("limit", FILE_INDEX_SEARCH_LIMIT), 1), FILE_INDEX_SEARCH_LIMIT * 4);
+            fileIndex.search(serverId, query, limit)
+                .onSuccess(result -> message.reply(result.put("status", "ok")))
+                .onFailure(err -> message.fail(503, err.getMessage()));
+        });
+
+        // Страница большого файла; слежение за концом - повторные запросы с offset = endOffset прошлой страницы
+        vertx.eventBus().<JsonObject>consumer(FILES_VIEW, message -> {
+            JsonObject body = message.body();
+            String path = body.getString("path");
             String sessionId = body.getString("sessionId");
             String userId = body.getString(SESSION_USER_ID);
 
@@ -705,38 +1265,22 @@ public class SshVerticle extends AbstractVerticle {
                 message.fail(403, "Access denied");
                 return;
             }
-
-            Session jschSession = getAnyActiveJschSession(serverId);
-            if (jschSession == null) {
-                message.fail(503, "SSH session not active");
+            if (path == null || getAnyActiveJschSession(serverId) == null) {
+                message.fail(path == null ? 400 : 503, path == null ? "Missing path" : "SSH session not active");
                 return;
             }
 
-            // Используем du -sh для получения размеров всех объектов в папке
-            // || true нужен, так как du возвращает 1, если не нашел какой-то из файлов (например, если папка пустая или нет прав)
-            String command = String.format("cd %s && (du -sh -- .[!.]* * 2>/dev/null || true)", ShellUtils.sanitize(path));
-            executeCommand(jschSession, command)
-                .onSuccess(output -> {
-                    JsonObject sizes = new JsonObject();
-                    String[] lines = output.split("\n");
-                    for (String line : lines) {
-                        line = line.trim();
-                        if (line.isEmpty()) continue;
-                        String[] parts = line.split("\\s+", 2);
-                        if (parts.length == 2) {
-                            sizes.put(parts[1], parts[0]);
-                        }
-                    }
-                    message.reply(new JsonObject().put("status", "ok").put("sizes", sizes));
-                })
-                .onFailure(err -> {
-                    // Если папка пустая, du может вернуть ошибку
-                    if (err.getMessage().contains("No such file or directory") || err.getMessage().contains("Exit status 1")) {
-                        message.reply(new JsonObject().put("status", "ok").put("sizes", new JsonObject()));
-                    } else {
-                        message.fail(500, err.getMessage());
-                    }
-                });
+            readViewPage(serverId, path, body, System.currentTimeMillis() + VIEW_INDEX_SCAN_BUDGET_MS)
+                .onSuccess(page -> message.reply(page.put("status", "ok")))
+                .onFailure(err -> message.fail(err instanceof IllegalArgumentException ? 400 : 500, err.getMessage()));
+        });
+
+        vertx.eventBus().<JsonObject>consumer(FILES_SIZE_CANCEL, message -> {
+            SizeJob job = activeSizeJobs.get(message.body().getString(SESSION_USER_ID) + ":" + message.body().getString("jobId"));
+            if (job != null) {
+                job.cancel();
+            }
+            message.reply(new JsonObject().put("status", "ok"));
         });
 
         vertx.eventBus().<JsonObject>consumer(FILES_MKDIR, message -> {
@@ -792,9 +1336,11 @@ public class SshVerticle extends AbstractVerticle {
             executeCommand(jschSession, sb.toString())
                 .onSuccess(v -> {
                     message.reply(new JsonObject().put("status", "ok"));
+                    String[] deleted = new String[paths.size()];
                     for (int i = 0; i < paths.size(); i++) {
-                        notifyFilesChanged(userId, serverId, paths.getString(i));
+                        deleted[i] = paths.getString(i);
                     }
+                    notifyFilesChanged(userId, serverId, deleted);
                 })
                 .onFailure(err -> message.fail(500, err.getMessage()));
         });
@@ -820,7 +1366,11 @@ public class SshVerticle extends AbstractVerticle {
 
             String command = String.format("chmod %s %s", ShellUtils.sanitize(mode), ShellUtils.sanitize(path));
             executeCommand(jschSession, command)
-                .onSuccess(v -> message.reply(new JsonObject().put("status", "ok")))
+                .onSuccess(v -> {
+                    message.reply(new JsonObject().put("status", "ok"));
+                    // chmod не меняет mtime каталога - без явного уведомления кэш отдал бы старые права
+                    notifyFilesChanged(userId, serverId, path);
+                })
                 .onFailure(err -> message.fail(500, err.getMessage()));
         });
 
@@ -847,8 +1397,7 @@ public class SshVerticle extends AbstractVerticle {
             executeCommand(jschSession, command)
                 .onSuccess(v -> {
                     message.reply(new JsonObject().put("status", "ok"));
-                    notifyFilesChanged(userId, serverId, oldPath);
-                    notifyFilesChanged(userId, serverId, newPath);
+                    notifyFilesChanged(userId, serverId, oldPath, newPath);
                 })
                 .onFailure(err -> message.fail(500, err.getMessage()));
         });
@@ -864,6 +1413,11 @@ public class SshVerticle extends AbstractVerticle {
 
             String srcServerId = getServerId(srcSessionId, userId);
             String destServerId = getServerId(destSessionId, userId);
+            // Чужой или повторный taskId иначе подменил бы задание в общей очереди
+            if (!transfers.isTaskIdAvailable(taskId)) {
+                message.fail(409, "Задание с таким taskId уже существует");
+                return;
+            }
 
             if (srcServerId == null || destServerId == null) {
                 message.fail(403, "Access denied");
@@ -887,6 +1441,9 @@ public class SshVerticle extends AbstractVerticle {
                     .onFailure(err -> message.fail(500, err.getMessage()));
             } else {
                 String method = body.getString("method", "stream");
+                int parallelism = Math.max(1, Math.min(body.getInteger("parallelism", FILES_COPY_DEFAULT_PARALLELISM), FILES_COPY_MAX_PARALLELISM));
+                int priority = body.getInteger("priority", 0);
+                long bandwidthLimit = body.getLong("bandwidthLimit", 0L);
                 if ("direct".equals(method)) {
                     tryDirectCopy(srcServerId, destServerId, srcPath, destPath)
                         .onSuccess(v -> {
@@ -897,14 +1454,48 @@ public class SshVerticle extends AbstractVerticle {
                         .onFailure(err -> {
                             logger.info("Direct copy failed, falling back to streaming: {}", err.getMessage());
                             sendCopyProgress(userId, taskId, srcPath, "fallback", 0, err.getMessage());
-                            performStreamingCopy(srcServerId, destServerId, srcPath, destPath, userId, taskId, message);
+                            message.reply(transfers.submit(userId, taskId, srcServerId, destServerId, srcPath, destPath,
+                                "stream", parallelism, priority, bandwidthLimit));
                         });
                 } else {
-                    performStreamingCopy(srcServerId, destServerId, srcPath, destPath, userId, taskId, message);
+                    // Копирование через бекенд идет через очередь; ответ сразу, ход и итог - через FILES_COPY_PROGRESS
+                    if (!"delta".equals(method) && !"tar".equals(method)) {
+                        method = "stream";
+                    }
+                    message.reply(transfers.submit(userId, taskId, srcServerId, destServerId, srcPath, destPath,
+                        method, parallelism, priority, bandwidthLimit));
                 }
             }
         });
 
+        vertx.eventBus().<JsonObject>consumer(FILES_TRANSFER_LIST, message -> {
+            String userId = message.body().getString(SESSION_USER_ID);
+            if (userId == null) {
+                message.fail(403, "Access denied");
+                return;
+            }
+            message.reply(new JsonObject().put("status", "ok").put("data", transfers.list(userId)));
+        });
+
+        vertx.eventBus().<JsonObject>consumer(FILES_TRANSFER_CANCEL, message -> {
+            JsonObject body = message.body();
+            if (!transfers.cancel(body.getString(SESSION_USER_ID), body.getString("taskId"))) {
+                message.fail(404, "Задание не найдено");
+                return;
+            }
+            message.reply(new JsonObject().put("status", "ok"));
+        });
+
+        vertx.eventBus().<JsonObject>consumer(FILES_TRANSFER_UPDATE, message -> {
+            JsonObject body = message.body();
+            if (!transfers.update(body.getString(SESSION_USER_ID), body.getString("taskId"),
+                    body.getInteger("priority"), body.getLong("bandwidthLimit"))) {
+                message.fail(404, "Задание не найдено");
+                return;
+            }
+            message.reply(new JsonObject().put("status", "ok"));
+        });
+
         vertx.eventBus().<JsonObject>consumer(FILES_CHECK_TOOLS, message -> {
             JsonObject body = message.body();
             String sessionId = body.getString("sessionId");
@@ -972,6 +1563,272 @@ public class SshVerticle extends AbstractVerticle {
         });
     }
 
+    // Переход к строке за пределами индекса досканирует файл кусками по VIEW_INDEX_SCAN_BYTES. Каждый кусок -
+    // отдельное занятие общего SFTP-канала, так что навигация и другие запросы к серверу не ждут весь скан
+    private Future<JsonObject> readViewPage(String serverId, String path, JsonObject body, long deadline) {
+        return vertx.<JsonObject>executeBlocking(() -> sftpChannels.execute(serverId, () -> getAnyActiveJschSession(serverId),
+                sftp -> fileViewer.read(sftp, serverId, SftpUtils.resolvePath(sftp, path), body)), false)
+            .compose(page -> page.getBoolean("indexing", false) && System.currentTimeMillis() < deadline
+                ? readViewPage(serverId, path, body, deadline)
+                : Future.succeededFuture(page));
+    }
+
+    // Поиск по содержимому файлов под path. Ответ - сразу с searchId; первая страница совпадений приходит пачками
+    // на ssh.out.<userId>.files.search, дальше - только счетчик, остальные страницы - через files.search.page
+    private void handleFilesSearch(Message<JsonObject> message) {
+        JsonObject body = message.body();
+        String path = body.getString("path", ".");
+        String sessionId = body.getString("sessionId");
+        String userId = body.getString(SESSION_USER_ID);
+
+        String serverId = getServerId(sessionId, userId);
+        if (serverId == null) {
+            message.fail(403, "Access denied");
+            return;
+        }
+        RemoteFileSearch.Options options = new RemoteFileSearch.Options();
+        options.query = body.getString("query");
+        options.regex = body.getBoolean("regex", false);
+        options.caseSensitive = body.getBoolean("caseSensitive", false);
+        options.glob = body.getString("glob");
+        options.pageSize = Math.min(Math.max(body.getInteger("pageSize", FILES_SEARCH_PAGE_SIZE), 1), FILES_SEARCH_PAGE_SIZE * 5);
+        if (options.query == null || options.query.isEmpty() || options.query.length() > 500) {
+            message.fail(400, "Search query is required (max 500 characters)");
+            return;
+        }
+        if (options.glob != null && options.glob.length() > 200) {
+            message.fail(400, "File mask is too long");
+            return;
+        }
+        Session jschSession = getAnyActiveJschSession(serverId);
+        if (jschSession == null) {
+            message.fail(503, "SSH session not active");
+            return;
+        }
+
+        String searchId = body.getString("searchId", java.util.UUID.randomUUID().toString());
+        RemoteFileSearch.Search search = fileSearch.start(userId, searchId);
+        String address = SSH_COMMAND_OUT_PREFIX + userId + FILES_SEARCH_RESULTS;
+
+        vertx.<String>executeBlocking(() -> sftpChannels.execute(serverId, () -> getAnyActiveJschSession(serverId),
+                sftp -> SftpUtils.resolvePath(sftp, path)), false)
+            .onFailure(err -> {
+                search.cancel();
+                message.fail(404, err.getMessage());
+            })
+            .onSuccess(absolutePath -> {
+                message.reply(new JsonObject().put("status", "ok").put("searchId", searchId).put("path", absolutePath));
+                fileSearch.run(vertx, jschSession, absolutePath, options, search,
+                    batch -> vertx.eventBus().publish(address, new JsonObject()
+                        .put("searchId", searchId)
+                        .put("matches", batch)
+                        .put("total", search.total())),
+                    total -> vertx.eventBus().publish(address, new JsonObject()
+                        .put("searchId", searchId)
+                        .put("matches", new JsonArray())
+                        .put("total", total)))
+                    .onComplete(ar -> {
+                        JsonObject done = new JsonObject()
+                            .put("searchId", searchId)
+                            .put("matches", new JsonArray())
+                            .put("done", true);
+                        if (ar.succeeded()) {
+                            done.mergeIn(ar.result());
+                        } else if (!search.cancelled) {
+                            logger.warn("File search failed in {} on server {}: {}", absolutePath, serverId, ar.cause().getMessage());
+                            done.put("error", ar.cause().getMessage()).put("total", search.total());
+                        }
+                        vertx.eventBus().publish(address, done);
+                    });
+            });
+    }
+
+    // Размеры подкаталогов: закэшированные отдаются сразу в ответе, остальные считаются фоновой задачей
+    // и приходят пачками на ssh.out.<userId>.files.size по мере завершения каждого du
+    private void handleFilesSize(Message<JsonObject> message) {
+        JsonObject body = message.body();
+        String path = body.getString("path", ".");
+        String userId = body.getString(SESSION_USER_ID);
+        String serverId = getServerId(body.getString("sessionId"), userId);
+        if (serverId == null) {
+            message.fail(403, "Access denied");
+            return;
+        }
+        if (getAnyActiveJschSession(serverId) == null) {
+            message.fail(503, "SSH session not active");
+            return;
+        }
+        boolean force = body.getBoolean("force", false);
+
+        // Список подкаталогов берется из листинга (кэш или SFTP); null - каталог слишком большой, их найдет find
+        vertx.<JsonObject>executeBlocking(() -> sftpChannels.execute(serverId, () -> getAnyActiveJschSession(serverId), sftp -> {
+            String absolutePath = SftpUtils.resolvePath(sftp, path);
+            DirectoryListingCache.Listing listing = dirCache.getValid(serverId, absolutePath, sftp.stat(absolutePath).getMTime());
+            JsonArray files = listing != null ? listing.files : SftpUtils.listDirectory(sftp, absolutePath, FILES_LIST_CACHE_MAX_ENTRIES);
+            JsonObject result = new JsonObject().put("path", absolutePath);
+            if (files != null) {
+                JsonArray dirs = new JsonArray();
+                for (int i = 0; i < files.size(); i++) {
+                    JsonObject f = files.getJsonObject(i);
+                    // Ссылки du не обходит - их размер не считаем
+                    if (f.getBoolean("isDir", false) && !f.getBoolean("isLink", false)) {
+                        dirs.add(f.getString("name"));
+                    }
+                }
+                result.put("dirs", dirs);
+            }
+            return result;
+        }), false).onSuccess(listed -> {
+            String absolutePath = listed.getString("path");
+            JsonArray dirs = listed.getJsonArray("dirs");
+            JsonObject sizes = new JsonObject();
+            List<String> pending = new ArrayList<>();
+            if (dirs != null) {
+                for (int i = 0; i < dirs.size(); i++) {
+                    String name = dirs.getString(i);
+                    Long cached = force ? null : dirSizes.get(serverId, SftpUtils.childPath(absolutePath, name));
+                    if (cached != null) {
+                        sizes.put(name, cached);
+                    } else {
+                        pending.add(name);
+                    }
+                }
+            }
+            JsonObject reply = new JsonObject()
+                .put("status", "ok")
+                .put("path", absolutePath)
+                .put("sizes", sizes);
+            if (dirs != null && pending.isEmpty()) {
+                message.reply(reply.put("pending", false));
+                return;
+            }
+
+            // Повторный запрос того же каталога присоединяется к уже идущей задаче
+            String jobKey = userId + ":" + serverId + ":" + absolutePath;
+            String runningJobId = sizeJobsByPath.get(jobKey);
+            if (runningJobId != null && activeSizeJobs.containsKey(userId + ":" + runningJobId)) {
+                message.reply(reply.put("pending", true).put("jobId", runningJobId));
+                return;
+            }
+            String jobId = java.util.UUID.randomUUID().toString();
+            SizeJob job = new SizeJob();
+            activeSizeJobs.put(userId + ":" + jobId, job);
+            sizeJobsByPath.put(jobKey, jobId);
+            message.reply(reply.put("pending", true).put("jobId", jobId));
+
+            String address = SSH_COMMAND_OUT_PREFIX + userId + FILES_SIZE_RESULTS;
+            runSizeJob(serverId, absolutePath, dirs != null ? pending : null, job, batch -> vertx.eventBus().publish(address, new JsonObject()
+                    .put("jobId", jobId)
+                    .put("serverId", serverId)
+                    .put("path", absolutePath)
+                    .put("sizes", batch)))
+                .onComplete(ar -> {
+                    activeSizeJobs.remove(userId + ":" + jobId);
+                    sizeJobsByPath.remove(jobKey, jobId);
+                    JsonObject done = new JsonObject()
+                        .put("jobId", jobId)
+                        .put("serverId", serverId)
+                        .put("path", absolutePath)
+                        .put("sizes", new JsonObject())
+                        .put("done", true)
+                        .put("cancelled", job.cancelled.get());
+                    if (ar.failed() && !job.cancelled.get()) {
+                        logger.warn("Directory size job failed for {} on server {}: {}", absolutePath, serverId, ar.cause().getMessage());
+                        done.put("error", ar.cause().getMessage());
+                    }
+                    vertx.eventBus().publish(address, done);
+                });
+        }).onFailure(err -> message.fail(500, err.getMessage()));
+    }
+
+    // names - подкаталоги для du (передаются через stdin, поэтому пробелы и кавычки в именах не мешают);
+    // null - все подкаталоги через find. Пачки результатов отдаются не чаще раза в 250 мс.
+    // Рабочий поток занят только открытием канала: вывод du приходит через поток сессии JSch,
+    // имена в stdin он же перекачивает из буфера.
+    private Future<Void> runSizeJob(String serverId, String dir, List<String> names, SizeJob job, java.util.function.Consumer<JsonObject> onBatch) {
+        Session jschSession = getAnyActiveJschSession(serverId);
+        if (jschSession == null) {
+            return Future.failedFuture("SSH session not active");
+        }
+        // du -b (GNU) дает точный размер в байтах, иначе POSIX du -k
+        String source = names != null ? "cat" : "find . -mindepth 1 -maxdepth 1 -type d | sed 's|^\\./||'";
+        String command = String.format("cd %s || exit 1; if du -sb /dev/null >/dev/null 2>&1; then O=-sb; echo 'U 1'; else O=-sk; echo 'U 1024'; fi; "
+            + "%s | while IFS= read -r f; do du $O -- \"$f\" 2>/dev/null; done", ShellUtils.sanitize(dir), source);
+        StringBuilder input = new StringBuilder();
+        if (names != null) {
+            names.forEach(name -> input.append(name).append('\n'));
+        }
+
+        io.vertx.core.Context context = vertx.getOrCreateContext();
+        Promise<Void> done = Promise.promise();
+        ChannelExec channel;
+        try {
+            channel = (ChannelExec) jschSession.openChannel("exec");
+        } catch (com.jcraft.jsch.JSchException e) {
+            return Future.failedFuture(e);
+        }
+        job.channel = channel;
+        channel.setCommand(command);
+        channel.setInputStream(new java.io.ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)));
+        channel.setOutputStream(new LineOutputStream(8192,
+            line -> context.runOnContext(v -> onSizeLine(serverId, dir, job, new String(line, StandardCharsets.UTF_8), onBatch)),
+            () -> context.runOnContext(v -> {
+                flushSizeBatch(job, onBatch);
+                channel.disconnect();
+                done.tryComplete();
+            })));
+        vertx.<Void>executeBlocking(() -> {
+            channel.connect(15000);
+            return null;
+        }, false).onComplete(ar -> {
+            if (ar.failed()) {
+                channel.disconnect();
+                done.tryFail(ar.cause());
+            } else if (job.cancelled.get()) {
+                channel.disconnect();
+            }
+        });
+        return done.future();
+    }
+
+    // Строка вывода du - в контексте verticle
+    private void onSizeLine(String serverId, String dir, SizeJob job, String line, java.util.function.Consumer<JsonObject> onBatch) {
+        if (job.cancelled.get()) return;
+        if (line.startsWith("U ")) {
+            job.unit = Long.parseLong(line.substring(2).trim());
+            return;
+        }
+        int tab = line.indexOf('\t');
+        if (tab <= 0) return;
+        try {
+            long bytes = Long.parseLong(line.substring(0, tab).trim()) * job.unit;
+            String name = line.substring(tab + 1);
+            dirSizes.put(serverId, SftpUtils.childPath(dir, name), bytes);
+            job.batch.put(name, bytes);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (job.flushTimer == -1) {
+            long delay = Math.max(1, 250 - (System.currentTimeMillis() - job.lastFlush));
+            job.flushTimer = vertx.setTimer(delay, id -> {
+                job.flushTimer = -1;
+                flushSizeBatch(job, onBatch);
+            });
+        }
+    }
+
+    private void flushSizeBatch(SizeJob job, java.util.function.Consumer<JsonObject> onBatch) {
+        if (job.flushTimer != -1) {
+            vertx.cancelTimer(job.flushTimer);
+            job.flushTimer = -1;
+        }
+        if (!job.batch.isEmpty()) {
+            onBatch.accept(job.batch);
+            job.batch = new JsonObject();
+        }
+        job.lastFlush = System.currentTimeMillis();
+    }
+
     private Future<String> tryDirectCopy(String srcServerId, String destServerId, String srcPath, String destPath) {
         Session srcJsch = getAnyActiveJschSession(srcServerId);
         if (srcJsch == null) return Future.failedFuture("Source SSH session not active");
@@ -997,73 +1854,6 @@ public class SshVerticle extends AbstractVerticle {
         return executeCommand(srcJsch, scpCmd);
     }
 
-    private void performStreamingCopy(String srcServerId, String destServerId, String srcPath, String destPath, String userId, String taskId, Message<JsonObject> message) {
-        vertx.executeBlocking(() -> {
-            Session srcJsch = getAnyActiveJschSession(srcServerId);
-            Session destJsch = getAnyActiveJschSession(destServerId);
-
-            if (srcJsch == null || destJsch == null) {
-                throw new RuntimeException("One of SSH sessions is not active");
-            }
-
-            com.jcraft.jsch.ChannelSftp sftpSrc = null;
-            com.jcraft.jsch.ChannelSftp sftpDest = null;
-            try {
-                sftpSrc = (com.jcraft.jsch.ChannelSftp) srcJsch.openChannel("sftp");
-                sftpSrc.connect();
-                sftpDest = (com.jcraft.jsch.ChannelSftp) destJsch.openChannel("sftp");
-                sftpDest.connect();
-
-                long fileSize = 0;
-                try {
-                    fileSize = sftpSrc.stat(srcPath).getSize();
-                } catch (Exception e) {
-                    logger.warn("Could not get file size for progress: {}", e.getMessage());
-                }
-
-                final long finalSize = fileSize;
-                SftpProgressMonitor monitor = new SftpProgressMonitor() {
-                    private long transferred = 0;
-                    private long lastUpdate = 0;
-
-                    @Override
-                    public void init(int op, String src, String dest, long max) {}
-
-                    @Override
-                    public boolean count(long count) {
-                        transferred += count;
-                        long now = System.currentTimeMillis();
-                        if (now - lastUpdate > 500) { // Update every 500ms
-                            int percent = finalSize > 0 ? (int) (transferred * 100 / finalSize) : 0;
-                            sendCopyProgress(userId, taskId, srcPath, "copying", percent);
-                            lastUpdate = now;
-                        }
-                        return true;
-                    }
-
-                    @Override
-                    public void end() {
-                        sendCopyProgress(userId, taskId, srcPath, "done", 100);
-                    }
-                };
-
-                java.io.InputStream is = sftpSrc.get(srcPath);
-                sftpDest.put(is, destPath, monitor);
-                return null;
-            } catch (Exception e) {
-                sendCopyProgress(userId, taskId, srcPath, "error", 0);
-                throw new RuntimeException("Remote copy failed: " + e.getMessage(), e);
-            } finally {
-                if (sftpSrc != null) sftpSrc.disconnect();
-                if (sftpDest != null) sftpDest.disconnect();
-            }
-        }).onSuccess(v -> {
-            message.reply(new JsonObject().put("status", "ok"));
-            notifyFilesChanged(userId, destServerId, destPath);
-        })
-          .onFailure(err -> message.fail(500, err.getMessage()));
-    }
-
     private void sendCopyProgress(String userId, String taskId, String srcPath, String status, int percent) {
         sendCopyProgress(userId, taskId, srcPath, status, percent, null);
     }
@@ -1125,57 +1915,6 @@ public class SshVerticle extends AbstractVerticle {
         });
     }
 
-    private JsonArray parseLsOutput(String output) {
-        JsonArray arr = new JsonArray();
-        String[] lines = output.split("\n");
-        for (String line : lines) {
-            line = line.trim();
-            if (line.startsWith("total") || line.isEmpty()) continue;
-            String[] parts = line.split("\\s+", 8);
-            if (parts.length < 8) continue;
-
-            boolean isDir = parts[0].startsWith("d");
-            String name = parts[7];
-            if (".".equals(name) || "..".equals(name)) continue;
-
-            arr.add(new JsonObject()
-                .put("name", name)
-                .put("isDir", isDir)
-                .put("size", parts[4])
-                .put("date", parts[5] + " " + parts[6])
-                .put("perm", parts[0]));
-        }
-        return arr;
-    }
-
-    private JsonObject parseDfOutput(String output) {
-        try {
-            String[] lines = output.trim().split("\n");
-            if (lines.length == 0) return null;
-            String lastLine = lines[lines.length - 1].trim();
-            String[] parts = lastLine.split("\\s+");
-            
-            int usePercentIdx = -1;
-            for (int i = 0; i < parts.length; i++) {
-                if (parts[i].endsWith("%")) {
-                    usePercentIdx = i;
-                    break;
-                }
-            }
-            
-            if (usePercentIdx >= 3) {
-                return new JsonObject()
-                    .put("size", parts[usePercentIdx - 3])
-                    .put("used", parts[usePercentIdx - 2])
-                    .put("avail", parts[usePercentIdx - 1])
-                    .put("usePercent", parts[usePercentIdx]);
-            }
-        } catch (Exception e) {
-            logger.warn("Failed to parse df output: {}", output);
-        }
-        return null;
-    }
-
     private boolean checkSessionLimit(String userId, String serverId, boolean isDocker, Message<JsonObject> message) {
         JsonObject userCfg = userConfigs.get(userId);
         int maxSessions = userCfg != null ? userCfg.getInteger("maxSessionsPerServer", 100) : 100;
@@ -1309,7 +2048,8 @@ public class SshVerticle extends AbstractVerticle {
         return null;
     }
 
-    private Session getAnyActiveJschSession(String serverId) {
+    // Используется и MainVerticle: загрузки идут по уже открытому соединению сервера
+    Session getAnyActiveJschSession(String serverId) {
         if (serverId == null) return null;
         for (int i = 0; i < 100; i++) {
             String key = serverId + ":" + i;
@@ -1364,10 +2104,7 @@ public class SshVerticle extends AbstractVerticle {
         }
 
         logger.debug("Executing Docker API request: {} {} on server {}", method, path, serverId);
-        vertx.<byte[]>executeBlocking(() -> {
-            if (!dockerApiSemaphore.tryAcquire(15, TimeUnit.SECONDS)) {
-                throw new RuntimeException("Превышен лимит одновременных запросов к Docker API. Пожалуйста, подождите.");
-            }
+        dockerScheduler.submit(serverId, userId, dockerPriority(method, path), () -> vertx.<byte[]>executeBlocking(() -> {
             try {
                 if (!jschSession.isConnected()) {
                     throw new RuntimeException("SSH session is not connected");
@@ -1377,11 +2114,11 @@ public class SshVerticle extends AbstractVerticle {
                 
                 String curlCmd;
                 if (body != null && !body.isEmpty()) {
-                    // Используем временный файл для передачи body, чтобы избежать проблем с кавычками в shell
-                    String escapedBody = body.replace("'", "'\\''");
-                    long ts = System.currentTimeMillis();
-                    curlCmd = String.format("echo '%s' > /tmp/docker_body_%d.json; curl -s --max-time 30 -X %s -H \"Content-Type: application/json\" --data @/tmp/docker_body_%d.json --unix-socket /var/run/docker.sock %s; rm /tmp/docker_body_%d.json",
-                            escapedBody, ts, ShellUtils.sanitize(method), ts, ShellUtils.sanitize(fullUrl), ts);
+                    // Тело - через stdin канала: запросы к одному серверу идут параллельно, и общий временный файл
+                    // с именем по времени мог достаться двум из них сразу
+                    channel.setInputStream(new java.io.ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+                    curlCmd = String.format("curl -s --max-time 30 -X %s -H \"Content-Type: application/json\" --data-binary @- --unix-socket /var/run/docker.sock %s",
+                            ShellUtils.sanitize(method), ShellUtils.sanitize(fullUrl));
                 } else {
                     curlCmd = String.format("curl -s --max-time 30 -X %s --unix-socket /var/run/docker.sock %s", 
                             ShellUtils.sanitize(method), ShellUtils.sanitize(fullUrl));
@@ -1412,10 +2149,8 @@ public class SshVerticle extends AbstractVerticle {
             } catch (Exception e) {
                 logger.error("Docker API request failed: {} {} on server {}", method, path, serverId, e);
                 throw (e instanceof RuntimeException) ? (RuntimeException) e : new RuntimeException(e);
-            } finally {
-                dockerApiSemaphore.release();
             }
-        }).onComplete(res -> {
+        }, false)).onComplete(res -> {
             if (res.succeeded()) {
                 byte[] bytes = res.result();
                 String processed = isLogRequest ? processDockerLogs(bytes) : new String(bytes, StandardCharsets.UTF_8);
@@ -1434,6 +2169,14 @@ public class SshVerticle extends AbstractVerticle {
         return promise.future();
     }
 
+    private DockerApiScheduler.Priority dockerPriority(String method, String path) {
+        // Периодическое обновление списка и статистики уступает место действиям пользователя
+        if ("GET".equalsIgnoreCase(method) && (path.startsWith("/containers/json") || path.contains("/stats?"))) {
+            return DockerApiScheduler.Priority.BACKGROUND;
+        }
+        return DockerApiScheduler.Priority.INTERACTIVE;
+    }
+
     private String processDockerLogs(byte[] raw) {
         if (raw == null || raw.length < 8) return raw != null ? new String(raw, StandardCharsets.UTF_8) : "";
         
@@ -1475,6 +2218,29 @@ public class SshVerticle extends AbstractVerticle {
             return;
         }
 
+        // Режим passthrough: JSON от Docker уходит клиенту уже закодированной строкой,
+        // без разбора в JsonArray/JsonObject и повторной сериализации на event loop
+        JsonObject request = message.body();
+        JsonArray fields = request != null ? request.getJsonArray("fields") : null;
+        boolean raw = fields != null || (request != null && request.getBoolean("raw", false));
+        if (raw && DockerJsonUtils.looksLikeJson(result)) {
+            String data = result;
+            if (fields != null && !fields.isEmpty()) {
+                List<String> fieldList = new ArrayList<>();
+                for (int i = 0; i < fields.size(); i++) {
+                    fieldList.add(fields.getString(i));
+                }
+                try {
+                    data = DockerJsonUtils.project(result, fieldList);
+                } catch (Exception e) {
+                    message.fail(500, "Failed to project Docker response: " + e.getMessage());
+                    return;
+                }
+            }
+            message.reply(new JsonObject().put("status", "ok").put("encoding", "json").put("data", data));
+            return;
+        }
+
         try {
             String trimmed = result.trim();
             if (trimmed.startsWith("[")) {
@@ -1600,8 +2366,32 @@ public class SshVerticle extends AbstractVerticle {
 
                 logger.debug("Opening SSH channel: sessionId={}", sessionId);
                 sendProgress(userId, sessionId, "Открытие канала...");
-                Channel channel;
-                if (command != null && !command.isEmpty()) {
+                Channel channel = null;
+                String dockerExecId = null;
+                java.util.regex.Matcher dockerExec = isDocker ? DOCKER_EXEC_PATTERN.matcher(command) : null;
+                if (dockerExec != null && dockerExec.matches() && useDockerApiExec(serverId)) {
+                    // Docker API exec: на хосте не запускается docker CLI, терминал - сырой поток из сокета
+                    try {
+                        JsonObject execRequest = new JsonObject()
+                            .put("AttachStdin", true)
+                            .put("AttachStdout", true)
+                            .put("AttachStderr", true)
+                            .put("Tty", true)
+                            .put("Env", new JsonArray().add("TERM=xterm-256color"))
+                            .put("Cmd", new JsonArray().add("sh").add("-c").add(dockerExec.group(3)));
+                        String execResponse = DockerSocketUtils.request(jschSession, DOCKER_SOCKET_PATH, "POST",
+                            "/containers/" + dockerExec.group(2) + "/exec", execRequest.encode());
+                        dockerExecId = new JsonObject(execResponse.trim()).getString("Id");
+                        channel = DockerSocketUtils.openChannel(jschSession, DOCKER_SOCKET_PATH);
+                    } catch (Exception e) {
+                        logger.warn("Docker API exec is not available for session {}, falling back to docker CLI: {}", sessionId, e.getMessage());
+                        dockerExecId = null;
+                        channel = null;
+                    }
+                }
+                if (channel != null) {
+                    logger.debug("Using Docker API exec {} for session {}", dockerExecId, sessionId);
+                } else if (command != null && !command.isEmpty()) {
                     ChannelExec channelExec = (ChannelExec) jschSession.openChannel("exec");
                     channelExec.setCommand(command);
                     channelExec.setPty(true);
@@ -1618,6 +2408,7 @@ public class SshVerticle extends AbstractVerticle {
                 final String finalJschSessionKey = jschSessionKey;
                 String name = config.getString("name", serverConfigs.containsKey(serverId) ? serverConfigs.get(serverId).getString("name") : serverId);
                 SshSession sshSession = new SshSession(sessionId, serverId, userId, jschSession, channel, finalJschSessionKey, viewMode, isDocker, name);
+                sshSession.dockerExecId = dockerExecId;
 
                 // Настройка вывода данных из SSH без блокировки рабочих потоков Vert.x
                 java.io.OutputStream sshOut = new java.io.OutputStream() {
@@ -1646,12 +2437,22 @@ public class SshVerticle extends AbstractVerticle {
                     }
                 };
 
-                channel.setOutputStream(sshOut);
-                channel.setExtOutputStream(sshOut);
+                if (dockerExecId != null) {
+                    channel.setOutputStream(new DockerSocketUtils.HijackedOutputStream(sshOut));
+                } else {
+                    channel.setOutputStream(sshOut);
+                    channel.setExtOutputStream(sshOut);
+                }
 
                 try {
                     logger.info("Connecting SSH channel: sessionId={}", sessionId);
                     channel.connect(30000);
+                    if (dockerExecId != null) {
+                        // Запуск exec с захватом соединения: дальше в обе стороны идет поток TTY
+                        sshSession.out.write(DockerSocketUtils.buildRequest("POST", "/exec/" + dockerExecId + "/start",
+                            new JsonObject().put("Detach", false).put("Tty", true).encode(), true));
+                        sshSession.out.flush();
+                    }
                     sessions.put(sessionId, sshSession);
                     sendProgress(userId, sessionId, "Готово");
                     logger.info("SSH session ready: sessionId={}", sessionId);
@@ -1713,16 +2514,107 @@ public class SshVerticle extends AbstractVerticle {
         }
     }
 
+    private boolean useDockerApiExec(String serverId) {
+        JsonObject cfg = serverConfigs.get(serverId);
+        return cfg == null || !"cli".equals(cfg.getString("dockerExec"));
+    }
+
+    private void resizeSession(SshSession session, int cols, int rows) {
+        if (cols == session.cols && rows == session.rows) return;
+        session.cols = cols;
+        session.rows = rows;
+        if (session.dockerExecId != null) {
+            dispatchDockerRequestInternal(session.sessionId, session.userId, "POST",
+                    "/exec/" + session.dockerExecId + "/resize?h=" + rows + "&w=" + cols, null)
+                .onFailure(err -> logger.debug("Failed to resize docker exec {}: {}", session.dockerExecId, err.getMessage()));
+        } else if (session.channel instanceof ChannelShell) {
+            ((ChannelShell) session.channel).setPtySize(cols, rows, 0, 0);
+        } else if (session.channel instanceof ChannelExec) {
+            ((ChannelExec) session.channel).setPtySize(cols, rows, 0, 0);
+        }
+    }
+
     private boolean isDockerCommand(String command) {
         return command != null && command.startsWith("docker exec");
     }
 
-    private void notifyFilesChanged(String userId, String serverId, String path) {
-        if (path == null || userId == null || serverId == null) return;
-        String parentPath = getParentPath(path);
-        vertx.eventBus().publish(SSH_COMMAND_OUT_PREFIX + userId + FILES_CHANGED, new JsonObject()
+    // paths - измененные файлы или каталоги; уведомление уходит один раз на каждый родительский каталог
+    private void notifyFilesChanged(String userId, String serverId, String... paths) {
+        if (userId == null || serverId == null) return;
+        java.util.Set<String> parents = new java.util.LinkedHashSet<>();
+        for (String path : paths) {
+            if (path == null) continue;
+            // Удаленный или переименованный каталог мог быть закэширован вместе с подкаталогами
+            dirCache.invalidateTree(serverId, path);
+            dirSizes.invalidate(serverId, path, true);
+            parents.add(getParentPath(path));
+        }
+        parents.forEach(dir -> notifyDirectoryChanged(java.util.Set.of(userId), serverId, dir, false));
+    }
+
+    // Если каталог был в кэше, он перечитывается и клиент получает поэлементную дельту
+    // относительно baseVersion; иначе - только путь, и клиент перечитывает каталог сам.
+    // skipIfUnchanged - для событий наблюдателя: пустая дельта (например, эхо собственной операции) не рассылается
+    private void notifyDirectoryChanged(java.util.Collection<String> userIds, String serverId, String dir, boolean skipIfUnchanged) {
+        if (dir == null || serverId == null) return;
+        // Индекс имен обновляется и по изменениям, которые сейчас никто не смотрит
+        fileIndex.markDirty(serverId, dir);
+        if (userIds.isEmpty()) return;
+        JsonObject event = new JsonObject()
             .put("serverId", serverId)
-            .put("path", parentPath));
+            .put("path", dir);
+        java.util.function.Consumer<JsonObject> publish = e -> userIds.forEach(userId ->
+            vertx.eventBus().publish(SSH_COMMAND_OUT_PREFIX + userId + FILES_CHANGED, e));
+        DirectoryListingCache.Listing previous = dirCache.get(serverId, dir);
+        // Меняются записи только этого каталога; у родителя устаревает mtime каталога в его листинге.
+        // Удаленные и переименованные подкаталоги сбрасывает notifyFilesChanged
+        dirCache.invalidate(serverId, dir);
+        dirCache.invalidate(serverId, getParentPath(dir));
+        if (previous == null || getAnyActiveJschSession(serverId) == null) {
+            publish.accept(event);
+            return;
+        }
+
+        vertx.<DirectoryListingCache.Listing>executeBlocking(() -> sftpChannels.execute(serverId, () -> getAnyActiveJschSession(serverId),
+                sftp -> listDirectoryToCache(sftp, serverId, dir)), false)
+            .onComplete(ar -> {
+                // null - каталог вырос сверх лимита кэша, клиент перечитает первую страницу
+                if (ar.succeeded() && ar.result() != null) {
+                    JsonObject changes = DirectoryListingCache.diff(previous, ar.result());
+                    if (skipIfUnchanged && changes.getJsonArray("added").isEmpty()
+                            && changes.getJsonArray("changed").isEmpty() && changes.getJsonArray("removed").isEmpty()) {
+                        return;
+                    }
+                    event.put("baseVersion", previous.version)
+                        .put("version", ar.result().version)
+                        .put("changes", changes);
+                }
+                publish.accept(event);
+            });
+    }
+
+    // Опрос для наблюдателя без inotify: mtime каталогов одним проходом по постоянному SFTP-каналу
+    private Map<String, Long> statDirectories(String serverId, List<String> dirs) throws Exception {
+        return sftpChannels.execute(serverId, () -> getAnyActiveJschSession(serverId), sftp -> {
+            Map<String, Long> mtimes = new HashMap<>();
+            for (String dir : dirs) {
+                try {
+                    mtimes.put(dir, (long) sftp.stat(dir).getMTime());
+                } catch (com.jcraft.jsch.SftpException e) {
+                    mtimes.put(dir, -1L);
+                }
+            }
+            return mtimes;
+        });
+    }
+
+    // Блокирующий вызов на канале из sftpChannels; null, если каталог слишком большой для кэша
+    private DirectoryListingCache.Listing listDirectoryToCache(com.jcraft.jsch.ChannelSftp sftp, String serverId, String path) throws Exception {
+        long listedAt = System.currentTimeMillis();
+        long dirMtime = sftp.stat(path).getMTime();
+        JsonArray files = SftpUtils.listDirectory(sftp, path, FILES_LIST_CACHE_MAX_ENTRIES);
+        if (files == null) return null;
+        return dirCache.put(serverId, path, files, SftpUtils.diskInfo(sftp, path), dirMtime, listedAt);
     }
 
     private String getParentPath(String path) {
@@ -1735,6 +2627,25 @@ public class SshVerticle extends AbstractVerticle {
         return p.substring(0, lastSlash);
     }
 
+    private static class SizeJob {
+        final java.util.concurrent.atomic.AtomicBoolean cancelled = new java.util.concurrent.atomic.AtomicBoolean();
+        volatile ChannelExec channel;
+        // Разбор вывода - только в контексте verticle
+        long unit = 1024;
+        JsonObject batch = new JsonObject();
+        long lastFlush;
+        long flushTimer = -1;
+
+        // Закрытие канала завершает du на сервере и закрывает прием вывода
+        void cancel() {
+            cancelled.set(true);
+            ChannelExec c = channel;
+            if (c != null) {
+                c.disconnect();
+            }
+        }
+    }
+
     private static class SshSession {
         final String sessionId;
         final String serverId;
@@ -1747,6 +2658,9 @@ public class SshVerticle extends AbstractVerticle {
         final boolean isDocker;
         volatile long lastActivity;
         volatile String viewMode = "terminal";
+        volatile String dockerExecId;
+        volatile int cols;
+        volatile int rows;
         private final StringBuilder outputBuffer = new StringBuilder();
         private static final int MAX_BUFFER_SIZE = 100 * 1024; // 100 KB
         private final java.nio.charset.CharsetDecoder decoder = java.nio.charset.StandardCharsets.UTF_8.newDecoder()
@@ -1826,16 +2740,174 @@ public class SshVerticle extends AbstractVerticle {
         String containerId = body.getString("containerId");
         JsonArray newEnv = body.getJsonArray("env");
 
-        dispatchDockerRequestInternal(sessionId, userId, "GET", "/containers/" + containerId + "/json", null)
-            .onSuccess(inspectDataStr -> {
+        if (!ShellUtils.isValidContainerId(containerId)) {
+            message.fail(400, "Invalid container ID format");
+            return;
+        }
+
+        recreateContainer(sessionId, userId, containerId, newEnv, null)
+            .onSuccess(newId -> message.reply(new JsonObject().put("status", "ok")))
+            .onFailure(err -> message.fail(500, err.getMessage()));
+    }
+
+    private void handleDockerContainersBatch(Message<JsonObject> message) {
+        JsonObject body = message.body();
+        String sessionId = body.getString("sessionId");
+        String userId = body.getString(SESSION_USER_ID);
+        String action = body.getString("action");
+        String taskId = body.getString("taskId");
+        JsonArray requestedIds = body.getJsonArray("containerIds");
+        String label = body.getString("label");
+
+        String serverId = getServerId(sessionId, userId);
+        if (serverId == null) {
+            message.fail(403, "Access denied");
+            return;
+        }
+        if (action == null || !DOCKER_BATCH_ACTIONS.contains(action)) {
+            message.fail(400, "Unsupported batch action: " + action);
+            return;
+        }
+        if ((requestedIds == null || requestedIds.isEmpty()) && (label == null || label.isEmpty())) {
+            message.fail(400, "containerIds or label is required");
+            return;
+        }
+
+        JsonObject serverCfg = serverConfigs.get(serverId);
+        int defaultParallelism = serverCfg != null ? serverCfg.getInteger("dockerBatchParallelism", DOCKER_BATCH_DEFAULT_PARALLELISM) : DOCKER_BATCH_DEFAULT_PARALLELISM;
+        // Вызовы идут через лимит планировщика: операции сверх него только ждали бы в очереди (stop - до 10 с на контейнер)
+        // и падали бы по DOCKER_QUEUE_TIMEOUT_MS. Один слот остается действиям пользователя
+        int slots = Math.max(1, dockerScheduler.getServerLimit(serverId) - 1);
+        int parallelism = Math.min(Math.max(body.getInteger("parallelism", defaultParallelism), 1), Math.min(DOCKER_BATCH_MAX_PARALLELISM, slots));
+
+        // Контейнеры: явный список или все контейнеры с меткой (например, com.docker.compose.project=app)
+        Future<Map<String, String>> targetsFuture;
+        if (requestedIds != null && !requestedIds.isEmpty()) {
+            Map<String, String> targets = new java.util.LinkedHashMap<>();
+            for (int i = 0; i < requestedIds.size(); i++) {
+                String id = requestedIds.getString(i);
+                if (!ShellUtils.isValidContainerId(id)) {
+                    message.fail(400, "Invalid container ID format");
+                    return;
+                }
+                targets.put(id, id.length() > 12 ? id.substring(0, 12) : id);
+            }
+            targetsFuture = Future.succeededFuture(targets);
+        } else {
+            String filters = new JsonObject().put("label", new JsonArray().add(label)).encode();
+            String path = "/containers/json?all=true&filters=" + java.net.URLEncoder.encode(filters, StandardCharsets.UTF_8);
+            targetsFuture = dispatchDockerRequestInternal(sessionId, userId, "GET", path, null).map(data -> {
+                Map<String, String> targets = new java.util.LinkedHashMap<>();
+                JsonArray containers = new JsonArray(data.trim());
+                for (int i = 0; i < containers.size(); i++) {
+                    JsonObject c = containers.getJsonObject(i);
+                    JsonArray names = c.getJsonArray("Names", new JsonArray());
+                    targets.put(c.getString("Id"), names.isEmpty() ? c.getString("Id").substring(0, 12) : names.getString(0).replace("/", ""));
+                }
+                return targets;
+            });
+        }
+
+        targetsFuture
+            .onSuccess(targets -> {
+                int total = targets.size();
+                message.reply(new JsonObject().put("status", "ok").put("taskId", taskId).put("total", total));
+                if (total == 0) {
+                    sendDockerBatchProgress(userId, taskId, action, null, null, "done", null, 0, 0, 0);
+                    return;
+                }
+
+                int[] completed = {0};
+                JsonObject errors = new JsonObject();
+                sendDockerBatchProgress(userId, taskId, action, null, null, "copying", null, 0, 0, total);
+                FutureUtils.forEachBounded(new ArrayList<>(targets.keySet()), parallelism, containerId -> {
+                    String name = targets.get(containerId);
+                    sendDockerBatchProgress(userId, taskId, action, containerId, name, "copying", null, completed[0], errors.size(), total);
+                    return runDockerBatchAction(sessionId, userId, action, containerId, step ->
+                            sendDockerBatchProgress(userId, taskId, action + ": " + step, containerId, name, "copying", null, completed[0], errors.size(), total))
+                        .onComplete(ar -> {
+                            completed[0]++;
+                            if (ar.failed()) {
+                                errors.put(name, ar.cause().getMessage());
+                                logger.warn("Batch {} failed for container {} on server {}: {}", action, containerId, serverId, ar.cause().getMessage());
+                            }
+                            sendDockerBatchProgress(userId, taskId, action, containerId, name, ar.succeeded() ? "copying" : "error",
+                                ar.failed() ? ar.cause().getMessage() : null, completed[0], errors.size(), total);
+                        });
+                }).onComplete(ar -> {
+                    String error = errors.isEmpty() ? null : String.join("; ", errors.fieldNames().stream().map(n -> n + ": " + errors.getString(n)).toArray(String[]::new));
+                    sendDockerBatchProgress(userId, taskId, action, null, null, errors.isEmpty() ? "done" : "error", error, completed[0], errors.size(), total);
+                });
+            })
+            .onFailure(err -> message.fail(500, err.getMessage()));
+    }
+
+    private Future<?> runDockerBatchAction(String sessionId, String userId, String action, String containerId, java.util.function.Consumer<String> onStep) {
+        if ("recreate".equals(action)) {
+            return recreateContainer(sessionId, userId, containerId, null, onStep);
+        }
+        return dockerCall(sessionId, userId, "POST", "/containers/" + containerId + "/" + action, null);
+    }
+
+    private void sendDockerBatchProgress(String userId, String taskId, String action, String containerId, String name, String status, String error, int completed, int failed, int total) {
+        if (taskId == null) return;
+        // Формат совместим с FILES_COPY_PROGRESS, чтобы задача отображалась в виджете заданий
+        JsonObject progress = new JsonObject()
+            .put("taskId", taskId)
+            .put("srcPath", name != null ? action + " " + name + " (" + completed + " из " + total + ")" : action + " (" + completed + " из " + total + ")")
+            .put("status", status)
+            .put("percent", total > 0 ? completed * 100 / total : 100)
+            .put("containerId", containerId)
+            .put("completed", completed)
+            .put("failed", failed)
+            .put("total", total);
+        if (error != null) {
+            progress.put("error", error);
+        }
+        vertx.eventBus().publish(SSH_COMMAND_OUT_PREFIX + userId + DOCKER_BATCH_PROGRESS, progress);
+    }
+
+    // Вызов Docker API с проверкой ответа: ошибки Docker приходят как {"message": "..."} с кодом 0 у curl
+    private Future<String> dockerCall(String sessionId, String userId, String method, String path, String body) {
+        return dispatchDockerRequestInternal(sessionId, userId, method, path, body).compose(response -> {
+            String trimmed = response != null ? response.trim() : "";
+            if (trimmed.startsWith("{")) {
+                try {
+                    JsonObject json = new JsonObject(trimmed);
+                    if (json.containsKey("message") && !json.containsKey("Id")) {
+                        return Future.failedFuture(json.getString("message"));
+                    }
+                } catch (Exception ignored) {
+                    // не JSON - возвращаем как есть
+                }
+            }
+            return Future.succeededFuture(trimmed);
+        });
+    }
+
+    // Пересоздание контейнера с той же конфигурацией (и новым ENV, если он передан).
+    // Независимые шаги идут параллельно: остановка старого контейнера и его переименование,
+    // а создание нового ждет только освобождения имени; запуск - и создания, и остановки.
+    private Future<String> recreateContainer(String sessionId, String userId, String containerId, JsonArray newEnv, java.util.function.Consumer<String> onStep) {
+        java.util.function.Consumer<String> step = onStep != null ? onStep : s -> {};
+        step.accept("inspect");
+        return dispatchDockerRequestInternal(sessionId, userId, "GET", "/containers/" + containerId + "/json", null)
+            .recover(err -> Future.failedFuture("Failed to inspect container: " + err.getMessage()))
+            .compose(inspectDataStr -> {
+                String name;
+                boolean wasRunning;
+                JsonObject createRequest;
                 try {
                     JsonObject inspectData = new JsonObject(inspectDataStr);
                     JsonObject config = inspectData.getJsonObject("Config");
-                    String name = inspectData.getString("Name").replace("/", "");
-                    
-                    config.put("Env", newEnv);
+                    name = inspectData.getString("Name").replace("/", "");
+                    wasRunning = inspectData.getJsonObject("State", new JsonObject()).getBoolean("Running", false);
+
+                    if (newEnv != null) {
+                        config.put("Env", newEnv);
+                    }
 
-                    JsonObject createRequest = new JsonObject()
+                    createRequest = new JsonObject()
                         .put("Hostname", config.getString("Hostname"))
                         .put("Domainname", config.getString("Domainname"))
                         .put("User", config.getString("User"))
@@ -1859,40 +2931,63 @@ public class SshVerticle extends AbstractVerticle {
                     if (networks != null && !networks.isEmpty()) {
                         createRequest.put("NetworkingConfig", new JsonObject().put("EndpointsConfig", networks));
                     }
-
-                    dispatchDockerRequestInternal(sessionId, userId, "POST", "/containers/" + containerId + "/stop", null)
-                        .onSuccess(v -> {
-                            String oldName = name + "_old_" + System.currentTimeMillis();
-                            dispatchDockerRequestInternal(sessionId, userId, "POST", "/containers/" + containerId + "/rename?name=" + oldName, null)
-                                .onSuccess(v2 -> {
-                                    dispatchDockerRequestInternal(sessionId, userId, "POST", "/containers/create?name=" + name, createRequest.encode())
-                                        .onSuccess(createResStr -> {
-                                            try {
-                                                String newContainerId = new JsonObject(createResStr).getString("Id");
-                                                dispatchDockerRequestInternal(sessionId, userId, "POST", "/containers/" + newContainerId + "/start", null)
-                                                    .onSuccess(v3 -> {
-                                                        dispatchDockerRequestInternal(sessionId, userId, "DELETE", "/containers/" + containerId, null)
-                                                            .onComplete(ar -> {
-                                                                message.reply(new JsonObject().put("status", "ok"));
-                                                            });
-                                                    })
-                                                    .onFailure(err -> message.fail(500, "Failed to start new container: " + err.getMessage()));
-                                            } catch (Exception e) {
-                                                message.fail(500, "Failed to parse create response: " + e.getMessage());
-                                            }
-                                        })
-                                        .onFailure(err -> {
-                                            dispatchDockerRequestInternal(sessionId, userId, "POST", "/containers/" + containerId + "/rename?name=" + name, null);
-                                            message.fail(500, "Failed to create new container: " + err.getMessage());
-                                        });
-                                })
-                                .onFailure(err -> message.fail(500, "Failed to rename old container: " + err.getMessage()));
-                        })
-                        .onFailure(err -> message.fail(500, "Failed to stop container: " + err.getMessage()));
                 } catch (Exception e) {
-                    message.fail(500, "Failed to process inspect data: " + e.getMessage());
+                    return Future.failedFuture("Failed to process inspect data: " + e.getMessage());
                 }
-            })
-            .onFailure(err -> message.fail(500, "Failed to inspect container: " + err.getMessage()));
+
+                String oldName = name + "_old_" + System.currentTimeMillis();
+                step.accept("stop");
+                Future<String> stopped = dockerCall(sessionId, userId, "POST", "/containers/" + containerId + "/stop", null)
+                    .recover(err -> Future.failedFuture("Failed to stop container: " + err.getMessage()));
+                // Docker позволяет переименовать запущенный контейнер, поэтому rename не ждет stop
+                Future<String> renamed = dockerCall(sessionId, userId, "POST", "/containers/" + containerId + "/rename?name=" + oldName, null)
+                    .recover(err -> Future.failedFuture("Failed to rename old container: " + err.getMessage()));
+                Future<String> created = renamed
+                    .compose(v -> {
+                        step.accept("create");
+                        return dockerCall(sessionId, userId, "POST", "/containers/create?name=" + name, createRequest.encode())
+                            .recover(err -> Future.failedFuture("Failed to create new container: " + err.getMessage()));
+                    })
+                    .compose(createResStr -> {
+                        try {
+                            String newContainerId = new JsonObject(createResStr).getString("Id");
+                            return newContainerId != null ? Future.succeededFuture(newContainerId) : Future.<String>failedFuture("Failed to create new container: empty Id");
+                        } catch (Exception e) {
+                            return Future.failedFuture("Failed to parse create response: " + e.getMessage());
+                        }
+                    });
+
+                return Future.join(List.of(stopped, created)).transform(joined -> {
+                    if (joined.failed()) {
+                        Throwable cause = stopped.failed() ? stopped.cause() : created.cause();
+                        return rollbackRecreate(sessionId, userId, containerId, name, wasRunning, stopped, renamed, created)
+                            .transform(v -> Future.<String>failedFuture(cause));
+                    }
+                    String newContainerId = created.result();
+                    step.accept("start");
+                    return dockerCall(sessionId, userId, "POST", "/containers/" + newContainerId + "/start", null)
+                        .recover(err -> Future.failedFuture("Failed to start new container: " + err.getMessage()))
+                        .compose(v -> {
+                            step.accept("remove old");
+                            return dispatchDockerRequestInternal(sessionId, userId, "DELETE", "/containers/" + containerId, null)
+                                .transform(ar -> Future.succeededFuture(newContainerId));
+                        });
+                });
+            });
+    }
+
+    private Future<Void> rollbackRecreate(String sessionId, String userId, String containerId, String name, boolean wasRunning,
+                                          Future<String> stopped, Future<String> renamed, Future<String> created) {
+        Future<?> chain = Future.succeededFuture();
+        if (created.succeeded()) {
+            chain = chain.transform(v -> dispatchDockerRequestInternal(sessionId, userId, "DELETE", "/containers/" + created.result() + "?force=true", null));
+        }
+        if (renamed.succeeded()) {
+            chain = chain.transform(v -> dispatchDockerRequestInternal(sessionId, userId, "POST", "/containers/" + containerId + "/rename?name=" + name, null));
+        }
+        if (wasRunning && stopped.succeeded()) {
+            chain = chain.transform(v -> dispatchDockerRequestInternal(sessionId, userId, "POST", "/containers/" + containerId + "/start", null));
+        }
+        return chain.transform(v -> Future.succeededFuture());
     }
 }
@@ -0,0 +1,353 @@
+package org.console;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.Session;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import org.console.utils.RateLimiter;
+import org.console.utils.ShellUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Копирование каталога между серверами одним потоком tar: "tar c | сжатие" на источнике,
+// "распаковка | tar x" на приемнике, бекенд переливает поток между двумя exec-каналами.
+// Для деревьев из множества мелких файлов это убирает SFTP-запрос на каждый файл.
+// Буфер между каналами ограничен: медленный приемник притормаживает чтение из источника.
+public class TarPipeCopy {
+    private static final Logger logger = LoggerFactory.getLogger(TarPipeCopy.class);
+    private static final int RELAY_CHUNK = 64 * 1024;
+    private static final int RELAY_QUEUE_CHUNKS = 64;
+    private static final byte[] EOF = new byte[0];
+    // GNU tar: точка в stderr на каждые 100 записей по 10240 байт
+    private static final int CHECKPOINT_RECORDS = 100;
+    private static final long CHECKPOINT_BYTES = CHECKPOINT_RECORDS * 10240L;
+
+    // Наблюдения прошлых копирований между парой серверов - по ним выбирается уровень gzip для следующего
+    private static final Map<String, LinkStats> LINK_STATS = new ConcurrentHashMap<>();
+
+    // rate - скорость самого канала (байт/с): переданное, деленное на время внутри записи в приемник.
+    // Пока узкое место - компрессор, запись не ждет и оценка высокая, поэтому медленное сильное сжатие
+    // не выдает себя за медленный канал. ratio - степень сжатия последнего сжатого копирования (0 - неизвестна)
+    private record LinkStats(long rate, double ratio) {
+    }
+
+    private final Vertx vertx;
+    private final Session srcSession;
+    private final Session destSession;
+    private final String srcPath;
+    private final String destPath;
+    private final String linkKey;
+
+    private final AtomicLong relayed = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+    private final AtomicLong archived = new AtomicLong();
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+    private long estimatedBytes;
+    private int estimatedFiles;
+    private boolean sourceIsDir;
+    private boolean tarAvailable;
+    private boolean gnuTar;
+    private String compressCmd;
+    private String decompressCmd;
+    private String codec = "none";
+    private RateLimiter rateLimiter;
+    private volatile boolean cancelled;
+    private volatile ChannelExec srcChannel;
+    private volatile ChannelExec destChannel;
+
+    public TarPipeCopy(Vertx vertx, Session srcSession, Session destSession, String srcServerId, String destServerId, String srcPath, String destPath) {
+        this.vertx = vertx;
+        this.srcSession = srcSession;
+        this.destSession = destSession;
+        this.srcPath = srcPath;
+        this.destPath = destPath;
+        this.linkKey = srcServerId + ">" + destServerId;
+    }
+
+    // Размер и число файлов источника, наличие tar и компрессоров на обеих сторонах
+    public Future<Void> probe() {
+        return vertx.executeBlocking(() -> {
+            String src = run(srcSession, "cd " + ShellUtils.sanitize(srcPath) + " 2>/dev/null || { echo NOTDIR; exit 0; }; "
+                + "printf 'K %s\\n' \"$(du -sk . 2>/dev/null | cut -f1)\"; "
+                + "printf 'N %s\\n' \"$(find . 2>/dev/null | wc -l)\"; "
+                + "command -v tar >/dev/null 2>&1 && echo TAR; "
+                + "tar --version 2>/dev/null | grep -q GNU && echo GNU; "
+                + "command -v zstd >/dev/null 2>&1 && echo ZSTD; "
+                + "zstd --adapt -q -c </dev/null >/dev/null 2>&1 && echo ADAPT; "
+                + "command -v gzip >/dev/null 2>&1 && echo GZIP; true");
+            String dest = run(destSession, "command -v tar >/dev/null 2>&1 && echo TAR; "
+                + "command -v zstd >/dev/null 2>&1 && echo ZSTD; "
+                + "command -v gzip >/dev/null 2>&1 && echo GZIP; true");
+
+            List<String> srcLines = Arrays.asList(src.split("\n"));
+            List<String> destLines = Arrays.asList(dest.split("\n"));
+            sourceIsDir = !srcLines.contains("NOTDIR");
+            if (!sourceIsDir) return null;
+            for (String line : srcLines) {
+                try {
+                    if (line.startsWith("K ")) estimatedBytes = Long.parseLong(line.substring(2).trim()) * 1024;
+                    if (line.startsWith("N ")) estimatedFiles = Integer.parseInt(line.substring(2).trim());
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            // Заголовок tar - 512 байт на запись
+            estimatedBytes += estimatedFiles * 512L;
+            tarAvailable = srcLines.contains("TAR") && destLines.contains("TAR");
+            gnuTar = srcLines.contains("GNU");
+            chooseCompression(srcLines, destLines);
+            return null;
+        }, false);
+    }
+
+    // zstd --adapt сам меняет уровень по скорости, с которой забирают его вывод - то есть по нашей переливке.
+    // Для gzip уровень выбирается по скорости канала между этими серверами (с учетом ограничения скорости):
+    // медленный канал - сильнее сжатие, быстрый - сжатие только тормозит. Данные, которые в прошлый раз
+    // почти не сжались, передаются без gzip
+    private void chooseCompression(List<String> src, List<String> dest) {
+        LinkStats stats = LINK_STATS.get(linkKey);
+        long limit = rateLimiter != null ? rateLimiter.getRate() : 0;
+        Long throughput = stats != null ? Long.valueOf(stats.rate()) : null;
+        if (limit > 0) throughput = throughput != null ? Math.min(throughput, limit) : limit;
+        int level;
+        if (throughput == null) {
+            level = 1;
+        } else if (stats != null && stats.ratio() > 0 && stats.ratio() < 1.2) {
+            level = 0;
+        } else if (throughput < 2L * 1024 * 1024) {
+            level = 6;
+        } else if (throughput < 10L * 1024 * 1024) {
+            level = 3;
+        } else if (throughput < 50L * 1024 * 1024) {
+            level = 1;
+        } else {
+            level = 0;
+        }
+
+        if (src.contains("ZSTD") && dest.contains("ZSTD")) {
+            compressCmd = src.contains("ADAPT") ? "zstd -q -c --adapt" : "zstd -q -c -" + Math.max(1, level);
+            decompressCmd = "zstd -q -d -c";
+            codec = src.contains("ADAPT") ? "zstd:adapt" : "zstd:" + Math.max(1, level);
+        } else if (level > 0 && src.contains("GZIP") && dest.contains("GZIP")) {
+            compressCmd = "gzip -c -" + level;
+            decompressCmd = "gzip -d -c";
+            codec = "gzip:" + level;
+        }
+    }
+
+    // Ограничение скорости переливки (сжатого потока)
+    public TarPipeCopy setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    public boolean isSourceDirectory() {
+        return sourceIsDir;
+    }
+
+    public boolean isTarAvailable() {
+        return tarAvailable;
+    }
+
+    public String codec() {
+        return codec;
+    }
+
+    public long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public int estimatedFiles() {
+        return estimatedFiles;
+    }
+
+    public long relayedBytes() {
+        return relayed.get();
+    }
+
+    public List<String> errors() {
+        return errors;
+    }
+
+    // Обработанный объем в несжатых байтах: по контрольным точкам GNU tar, иначе - по переданному потоку
+    public long processedBytes() {
+        return gnuTar ? Math.min(archived.get(), estimatedBytes) : Math.min(relayed.get(), estimatedBytes);
+    }
+
+    // Оценка: до завершения не больше 99%
+    public int percent() {
+        return estimatedBytes > 0 ? (int) Math.min(99, processedBytes() * 100 / estimatedBytes) : 0;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        ChannelExec src = srcChannel;
+        ChannelExec dest = destChannel;
+        if (src != null) src.disconnect();
+        if (dest != null) dest.disconnect();
+    }
+
+    public Future<Void> copy() {
+        BlockingQueue<byte[]> buffer = new ArrayBlockingQueue<>(RELAY_QUEUE_CHUNKS);
+        CheckpointStream destErr = new CheckpointStream(false);
+        CheckpointStream srcErr = new CheckpointStream(gnuTar);
+        InputStream in;
+        OutputStream out;
+        try {
+            String checkpoints = gnuTar ? " --checkpoint=" + CHECKPOINT_RECORDS + " --checkpoint-action=dot" : "";
+            String pack = "cd " + ShellUtils.sanitize(srcPath) + " && tar cf -" + checkpoints + " ."
+                + (compressCmd != null ? " | " + compressCmd : "");
+            String unpack = "mkdir -p " + ShellUtils.sanitize(destPath) + " && cd " + ShellUtils.sanitize(destPath) + " && "
+                + (decompressCmd != null ? decompressCmd + " | " : "") + "tar xpf -";
+
+            destChannel = (ChannelExec) destSession.openChannel("exec");
+            destChannel.setCommand(unpack);
+            destChannel.setErrStream(destErr);
+            out = destChannel.getOutputStream();
+            destChannel.connect(15000);
+
+            srcChannel = (ChannelExec) srcSession.openChannel("exec");
+            srcChannel.setCommand(pack);
+            srcChannel.setErrStream(srcErr);
+            in = srcChannel.getInputStream();
+            srcChannel.connect(15000);
+        } catch (Exception e) {
+            cancel();
+            return Future.failedFuture(e);
+        }
+        logger.info("Tar pipe copy {} -> {} started ({}, ~{} bytes)", srcPath, destPath, codec, estimatedBytes);
+
+        // Чтение и запись в разных потоках: очередь развязывает задержки источника и приемника
+        Future<Void> reading = vertx.executeBlocking(() -> {
+            byte[] chunk = new byte[RELAY_CHUNK];
+            int read;
+            while (!cancelled && (read = in.read(chunk)) != -1) {
+                byte[] data = Arrays.copyOf(chunk, read);
+                while (!buffer.offer(data, 500, TimeUnit.MILLISECONDS)) {
+                    if (cancelled) return null;
+                }
+            }
+            while (!cancelled && !buffer.offer(EOF, 500, TimeUnit.MILLISECONDS)) {
+            }
+            return null;
+        }, false);
+        // Упавшая сторона останавливает другую, иначе та ждала бы очередь вечно
+        reading.onFailure(err -> cancel());
+
+        Future<Void> writing = vertx.executeBlocking(() -> {
+            while (!cancelled) {
+                byte[] data = buffer.poll(500, TimeUnit.MILLISECONDS);
+                if (data == null) continue;
+                if (data == EOF) break;
+                if (rateLimiter != null) rateLimiter.acquire(data.length);
+                long writeStart = System.nanoTime();
+                out.write(data);
+                writeNanos.addAndGet(System.nanoTime() - writeStart);
+                relayed.addAndGet(data.length);
+            }
+            out.close();
+            return null;
+        }, false);
+        writing.onFailure(err -> cancel());
+
+        return Future.all(reading, writing)
+            .compose(v -> vertx.executeBlocking(() -> {
+                int destStatus = waitForExit(destChannel);
+                int srcStatus = waitForExit(srcChannel);
+                String srcMessage = srcErr.text();
+                if (cancelled) {
+                    throw new RuntimeException("Копирование отменено");
+                }
+                if (destStatus != 0) {
+                    String message = destErr.text();
+                    throw new RuntimeException(message.isEmpty() ? "tar exited with status " + destStatus : message);
+                }
+                // Ошибки чтения отдельных файлов не портят архив - остальное распаковано
+                if (srcStatus != 0 || !srcMessage.isEmpty()) {
+                    errors.add(srcMessage.isEmpty() ? "Source exited with status " + srcStatus : srcMessage);
+                }
+                recordLinkStats();
+                return (Void) null;
+            }, false))
+            .andThen(ar -> {
+                srcChannel.disconnect();
+                destChannel.disconnect();
+            });
+    }
+
+    // Скорость канала и степень сжатия для выбора уровня в следующий раз. Без сжатия степень неизвестна:
+    // следующее копирование снова попробует gzip, иначе однажды несжимаемые данные отключили бы его навсегда
+    private void recordLinkStats() {
+        long bytes = relayed.get();
+        long nanos = writeNanos.get();
+        if (bytes <= 4L * 1024 * 1024 || nanos <= 0) return;
+        long rate = (long) (bytes * 1e9 / nanos);
+        double ratio = compressCmd != null && estimatedBytes > 0 ? (double) estimatedBytes / bytes : 0;
+        LINK_STATS.put(linkKey, new LinkStats(rate, ratio));
+    }
+
+    private int waitForExit(ChannelExec channel) throws InterruptedException {
+        while (!channel.isClosed() && !cancelled) {
+            Thread.sleep(100);
+        }
+        return channel.getExitStatus();
+    }
+
+    private static String run(Session session, String command) throws Exception {
+        ChannelExec channel = (ChannelExec) session.openChannel("exec");
+        try {
+            channel.setCommand(command);
+            InputStream in = channel.getInputStream();
+            channel.connect(15000);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } finally {
+            channel.disconnect();
+        }
+    }
+
+    // stderr: точки контрольных точек tar считаются, остальной текст (до 8 КБ) - сообщения об ошибках
+    private class CheckpointStream extends OutputStream {
+        private final ByteArrayOutputStream text = new ByteArrayOutputStream();
+        private final boolean countDots;
+        private boolean inText;
+
+        CheckpointStream(boolean countDots) {
+            this.countDots = countDots;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (countDots && b == '.' && !inText) {
+                archived.addAndGet(CHECKPOINT_BYTES);
+                return;
+            }
+            inText = b != '\n';
+            if (text.size() < 8192) text.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+
+        synchronized String text() {
+            return text.toString(StandardCharsets.UTF_8).trim();
+        }
+    }
+}
@@ -0,0 +1,477 @@
+package org.console;
+
+import com.jcraft.jsch.Session;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.redis.client.Command;
+import io.vertx.redis.client.Redis;
+import io.vertx.redis.client.Request;
+import org.console.utils.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.console.Constants.*;
+
+// Очередь копирований между серверами: общий лимит и лимит на сервер, приоритет и ограничение скорости у каждого задания.
+// Задания вместе с прогрессом (байты, недописанные файлы) лежат в Redis - после перезапуска
+// прерванное копирование продолжается: совпавшие файлы пропускаются, недописанные докачиваются.
+// Состояние меняется только в контексте verticle.
+public class TransferScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(TransferScheduler.class);
+    private static final String KEY_PREFIX = "ssh:transfer:";
+
+    public interface CompletionListener {
+        void onFinished(String userId, String destServerId, String destPath);
+    }
+
+    private final Vertx vertx;
+    private final Redis redis;
+    private final Function<String, Session> sessions;
+    private final CompletionListener listener;
+    private final Map<String, Transfer> transfers = new LinkedHashMap<>();
+
+    public TransferScheduler(Vertx vertx, Redis redis, Function<String, Session> sessions, CompletionListener listener) {
+        this.vertx = vertx;
+        this.redis = redis;
+        this.sessions = sessions;
+        this.listener = listener;
+        // Повторная попытка для заданий, ждущих SSH-сессии, и сохранение прогресса идущих
+        vertx.setPeriodic(TRANSFER_SCHEDULE_INTERVAL_MS, id -> schedule());
+        vertx.setPeriodic(TRANSFER_PERSIST_INTERVAL_MS, id -> transfers.values().stream()
+            .filter(t -> "copying".equals(t.status))
+            .forEach(this::persist));
+    }
+
+    private static class Transfer {
+        String id;
+        String userId;
+        String srcServerId;
+        String destServerId;
+        String srcPath;
+        String destPath;
+        String method;
+        int parallelism;
+        int priority;
+        long bandwidthLimit;
+        long createdAt;
+        String status = "queued";
+        boolean resume;
+        Set<String> inFlight = Set.of();
+        long bytes;
+        long totalBytes;
+        int files;
+        int totalFiles;
+
+        RateLimiter limiter;
+        TreeCopyJob treeJob;
+        TarPipeCopy tarJob;
+        long startedAt;
+        long timer = -1;
+
+        JsonObject toJson() {
+            return new JsonObject()
+                .put("id", id)
+                .put("userId", userId)
+                .put("srcServerId", srcServerId)
+                .put("destServerId", destServerId)
+                .put("srcPath", srcPath)
+                .put("destPath", destPath)
+                .put("method", method)
+                .put("parallelism", parallelism)
+                .put("priority", priority)
+                .put("bandwidthLimit", bandwidthLimit)
+                .put("createdAt", createdAt)
+                .put("status", status)
+                .put("resume", resume)
+                .put("inFlight", new JsonArray(new ArrayList<>(inFlight)))
+                .put("bytes", bytes)
+                .put("totalBytes", totalBytes)
+                .put("files", files)
+                .put("totalFiles", totalFiles);
+        }
+
+        static Transfer fromJson(JsonObject json) {
+            Transfer t = new Transfer();
+            t.id = json.getString("id");
+            t.userId = json.getString("userId");
+            t.srcServerId = json.getString("srcServerId");
+            t.destServerId = json.getString("destServerId");
+            t.srcPath = json.getString("srcPath");
+            t.destPath = json.getString("destPath");
+            t.method = json.getString("method", "stream");
+            t.parallelism = json.getInteger("parallelism", FILES_COPY_DEFAULT_PARALLELISM);
+            t.priority = json.getInteger("priority", 0);
+            t.bandwidthLimit = json.getLong("bandwidthLimit", 0L);
+            t.createdAt = json.getLong("createdAt", System.currentTimeMillis());
+            t.status = json.getString("status", "queued");
+            t.resume = json.getBoolean("resume", false);
+            JsonArray inFlight = json.getJsonArray("inFlight");
+            t.inFlight = inFlight == null ? Set.of() : inFlight.stream().map(String::valueOf).collect(Collectors.toSet());
+            t.bytes = json.getLong("bytes", 0L);
+            t.totalBytes = json.getLong("totalBytes", 0L);
+            t.files = json.getInteger("files", 0);
+            t.totalFiles = json.getInteger("totalFiles", 0);
+            return t;
+        }
+    }
+
+    // Задания, прерванные остановкой приложения: идущие продолжаются в режиме докачки, ожидающие остаются в очереди
+    public Future<Void> load() {
+        Promise<Void> promise = Promise.promise();
+        redis.send(Request.cmd(Command.KEYS).arg(KEY_PREFIX + "*"))
+            .onSuccess(response -> {
+                if (response == null || response.size() == 0) {
+                    promise.complete();
+                    return;
+                }
+                List<Future<Void>> futures = new ArrayList<>();
+                response.forEach(resKey -> {
+                    String key = resKey.toString();
+                    futures.add(redis.send(Request.cmd(Command.GET).arg(key))
+                        .map(resData -> {
+                            if (resData == null) return null;
+                            try {
+                                Transfer t = Transfer.fromJson(new JsonObject(resData.toString()));
+                                if ("copying".equals(t.status)) {
+                                    t.status = "queued";
+                                    t.resume = true;
+                                }
+                                if ("queued".equals(t.status) && t.id != null) {
+                                    transfers.put(t.id, t);
+                                } else {
+                                    redis.send(Request.cmd(Command.DEL).arg(key));
+                                }
+                            } catch (Exception e) {
+                                logger.error("Failed to parse transfer for key {}", key, e);
+                            }
+                            return (Void) null;
+                        })
+                        .otherwise(err -> {
+                            logger.error("Failed to get transfer for key {}", key, err);
+                            return null;
+                        }));
+                });
+                Future.all(futures).onComplete(ar -> {
+                    if (!transfers.isEmpty()) {
+                        logger.info("Restored {} transfers from Redis", transfers.size());
+                    }
+                    promise.complete();
+                    schedule();
+                });
+            })
+            .onFailure(err -> {
+                logger.error("Failed to fetch transfer keys from Redis", err);
+                promise.complete();
+            });
+        return promise.future();
+    }
+
+    // taskId от клиента годится, если он еще не занят: задания всех пользователей лежат в одной карте
+    public boolean isTaskIdAvailable(String taskId) {
+        return taskId == null || (taskId.matches("^[A-Za-z0-9_-]{1,64}$") && !transfers.containsKey(taskId));
+    }
+
+    // Ставит копирование в очередь; ход и итог - через FILES_COPY_PROGRESS с taskId из ответа
+    // (клиентский, если он свободен, иначе сгенерированный)
+    public JsonObject submit(String userId, String taskId, String srcServerId, String destServerId, String srcPath, String destPath,
+                             String method, int parallelism, int priority, long bandwidthLimit) {
+        Transfer t = new Transfer();
+        t.id = taskId != null && isTaskIdAvailable(taskId) ? taskId : UUID.randomUUID().toString();
+        t.userId = userId;
+        t.srcServerId = srcServerId;
+        t.destServerId = destServerId;
+        t.srcPath = srcPath;
+        t.destPath = destPath;
+        t.method = method;
+        t.parallelism = parallelism;
+        t.priority = clampPriority(priority);
+        t.bandwidthLimit = Math.max(0, bandwidthLimit);
+        t.createdAt = System.currentTimeMillis();
+        transfers.put(t.id, t);
+        persist(t);
+        schedule();
+        return new JsonObject()
+            .put("status", "ok")
+            .put("async", true)
+            .put("taskId", t.id)
+            .put("queued", "queued".equals(t.status))
+            .put("position", position(t));
+    }
+
+    public JsonArray list(String userId) {
+        JsonArray result = new JsonArray();
+        transfers.values().stream()
+            .filter(t -> t.userId.equals(userId))
+            .forEach(t -> result.add(progress(t, t.status, null)));
+        return result;
+    }
+
+    public boolean cancel(String userId, String taskId) {
+        Transfer t = transfers.get(taskId);
+        if (t == null || !t.userId.equals(userId)) return false;
+        if ("queued".equals(t.status)) {
+            finish(t, "cancelled", null);
+        } else {
+            // Задание остановится в рабочих потоках и завершится через onComplete копирования
+            t.status = "cancelled";
+            if (t.treeJob != null) t.treeJob.cancel();
+            if (t.tarJob != null) t.tarJob.cancel();
+        }
+        return true;
+    }
+
+    // Приоритет и ограничение скорости меняются и у идущего задания
+    public boolean update(String userId, String taskId, Integer priority, Long bandwidthLimit) {
+        Transfer t = transfers.get(taskId);
+        if (t == null || !t.userId.equals(userId)) return false;
+        if (priority != null) {
+            t.priority = clampPriority(priority);
+        }
+        if (bandwidthLimit != null) {
+            t.bandwidthLimit = Math.max(0, bandwidthLimit);
+            if (t.limiter != null) t.limiter.setRate(t.bandwidthLimit);
+        }
+        persist(t);
+        schedule();
+        publish(t, t.status, null);
+        return true;
+    }
+
+    private static int clampPriority(int priority) {
+        return Math.max(0, Math.min(priority, TRANSFER_MAX_PRIORITY));
+    }
+
+    private void schedule() {
+        int running = 0;
+        Map<String, Integer> perServer = new HashMap<>();
+        for (Transfer t : transfers.values()) {
+            if ("copying".equals(t.status) || "cancelled".equals(t.status)) {
+                running++;
+                perServer.merge(t.srcServerId, 1, Integer::sum);
+                perServer.merge(t.destServerId, 1, Integer::sum);
+            }
+        }
+        for (Transfer t : queued()) {
+            if (running >= TRANSFER_MAX_CONCURRENT) break;
+            if (perServer.getOrDefault(t.srcServerId, 0) >= TRANSFER_MAX_PER_SERVER
+                || perServer.getOrDefault(t.destServerId, 0) >= TRANSFER_MAX_PER_SERVER) {
+                continue;
+            }
+            Session src = sessions.apply(t.srcServerId);
+            Session dest = sessions.apply(t.destServerId);
+            if (src == null || dest == null) {
+                // После перезапуска сессии поднимаются, когда пользователь снова откроет сервер
+                continue;
+            }
+            running++;
+            perServer.merge(t.srcServerId, 1, Integer::sum);
+            perServer.merge(t.destServerId, 1, Integer::sum);
+            start(t, src, dest);
+        }
+        // Позиции в очереди сдвинулись
+        for (Transfer t : queued()) {
+            publish(t, "queued", null);
+        }
+    }
+
+    private List<Transfer> queued() {
+        return transfers.values().stream()
+            .filter(t -> "queued".equals(t.status))
+            .sorted(Comparator.comparingInt((Transfer t) -> -t.priority).thenComparingLong(t -> t.createdAt))
+            .collect(Collectors.toList());
+    }
+
+    private int position(Transfer t) {
+        return queued().indexOf(t) + 1;
+    }
+
+    private void start(Transfer t, Session src, Session dest) {
+        t.status = "copying";
+        t.startedAt = System.currentTimeMillis();
+        t.limiter = new RateLimiter(t.bandwidthLimit);
+        persist(t);
+        publish(t, "copying", null);
+        // tar не умеет продолжать с середины - после перезапуска дописываем по SFTP
+        if ("tar".equals(t.method) && !t.resume) {
+            startTar(t, src, dest);
+        } else {
+            startTree(t, src, dest, "delta".equals(t.method));
+        }
+    }
+
+    private void startTree(Transfer t, Session src, Session dest, boolean delta) {
+        TreeCopyJob job = new TreeCopyJob(vertx, src, dest, t.srcPath, t.destPath, t.parallelism)
+            .setDelta(delta)
+            .setRateLimiter(t.limiter);
+        if (t.resume) {
+            job.setResume(t.inFlight);
+        }
+        t.treeJob = job;
+        t.tarJob = null;
+        job.scan()
+            .compose(v -> {
+                if ("cancelled".equals(t.status)) return Future.failedFuture("Cancelled");
+                t.timer = vertx.setPeriodic(500, id -> publish(t, "copying", null));
+                return job.copy();
+            })
+            .onComplete(ar -> {
+                List<String> errors = job.errors();
+                if ("cancelled".equals(t.status)) {
+                    finish(t, "cancelled", null);
+                } else if (ar.failed()) {
+                    finish(t, "error", ar.cause().getMessage());
+                } else if (!errors.isEmpty()) {
+                    finish(t, "error", errors.size() == 1 ? errors.get(0)
+                        : "Не скопировано: " + errors.size() + " (" + errors.get(0) + ", ...)");
+                } else {
+                    finish(t, "done", null);
+                }
+                logger.info("Copy {} -> {}:{} finished: {} files, {} bytes, {} errors, {} delta files saved {} bytes",
+                    t.srcPath, t.destServerId, t.destPath, job.filesDone(), job.transferredBytes(), errors.size(), job.deltaFiles(), job.bytesSaved());
+            });
+    }
+
+    // Каталог одним потоком tar со сжатием. Файл или отсутствие tar на одной из сторон - обычное копирование по SFTP
+    private void startTar(Transfer t, Session src, Session dest) {
+        TarPipeCopy job = new TarPipeCopy(vertx, src, dest, t.srcServerId, t.destServerId, t.srcPath, t.destPath)
+            .setRateLimiter(t.limiter);
+        t.tarJob = job;
+        job.probe()
+            .onFailure(err -> finish(t, "cancelled".equals(t.status) ? "cancelled" : "error", err.getMessage()))
+            .onSuccess(v -> {
+                if ("cancelled".equals(t.status)) {
+                    finish(t, "cancelled", null);
+                    return;
+                }
+                if (!job.isSourceDirectory()) {
+                    startTree(t, src, dest, false);
+                    return;
+                }
+                if (!job.isTarAvailable()) {
+                    publish(t, "fallback", "tar недоступен на одном из серверов");
+                    startTree(t, src, dest, false);
+                    return;
+                }
+                t.timer = vertx.setPeriodic(500, id -> publish(t, "copying", null));
+                job.copy().onComplete(ar -> {
+                    List<String> errors = job.errors();
+                    if ("cancelled".equals(t.status)) {
+                        finish(t, "cancelled", null);
+                    } else if (ar.failed()) {
+                        finish(t, "error", ar.cause().getMessage());
+                    } else {
+                        finish(t, errors.isEmpty() ? "done" : "error", errors.isEmpty() ? null : errors.get(0));
+                    }
+                    logger.info("Tar copy {} -> {}:{} finished ({}): {} bytes relayed for ~{} bytes",
+                        t.srcPath, t.destServerId, t.destPath, job.codec(), job.relayedBytes(), job.estimatedBytes());
+                });
+            });
+    }
+
+    private void finish(Transfer t, String status, String error) {
+        if (t.timer != -1) {
+            vertx.cancelTimer(t.timer);
+            t.timer = -1;
+        }
+        t.status = status;
+        publish(t, status, error);
+        transfers.remove(t.id);
+        redis.send(Request.cmd(Command.DEL).arg(KEY_PREFIX + t.id))
+            .onFailure(err -> logger.error("Failed to remove transfer from Redis", err));
+        if (!"cancelled".equals(status) || t.startedAt > 0) {
+            listener.onFinished(t.userId, t.destServerId, t.destPath);
+        }
+        schedule();
+    }
+
+    private void persist(Transfer t) {
+        snapshot(t);
+        if (t.treeJob != null) {
+            Set<String> inFlight = new HashSet<>(t.inFlight);
+            inFlight.addAll(t.treeJob.inFlight());
+            // Пока идет повторный проход, прежние недописанные файлы тоже остаются в списке
+            t.inFlight = t.resume ? inFlight : t.treeJob.inFlight();
+        }
+        redis.send(Request.cmd(Command.SET).arg(KEY_PREFIX + t.id).arg(t.toJson().encode()).arg("EX").arg(String.valueOf(TRANSFER_TTL_SEC)))
+            .onFailure(err -> logger.error("Failed to save transfer to Redis", err));
+    }
+
+    // Текущие счетчики идущего копирования
+    private void snapshot(Transfer t) {
+        if (t.treeJob != null) {
+            t.bytes = t.treeJob.transferredBytes();
+            t.totalBytes = t.treeJob.totalBytes();
+            t.files = t.treeJob.filesDone();
+            t.totalFiles = t.treeJob.totalFiles();
+        } else if (t.tarJob != null) {
+            t.bytes = t.tarJob.processedBytes();
+            t.totalBytes = t.tarJob.estimatedBytes();
+            t.files = 0;
+            t.totalFiles = 0;
+        }
+    }
+
+    private JsonObject progress(Transfer t, String status, String error) {
+        snapshot(t);
+        int percent;
+        if ("done".equals(status)) {
+            percent = 100;
+        } else if (t.tarJob != null && t.treeJob == null) {
+            percent = t.tarJob.percent();
+        } else {
+            percent = t.totalBytes > 0 ? (int) (t.bytes * 100 / t.totalBytes) : 0;
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - (t.startedAt > 0 ? t.startedAt : t.createdAt));
+        JsonObject progress = new JsonObject()
+            .put("taskId", t.id)
+            .put("srcPath", t.srcPath)
+            .put("status", status)
+            .put("percent", percent)
+            .put("bytes", t.bytes)
+            .put("totalBytes", t.totalBytes)
+            .put("files", t.files)
+            .put("totalFiles", t.totalFiles)
+            .put("bytesPerSec", t.startedAt > 0 ? t.bytes * 1000 / elapsed : 0)
+            .put("priority", t.priority)
+            .put("bandwidthLimit", t.bandwidthLimit)
+            .put("resumed", t.resume);
+        if ("queued".equals(status)) {
+            progress.put("position", position(t));
+        }
+        if (t.treeJob != null && t.treeJob.isDelta()) {
+            progress
+                .put("method", "delta")
+                .put("bytesSaved", t.treeJob.bytesSaved())
+                .put("deltaFiles", t.treeJob.deltaFiles())
+                .put("deltaUnavailable", t.treeJob.isDeltaUnavailable());
+        } else if (t.tarJob != null && t.treeJob == null) {
+            progress
+                .put("method", "tar")
+                .put("codec", t.tarJob.codec())
+                .put("relayedBytes", t.tarJob.relayedBytes());
+        }
+        if (error != null) {
+            progress.put("error", error);
+        }
+        return progress;
+    }
+
+    private void publish(Transfer t, String status, String error) {
+        vertx.eventBus().publish(SSH_COMMAND_OUT_PREFIX + t.userId + FILES_COPY_PROGRESS, progress(t, status, error));
+    }
+}
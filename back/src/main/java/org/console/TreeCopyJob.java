@@ -0,0 +1,412 @@
+package org.console;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import org.console.utils.RateLimiter;
+import org.console.utils.SftpUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Копирование файла или дерева каталогов между серверами через бекенд по SFTP.
+// Дерево обходится один раз, структура каталогов создается заранее, затем файлы передаются
+// несколькими парами SFTP-каналов: большие файлы - по одному, мелкие - пачками, чтобы поток
+// не простаивал в ожидании очереди. Прогресс считается по байтам всего дерева.
+// В дельта-режиме файлы, уже лежащие на приемнике, обновляются через DeltaCopy.
+public class TreeCopyJob {
+    private static final Logger logger = LoggerFactory.getLogger(TreeCopyJob.class);
+    private static final long BIG_FILE_BYTES = 8 * 1024 * 1024;
+    private static final int BATCH_MAX_FILES = 64;
+    private static final long BATCH_MAX_BYTES = 8 * 1024 * 1024;
+    // Меньшие файлы дешевле передать целиком, чем считать для них сигнатуру
+    private static final long DELTA_MIN_BYTES = 1024 * 1024;
+
+    private final Vertx vertx;
+    private final Session srcSession;
+    private final Session destSession;
+    private final String srcPath;
+    private final String destPath;
+    private final int parallelism;
+
+    // Относительные пути от корня копирования; "" - сам корень
+    private final List<String> dirs = new ArrayList<>();
+    private final List<FileItem> files = new ArrayList<>();
+    private final List<String[]> links = new ArrayList<>();
+    private final ConcurrentLinkedQueue<List<FileItem>> queue = new ConcurrentLinkedQueue<>();
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong transferred = new AtomicLong();
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicInteger deltaFiles = new AtomicInteger();
+    // Файлы, которые копируются прямо сейчас - сохраняются планировщиком для докачки после перезапуска
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private Set<String> resumeInFlight = Set.of();
+    private boolean resume;
+    private RateLimiter rateLimiter;
+    private long totalBytes;
+    private boolean delta;
+    private volatile boolean deltaUnavailable;
+    private volatile boolean cancelled;
+
+    static class FileItem {
+        final String rel;
+        final long size;
+        final int mode;
+        final int mtime;
+
+        FileItem(String rel, long size, int mode, int mtime) {
+            this.rel = rel;
+            this.size = size;
+            this.mode = mode;
+            this.mtime = mtime;
+        }
+    }
+
+    public TreeCopyJob(Vertx vertx, Session srcSession, Session destSession, String srcPath, String destPath, int parallelism) {
+        this.vertx = vertx;
+        this.srcSession = srcSession;
+        this.destSession = destSession;
+        this.srcPath = srcPath;
+        this.destPath = destPath;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    // Дельта-режим: файлы, уже существующие на приемнике, передаются по схеме rsync
+    public TreeCopyJob setDelta(boolean delta) {
+        this.delta = delta;
+        return this;
+    }
+
+    public TreeCopyJob setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    // Повторный запуск прерванного задания; inFlight - файлы, которые копировались в момент остановки
+    public TreeCopyJob setResume(Set<String> inFlight) {
+        this.resume = true;
+        this.resumeInFlight = new HashSet<>(inFlight);
+        return this;
+    }
+
+    public Set<String> inFlight() {
+        return new HashSet<>(inFlight);
+    }
+
+    public boolean isDelta() {
+        return delta;
+    }
+
+    public long bytesSaved() {
+        return bytesSaved.get();
+    }
+
+    public int deltaFiles() {
+        return deltaFiles.get();
+    }
+
+    public boolean isDeltaUnavailable() {
+        return deltaUnavailable;
+    }
+
+    public long totalBytes() {
+        return totalBytes;
+    }
+
+    public long transferredBytes() {
+        return transferred.get();
+    }
+
+    public int totalFiles() {
+        return files.size();
+    }
+
+    public int filesDone() {
+        return filesDone.get();
+    }
+
+    public List<String> errors() {
+        return errors;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Обход дерева источника; после него известны totalBytes и totalFiles
+    public Future<Void> scan() {
+        return vertx.executeBlocking(() -> {
+            ChannelSftp sftp = openSftp(srcSession);
+            try {
+                // Корень - как его видит пользователь: ссылка на каталог копируется как каталог
+                SftpATTRS root = sftp.stat(srcPath);
+                if (root.isDir()) {
+                    dirs.add("");
+                    walk(sftp, srcPath, "");
+                } else {
+                    files.add(new FileItem("", root.getSize(), root.getPermissions(), root.getMTime()));
+                }
+            } finally {
+                sftp.disconnect();
+            }
+            for (FileItem f : files) {
+                totalBytes += f.size;
+            }
+            planBatches();
+            return null;
+        }, false);
+    }
+
+    private void walk(ChannelSftp sftp, String dir, String rel) throws SftpException {
+        // Вложенные запросы внутри LsEntrySelector недопустимы - сначала собираем записи
+        List<ChannelSftp.LsEntry> entries = new ArrayList<>();
+        sftp.ls(dir, entry -> {
+            String name = entry.getFilename();
+            if (!".".equals(name) && !"..".equals(name)) entries.add(entry);
+            return cancelled ? ChannelSftp.LsEntrySelector.BREAK : ChannelSftp.LsEntrySelector.CONTINUE;
+        });
+        for (ChannelSftp.LsEntry entry : entries) {
+            if (cancelled) return;
+            String name = entry.getFilename();
+            String childRel = rel.isEmpty() ? name : rel + "/" + name;
+            String childAbs = SftpUtils.childPath(dir, name);
+            SftpATTRS attrs = entry.getAttrs();
+            if (attrs.isLink()) {
+                try {
+                    links.add(new String[]{childRel, sftp.readlink(childAbs)});
+                } catch (SftpException e) {
+                    errors.add(childRel + ": " + e.getMessage());
+                }
+            } else if (attrs.isDir()) {
+                dirs.add(childRel);
+                walk(sftp, childAbs, childRel);
+            } else if (attrs.isReg()) {
+                files.add(new FileItem(childRel, attrs.getSize(), attrs.getPermissions(), attrs.getMTime()));
+            }
+        }
+    }
+
+    // Большие файлы первыми и по одному (от самого большого - короче хвост), мелкие - пачками
+    private void planBatches() {
+        List<FileItem> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparingLong((FileItem f) -> f.size).reversed());
+        List<FileItem> batch = new ArrayList<>();
+        long batchBytes = 0;
+        for (FileItem f : sorted) {
+            if (f.size >= BIG_FILE_BYTES) {
+                queue.add(List.of(f));
+                continue;
+            }
+            batch.add(f);
+            batchBytes += f.size;
+            if (batch.size() >= BATCH_MAX_FILES || batchBytes >= BATCH_MAX_BYTES) {
+                queue.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+        }
+        if (!batch.isEmpty()) queue.add(batch);
+    }
+
+    // Ошибки отдельных файлов не прерывают копирование - они собираются в errors()
+    public Future<Void> copy() {
+        return vertx.<Void>executeBlocking(() -> {
+            ChannelSftp dest = openSftp(destSession);
+            try {
+                for (String rel : dirs) {
+                    mkdirIfMissing(dest, target(rel));
+                }
+                for (String[] link : links) {
+                    try {
+                        dest.symlink(link[1], target(link[0]));
+                    } catch (SftpException e) {
+                        errors.add(link[0] + ": " + e.getMessage());
+                    }
+                }
+            } finally {
+                dest.disconnect();
+            }
+            return null;
+        }, false).compose(v -> {
+            int workers = Math.min(parallelism, Math.max(1, queue.size()));
+            AtomicInteger started = new AtomicInteger();
+            List<Future<Void>> running = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                running.add(vertx.executeBlocking(() -> {
+                    runWorker(started);
+                    return null;
+                }, false));
+            }
+            return Future.all(running).compose(all -> {
+                if (started.get() == 0 && !queue.isEmpty()) {
+                    return Future.failedFuture("Не удалось открыть SFTP-каналы для копирования");
+                }
+                return Future.succeededFuture();
+            });
+        });
+    }
+
+    private void runWorker(AtomicInteger started) {
+        ChannelSftp src = null;
+        ChannelSftp dest = null;
+        try {
+            src = openSftp(srcSession);
+            dest = openSftp(destSession);
+        } catch (Exception e) {
+            // Лимит каналов на соединение (MaxSessions): остальные потоки разберут очередь
+            logger.debug("Copy worker could not open SFTP channels: {}", e.getMessage());
+            if (src != null) src.disconnect();
+            return;
+        }
+        started.incrementAndGet();
+        try {
+            List<FileItem> batch;
+            while (!cancelled && (batch = queue.poll()) != null) {
+                for (FileItem f : batch) {
+                    if (cancelled) return;
+                    copyFile(src, dest, f);
+                }
+            }
+        } finally {
+            src.disconnect();
+            dest.disconnect();
+        }
+    }
+
+    private void copyFile(ChannelSftp src, ChannelSftp dest, FileItem f) {
+        String from = f.rel.isEmpty() ? srcPath : SftpUtils.childPath(srcPath, f.rel);
+        String to = target(f.rel);
+        long[] copied = {0};
+        inFlight.add(f.rel);
+        try {
+            long offset = resume ? resumeOffset(dest, to, f) : 0;
+            if (offset == f.size && offset > 0) {
+                // Файл уже скопирован до перезапуска
+                copied[0] = offset;
+                transferred.addAndGet(offset);
+                return;
+            }
+            if (offset > 0 || !tryDeltaCopy(src, dest, from, to, f, copied)) {
+                // offset > 0 - докачка файла, прерванного перезапуском: дописываем с конца
+                try (InputStream in = src.get(from, null, offset);
+                     OutputStream out = offset > 0 ? dest.put(to, null, ChannelSftp.RESUME, 0) : dest.put(to, ChannelSftp.OVERWRITE)) {
+                    copied[0] = offset;
+                    transferred.addAndGet(offset);
+                    byte[] buffer = new byte[64 * 1024];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        if (cancelled) throw new InterruptedException("Cancelled");
+                        if (rateLimiter != null) rateLimiter.acquire(read);
+                        out.write(buffer, 0, read);
+                        copied[0] += read;
+                        transferred.addAndGet(read);
+                    }
+                }
+            }
+            try {
+                dest.chmod(f.mode & 07777, to);
+                dest.setMtime(to, f.mtime);
+            } catch (SftpException e) {
+                logger.debug("Could not preserve attributes of {}: {}", to, e.getMessage());
+            }
+        } catch (Exception e) {
+            if (!cancelled) errors.add((f.rel.isEmpty() ? srcPath : f.rel) + ": " + e.getMessage());
+        } finally {
+            // Файл изменил размер во время копирования или не скопирован - прогресс все равно доходит до конца
+            transferred.addAndGet(f.size - copied[0]);
+            filesDone.incrementAndGet();
+            inFlight.remove(f.rel);
+        }
+    }
+
+    // Продолжение после перезапуска: файл с тем же размером и mtime уже скопирован (mtime ставится
+    // после записи), а недописанный файл из тех, что были в работе, докачивается с текущего размера
+    private long resumeOffset(ChannelSftp dest, String to, FileItem f) {
+        SftpATTRS existing;
+        try {
+            existing = dest.stat(to);
+        } catch (SftpException e) {
+            return 0;
+        }
+        if (!existing.isReg()) return 0;
+        if (existing.getSize() == f.size && existing.getMTime() == f.mtime) return f.size;
+        if (resumeInFlight.contains(f.rel) && existing.getSize() < f.size) return existing.getSize();
+        return 0;
+    }
+
+    // Дельта поверх существующего файла приемника. false - нужно обычное копирование
+    // (файла нет, он мал, нет python3 на приемнике или приемник изменился по ходу)
+    private boolean tryDeltaCopy(ChannelSftp src, ChannelSftp dest, String from, String to, FileItem f, long[] copied) throws Exception {
+        if (!delta || deltaUnavailable || f.size < DELTA_MIN_BYTES) return false;
+        SftpATTRS existing;
+        try {
+            existing = dest.stat(to);
+        } catch (SftpException e) {
+            return false;
+        }
+        if (!existing.isReg() || existing.getSize() == 0) return false;
+
+        try (InputStream in = src.get(from)) {
+            DeltaCopy.Result result = DeltaCopy.copy(in, destSession, to, existing.getSize(), read -> {
+                copied[0] += read;
+                transferred.addAndGet(read);
+            }, () -> cancelled, rateLimiter);
+            bytesSaved.addAndGet(result.bytesSaved());
+            deltaFiles.incrementAndGet();
+            logger.debug("Delta copy of {}: {} literal, {} matched, {} saved", to, result.literalBytes, result.matchedBytes, result.bytesSaved());
+            return true;
+        } catch (DeltaCopy.UnavailableException e) {
+            if (e.isToolingMissing()) {
+                deltaUnavailable = true;
+            }
+            logger.debug("Delta copy of {} unavailable, copying in full: {}", to, e.getMessage());
+            transferred.addAndGet(-copied[0]);
+            copied[0] = 0;
+            return false;
+        }
+    }
+
+    private static void mkdirIfMissing(ChannelSftp sftp, String path) throws SftpException {
+        try {
+            sftp.mkdir(path);
+        } catch (SftpException e) {
+            SftpATTRS attrs;
+            try {
+                attrs = sftp.stat(path);
+            } catch (SftpException notFound) {
+                throw e;
+            }
+            if (!attrs.isDir()) throw e;
+        }
+    }
+
+    private String target(String rel) {
+        return rel.isEmpty() ? destPath : SftpUtils.childPath(destPath, rel);
+    }
+
+    private static ChannelSftp openSftp(Session session) throws com.jcraft.jsch.JSchException {
+        ChannelSftp sftp = (ChannelSftp) session.openChannel("sftp");
+        sftp.connect(15000);
+        return sftp;
+    }
+}
@@ -0,0 +1,200 @@
+package org.console.utils;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+// Постраничная выдача листинга с сортировкой и фильтром по имени на стороне бекенда.
+// Страницы адресуются курсором (ключ сортировки последней записи), поэтому для любой страницы
+// в памяти держится не больше limit записей, независимо от размера каталога.
+public class DirectoryPaging {
+
+    public static class Query {
+        final String sort;
+        final boolean desc;
+        final String filter;
+        final int limit;
+        final Entry cursor;
+
+        private Query(String sort, boolean desc, String filter, int limit, Entry cursor) {
+            this.sort = sort;
+            this.desc = desc;
+            this.filter = filter;
+            this.limit = limit;
+            this.cursor = cursor;
+        }
+
+        // sort: name | size | mtime; order: asc | desc; filter - подстрока имени без учета регистра
+        public static Query fromJson(JsonObject body, int defaultLimit, int maxLimit) {
+            String sort = body.getString("sort", "name");
+            if (!"size".equals(sort) && !"mtime".equals(sort)) sort = "name";
+            String filter = body.getString("filter", "").trim().toLowerCase(Locale.ROOT);
+            int limit = Math.max(1, Math.min(body.getInteger("limit", defaultLimit), maxLimit));
+            JsonObject c = body.getJsonObject("cursor");
+            Entry cursor = c == null ? null : new Entry(c.getString("name", ""), c.getLong("size", 0L), c.getLong("mtime", 0L), c.getBoolean("isDir", false), null);
+            return new Query(sort, "desc".equals(body.getString("order")), filter, limit, cursor);
+        }
+
+        public boolean isFirstPage() {
+            return cursor == null;
+        }
+
+        boolean accepts(String name) {
+            return filter.isEmpty() || name.toLowerCase(Locale.ROOT).contains(filter);
+        }
+
+        // Каталоги всегда первыми (как в FilesView), затем ключ сортировки, затем имя - порядок полный
+        Comparator<Entry> comparator() {
+            Comparator<Entry> byKey;
+            if ("size".equals(sort)) {
+                byKey = Comparator.comparingLong(e -> e.size);
+            } else if ("mtime".equals(sort)) {
+                byKey = Comparator.comparingLong(e -> e.mtime);
+            } else {
+                byKey = Comparator.comparing(e -> e.name);
+            }
+            byKey = byKey.thenComparing(e -> e.name);
+            if (desc) byKey = byKey.reversed();
+            return Comparator.<Entry>comparingInt(e -> e.dir ? 0 : 1).thenComparing(byKey);
+        }
+    }
+
+    static class Entry {
+        final String name;
+        final long size;
+        final long mtime;
+        final boolean dir;
+        final Object source; // SftpATTRS при обходе каталога или JsonObject из кэша
+
+        Entry(String name, long size, long mtime, boolean dir, Object source) {
+            this.name = name;
+            this.size = size;
+            this.mtime = mtime;
+            this.dir = dir;
+            this.source = source;
+        }
+    }
+
+    public static class Result {
+        // Полный листинг, если каталог поместился в maxFullEntries, иначе null
+        public JsonArray allFiles;
+        public JsonObject page;
+    }
+
+    // Один проход SFTP readdir. Пока записей не больше maxFullEntries, собирается и полный листинг
+    // (для кэша); при переполнении он отбрасывается и остается только окно страницы.
+    public static Result scan(ChannelSftp sftp, String path, Query query, int maxFullEntries) throws Exception {
+        Comparator<Entry> order = query.comparator();
+        PageCollector collector = new PageCollector(query, order);
+        List<Entry> all = new ArrayList<>();
+        int[] totalEntries = {0};
+
+        sftp.ls(path, lsEntry -> {
+            String name = lsEntry.getFilename();
+            if (".".equals(name) || "..".equals(name)) return ChannelSftp.LsEntrySelector.CONTINUE;
+            SftpATTRS attrs = lsEntry.getAttrs();
+            Entry entry = new Entry(name, attrs.getSize(), attrs.getMTime(), attrs.isDir(), attrs);
+            totalEntries[0]++;
+            if (totalEntries[0] <= maxFullEntries) {
+                all.add(entry);
+            } else if (!all.isEmpty()) {
+                // Каталог слишком большой для кэша - полный листинг больше не нужен
+                all.clear();
+            }
+            collector.offer(entry);
+            return ChannelSftp.LsEntrySelector.CONTINUE;
+        });
+
+        Result result = new Result();
+        if (totalEntries[0] <= maxFullEntries) {
+            all.sort(Comparator.comparing(e -> e.name));
+            JsonArray files = new JsonArray();
+            for (Entry e : all) {
+                files.add(SftpUtils.entryToJson(sftp, path, e.name, (SftpATTRS) e.source));
+            }
+            result.allFiles = files;
+            result.page = page(files, query);
+        } else {
+            // Ссылки разрешаются только для записей страницы
+            JsonArray files = new JsonArray();
+            List<Entry> window = collector.sorted();
+            for (Entry e : window) {
+                files.add(SftpUtils.entryToJson(sftp, path, e.name, (SftpATTRS) e.source));
+            }
+            result.page = collector.toPage(files, window, totalEntries[0]);
+        }
+        return result;
+    }
+
+    // Страница из уже загруженного (кэшированного) листинга
+    public static JsonObject page(JsonArray files, Query query) {
+        PageCollector collector = new PageCollector(query, query.comparator());
+        for (int i = 0; i < files.size(); i++) {
+            JsonObject f = files.getJsonObject(i);
+            collector.offer(new Entry(f.getString("name"), f.getLong("size", 0L), f.getLong("mtime", 0L), f.getBoolean("isDir", false), f));
+        }
+        List<Entry> window = collector.sorted();
+        JsonArray pageFiles = new JsonArray();
+        for (Entry e : window) {
+            pageFiles.add((JsonObject) e.source);
+        }
+        return collector.toPage(pageFiles, window, files.size());
+    }
+
+    // Держит limit + 1 лучших записей после курсора: лишняя запись только сообщает, что есть продолжение
+    private static class PageCollector {
+        private final Query query;
+        private final Comparator<Entry> order;
+        private final PriorityQueue<Entry> heap;
+        private int matched;
+
+        PageCollector(Query query, Comparator<Entry> order) {
+            this.query = query;
+            this.order = order;
+            this.heap = new PriorityQueue<>(query.limit + 1, order.reversed());
+        }
+
+        void offer(Entry entry) {
+            if (!query.accepts(entry.name)) return;
+            matched++;
+            if (query.cursor != null && order.compare(entry, query.cursor) <= 0) return;
+            if (heap.size() <= query.limit) {
+                heap.add(entry);
+            } else if (order.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+
+        List<Entry> sorted() {
+            List<Entry> window = new ArrayList<>(heap);
+            window.sort(order);
+            return window.size() > query.limit ? window.subList(0, query.limit) : window;
+        }
+
+        JsonObject toPage(JsonArray files, List<Entry> window, int totalEntries) {
+            boolean hasMore = heap.size() > query.limit;
+            JsonObject page = new JsonObject()
+                .put("files", files)
+                .put("total", matched)
+                .put("totalEntries", totalEntries)
+                .put("hasMore", hasMore);
+            if (hasMore) {
+                Entry last = window.get(window.size() - 1);
+                page.put("nextCursor", new JsonObject()
+                    .put("name", last.name)
+                    .put("size", last.size)
+                    .put("mtime", last.mtime)
+                    .put("isDir", last.dir));
+            }
+            return page;
+        }
+    }
+}
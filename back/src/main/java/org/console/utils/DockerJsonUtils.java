@@ -0,0 +1,90 @@
+package org.console.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+public class DockerJsonUtils {
+    private static final JsonFactory factory = new JsonFactory();
+
+    // Дешевая проверка без разбора: документ начинается и заканчивается парными скобками
+    public static boolean looksLikeJson(String data) {
+        if (data == null) return false;
+        int start = 0;
+        int end = data.length() - 1;
+        while (start <= end && Character.isWhitespace(data.charAt(start))) start++;
+        while (end >= start && Character.isWhitespace(data.charAt(end))) end--;
+        if (start >= end) return false;
+        char first = data.charAt(start);
+        char last = data.charAt(end);
+        return (first == '[' && last == ']') || (first == '{' && last == '}');
+    }
+
+    // Потоковая проекция полей без построения дерева JsonObject/JsonArray.
+    // Поля задаются путями через точку ("Id", "State.Status", "Mounts.Destination");
+    // для массивов проекция применяется к каждому элементу.
+    public static String project(String json, Collection<String> fields) throws IOException {
+        FieldNode root = new FieldNode();
+        for (String field : fields) {
+            if (field == null || field.isEmpty()) continue;
+            FieldNode node = root;
+            for (String part : field.split("\\.")) {
+                if (node.leaf) break;
+                node = node.children.computeIfAbsent(part, k -> new FieldNode());
+            }
+            node.leaf = true;
+            node.children.clear();
+        }
+
+        StringWriter out = new StringWriter(Math.max(16, json.length() / 8));
+        try (JsonParser parser = factory.createParser(json); JsonGenerator generator = factory.createGenerator(out)) {
+            if (parser.nextToken() != null) {
+                copyProjected(parser, generator, root);
+            }
+        }
+        return out.toString();
+    }
+
+    private static void copyProjected(JsonParser parser, JsonGenerator generator, FieldNode node) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_ARRAY) {
+            generator.writeStartArray();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                copyProjected(parser, generator, node);
+            }
+            generator.writeEndArray();
+        } else if (token == JsonToken.START_OBJECT) {
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                FieldNode child = node.children.get(name);
+                if (child == null) {
+                    parser.skipChildren();
+                } else {
+                    generator.writeFieldName(name);
+                    if (child.leaf) {
+                        generator.copyCurrentStructure(parser);
+                    } else {
+                        copyProjected(parser, generator, child);
+                    }
+                }
+            }
+            generator.writeEndObject();
+        } else {
+            generator.copyCurrentEvent(parser);
+        }
+    }
+
+    private static class FieldNode {
+        final Map<String, FieldNode> children = new HashMap<>();
+        boolean leaf;
+    }
+}
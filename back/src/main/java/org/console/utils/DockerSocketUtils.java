@@ -0,0 +1,319 @@
+package org.console.utils;
+
+import com.jcraft.jsch.ChannelDirectStreamLocal;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+// HTTP поверх Unix-сокета Docker, проброшенного через SSH (direct-streamlocal@openssh.com).
+// Вызовы блокирующие - выполнять только в executeBlocking.
+public class DockerSocketUtils {
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+
+    public static ChannelDirectStreamLocal openChannel(Session session, String socketPath) throws JSchException {
+        ChannelDirectStreamLocal channel = (ChannelDirectStreamLocal) session.openChannel("direct-streamlocal@openssh.com");
+        channel.setSocketPath(socketPath);
+        return channel;
+    }
+
+    // Одиночный запрос с Connection: close; ответы с кодом >= 400 превращаются в исключение с текстом Docker
+    public static String request(Session session, String socketPath, String method, String path, String body) throws Exception {
+        try (InputStream in = openStream(session, socketPath, method, path, body)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // Потоковый запрос: возвращает тело ответа без заголовков и chunked-кодирования.
+    // Закрытие потока закрывает канал SSH.
+    public static InputStream openStream(Session session, String socketPath, String method, String path, String body) throws Exception {
+        ChannelDirectStreamLocal channel = openChannel(session, socketPath);
+        try {
+            InputStream in = channel.getInputStream();
+            OutputStream out = channel.getOutputStream();
+            channel.connect(CONNECT_TIMEOUT_MS);
+            out.write(buildRequest(method, path, body, false));
+            out.flush();
+
+            String headers = readHeaders(in);
+            int status = parseStatus(headers);
+            InputStream payload = headers.toLowerCase().contains("transfer-encoding: chunked") ? new ChunkedInputStream(in) : in;
+            if (status >= 400) {
+                String message = new String(payload.readNBytes(4096), StandardCharsets.UTF_8).trim();
+                throw new DockerApiException(status, message);
+            }
+            return new FilterInputStream(payload) {
+                @Override
+                public void close() {
+                    channel.disconnect();
+                }
+            };
+        } catch (Exception e) {
+            channel.disconnect();
+            throw e;
+        }
+    }
+
+    // Ответ Docker с кодом >= 400: код нужен вызывающему, чтобы отличить, например, неизвестный контейнер (404)
+    public static class DockerApiException extends IOException {
+        private final int status;
+
+        public DockerApiException(int status, String message) {
+            super("Docker API error " + status + ": " + message);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+
+    private static String readHeaders(InputStream in) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        int last4 = 0;
+        while (last4 != 0x0D0A0D0A) {
+            int b = in.read();
+            if (b < 0 || header.size() > 64 * 1024) {
+                throw new IOException("Invalid Docker API response");
+            }
+            header.write(b);
+            last4 = (last4 << 8) | b;
+        }
+        return header.toString(StandardCharsets.US_ASCII);
+    }
+
+    // upgrade=true - запрос на захват соединения (hijack): после ответа 101 поток становится сырым
+    public static byte[] buildRequest(String method, String path, String body, boolean upgrade) {
+        byte[] payload = body != null ? body.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        StringBuilder request = new StringBuilder()
+            .append(method).append(' ').append(path).append(" HTTP/1.1\r\n")
+            .append("Host: docker\r\n");
+        if (upgrade) {
+            request.append("Connection: Upgrade\r\nUpgrade: tcp\r\n");
+        } else {
+            request.append("Connection: close\r\n");
+        }
+        if (body != null) {
+            request.append("Content-Type: application/json\r\n");
+        }
+        request.append("Content-Length: ").append(payload.length).append("\r\n\r\n");
+
+        byte[] head = request.toString().getBytes(StandardCharsets.US_ASCII);
+        byte[] result = new byte[head.length + payload.length];
+        System.arraycopy(head, 0, result, 0, head.length);
+        System.arraycopy(payload, 0, result, head.length, payload.length);
+        return result;
+    }
+
+    private static int parseStatus(String headers) {
+        String[] statusLine = headers.split("\r\n", 2)[0].split(" ");
+        try {
+            return statusLine.length > 1 ? Integer.parseInt(statusLine[1]) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    // Декодирование Transfer-Encoding: chunked на лету
+    public static class ChunkedInputStream extends InputStream {
+        private final InputStream in;
+        private long chunkRemaining;
+        private boolean eof;
+
+        public ChunkedInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (eof) return -1;
+            if (chunkRemaining == 0) {
+                String line = readLine();
+                if (line.isEmpty()) line = readLine(); // CRLF после предыдущего блока
+                try {
+                    chunkRemaining = Long.parseLong(line.split(";")[0].trim(), 16);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid chunk size: " + line);
+                }
+                if (chunkRemaining == 0) {
+                    eof = true;
+                    return -1;
+                }
+            }
+            int n = in.read(b, off, (int) Math.min(len, chunkRemaining));
+            if (n < 0) {
+                eof = true;
+                return -1;
+            }
+            chunkRemaining -= n;
+            return n;
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) >= 0 && c != '\n') {
+                if (c != '\r') line.append((char) c);
+            }
+            if (c < 0 && line.length() == 0) {
+                eof = true;
+                return "0";
+            }
+            return line.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // Разбор мультиплексированного потока логов (8 байт заголовка + данные) на лету.
+    // Контейнеры с TTY отдают сырой поток - он определяется по первому заголовку и пропускается как есть.
+    public static class LogDemuxInputStream extends InputStream {
+        private final InputStream in;
+        private boolean detected;
+        private boolean raw;
+        private byte[] pending;
+        private int pendingPos;
+        private int frameRemaining;
+        private int streamType;
+
+        public LogDemuxInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        // 1 - stdout, 2 - stderr, 0 - сырой поток
+        public int currentStream() {
+            return raw ? 0 : streamType;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (!detected) {
+                detected = true;
+                byte[] header = in.readNBytes(8);
+                if (isFrameHeader(header)) {
+                    startFrame(header);
+                } else {
+                    raw = true;
+                    pending = header;
+                }
+            }
+            if (raw) {
+                if (pending != null && pendingPos < pending.length) {
+                    int n = Math.min(len, pending.length - pendingPos);
+                    System.arraycopy(pending, pendingPos, b, off, n);
+                    pendingPos += n;
+                    return n;
+                }
+                return in.read(b, off, len);
+            }
+            while (frameRemaining == 0) {
+                byte[] header = in.readNBytes(8);
+                if (header.length < 8) return -1;
+                startFrame(header);
+            }
+            int n = in.read(b, off, Math.min(len, frameRemaining));
+            if (n < 0) return -1;
+            frameRemaining -= n;
+            return n;
+        }
+
+        private void startFrame(byte[] header) {
+            streamType = header[0];
+            frameRemaining = ((header[4] & 0xff) << 24) | ((header[5] & 0xff) << 16) | ((header[6] & 0xff) << 8) | (header[7] & 0xff);
+        }
+
+        private static boolean isFrameHeader(byte[] header) {
+            return header.length == 8 && header[0] >= 0 && header[0] <= 2 && header[1] == 0 && header[2] == 0 && header[3] == 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // Отрезает HTTP-заголовки ответа на hijack и дальше пропускает сырой поток терминала
+    public static class HijackedOutputStream extends OutputStream {
+        private static final int MAX_HEADER_SIZE = 16 * 1024;
+        private final OutputStream target;
+        private ByteArrayOutputStream header = new ByteArrayOutputStream();
+
+        public HijackedOutputStream(OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (header == null) {
+                target.write(b, off, len);
+                return;
+            }
+            header.write(b, off, len);
+            byte[] buffered = header.toByteArray();
+            int headerEnd = indexOf(buffered, "\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            if (headerEnd < 0) {
+                if (buffered.length > MAX_HEADER_SIZE) {
+                    header = null;
+                    target.write(buffered);
+                }
+                return;
+            }
+            header = null;
+            String headers = new String(buffered, 0, headerEnd, StandardCharsets.US_ASCII);
+            int status = parseStatus(headers);
+            if (status != 101 && status != 200) {
+                // Тело ответа (JSON с сообщением Docker) покажем пользователю как есть
+                target.write(("\r\nDocker exec attach failed: " + headers.split("\r\n", 2)[0] + "\r\n").getBytes(StandardCharsets.UTF_8));
+            }
+            if (buffered.length > headerEnd + 4) {
+                target.write(buffered, headerEnd + 4, buffered.length - headerEnd - 4);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            target.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.console.utils;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+public class DockerStatsUtils {
+
+    // Сводка по ответу /containers/{id}/stats: те же формулы, что использует docker stats
+    public static JsonObject summarize(String containerId, JsonObject stats) {
+        JsonObject summary = new JsonObject().put("id", containerId).put("source", "docker");
+        if (stats == null) return summary;
+
+        JsonObject cpu = stats.getJsonObject("cpu_stats", new JsonObject());
+        JsonObject precpu = stats.getJsonObject("precpu_stats", new JsonObject());
+        long cpuDelta = getLong(cpu.getJsonObject("cpu_usage"), "total_usage") - getLong(precpu.getJsonObject("cpu_usage"), "total_usage");
+        long systemDelta = getLong(cpu, "system_cpu_usage") - getLong(precpu, "system_cpu_usage");
+        int onlineCpus = cpu.getInteger("online_cpus", 0);
+        if (onlineCpus == 0) {
+            JsonArray perCpu = cpu.getJsonObject("cpu_usage", new JsonObject()).getJsonArray("percpu_usage");
+            onlineCpus = perCpu != null && !perCpu.isEmpty() ? perCpu.size() : 1;
+        }
+        double cpuPercent = (systemDelta > 0 && cpuDelta > 0) ? (double) cpuDelta / systemDelta * onlineCpus * 100.0 : 0.0;
+
+        JsonObject memory = stats.getJsonObject("memory_stats", new JsonObject());
+        long memUsage = getLong(memory, "usage");
+        JsonObject memDetails = memory.getJsonObject("stats", new JsonObject());
+        // cgroup v1: total_inactive_file, cgroup v2: inactive_file
+        long inactiveFile = memDetails.containsKey("total_inactive_file") ? getLong(memDetails, "total_inactive_file") : getLong(memDetails, "inactive_file");
+        if (inactiveFile > 0 && inactiveFile < memUsage) {
+            memUsage -= inactiveFile;
+        }
+        long memLimit = getLong(memory, "limit");
+
+        long rx = 0, tx = 0;
+        JsonObject networks = stats.getJsonObject("networks");
+        if (networks != null) {
+            for (String name : networks.fieldNames()) {
+                JsonObject net = networks.getJsonObject(name);
+                rx += getLong(net, "rx_bytes");
+                tx += getLong(net, "tx_bytes");
+            }
+        }
+
+        long blkRead = 0, blkWrite = 0;
+        JsonObject blkio = stats.getJsonObject("blkio_stats");
+        JsonArray ioBytes = blkio != null ? blkio.getJsonArray("io_service_bytes_recursive") : null;
+        if (ioBytes != null) {
+            for (int i = 0; i < ioBytes.size(); i++) {
+                JsonObject entry = ioBytes.getJsonObject(i);
+                String op = entry.getString("op", "");
+                if ("read".equalsIgnoreCase(op)) blkRead += getLong(entry, "value");
+                else if ("write".equalsIgnoreCase(op)) blkWrite += getLong(entry, "value");
+            }
+        }
+
+        return summary
+            .put("name", stats.getString("name", "").replace("/", ""))
+            .put("cpuPercent", round2(cpuPercent))
+            .put("onlineCpus", onlineCpus)
+            .put("memoryUsage", memUsage)
+            .put("memoryLimit", memLimit)
+            .put("memoryPercent", memLimit > 0 ? round2((double) memUsage / memLimit * 100.0) : 0.0)
+            .put("netRx", rx)
+            .put("netTx", tx)
+            .put("blockRead", blkRead)
+            .put("blockWrite", blkWrite)
+            .put("pids", getLong(stats.getJsonObject("pids_stats"), "current"))
+            .put("timestamp", readTime(stats));
+    }
+
+    // Время замера из поля read ответа Docker: повторная выдача того же ответа из кэша сохраняет метку,
+    // и история не записывает ее как новый замер с нулевой скоростью
+    private static long readTime(JsonObject stats) {
+        try {
+            long read = java.time.Instant.parse(stats.getString("read", "")).toEpochMilli();
+            // У остановленного контейнера read - нулевая дата 0001-01-01
+            if (read > 0) return read;
+        } catch (Exception ignored) {
+        }
+        return System.currentTimeMillis();
+    }
+
+    private static long getLong(JsonObject obj, String key) {
+        if (obj == null) return 0;
+        Object value = obj.getValue(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private static double round2(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+}
@@ -0,0 +1,72 @@
+package org.console.utils;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+public class FutureUtils {
+
+    // Выполняет action для каждого элемента, держа в работе не более parallelism операций.
+    // Ошибки отдельных элементов не прерывают обход - их обрабатывает сам action.
+    public static <T> Future<Void> forEachBounded(List<T> items, int parallelism, Function<T, Future<?>> action) {
+        return forEachBounded(items, parallelism, () -> false, action);
+    }
+
+    public static <T> Future<Void> forEachBounded(List<T> items, int parallelism, BooleanSupplier cancelled, Function<T, Future<?>> action) {
+        Promise<Void> promise = Promise.promise();
+        new BoundedRun<>(items, Math.max(1, parallelism), cancelled, action, promise).launch();
+        return promise.future();
+    }
+
+    private static class BoundedRun<T> {
+        private final List<T> items;
+        private final int parallelism;
+        private final BooleanSupplier cancelled;
+        private final Function<T, Future<?>> action;
+        private final Promise<Void> promise;
+        private int next;
+        private int inFlight;
+
+        BoundedRun(List<T> items, int parallelism, BooleanSupplier cancelled, Function<T, Future<?>> action, Promise<Void> promise) {
+            this.items = items;
+            this.parallelism = parallelism;
+            this.cancelled = cancelled;
+            this.action = action;
+            this.promise = promise;
+        }
+
+        void launch() {
+            while (true) {
+                T item;
+                synchronized (this) {
+                    if (cancelled.getAsBoolean()) {
+                        next = items.size();
+                    }
+                    if (next >= items.size() || inFlight >= parallelism) {
+                        if (next >= items.size() && inFlight == 0) {
+                            promise.tryComplete();
+                        }
+                        return;
+                    }
+                    item = items.get(next++);
+                    inFlight++;
+                }
+                Future<?> future;
+                try {
+                    future = action.apply(item);
+                } catch (Exception e) {
+                    future = Future.failedFuture(e);
+                }
+                future.onComplete(ar -> {
+                    synchronized (this) {
+                        inFlight--;
+                    }
+                    launch();
+                });
+            }
+        }
+    }
+}
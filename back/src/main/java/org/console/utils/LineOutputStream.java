@@ -0,0 +1,49 @@
+package org.console.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+// Приемник вывода exec-канала (ChannelExec.setOutputStream): режет поток на строки без перевода.
+// Пишет поток сессии JSch, поэтому обработчики не должны блокировать - обычно только runOnContext.
+// Строки длиннее maxLineBytes обрезаются, пустые пропускаются; close() JSch вызывает при завершении канала.
+public class LineOutputStream extends OutputStream {
+    private final int maxLineBytes;
+    private final Consumer<byte[]> onLine;
+    private final Runnable onClose;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+    private boolean closed;
+
+    public LineOutputStream(int maxLineBytes, Consumer<byte[]> onLine, Runnable onClose) {
+        this.maxLineBytes = maxLineBytes;
+        this.onLine = onLine;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        if (b == '\n') {
+            if (buffer.size() > 0) onLine.accept(buffer.toByteArray());
+            buffer.reset();
+        } else if (buffer.size() < maxLineBytes) {
+            buffer.write(b);
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            write(b[i]);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        // Последняя строка без перевода в конце вывода
+        if (buffer.size() > 0) onLine.accept(buffer.toByteArray());
+        buffer.reset();
+        onClose.run();
+    }
+}
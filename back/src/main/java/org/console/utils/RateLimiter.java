@@ -0,0 +1,40 @@
+package org.console.utils;
+
+// Ограничение скорости передачи (token bucket) для рабочих потоков.
+// Один экземпляр на задание делится всеми его потоками; скорость можно менять на ходу.
+public class RateLimiter {
+    private volatile long bytesPerSec;
+    private double available;
+    private long lastRefill = System.nanoTime();
+
+    // bytesPerSec <= 0 - без ограничения
+    public RateLimiter(long bytesPerSec) {
+        this.bytesPerSec = Math.max(0, bytesPerSec);
+    }
+
+    public long getRate() {
+        return bytesPerSec;
+    }
+
+    public void setRate(long bytesPerSec) {
+        this.bytesPerSec = Math.max(0, bytesPerSec);
+    }
+
+    // Блокирует поток, пока не накопится разрешение на bytes байт; долг копится, поэтому средняя скорость точная
+    public void acquire(int bytes) throws InterruptedException {
+        long sleepMs;
+        synchronized (this) {
+            long rate = bytesPerSec;
+            if (rate <= 0) return;
+            long now = System.nanoTime();
+            // Запас не больше четверти секунды - без длинных всплесков после простоя
+            available = Math.min(available + (now - lastRefill) * rate / 1e9, rate / 4.0);
+            lastRefill = now;
+            available -= bytes;
+            sleepMs = available < 0 ? (long) (-available * 1000 / rate) : 0;
+        }
+        if (sleepMs > 0) {
+            Thread.sleep(sleepMs);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.console.utils;
+
+import io.vertx.core.Context;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+
+// InputStream поверх тела HttpServerRequest для рабочих потоков (executeBlocking) - пара к ResponseOutputStream.
+// Запрос ставится на паузу, пока в очереди больше HIGH_WATER байт: медленная запись на сервер
+// притормаживает клиента через TCP, а не раздувает память бекенда.
+// Создавать в контексте запроса; запрос к этому моменту должен быть на паузе, чтобы не потерять начало тела.
+public class RequestInputStream extends InputStream {
+    private static final int HIGH_WATER = 1024 * 1024;
+    private static final int LOW_WATER = 256 * 1024;
+    private static final long READ_TIMEOUT_MS = 120000;
+
+    private final HttpServerRequest request;
+    private final Context context;
+    private final long maxBytes;
+    private final ArrayDeque<Buffer> queue = new ArrayDeque<>();
+    private Buffer current;
+    private int currentPos;
+    private long queued;
+    private long received;
+    private boolean paused = true;
+    private boolean ended;
+    private boolean closed;
+    private Throwable error;
+
+    // maxBytes - предел тела запроса; -1 - без ограничения
+    public RequestInputStream(HttpServerRequest request, Context context, long maxBytes) {
+        this.request = request;
+        this.context = context;
+        this.maxBytes = maxBytes;
+        request.handler(this::onData);
+        request.endHandler(v -> onEnd(null));
+        request.exceptionHandler(this::onEnd);
+        resumeRequest();
+    }
+
+    private synchronized void onData(Buffer buffer) {
+        if (closed) return;
+        received += buffer.length();
+        if (maxBytes >= 0 && received > maxBytes) {
+            error = new IOException("Request body exceeds " + maxBytes + " bytes");
+            notifyAll();
+            return;
+        }
+        queue.add(buffer);
+        queued += buffer.length();
+        if (queued >= HIGH_WATER && !paused) {
+            paused = true;
+            request.pause();
+        }
+        notifyAll();
+    }
+
+    private synchronized void onEnd(Throwable cause) {
+        if (cause != null && error == null) error = cause;
+        ended = true;
+        notifyAll();
+    }
+
+    private synchronized void resumeRequest() {
+        if (!paused || ended) return;
+        paused = false;
+        context.runOnContext(v -> request.resume());
+    }
+
+    // Байты, полученные от клиента (включая еще не прочитанные из очереди)
+    public synchronized long received() {
+        return received;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        long deadline = System.currentTimeMillis() + READ_TIMEOUT_MS;
+        while (current == null) {
+            if (error != null) throw error instanceof IOException io ? io : new IOException(error.getMessage(), error);
+            if (closed) throw new IOException("Stream closed");
+            current = queue.poll();
+            currentPos = 0;
+            if (current != null) break;
+            if (ended) return -1;
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) throw new IOException("Client stopped sending the request body");
+            try {
+                wait(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for request body", e);
+            }
+        }
+        int n = Math.min(len, current.length() - currentPos);
+        current.getBytes(currentPos, currentPos + n, b, off);
+        currentPos += n;
+        queued -= n;
+        if (currentPos >= current.length()) {
+            current = null;
+        }
+        if (paused && queued <= LOW_WATER) {
+            resumeRequest();
+        }
+        return n;
+    }
+
+    // Непрочитанный остаток тела отбрасывается - соединение остается пригодным для ответа
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        queue.clear();
+        current = null;
+        queued = 0;
+        if (!ended) {
+            context.runOnContext(v -> {
+                request.handler(buffer -> {
+                });
+                request.resume();
+            });
+        }
+        notifyAll();
+    }
+}
@@ -0,0 +1,73 @@
+package org.console.utils;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// OutputStream поверх HttpServerResponse для рабочих потоков (executeBlocking).
+// При заполненной очереди записи ждет drain, чтобы медленный клиент не раздувал память бекенда.
+public class ResponseOutputStream extends OutputStream {
+    private static final long DRAIN_TIMEOUT_MS = 120000;
+    private final HttpServerResponse response;
+    private volatile boolean closed;
+    private volatile CountDownLatch drained;
+
+    public ResponseOutputStream(HttpServerResponse response) {
+        this.response = response;
+        response.closeHandler(v -> {
+            closed = true;
+            CountDownLatch latch = drained;
+            if (latch != null) latch.countDown();
+        });
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Client closed connection");
+        }
+        if (len == 0) return;
+        response.write(Buffer.buffer(Arrays.copyOfRange(b, off, off + len)));
+        if (response.writeQueueFull()) {
+            CountDownLatch latch = new CountDownLatch(1);
+            drained = latch;
+            response.drainHandler(v -> latch.countDown());
+            // drain мог случиться до установки обработчика
+            if (response.writeQueueFull() && !closed) {
+                try {
+                    if (!latch.await(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                        throw new IOException("Client is not reading the response");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for client", e);
+                }
+            }
+            drained = null;
+            if (closed) {
+                throw new IOException("Client closed connection");
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed && !response.ended()) {
+            response.end();
+        }
+    }
+}
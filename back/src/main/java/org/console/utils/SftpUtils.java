@@ -0,0 +1,112 @@
+package org.console.utils;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpStatVFS;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+// Листинг каталогов через SFTP: типизированные атрибуты вместо разбора вывода ls
+public class SftpUtils {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
+    public static String resolvePath(ChannelSftp sftp, String path) throws Exception {
+        return sftp.realpath(path == null || path.isEmpty() ? "." : path);
+    }
+
+    public static String childPath(String dir, String name) {
+        return dir.endsWith("/") ? dir + name : dir + "/" + name;
+    }
+
+    // Блокирующий вызов: path должен быть уже разрешен через resolvePath.
+    // null, если в каталоге больше maxEntries записей - такие каталоги читаются только постранично
+    public static JsonArray listDirectory(ChannelSftp sftp, String path, int maxEntries) throws Exception {
+        List<ChannelSftp.LsEntry> entries = new ArrayList<>();
+        boolean[] overflow = {false};
+        sftp.ls(path, entry -> {
+            String name = entry.getFilename();
+            if (".".equals(name) || "..".equals(name)) return ChannelSftp.LsEntrySelector.CONTINUE;
+            if (entries.size() >= maxEntries) {
+                overflow[0] = true;
+                return ChannelSftp.LsEntrySelector.BREAK;
+            }
+            entries.add(entry);
+            return ChannelSftp.LsEntrySelector.CONTINUE;
+        });
+        if (overflow[0]) return null;
+        entries.sort(Comparator.comparing(ChannelSftp.LsEntry::getFilename));
+
+        JsonArray files = new JsonArray();
+        for (ChannelSftp.LsEntry entry : entries) {
+            files.add(entryToJson(sftp, path, entry.getFilename(), entry.getAttrs()));
+        }
+        return files;
+    }
+
+    // Ссылки дополнительно разрешаются через stat - вызывать вне LsEntrySelector
+    public static JsonObject entryToJson(ChannelSftp sftp, String dir, String name, SftpATTRS attrs) {
+        boolean isDir = attrs.isDir();
+        JsonObject file = new JsonObject()
+            .put("name", name)
+            .put("size", attrs.getSize())
+            .put("mtime", (long) attrs.getMTime())
+            .put("date", DATE_FORMAT.format(Instant.ofEpochSecond(attrs.getMTime())))
+            .put("perm", attrs.getPermissionsString())
+            .put("perm_numeric", Integer.toOctalString(attrs.getPermissions() & 07777))
+            .put("uid", attrs.getUId())
+            .put("gid", attrs.getGId());
+
+        if (attrs.isLink()) {
+            // ls отдает атрибуты самой ссылки; для навигации нужен тип цели
+            String fullPath = childPath(dir, name);
+            file.put("isLink", true);
+            try {
+                file.put("target", sftp.readlink(fullPath));
+            } catch (Exception ignored) {
+            }
+            try {
+                isDir = sftp.stat(fullPath).isDir();
+            } catch (Exception e) {
+                file.put("broken", true);
+            }
+        }
+        return file.put("isDir", isDir);
+    }
+
+    // statvfs@openssh.com; null, если сервер не поддерживает расширение
+    public static JsonObject diskInfo(ChannelSftp sftp, String path) {
+        try {
+            SftpStatVFS vfs = sftp.statVFS(path);
+            return new JsonObject()
+                .put("size", formatKilobytes(vfs.getSize()))
+                .put("used", formatKilobytes(vfs.getUsed()))
+                .put("avail", formatKilobytes(vfs.getAvail()))
+                .put("usePercent", vfs.getCapacity() + "%");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // Формат как у df -h: 1024-кратные единицы, один знак после запятой для значений меньше 10
+    static String formatKilobytes(long kb) {
+        String[] units = {"K", "M", "G", "T", "P"};
+        double value = kb;
+        int unit = 0;
+        while (value >= 1024 && unit < units.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        if (value < 10 && unit > 0) {
+            return String.format(Locale.ROOT, "%.1f%s", Math.ceil(value * 10) / 10, units[unit]);
+        }
+        return (long) Math.ceil(value) + units[unit];
+    }
+}
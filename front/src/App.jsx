@@ -100,12 +100,14 @@ function App() {
     if (!userId) return;
     const handler = (err, msg) => {
       if (msg && msg.body) {
-        const { taskId, status, percent, srcPath, error } = msg.body;
+        const { taskId, status, percent, srcPath, error, bytes, totalBytes, files, totalFiles, bytesPerSec, bytesSaved,
+                position, priority, bandwidthLimit, resumed } = msg.body;
         setTasks(prev => {
             const currentTask = prev[taskId];
             const hasHadIssues = currentTask && (currentTask.status === 'fallback' || currentTask.status === 'error' || currentTask.hadError);
             
-            if (status === 'done' && !hasHadIssues) {
+            // Итог дельта-копирования с экономией остается в списке, чтобы его было видно
+            if ((status === 'done' && !hasHadIssues && !(bytesSaved > 0)) || status === 'cancelled') {
                 const next = { ...prev };
                 delete next[taskId];
                 return next;
@@ -117,6 +119,8 @@ function App() {
                     srcPath, 
                     status, 
                     percent, 
+                    bytes, totalBytes, files, totalFiles, bytesPerSec, bytesSaved,
+                    position, priority, bandwidthLimit, resumed,
                     error: error || (currentTask ? currentTask.error : null),
                     hadError: hasHadIssues || status === 'error' || status === 'fallback'
                 }
@@ -125,7 +129,21 @@ function App() {
       }
     };
     const addr = `ssh.out.${userId}.files.copy.progress`;
-    return registerHandler(addr, handler);
+    const unregisterCopy = registerHandler(addr, handler);
+    // Пакетные операции с контейнерами публикуют прогресс в том же формате
+    const unregisterDockerBatch = registerHandler(`ssh.out.${userId}.docker.batch.progress`, handler);
+    // Очередь копирований живет на сервере (и переживает перезапуск) - после подключения забираем ее состояние
+    const unsubOpen = subscribeEb('open', () => {
+      eb.send('files.transfer.list', { userId }, (err, res) => {
+        if (err || !res || !res.body || res.body.status !== 'ok') return;
+        res.body.data.forEach(body => handler(null, { body }));
+      });
+    });
+    return () => {
+      unregisterCopy();
+      unregisterDockerBatch();
+      unsubOpen();
+    };
   }, [userId]);
 
   useEffect(() => {
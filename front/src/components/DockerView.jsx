@@ -1,5 +1,5 @@
 import React, { useState, useEffect, useCallback, useRef } from 'react';
-import { eb } from '../services/eventBus';
+import { eb, registerHandler } from '../services/eventBus';
 import { 
   ResponsiveContainer, 
   LineChart, 
@@ -11,8 +11,16 @@ import {
   Legend 
 } from 'recharts';
 
+// Поля, которые нужны таблице контейнеров: остальное отсекается на бекенде
+const CONTAINER_LIST_FIELDS = ['Id', 'Names', 'State', 'Status', 'Image'];
+const CONTAINER_PAGE_SIZE = 100;
+
+// Бекенд может отдать JSON Docker как готовую строку (encoding: 'json'), не разбирая его
+const parseDockerData = (body) => (body.encoding === 'json' && typeof body.data === 'string' ? JSON.parse(body.data) : body.data);
+
 const DockerView = ({ sessionId, userId, onOpenTerminal, status, onRestore, serverName }) => {
   const [containers, setContainers] = useState([]);
+  const [containersTotal, setContainersTotal] = useState(0);
   const [loading, setLoading] = useState(false);
   const [error, setError] = useState(null);
   const [stats, setStats] = useState({});
@@ -21,6 +29,7 @@ const DockerView = ({ sessionId, userId, onOpenTerminal, status, onRestore, serv
   const [logLimits, setLogLimits] = useState({});
   const [logTimestamps, setLogTimestamps] = useState({});
   const [logHeights, setLogHeights] = useState({});
+  const [logSearch, setLogSearch] = useState({}); // containerId -> { query, searchId, matches, running, info }
   const [chartData, setChartData] = useState({});
   const [zoomedContainerId, setZoomedContainerId] = useState(null);
   const [editingEnv, setEditingEnv] = useState(null); // { containerId, env: [], name }
@@ -38,32 +47,76 @@ const DockerView = ({ sessionId, userId, onOpenTerminal, status, onRestore, serv
   const envResizeStartSize = useRef({ width: 0, height: 0, x: 0, y: 0, modalX: 0, modalY: 0 });
 
   const chartRef = useRef(null);
+  // Сколько контейнеров загружено через "Показать ещё" - периодическое обновление перечитывает столько же
+  const listLimitRef = useRef(CONTAINER_PAGE_SIZE);
+
 
+  const handleListError = useCallback((err, res) => {
+    if (err) {
+      if (err.failureCode === 503) {
+         setError('session_idle');
+      } else {
+         setError(err.message || 'Failed to fetch containers');
+      }
+    } else {
+      const msg = res?.body?.message || 'Unknown error';
+      if (msg.includes('разбудите сессию') || msg.includes('503')) {
+         setError('session_idle');
+      } else {
+         setError('Failed to load containers: ' + msg);
+      }
+    }
+  }, []);
+
+  // Сортировка и постраничная выдача выполняются на бекенде: страница - offset + limit
+  const fetchContainerPage = useCallback((offset, callback) => {
+    eb.send('docker.containers.list', { sessionId, userId, fields: CONTAINER_LIST_FIELDS, sort: 'name', offset, limit: CONTAINER_PAGE_SIZE }, (err, res) => {
+      if (err || !res || !res.body || res.body.status !== 'ok') {
+        handleListError(err, res);
+        callback(null);
+        return;
+      }
+      const list = parseDockerData(res.body) || [];
+      callback(list, res.body.total ?? offset + list.length);
+    });
+  }, [sessionId, userId, handleListError]);
 
   const fetchContainers = useCallback(() => {
     if (status !== 'connected') return;
     setLoading(true);
-    eb.send('docker.containers.list', { sessionId, userId }, (err, res) => {
-      setLoading(false);
-      if (err) {
-        if (err.failureCode === 503) {
-           setError('session_idle');
-        } else {
-           setError(err.message || 'Failed to fetch containers');
+    // Перечитываем все уже показанные страницы по очереди
+    const loaded = [];
+    const loadPage = (offset) => {
+      fetchContainerPage(offset, (list, total) => {
+        if (!list) {
+          setLoading(false);
+          return;
         }
-      } else if (res && res.body && res.body.status === 'ok') {
-        setContainers(res.body.data || []);
-        setError(null);
-      } else {
-        const msg = res?.body?.message || 'Unknown error';
-        if (msg.includes('разбудите сессию') || msg.includes('503')) {
-           setError('session_idle');
-        } else {
-           setError('Failed to load containers: ' + msg);
+        loaded.push(...list);
+        const next = offset + CONTAINER_PAGE_SIZE;
+        if (list.length === CONTAINER_PAGE_SIZE && next < Math.min(total, listLimitRef.current)) {
+          loadPage(next);
+          return;
         }
-      }
+        setLoading(false);
+        setContainers(loaded);
+        setContainersTotal(total);
+        setError(null);
+      });
+    };
+    loadPage(0);
+  }, [status, fetchContainerPage]);
+
+  const loadMoreContainers = () => {
+    const offset = containers.length;
+    fetchContainerPage(offset, (list, total) => {
+      if (!list) return;
+      listLimitRef.current = offset + CONTAINER_PAGE_SIZE;
+      // Пока страница грузилась, список могло перечитать обновление - тогда не дописываем
+      setContainers(prev => (prev.length === offset ? prev.concat(list) : prev));
+      setContainersTotal(total);
     });
-  }, [sessionId, userId, status]);
+  };
 
   useEffect(() => {
     if (status === 'connected') {
@@ -79,36 +132,28 @@ const DockerView = ({ sessionId, userId, onOpenTerminal, status, onRestore, serv
         let runningContainers = containers.filter(c => c.State === 'running');
         if (runningContainers.length === 0) return;
 
-        runningContainers.forEach((c, index) => {
-          // Распределяем запросы во времени, чтобы не перегружать SSH-канал и бекенд
-          setTimeout(() => {
-            eb.send('docker.container.stats', { sessionId, userId, containerId: c.Id }, (err, res) => {
-              if (!err && res && res.body && res.body.status === 'ok') {
-                const s = res.body.data;
-                if (!s || !s.memory_stats) return;
-
-                setStats(prev => ({ ...prev, [c.Id]: s }));
-                
-                const cpuVal = parseFloat(calculateCpu(s));
-                const ramMB = s.memory_stats.usage / (1024 * 1024);
-                const ramLimit = s.memory_stats.limit;
-                const ramPercent = ramLimit > 0 ? (s.memory_stats.usage / ramLimit) * 100 : 0;
-                
-                const newPoint = {
-                  time: new Date().toLocaleTimeString([], { hour: '2-digit', minute: '2-digit', second: '2-digit' }),
-                  cpu: cpuVal,
-                  ram: ramPercent,
-                  ramMB: ramMB
-                };
-
-                setChartData(prev => {
-                  const history = prev[c.Id] || [];
-                  const updatedHistory = [...history, newPoint].slice(-60); // Keep last 60 points
-                  return { ...prev, [c.Id]: updatedHistory };
-                });
-              }
+        // Статистика всех контейнеров одним запросом, проценты считает бекенд
+        const containerIds = runningContainers.map(c => c.Id);
+        eb.send('docker.containers.stats', { sessionId, userId, containerIds }, (err, res) => {
+          if (err || !res || !res.body || res.body.status !== 'ok') return;
+          const data = res.body.data || {};
+          const time = new Date().toLocaleTimeString([], { hour: '2-digit', minute: '2-digit', second: '2-digit' });
+
+          setStats(prev => ({ ...prev, ...data }));
+          setChartData(prev => {
+            const next = { ...prev };
+            Object.keys(data).forEach(id => {
+              const s = data[id];
+              const newPoint = {
+                time,
+                cpu: s.cpuPercent,
+                ram: s.memoryPercent,
+                ramMB: s.memoryUsage / (1024 * 1024)
+              };
+              next[id] = [...(prev[id] || []), newPoint].slice(-60); // Keep last 60 points
             });
-          }, index * 200);
+            return next;
+          });
         });
       };
       fetchAllStats();
@@ -156,6 +201,49 @@ const DockerView = ({ sessionId, userId, onOpenTerminal, status, onRestore, serv
     }
   }, [expandedLogs, sessionId, userId, logLimits, logTimestamps]);
 
+  // Результаты поиска по логам приходят пачками, последнее сообщение - с done: true
+  useEffect(() => {
+    if (!userId) return;
+    return registerHandler(`ssh.out.${userId}.docker.logs.search`, (err, msg) => {
+      if (!msg || !msg.body) return;
+      const { searchId, containerId } = msg.body;
+      setLogSearch(prev => {
+        const current = prev[containerId];
+        if (!current || current.searchId !== searchId) return prev;
+        if (msg.body.done) {
+          return { ...prev, [containerId]: { ...current, running: false, info: msg.body } };
+        }
+        return { ...prev, [containerId]: { ...current, matches: [...current.matches, ...(msg.body.matches || [])] } };
+      });
+    });
+  }, [userId]);
+
+  const runLogSearch = (containerId, query) => {
+    if (!query) {
+      setLogSearch(prev => ({ ...prev, [containerId]: undefined }));
+      return;
+    }
+    const previous = logSearch[containerId];
+    if (previous && previous.running) {
+      eb.send('docker.container.logs.search.cancel', { searchId: previous.searchId });
+    }
+    const searchId = `${containerId}-${Date.now()}`;
+    setLogSearch(prev => ({ ...prev, [containerId]: { query, searchId, matches: [], running: true, info: null } }));
+    eb.send('docker.container.logs.search', {
+      sessionId, userId, containerId, searchId,
+      // /выражение/ - поиск по регулярному выражению, иначе по подстроке
+      query: /^\/.+\/$/.test(query) ? query.slice(1, -1) : query,
+      timestamps: logTimestamps[containerId] || false,
+      regex: /^\/.+\/$/.test(query),
+      context: 2,
+      index: true
+    }, (err) => {
+      if (err) {
+        setLogSearch(prev => ({ ...prev, [containerId]: { query, searchId, matches: [], running: false, info: { error: err.message } } }));
+      }
+    });
+  };
+
   const toggleLogs = (containerId) => {
     setExpandedLogs(prev => ({ ...prev, [containerId]: !prev[containerId] }));
     if (!logLimits[containerId]) {
@@ -183,6 +271,13 @@ const DockerView = ({ sessionId, userId, onOpenTerminal, status, onRestore, serv
     window.addEventListener('mouseup', onMouseUp);
   };
 
+  // Полный лог скачивается потоково через HTTP, не через EventBus
+  const downloadFullLogs = (containerId, name) => {
+    const params = new URLSearchParams({ sessionId, containerId, gzip: 'true', timestamps: String(logTimestamps[containerId] || false) });
+    if (/^[a-zA-Z0-9_.-]+$/.test(name)) params.set('name', name);
+    window.open(`/api/docker/logs?${params.toString()}`, '_blank');
+  };
+
   const downloadLogs = (containerId, name) => {
     const logs = logsHistory[containerId] || [];
     const blob = new Blob([logs.join('\n')], { type: 'text/plain' });
@@ -338,11 +433,11 @@ const DockerView = ({ sessionId, userId, onOpenTerminal, status, onRestore, serv
   const handleOpenEnv = (containerId) => {
     setEnvLoading(true);
     setLoadingEnvContainerId(containerId);
-    eb.send('docker.container.inspect', { sessionId, userId, containerId }, (err, res) => {
+    eb.send('docker.container.inspect', { sessionId, userId, containerId, fields: ['Name', 'Config.Env'] }, (err, res) => {
       setEnvLoading(false);
       setLoadingEnvContainerId(null);
       if (!err && res && res.body && res.body.status === 'ok') {
-        const data = res.body.data;
+        const data = parseDockerData(res.body);
         const env = data.Config ? data.Config.Env : [];
         setEditingEnv({ containerId, env, name: data.Name.replace(/^\//, '') });
         
@@ -577,16 +672,7 @@ const DockerView = ({ sessionId, userId, onOpenTerminal, status, onRestore, serv
     return parseFloat((bytes / Math.pow(k, i)).toFixed(2)) + ' ' + sizes[i];
   };
 
-  const calculateCpu = (stats) => {
-    if (!stats || !stats.cpu_stats || !stats.precpu_stats) return '0.00%';
-    const cpuDelta = stats.cpu_stats.cpu_usage.total_usage - stats.precpu_stats.cpu_usage.total_usage;
-    const systemDelta = stats.cpu_stats.system_cpu_usage - stats.precpu_stats.system_cpu_usage;
-    const numberCpus = stats.cpu_stats.online_cpus || 1;
-    if (systemDelta > 0 && cpuDelta > 0) {
-      return ((cpuDelta / systemDelta) * numberCpus * 100).toFixed(2) + '%';
-    }
-    return '0.00%';
-  };
+  const formatCpu = (s) => (s ? s.cpuPercent.toFixed(2) : '0.00') + '%';
 
   return (
     <div className="docker-view">
@@ -601,6 +687,7 @@ const DockerView = ({ sessionId, userId, onOpenTerminal, status, onRestore, serv
       ) : error ? (
         <div className="docker-error">{error}</div>
       ) : (
+        <>
         <table className="docker-table">
           <thead>
             <tr>
@@ -623,8 +710,8 @@ const DockerView = ({ sessionId, userId, onOpenTerminal, status, onRestore, serv
                   <tr className={isExpanded ? 'expanded' : ''}>
                     <td>{name}</td>
                     <td>{c.State}</td>
-                    <td>{calculateCpu(s)}</td>
-                    <td>{s && s.memory_stats ? formatBytes(s.memory_stats.usage) : '-'}</td>
+                    <td>{formatCpu(s)}</td>
+                    <td>{s ? formatBytes(s.memoryUsage) : '-'}</td>
                     <td className="chart-td">
                       <ContainerChart 
                         data={chartData[c.Id]} 
@@ -633,7 +720,7 @@ const DockerView = ({ sessionId, userId, onOpenTerminal, status, onRestore, serv
                       />
                     </td>
                     <td>
-                      {s && s.cpu_stats && s.memory_stats ? `${s.cpu_stats.online_cpus || '-'} CPU / ${formatBytes(s.memory_stats.limit)}` : '-'}
+                      {s ? `${s.onlineCpus || '-'} CPU / ${formatBytes(s.memoryLimit)}` : '-'}
                     </td>
                     <td className="docker-actions">
                       <button onClick={() => onOpenTerminal(name, c.Id)} title="Terminal">T</button>
@@ -670,12 +757,37 @@ const DockerView = ({ sessionId, userId, onOpenTerminal, status, onRestore, serv
                                 onChange={(e) => setLogLimits(prev => ({ ...prev, [c.Id]: parseInt(e.target.value) || 200 }))}
                                 className="log-limit-input"
                               />
+                              <input
+                                type="text"
+                                placeholder="Поиск по всему логу"
+                                defaultValue={logSearch[c.Id] ? logSearch[c.Id].query : ''}
+                                onKeyDown={(e) => { if (e.key === 'Enter') runLogSearch(c.Id, e.target.value.trim()); }}
+                                className="log-limit-input"
+                                style={{ width: '160px' }}
+                              />
                               <button onClick={() => downloadLogs(c.Id, name)} className="log-action-btn">Download</button>
+                              <button onClick={() => downloadFullLogs(c.Id, name)} className="log-action-btn" title="Весь лог контейнера (gzip), потоково с сервера">Full log</button>
                               <button onClick={() => toggleLogs(c.Id)} className="log-action-btn">Close</button>
                             </div>
                           </div>
                           <div className="log-container" style={{ height: logHeights[c.Id] || 200 }}>
-                            {(logsHistory[c.Id] || []).map((line, idx) => (
+                            {logSearch[c.Id] ? (
+                              <>
+                                <div style={{ opacity: 0.7 }}>
+                                  {logSearch[c.Id].running ? 'Поиск...' : logSearch[c.Id].info && logSearch[c.Id].info.error
+                                    ? `Ошибка: ${logSearch[c.Id].info.error}`
+                                    : `Найдено: ${logSearch[c.Id].matches.length}${logSearch[c.Id].info && logSearch[c.Id].info.truncated ? ' (показаны первые)' : ''}`}
+                                  {' '}<button onClick={() => runLogSearch(c.Id, '')} className="log-action-btn">Clear</button>
+                                </div>
+                                {logSearch[c.Id].matches.map((m, idx) => (
+                                  <div key={idx} style={{ borderBottom: '1px solid #333', padding: '2px 0' }}>
+                                    {m.before.map((line, i) => <div key={`b${i}`} style={{ opacity: 0.5 }}>{line}</div>)}
+                                    <div><b>{m.line}:</b> {m.text}</div>
+                                    {m.after.map((line, i) => <div key={`a${i}`} style={{ opacity: 0.5 }}>{line}</div>)}
+                                  </div>
+                                ))}
+                              </>
+                            ) : (logsHistory[c.Id] || []).map((line, idx) => (
                               <div key={idx}>{line}</div>
                             ))}
                           </div>
@@ -692,6 +804,12 @@ const DockerView = ({ sessionId, userId, onOpenTerminal, status, onRestore, serv
             })}
           </tbody>
         </table>
+        {containersTotal > containers.length && (
+          <button className="add-env-btn" onClick={loadMoreContainers}>
+            Показать ещё ({containers.length} из {containersTotal})
+          </button>
+        )}
+        </>
       )}
       {renderZoomModal()}
       {renderEnvModal()}
@@ -0,0 +1,116 @@
+import React, { useState, useEffect, useRef } from 'react';
+import { createPortal } from 'react-dom';
+import { eb } from '../services/eventBus';
+import './FileSearch.css';
+import './FileFinder.css';
+
+// Быстрый переход к файлу по части имени: поиск идет по индексу имен в памяти бекенда,
+// поэтому результаты обновляются на каждое нажатие. Первый запрос на сервере запускает построение индекса.
+const DEBOUNCE_MS = 100;
+const INDEXING_RETRY_MS = 1000;
+
+const FileFinder = ({ sessionId, userId, onOpenFile, onOpenDir, onClose }) => {
+  const [query, setQuery] = useState('');
+  const [results, setResults] = useState([]);
+  const [state, setState] = useState(null); // { indexing, entries, truncated, error }
+  const [selected, setSelected] = useState(0);
+  const requestRef = useRef(0);
+  const listRef = useRef(null);
+
+  useEffect(() => {
+    if (!query.trim()) {
+      setResults([]);
+      return;
+    }
+    let retry = null;
+    const search = () => {
+      const id = ++requestRef.current;
+      eb.send('files.index.search', { sessionId, userId, query }, (err, res) => {
+        if (id !== requestRef.current) return;
+        if (err || !res || !res.body || res.body.status !== 'ok') {
+          setState({ error: err ? err.message : 'Поиск недоступен' });
+          return;
+        }
+        const body = res.body;
+        setState({ indexing: body.indexing, entries: body.entries, truncated: body.truncated });
+        if (body.entries !== undefined) {
+          setResults(body.results);
+          setSelected(0);
+        }
+        // Индекс еще строится - повторяем, пока не будет готов
+        if (body.indexing && body.entries === undefined) {
+          retry = setTimeout(search, INDEXING_RETRY_MS);
+        }
+      });
+    };
+    const timer = setTimeout(search, DEBOUNCE_MS);
+    return () => {
+      clearTimeout(timer);
+      clearTimeout(retry);
+    };
+  }, [query, sessionId, userId]);
+
+  useEffect(() => {
+    const item = listRef.current && listRef.current.children[selected];
+    if (item) item.scrollIntoView({ block: 'nearest' });
+  }, [selected]);
+
+  const open = (result) => {
+    if (!result) return;
+    if (result.isDir) {
+      onOpenDir(result.path);
+    } else {
+      onOpenFile(result.path);
+    }
+  };
+
+  const handleKeyDown = (e) => {
+    if (e.key === 'ArrowDown') {
+      e.preventDefault();
+      setSelected(prev => Math.min(prev + 1, results.length - 1));
+    } else if (e.key === 'ArrowUp') {
+      e.preventDefault();
+      setSelected(prev => Math.max(prev - 1, 0));
+    } else if (e.key === 'Enter') {
+      e.preventDefault();
+      open(results[selected]);
+    } else if (e.key === 'Escape') {
+      onClose();
+    }
+  };
+
+  return createPortal(
+    <div className="file-search-overlay" onClick={onClose}>
+      <div className="file-search-modal file-finder-modal" onClick={e => e.stopPropagation()}>
+        <div className="file-search-header">
+          <span className="file-search-title">Переход к файлу</span>
+          <button className="file-search-close" onClick={onClose}>✕</button>
+        </div>
+        <div className="file-search-form">
+          <input autoFocus type="text" placeholder="Часть имени или пути" value={query}
+            onChange={e => setQuery(e.target.value)} onKeyDown={handleKeyDown} />
+        </div>
+        {state && (
+          <div className="file-search-status">
+            {state.indexing && (state.entries === undefined ? 'Индексация файлов сервера...' : 'Индекс обновляется · ')}
+            {state.entries !== undefined && `Найдено: ${results.length} · в индексе ${state.entries}${state.truncated ? ' (достигнут лимит)' : ''}`}
+            {state.error && <span className="file-search-error">{state.error}</span>}
+          </div>
+        )}
+        <div className="file-search-results" ref={listRef}>
+          {results.map((r, i) => (
+            <div key={r.path} className={`file-search-match${i === selected ? ' file-finder-selected' : ''}`}
+              onClick={() => open(r)} onMouseEnter={() => setSelected(i)} title={r.path}>
+              <span className="file-finder-icon">{r.isDir ? '📁' : '📄'}</span>
+              <span className="file-finder-name">{r.path.substring(r.path.lastIndexOf('/') + 1) || r.path}</span>
+              <span className="file-search-text">{r.path}</span>
+            </div>
+          ))}
+        </div>
+      </div>
+    </div>,
+    document.body
+  );
+};
+
+export default FileFinder;
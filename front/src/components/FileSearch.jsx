@@ -0,0 +1,123 @@
+import React, { useState, useEffect, useRef } from 'react';
+import { createPortal } from 'react-dom';
+import { eb, registerHandler } from '../services/eventBus';
+import './FileSearch.css';
+
+// Поиск по содержимому файлов под текущим каталогом (rg/grep на сервере).
+// Первая страница совпадений приходит потоком, остальные догружаются по кнопке.
+const PAGE_SIZE = 200;
+
+const FileSearch = ({ sessionId, userId, path, onOpen, onClose }) => {
+  const [query, setQuery] = useState('');
+  const [glob, setGlob] = useState('');
+  const [regex, setRegex] = useState(false);
+  const [caseSensitive, setCaseSensitive] = useState(false);
+  const [matches, setMatches] = useState([]);
+  const [state, setState] = useState(null); // { total, done, truncated, error, tool }
+  const [searchId, setSearchId] = useState(null);
+  const searchIdRef = useRef(null);
+
+  useEffect(() => {
+    const handler = (err, msg) => {
+      if (!msg || !msg.body || msg.body.searchId !== searchIdRef.current) return;
+      const body = msg.body;
+      if (body.matches && body.matches.length) {
+        setMatches(prev => prev.concat(body.matches));
+      }
+      setState(prev => ({
+        ...prev,
+        total: body.total !== undefined ? body.total : prev && prev.total,
+        done: !!body.done,
+        truncated: body.truncated,
+        error: body.error,
+        tool: body.tool || (prev && prev.tool),
+      }));
+    };
+    const unregister = registerHandler(`ssh.out.${userId}.files.search`, handler);
+    return () => {
+      unregister();
+      if (searchIdRef.current) {
+        eb.send('files.search.cancel', { userId, searchId: searchIdRef.current }, () => {});
+      }
+    };
+  }, [userId]);
+
+  const cancel = () => {
+    if (searchIdRef.current) {
+      eb.send('files.search.cancel', { userId, searchId: searchIdRef.current }, () => {});
+    }
+  };
+
+  const start = (e) => {
+    e.preventDefault();
+    if (!query) return;
+    cancel();
+    const id = Math.random().toString(36).substring(2, 11);
+    searchIdRef.current = id;
+    setSearchId(id);
+    setMatches([]);
+    setState({ total: 0, done: false });
+    eb.send('files.search', {
+      sessionId, userId, path, query, regex, caseSensitive,
+      glob: glob || undefined, searchId: id, pageSize: PAGE_SIZE
+    }, (err, res) => {
+      if (err || !res || !res.body || res.body.status !== 'ok') {
+        setState({ done: true, error: err ? err.message : 'Не удалось начать поиск' });
+      }
+    });
+  };
+
+  const loadMore = () => {
+    eb.send('files.search.page', { userId, searchId, offset: matches.length, limit: PAGE_SIZE }, (err, res) => {
+      if (err || !res || !res.body || res.body.status !== 'ok') {
+        setState(prev => ({ ...prev, error: err ? err.message : 'Не удалось загрузить результаты' }));
+        return;
+      }
+      setMatches(prev => prev.length === res.body.offset ? prev.concat(res.body.matches) : prev);
+    });
+  };
+
+  const running = state && !state.done;
+
+  return createPortal(
+    <div className="file-search-overlay" onClick={onClose}>
+      <div className="file-search-modal" onClick={e => e.stopPropagation()}>
+        <div className="file-search-header">
+          <span className="file-search-title" title={path}>Поиск в {path}</span>
+          <button className="file-search-close" onClick={onClose}>✕</button>
+        </div>
+        <form className="file-search-form" onSubmit={start}>
+          <input autoFocus type="text" placeholder="Текст" value={query} onChange={e => setQuery(e.target.value)} />
+          <input type="text" placeholder="Маска файлов (*.log)" value={glob} onChange={e => setGlob(e.target.value)} className="file-search-glob" />
+          <label><input type="checkbox" checked={regex} onChange={e => setRegex(e.target.checked)} /> RegExp</label>
+          <label><input type="checkbox" checked={caseSensitive} onChange={e => setCaseSensitive(e.target.checked)} /> Aa</label>
+          {running
+            ? <button type="button" onClick={cancel}>Остановить</button>
+            : <button type="submit">Найти</button>}
+        </form>
+        {state && (
+          <div className="file-search-status">
+            {running ? 'Поиск... ' : ''}
+            Найдено: {state.total || 0}{state.truncated ? '+ (достигнут лимит)' : ''}
+            {state.tool && ` · ${state.tool}`}
+            {state.error && <span className="file-search-error"> · {state.error}</span>}
+          </div>
+        )}
+        <div className="file-search-results">
+          {matches.map((m, i) => (
+            <div key={i} className="file-search-match" onClick={() => onOpen(m.path, m.line)} title={`${m.path}:${m.line}`}>
+              <span className="file-search-location">{m.path.startsWith(path) ? m.path.slice(path.length).replace(/^\//, '') : m.path}:{m.line}</span>
+              <span className="file-search-text">{m.text}</span>
+            </div>
+          ))}
+          {state && matches.length < (state.total || 0) && matches.length >= PAGE_SIZE && (
+            <button className="file-search-more" onClick={loadMore}>Показать еще ({state.total - matches.length})</button>
+          )}
+        </div>
+      </div>
+    </div>,
+    document.body
+  );
+};
+
+export default FileSearch;
@@ -0,0 +1,169 @@
+import React, { useState, useEffect, useRef, useCallback } from 'react';
+import { createPortal } from 'react-dom';
+import { eb } from '../services/eventBus';
+import './FileViewer.css';
+
+// Просмотр больших файлов постранично: бекенд читает только нужное окно по SFTP,
+// поэтому конец многогигабайтного лога открывается сразу.
+const PAGE_LINES = 200;
+const FOLLOW_INTERVAL_MS = 2000;
+const FOLLOW_MAX_LINES = 2000;
+
+const formatSize = (bytes) => {
+  if (bytes < 1024) return `${bytes} B`;
+  const units = ['K', 'M', 'G', 'T'];
+  let value = bytes / 1024;
+  let unit = 0;
+  while (value >= 1024 && unit < units.length - 1) {
+    value /= 1024;
+    unit++;
+  }
+  return `${value < 10 ? value.toFixed(1) : Math.round(value)}${units[unit]}`;
+};
+
+const FileViewer = ({ sessionId, userId, path, initialLine, onClose }) => {
+  const [page, setPage] = useState(null); // { lines, startOffset, endOffset, startLine, size, eof, partialLast }
+  const [loading, setLoading] = useState(false);
+  const [error, setError] = useState(null);
+  const [indexing, setIndexing] = useState(null);
+  const [follow, setFollow] = useState(false);
+  const [gotoLine, setGotoLine] = useState('');
+  const bodyRef = useRef(null);
+  const requestRef = useRef(0);
+  const retryRef = useRef(null);
+
+  const request = useCallback((params, onPage) => {
+    const id = ++requestRef.current;
+    clearTimeout(retryRef.current);
+    setLoading(true);
+    eb.send('files.view', { sessionId, userId, path, limit: PAGE_LINES, ...params }, (err, res) => {
+      if (id !== requestRef.current) return;
+      if (err || !res || !res.body || res.body.status !== 'ok') {
+        setLoading(false);
+        setError(err ? err.message : 'Не удалось прочитать файл');
+        return;
+      }
+      const body = res.body;
+      if (body.indexing) {
+        // Переход к строке за пределами построенного индекса: бекенд досканирует файл частями
+        setIndexing(body.indexedLines);
+        retryRef.current = setTimeout(() => request(params, onPage), 100);
+        return;
+      }
+      setLoading(false);
+      setIndexing(null);
+      setError(null);
+      onPage(body);
+    });
+  }, [sessionId, userId, path]);
+
+  // Закрытый просмотр не должен продолжать опрашивать бекенд, пока строится индекс
+  useEffect(() => () => {
+    clearTimeout(retryRef.current);
+    requestRef.current++;
+  }, []);
+
+  const show = useCallback((params, scroll) => {
+    setFollow(false);
+    request(params, body => {
+      setPage(body);
+      if (bodyRef.current) {
+        bodyRef.current.scrollTop = scroll === 'bottom' ? bodyRef.current.scrollHeight : 0;
+      }
+    });
+  }, [request]);
+
+  useEffect(() => {
+    // Логи чаще всего смотрят с конца; из поиска - с найденной строки
+    if (initialLine > 0) {
+      show({ line: initialLine - 1 });
+    } else {
+      show({ tail: true }, 'bottom');
+    }
+  }, [show, initialLine]);
+
+  useEffect(() => {
+    if (!follow || !page) return;
+    const timer = setTimeout(() => {
+      request({ offset: page.endOffset, limit: FOLLOW_MAX_LINES }, body => {
+        if (!body.lines.length && body.size === page.size) {
+          setPage(prev => ({ ...prev, size: body.size }));
+          return;
+        }
+        setPage(prev => {
+          // Неполная последняя строка перечитывается целиком - заменяем ее
+          const kept = prev.partialLast ? prev.lines.slice(0, -1) : prev.lines;
+          const lines = kept.concat(body.lines);
+          const dropped = Math.max(0, lines.length - FOLLOW_MAX_LINES);
+          return {
+            ...body,
+            lines: lines.slice(dropped),
+            startOffset: dropped ? null : prev.startOffset,
+            startLine: prev.startLine != null ? prev.startLine + dropped : null,
+          };
+        });
+        if (bodyRef.current) bodyRef.current.scrollTop = bodyRef.current.scrollHeight;
+      });
+    }, FOLLOW_INTERVAL_MS);
+    return () => clearTimeout(timer);
+  }, [follow, page, request]);
+
+  const handleGoto = (e) => {
+    e.preventDefault();
+    const line = parseInt(gotoLine, 10);
+    if (line > 0) show({ line: line - 1 });
+  };
+
+  const canPrev = page && page.startOffset > 0;
+  const canNext = page && !page.eof;
+  const percent = page && page.size > 0 && page.startOffset != null ? Math.floor(page.startOffset * 100 / page.size) : 0;
+
+  return createPortal(
+    <div className="file-viewer-overlay" onClick={onClose}>
+      <div className="file-viewer-modal" onClick={e => e.stopPropagation()}>
+        <div className="file-viewer-header">
+          <span className="file-viewer-path" title={path}>{path}</span>
+          {page && <span className="file-viewer-meta">{formatSize(page.size)} · {percent}%</span>}
+          <button className="file-viewer-close" onClick={onClose}>✕</button>
+        </div>
+        <div className="file-viewer-toolbar">
+          <button onClick={() => show({ offset: 0 })} disabled={!canPrev}>⏮ Начало</button>
+          <button onClick={() => show({ before: page.startOffset }, 'bottom')} disabled={!canPrev}>← Назад</button>
+          <button onClick={() => show({ offset: page.endOffset })} disabled={!canNext}>Вперед →</button>
+          <button onClick={() => show({ tail: true }, 'bottom')}>Конец ⏭</button>
+          <label className="file-viewer-follow">
+            <input type="checkbox" checked={follow} onChange={e => {
+              if (e.target.checked && page && !page.eof) {
+                // Следить можно только с конца файла
+                request({ tail: true }, body => {
+                  setPage(body);
+                  setFollow(true);
+                });
+              } else {
+                setFollow(e.target.checked);
+              }
+            }} />
+            Следить
+          </label>
+          <form onSubmit={handleGoto} className="file-viewer-goto">
+            <input type="number" min="1" placeholder="Строка" value={gotoLine} onChange={e => setGotoLine(e.target.value)} />
+            <button type="submit">Перейти</button>
+          </form>
+          {loading && <span className="file-viewer-status">{indexing != null ? `Индексация: ${indexing} строк...` : 'Загрузка...'}</span>}
+        </div>
+        <div className="file-viewer-body" ref={bodyRef}>
+          {error && <div className="file-viewer-error">{error}</div>}
+          {page && page.lines.map((text, i) => (
+            <div key={i} className="file-viewer-line">
+              <span className="file-viewer-lineno">{page.startLine != null ? page.startLine + i + 1 : ''}</span>
+              <span className="file-viewer-text">{text}</span>
+            </div>
+          ))}
+        </div>
+      </div>
+    </div>,
+    document.body
+  );
+};
+
+export default FileViewer;
@@ -1,6 +1,38 @@
 import React, { useState, useEffect, useCallback, useRef } from 'react';
 import { createPortal } from 'react-dom';
 import { eb, registerHandler } from '../services/eventBus';
+import { uploadFile } from '../services/upload';
+import FileViewer from './FileViewer';
+import FileSearch from './FileSearch';
+import FileFinder from './FileFinder';
+
+// Применяет дельту из files.changed к текущему списку (вычисленные размеры папок сохраняются)
+const applyListingChanges = (prev, changes) => {
+  const removed = new Set(changes.removed || []);
+  const changed = new Map((changes.changed || []).map(f => [f.name, f]));
+  return prev
+    .filter(f => !removed.has(f.name))
+    .map(f => changed.get(f.name) || f)
+    .concat(changes.added || []);
+};
+
+// Размеры подкаталогов из files.size (точные байты) подставляются в size
+const applyDirectorySizes = (prev, sizes) => prev.map(f => (
+  f.isDir && sizes[f.name] !== undefined ? { ...f, size: sizes[f.name], sizeComputed: true } : f
+));
+
+const formatSize = (bytes) => {
+  if (typeof bytes !== 'number') return bytes;
+  if (bytes < 1024) return `${bytes} B`;
+  const units = ['K', 'M', 'G', 'T'];
+  let value = bytes / 1024;
+  let unit = 0;
+  while (value >= 1024 && unit < units.length - 1) {
+    value /= 1024;
+    unit++;
+  }
+  return `${value < 10 ? value.toFixed(1) : Math.round(value)}${units[unit]}`;
+};
 
 const FilePanel = ({ sessionId, userId, status, initialPath, serverId, serverName, onPathChange, onRestore, isPinned, onPinClose, onDropFiles, onPinToggle, isCurrentlyPinned, onCopy }) => {
   const [files, setFiles] = useState([]);
@@ -14,8 +46,16 @@ const FilePanel = ({ sessionId, userId, status, initialPath, serverId, serverNam
   const [isDragOver, setIsDragOver] = useState(false);
   const [contextMenu, setContextMenu] = useState(null);
   const [deleteConfirm, setDeleteConfirm] = useState(null);
+  const [viewFile, setViewFile] = useState(null); // { path, line }
+  const [searchOpen, setSearchOpen] = useState(false);
+  const [finderOpen, setFinderOpen] = useState(false);
   const [selectionMask, setSelectionMask] = useState(() => localStorage.getItem('files_selection_mask') || '*');
   const fileInputRef = useRef(null);
+  const uploadAbortRef = useRef(null); // AbortController текущей загрузки
+  const listingVersionRef = useRef(null); // { path, query, version } последнего полученного листинга
+  const [nameFilter, setNameFilter] = useState('');
+  const [page, setPage] = useState({ hasMore: false, nextCursor: null, total: 0 });
+  const queryInitRef = useRef(false);
 
   useEffect(() => {
     localStorage.setItem('files_selection_mask', selectionMask);
@@ -33,25 +73,62 @@ const FilePanel = ({ sessionId, userId, status, initialPath, serverId, serverNam
   }, [initialPath]);
 
 
+  const sizeJobRef = useRef(null);
+  const watchIdRef = useRef(Math.random().toString(36).slice(2));
+
+  const cancelSizeJob = () => {
+    if (sizeJobRef.current) {
+      eb.send('files.size.cancel', { sessionId, userId, jobId: sizeJobRef.current }, () => {});
+      sizeJobRef.current = null;
+    }
+  };
+
+  // Закэшированные размеры приходят в ответе, остальные - пачками на files.size по мере подсчета
   const calculateDirectorySizes = (path = currentPath) => {
     if (status !== 'connected') return;
+    cancelSizeJob();
     setCalculatingSizes(true);
     eb.send('files.size', { sessionId, userId, path }, (err, res) => {
-      setCalculatingSizes(false);
       if (!err && res && res.body && res.body.status === 'ok') {
-        const sizes = res.body.sizes;
-        setFiles(prev => prev.map(f => ({
-          ...f,
-          size: sizes[f.name] || f.size
-        })));
+        setFiles(prev => applyDirectorySizes(prev, res.body.sizes || {}));
+        if (res.body.pending) {
+          sizeJobRef.current = res.body.jobId;
+          return;
+        }
       }
+      setCalculatingSizes(false);
     });
   };
 
-  const fetchFiles = useCallback((path = currentPath) => {
+  useEffect(() => {
+    if (!userId) return;
+    const unsubscribe = registerHandler(`ssh.out.${userId}.files.size`, (err, msg) => {
+      if (!msg || !msg.body || msg.body.jobId !== sizeJobRef.current) return;
+      setFiles(prev => applyDirectorySizes(prev, msg.body.sizes || {}));
+      if (msg.body.done) {
+        sizeJobRef.current = null;
+        setCalculatingSizes(false);
+      }
+    });
+    return () => {
+      unsubscribe();
+      cancelSizeJob();
+    };
+  }, [userId]);
+
+  // Сортировка и фильтр выполняются на бекенде: большие каталоги приходят постранично
+  const listQuery = () => ({ sort: sortConfig.key, order: sortConfig.direction, filter: nameFilter });
+
+  const fetchFiles = useCallback((path = currentPath, force = false) => {
     if (status !== 'connected') return;
     setLoading(true);
-    eb.send('files.list', { sessionId, userId, path }, (err, res) => {
+    const query = listQuery();
+    const queryKey = `${query.sort}|${query.order}|${query.filter}`;
+    const request = { sessionId, userId, path, ...query };
+    const known = listingVersionRef.current;
+    if (force) request.force = true;
+    else if (known && known.path === path && known.query === queryKey) request.version = known.version;
+    eb.send('files.list', request, (err, res) => {
       setLoading(false);
       if (err) {
         setError(err.message || 'Failed to fetch files');
@@ -59,9 +136,16 @@ const FilePanel = ({ sessionId, userId, status, initialPath, serverId, serverNam
           onRestore();
         }
       } else if (res && res.body && res.body.status === 'ok') {
+        listingVersionRef.current = { path: res.body.path, query: queryKey, version: res.body.version };
+        if (res.body.notModified) {
+          setError(null);
+          return;
+        }
         const fetchedPath = res.body.path;
         const fetchedFiles = res.body.files || [];
+        if (fetchedPath !== currentPath) cancelSizeJob();
         setFiles(fetchedFiles);
+        setPage({ hasMore: !!res.body.hasMore, nextCursor: res.body.nextCursor || null, total: res.body.total || fetchedFiles.length });
         setDiskInfo(res.body.diskInfo || null);
         setCurrentPath(fetchedPath);
         setError(null);
@@ -73,7 +157,35 @@ const FilePanel = ({ sessionId, userId, status, initialPath, serverId, serverNam
         setError('Failed to load files');
       }
     });
-  }, [sessionId, userId, status, currentPath]);
+  }, [sessionId, userId, status, currentPath, sortConfig, nameFilter]);
+
+  const loadMoreFiles = () => {
+    if (status !== 'connected' || !page.nextCursor) return;
+    setLoading(true);
+    eb.send('files.list', { sessionId, userId, path: currentPath, ...listQuery(), cursor: page.nextCursor }, (err, res) => {
+      setLoading(false);
+      if (!err && res && res.body && res.body.status === 'ok' && res.body.path === currentPath) {
+        const more = res.body.files || [];
+        setFiles(prev => {
+          const known = new Set(prev.map(f => f.name));
+          return prev.concat(more.filter(f => !known.has(f.name)));
+        });
+        setPage({ hasMore: !!res.body.hasMore, nextCursor: res.body.nextCursor || null, total: res.body.total || 0 });
+      } else if (err) {
+        setError(err.message || 'Failed to fetch files');
+      }
+    });
+  };
+
+  // Смена сортировки или фильтра - новый запрос первой страницы (фильтр с задержкой на ввод)
+  useEffect(() => {
+    if (!queryInitRef.current) {
+      queryInitRef.current = true;
+      return;
+    }
+    const timer = setTimeout(() => fetchFiles(currentPath), 300);
+    return () => clearTimeout(timer);
+  }, [sortConfig, nameFilter]);
 
   useEffect(() => {
     if (status === 'connected') {
@@ -86,8 +198,14 @@ const FilePanel = ({ sessionId, userId, status, initialPath, serverId, serverNam
     
     const handler = (err, msg) => {
       if (msg && msg.body) {
-        const { serverId: eventServerId, path: eventPath } = msg.body;
-        if (eventServerId === serverId && eventPath === currentPath) {
+        const { serverId: eventServerId, path: eventPath, changes, baseVersion, version } = msg.body;
+        if (eventServerId !== serverId || eventPath !== currentPath) return;
+        const known = listingVersionRef.current;
+        // Дельту можно применить только к полному списку: при постраничной загрузке перечитываем
+        if (changes && !page.hasMore && known && known.path === eventPath && known.version === baseVersion) {
+          listingVersionRef.current = { ...known, version };
+          setFiles(prev => applyListingChanges(prev, changes));
+        } else {
           fetchFiles(currentPath);
         }
       }
@@ -95,7 +213,19 @@ const FilePanel = ({ sessionId, userId, status, initialPath, serverId, serverNam
     
     const addr = `ssh.out.${userId}.files.changed`;
     return registerHandler(addr, handler);
-  }, [userId, serverId, status, currentPath, fetchFiles]);
+  }, [userId, serverId, status, currentPath, fetchFiles, page.hasMore]);
+
+  // Наблюдение за открытым каталогом: изменения, сделанные не через приложение, тоже придут в files.changed.
+  // Подписка - аренда на бекенде, продлевается раз в минуту
+  useEffect(() => {
+    if (status !== 'connected' || !currentPath.startsWith('/')) return;
+    const watch = () => eb.send('files.watch', { sessionId, userId, path: currentPath, watchId: watchIdRef.current });
+    watch();
+    const interval = setInterval(watch, 60000);
+    return () => clearInterval(interval);
+  }, [status, sessionId, userId, currentPath]);
+
+  useEffect(() => () => eb.send('files.unwatch', { sessionId, userId, watchId: watchIdRef.current }), []);
 
   const navigateTo = (name) => {
     const newPath = currentPath === '/' ? `/${name}` : `${currentPath}/${name}`;
@@ -126,16 +256,11 @@ const FilePanel = ({ sessionId, userId, status, initialPath, serverId, serverNam
 
   const handleDownload = (name, isDir) => {
     const fullPath = getFullPath(name);
-    if (isDir) {
-        setLoading(true);
-        eb.send('files.archive', { sessionId, userId, paths: [fullPath] }, (err, res) => {
-          setLoading(false);
-          if (!err && res && res.body && res.body.status === 'ok') {
-            window.open(`/api/download?sessionId=${sessionId}&path=${encodeURIComponent(res.body.archivePath)}`, '_blank');
-          } else {
-            alert('Failed to create archive: ' + (err ? err.message : 'Unknown error'));
-          }
-        });
+    // Выделенная группа или каталог скачиваются архивом, который собирается на лету
+    const paths = selectedPaths.has(fullPath) && selectedPaths.size > 1 ? Array.from(selectedPaths) : [fullPath];
+    if (isDir || paths.length > 1) {
+      const query = paths.map(p => `path=${encodeURIComponent(p)}`).join('&');
+      window.open(`/api/download/archive?sessionId=${sessionId}&${query}`, '_blank');
     } else {
       window.open(`/api/download?sessionId=${sessionId}&path=${encodeURIComponent(fullPath)}`, '_blank');
     }
@@ -144,21 +269,23 @@ const FilePanel = ({ sessionId, userId, status, initialPath, serverId, serverNam
   const handleUploadFiles = async (filesToUpload) => {
     if (status !== 'connected' || !filesToUpload.length) return;
     setLoading(true);
-    const formData = new FormData();
-    for (let i = 0; i < filesToUpload.length; i++) formData.append('files', filesToUpload[i]);
-    try {
-      const response = await fetch(`/api/upload?sessionId=${sessionId}&path=${encodeURIComponent(currentPath)}`, {
-        method: 'POST',
-        body: formData,
-      });
-      if (response.ok) fetchFiles();
-      else alert('Ошибка при загрузке: ' + await response.text());
-    } catch (err) {
-      alert('Ошибка при загрузке: ' + err.message);
-    } finally {
-      setLoading(false);
-      if (fileInputRef.current) fileInputRef.current.value = '';
+    const controller = new AbortController();
+    uploadAbortRef.current = controller;
+    const failed = [];
+    // По одному файлу: каждый идет потоком прямо в SFTP, большие - частями с докачкой
+    for (const file of Array.from(filesToUpload)) {
+      if (controller.signal.aborted) break;
+      try {
+        await uploadFile(sessionId, currentPath, file, null, controller.signal);
+      } catch (err) {
+        if (!controller.signal.aborted) failed.push(`${file.name}: ${err.message}`);
+      }
     }
+    uploadAbortRef.current = null;
+    // Список обновится по files.changed
+    if (failed.length) alert('Ошибка при загрузке:\n' + failed.join('\n'));
+    setLoading(false);
+    if (fileInputRef.current) fileInputRef.current.value = '';
   };
 
   // Drag & Drop Logic
@@ -207,8 +334,7 @@ const FilePanel = ({ sessionId, userId, status, initialPath, serverId, serverNam
     setLoading(true);
     eb.send('files.mkdir', { sessionId, userId, path }, (err, res) => {
       setLoading(false);
-      if (!err && res && res.body && res.body.status === 'ok') fetchFiles();
-      else alert('Ошибка при создании директории: ' + (err ? err.message : 'Unknown error'));
+      if (err || !res || !res.body || res.body.status !== 'ok') alert('Ошибка при создании директории: ' + (err ? err.message : 'Unknown error'));
     });
   };
 
@@ -219,8 +345,7 @@ const FilePanel = ({ sessionId, userId, status, initialPath, serverId, serverNam
     setLoading(true);
     eb.send('files.delete', { sessionId, userId, paths: pathsToDelete }, (err, res) => {
       setLoading(false);
-      if (!err && res && res.body && res.body.status === 'ok') fetchFiles();
-      else alert('Ошибка при удалении: ' + (err ? err.message : 'Unknown error'));
+      if (err || !res || !res.body || res.body.status !== 'ok') alert('Ошибка при удалении: ' + (err ? err.message : 'Unknown error'));
     });
   };
 
@@ -231,8 +356,7 @@ const FilePanel = ({ sessionId, userId, status, initialPath, serverId, serverNam
     setLoading(true);
     eb.send('files.chmod', { sessionId, userId, path, mode }, (err, res) => {
       setLoading(false);
-      if (!err && res && res.body && res.body.status === 'ok') fetchFiles();
-      else alert('Ошибка при изменении прав: ' + (err ? err.message : 'Unknown error'));
+      if (err || !res || !res.body || res.body.status !== 'ok') alert('Ошибка при изменении прав: ' + (err ? err.message : 'Unknown error'));
     });
   };
 
@@ -244,8 +368,7 @@ const FilePanel = ({ sessionId, userId, status, initialPath, serverId, serverNam
     setLoading(true);
     eb.send('files.rename', { sessionId, userId, oldPath, newPath }, (err, res) => {
       setLoading(false);
-      if (!err && res && res.body && res.body.status === 'ok') fetchFiles();
-      else alert('Ошибка при переименовании: ' + (err ? err.message : 'Unknown error'));
+      if (err || !res || !res.body || res.body.status !== 'ok') alert('Ошибка при переименовании: ' + (err ? err.message : 'Unknown error'));
     });
   };
 
@@ -314,10 +437,20 @@ const FilePanel = ({ sessionId, userId, status, initialPath, serverId, serverNam
                 />
                 <button onClick={selectByMask} title="Выделить по маске" style={{ background: 'none', border: 'none', cursor: 'pointer', padding: '0 4px', fontSize: '12px' }}>✅</button>
             </div>
+            <input
+                type="text"
+                value={nameFilter}
+                onChange={(e) => setNameFilter(e.target.value)}
+                placeholder="Фильтр"
+                title="Фильтр по имени"
+                style={{ width: 80, marginRight: 8, height: 24, border: '1px solid #444', borderRadius: 4, background: 'transparent', color: 'inherit', fontSize: '12px', padding: '0 4px' }}
+            />
             <button onClick={handleCreateDir} title="Создать директорию">📁+</button>
             <button onClick={() => fileInputRef.current?.click()} title="Загрузить файлы">📤</button>
             <input type="file" ref={fileInputRef} style={{ display: 'none' }} multiple onChange={(e) => handleUploadFiles(e.target.files)} />
-            <button onClick={() => fetchFiles()} title="Refresh">🔄</button>
+            <button onClick={() => setFinderOpen(true)} title="Переход к файлу по имени">📄?</button>
+            <button onClick={() => setSearchOpen(true)} title="Поиск по содержимому">🔍</button>
+            <button onClick={() => fetchFiles(currentPath, true)} title="Refresh">🔄</button>
             {!isPinned && onPinToggle && (
                 <button 
                   className={`pin-panel-btn ${isCurrentlyPinned ? 'active' : ''}`}
@@ -355,7 +488,7 @@ const FilePanel = ({ sessionId, userId, status, initialPath, serverId, serverNam
                 <tr>
                 <th style={{ width: '30px' }}></th>
                 <th onClick={() => requestSort('name')} style={{ cursor: 'pointer' }}>Имя {getSortIcon('name')}</th>
-                <th onClick={() => requestSort('size')} style={{ cursor: 'pointer' }}>Размер {getSortIcon('size')}</th>
+                <th onClick={() => requestSort('size')} style={{ cursor: 'pointer' }}>Размер {getSortIcon('size')}{calculatingSizes && ' ⏳'}</th>
                 <th style={{ width: '60px' }}></th>
                 </tr>
             </thead>
@@ -385,23 +518,41 @@ const FilePanel = ({ sessionId, userId, status, initialPath, serverId, serverNam
                     <td onClick={() => f.isDir ? navigateTo(f.name) : toggleSelect(f.name)} style={{ cursor: 'pointer' }}>
                         <span className="file-icon">{f.isDir ? '📁' : '📄'}</span> {f.name}
                     </td>
-                    <td>{f.isDir ? '-' : f.size}</td>
+                    <td title={typeof f.size === 'number' ? `${f.size} bytes` : undefined}>{f.isDir && !f.sizeComputed ? '-' : formatSize(f.size)}</td>
                     <td>
                         <button onClick={() => handleDownload(f.name, f.isDir)} title="Скачать">⬇️</button>
                     </td>
                     </tr>
                 );
                 })}
+                {page.hasMore && (
+                <tr className="file-row">
+                    <td></td>
+                    <td colSpan="3" onClick={loadMoreFiles} style={{ cursor: 'pointer', color: '#007acc' }}>
+                        Показать ещё ({files.length} из {page.total})
+                    </td>
+                </tr>
+                )}
             </tbody>
             </table>
         </div>
       )}
 
-      {loading && <div className="files-loading-overlay"><div className="spinner"></div></div>}
+      {loading && (
+        <div className="files-loading-overlay">
+          <div className="spinner"></div>
+          {uploadAbortRef.current && (
+            <button className="files-upload-cancel" onClick={() => uploadAbortRef.current && uploadAbortRef.current.abort()}>Отменить загрузку</button>
+          )}
+        </div>
+      )}
       {error && <div className="files-error">{error}</div>}
 
       {contextMenu && createPortal(
         <div className="context-menu" style={{ top: contextMenu.y, left: contextMenu.x }} onClick={() => setContextMenu(null)}>
+          {!contextMenu.file.isDir && (
+            <div className="context-menu-item" onClick={() => setViewFile({ path: getFullPath(contextMenu.file.name) })}>👁️ Просмотр</div>
+          )}
           <div className="context-menu-item" onClick={() => handleDownload(contextMenu.file.name, contextMenu.file.isDir)}>⬇️ Скачать</div>
           <div className="context-menu-item" onClick={() => onCopy(getFullPath(contextMenu.file.name))}>📋 Копировать</div>
           <div className="context-menu-item" onClick={() => handleRename(contextMenu.file)}>✏️ Переименовать</div>
@@ -411,6 +562,25 @@ const FilePanel = ({ sessionId, userId, status, initialPath, serverId, serverNam
         </div>, document.body
       )}
 
+      {searchOpen && (
+        <FileSearch sessionId={sessionId} userId={userId} path={currentPath}
+          onOpen={(path, line) => setViewFile({ path, line })} onClose={() => setSearchOpen(false)} />
+      )}
+
+      {finderOpen && (
+        <FileFinder sessionId={sessionId} userId={userId}
+          onOpenFile={path => setViewFile({ path })}
+          onOpenDir={path => {
+            setFinderOpen(false);
+            fetchFiles(path);
+          }}
+          onClose={() => setFinderOpen(false)} />
+      )}
+
+      {viewFile && (
+        <FileViewer sessionId={sessionId} userId={userId} path={viewFile.path} initialLine={viewFile.line} onClose={() => setViewFile(null)} />
+      )}
+
       {deleteConfirm && (
         <div className="files-confirm-overlay" onClick={() => setDeleteConfirm(null)}>
           <div className="files-confirm-modal" onClick={e => e.stopPropagation()}>
@@ -433,6 +603,8 @@ const FilesView = ({
 }) => {
   const [copyData, setCopyData] = useState(null); // { dragData, targetPath, targetSessionId, targetServerName }
   const [copyMethod, setCopyMethod] = useState(() => localStorage.getItem('files_copy_method') || 'stream');
+  const [copyBandwidth, setCopyBandwidth] = useState(() => Number(localStorage.getItem('files_copy_bandwidth')) || 0);
+  const [copyHighPriority, setCopyHighPriority] = useState(false);
   const [scpAvailable, setScpAvailable] = useState(true);
   const [checkingTools, setCheckingTools] = useState(false);
 
@@ -486,7 +658,9 @@ const FilesView = ({
             destSessionId: targetSessionId,
             userId,
             taskId,
-            method: dragData.sessionId === targetSessionId ? 'local' : copyMethod
+            method: dragData.sessionId === targetSessionId ? 'local' : copyMethod,
+            priority: copyHighPriority ? 10 : 0,
+            bandwidthLimit: copyBandwidth
         }, (err, res) => {
             if (err) {
                 setTasks(prev => ({
@@ -494,6 +668,8 @@ const FilesView = ({
                     [taskId]: { ...prev[taskId], status: 'error', error: err.message, percent: 0, hadError: true }
                 }));
             } else {
+                // Копирование через бекенд идет дольше ответа: итог придет в files.copy.progress
+                if (res && res.body && res.body.async) return;
                 setTasks(prev => {
                     const currentTask = prev[taskId];
                     if (currentTask && (currentTask.status === 'fallback' || currentTask.status === 'error' || currentTask.hadError)) {
@@ -647,6 +823,32 @@ const FilesView = ({
                                         />
                                         <span>Потоком (через бэкенд)</span>
                                     </label>
+                                    <label className="copy-method-option" title="Каталог одним сжатым потоком tar - быстрее для множества мелких файлов">
+                                        <input 
+                                            type="radio" 
+                                            name="copyMethod" 
+                                            value="tar" 
+                                            checked={copyMethod === 'tar'} 
+                                            onChange={(e) => {
+                                                setCopyMethod(e.target.value);
+                                                localStorage.setItem('files_copy_method', e.target.value);
+                                            }} 
+                                        />
+                                        <span>Архивом (tar, через бэкенд)</span>
+                                    </label>
+                                    <label className="copy-method-option" title="Файлы, уже существующие на приемнике, обновляются только измененными блоками">
+                                        <input 
+                                            type="radio" 
+                                            name="copyMethod" 
+                                            value="delta" 
+                                            checked={copyMethod === 'delta'} 
+                                            onChange={(e) => {
+                                                setCopyMethod(e.target.value);
+                                                localStorage.setItem('files_copy_method', e.target.value);
+                                            }} 
+                                        />
+                                        <span>Только изменения (дельта, через бэкенд)</span>
+                                    </label>
                                     <label className={`copy-method-option ${!scpAvailable ? 'disabled' : ''}`}>
                                         <input 
                                             type="radio" 
@@ -662,6 +864,34 @@ const FilesView = ({
                                         <span>Напрямую (SCP) {!scpAvailable && '(недоступно)'}</span>
                                     </label>
                                 </div>
+                                {copyMethod !== 'direct' && (
+                                    <div className="copy-method-options" style={{marginTop: 10}}>
+                                        <label className="copy-method-option">
+                                            <span>Скорость:</span>
+                                            <select
+                                                value={copyBandwidth}
+                                                onChange={(e) => {
+                                                    setCopyBandwidth(Number(e.target.value));
+                                                    localStorage.setItem('files_copy_bandwidth', e.target.value);
+                                                }}
+                                            >
+                                                <option value={0}>без ограничения</option>
+                                                <option value={1024 * 1024}>1 MB/с</option>
+                                                <option value={5 * 1024 * 1024}>5 MB/с</option>
+                                                <option value={10 * 1024 * 1024}>10 MB/с</option>
+                                                <option value={50 * 1024 * 1024}>50 MB/с</option>
+                                            </select>
+                                        </label>
+                                        <label className="copy-method-option" title="Задание встанет в очереди перед обычными">
+                                            <input
+                                                type="checkbox"
+                                                checked={copyHighPriority}
+                                                onChange={(e) => setCopyHighPriority(e.target.checked)}
+                                            />
+                                            <span>Вне очереди</span>
+                                        </label>
+                                    </div>
+                                )}
                                 {!scpAvailable && !checkingTools && (
                                     <div style={{marginTop: 8, fontSize: '11px', color: '#e81123', display: 'flex', alignItems: 'center', gap: 8}}>
                                         <span>Нужно установить scp и sshpass на сервере-источнике</span>
@@ -114,6 +114,12 @@ const SshTerminal = ({ sessionId, serverId, userId, status, onRestore }) => {
 
     const unregister = registerHandler(`ssh.out.${userId}.ssh.command.out`, handler);
 
+    const sendSize = () => {
+      if (eb.state === EventBus.OPEN) {
+        eb.publish('ssh.session.resize', { sessionId, cols: term.cols, rows: term.rows });
+      }
+    };
+
     const setupHandlers = () => {
       // Запрашиваем историю при подключении
       eb.send('ssh.session.history', { sessionId }, (err, res) => {
@@ -121,10 +127,14 @@ const SshTerminal = ({ sessionId, serverId, userId, status, onRestore }) => {
           term.write(res.body.history);
         }
       });
+      sendSize();
     };
 
     const unsub = subscribeEb('open', setupHandlers);
 
+    // Размер PTY на сервере должен совпадать с размером xterm
+    term.onResize(sendSize);
+
     term.onData(data => {
       if (eb.state === EventBus.OPEN) {
         eb.publish('ssh.command.in', { sessionId, data });
@@ -1,10 +1,33 @@
 import React, { useEffect, useRef } from 'react';
+import { eb } from '../services/eventBus';
 import './TasksWidget.css';
 
+const formatBytes = (bytes) => {
+    const units = ['B', 'KB', 'MB', 'GB', 'TB'];
+    let value = bytes || 0;
+    let unit = 0;
+    while (value >= 1024 && unit < units.length - 1) {
+        value /= 1024;
+        unit++;
+    }
+    return `${value < 10 && unit > 0 ? value.toFixed(1) : Math.round(value)} ${units[unit]}`;
+};
+
+// Приоритет, который выставляет кнопка "поднять в очереди"
+const HIGH_PRIORITY = 10;
+
 const TasksWidget = ({ tasks, setTasks, showTasks, setShowTasks }) => {
     const taskArray = Object.entries(tasks);
     const containerRef = useRef(null);
 
+    const cancelTask = (taskId) => {
+        eb.send('files.transfer.cancel', { taskId }, () => {});
+    };
+
+    const raiseTask = (taskId) => {
+        eb.send('files.transfer.update', { taskId, priority: HIGH_PRIORITY }, () => {});
+    };
+
     useEffect(() => {
         if (!showTasks) return;
 
@@ -62,6 +85,12 @@ const TasksWidget = ({ tasks, setTasks, showTasks, setShowTasks }) => {
                                         {task.srcPath ? task.srcPath.split('/').pop() : 'Unknown file'}
                                     </span>
                                     <span className="task-item-percent">{task.percent}%</span>
+                                    {task.status === 'queued' && !(task.priority >= HIGH_PRIORITY) && (
+                                        <button className="task-item-action" onClick={() => raiseTask(id)} title="Поднять в очереди">⬆</button>
+                                    )}
+                                    {(task.status === 'queued' || task.status === 'copying') && (
+                                        <button className="task-item-action" onClick={() => cancelTask(id)} title="Отменить">✕</button>
+                                    )}
                                 </div>
                                 <div className="task-progress-bar">
                                     <div 
@@ -69,6 +98,26 @@ const TasksWidget = ({ tasks, setTasks, showTasks, setShowTasks }) => {
                                         style={{ width: `${task.percent}%` }}
                                     />
                                 </div>
+                                {task.status === 'queued' && (
+                                    <div className="task-status-text status-msg">
+                                        {task.position > 0 ? `В очереди: ${task.position}` : 'В очереди'}
+                                        {task.resumed && ' · продолжение после перезапуска'}
+                                        {task.bandwidthLimit > 0 && ` · лимит ${formatBytes(task.bandwidthLimit)}/с`}
+                                    </div>
+                                )}
+                                {task.totalBytes > 0 && task.status !== 'done' && task.status !== 'queued' && (
+                                    <div className="task-status-text status-msg">
+                                        {formatBytes(task.bytes)} из {formatBytes(task.totalBytes)}
+                                        {task.totalFiles > 1 && ` · файлов ${task.files} из ${task.totalFiles}`}
+                                        {task.status === 'copying' && task.bytesPerSec > 0 && ` · ${formatBytes(task.bytesPerSec)}/с`}
+                                        {task.status === 'copying' && task.bandwidthLimit > 0 && ` (лимит ${formatBytes(task.bandwidthLimit)}/с)`}
+                                    </div>
+                                )}
+                                {task.bytesSaved > 0 && (
+                                    <div className="task-status-text status-msg">
+                                        Не передано (дельта): {formatBytes(task.bytesSaved)}
+                                    </div>
+                                )}
                                 {task.status === 'done' && (
                                     <div className="task-status-text status-done">Успешно завершено</div>
                                 )}
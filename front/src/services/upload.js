@@ -0,0 +1,178 @@
+// Загрузка файлов на сервер: тело запроса идет на бекенде прямо в SFTP.
+// Небольшие файлы - одним PUT, большие - частями с CRC32 и докачкой после обрыва.
+
+const CHUNK_RETRIES = 5;
+
+const CRC_TABLE = (() => {
+  const table = new Uint32Array(256);
+  for (let n = 0; n < 256; n++) {
+    let c = n;
+    for (let k = 0; k < 8; k++) c = c & 1 ? 0xEDB88320 ^ (c >>> 1) : c >>> 1;
+    table[n] = c >>> 0;
+  }
+  return table;
+})();
+
+const crc32 = (bytes) => {
+  let crc = 0xFFFFFFFF;
+  for (let i = 0; i < bytes.length; i++) crc = CRC_TABLE[(crc ^ bytes[i]) & 0xFF] ^ (crc >>> 8);
+  return ((crc ^ 0xFFFFFFFF) >>> 0).toString(16).padStart(8, '0');
+};
+
+const errorText = async (response) => {
+  const text = await response.text();
+  try {
+    return JSON.parse(text).message || text;
+  } catch (e) {
+    return text;
+  }
+};
+
+const delay = (ms) => new Promise(resolve => setTimeout(resolve, ms));
+
+// Подтвержденное смещение на сервере - источник истины после любой ошибки;
+// committed - загрузка уже завершена (ответ на commit потерялся)
+const fetchStatus = async (uploadId) => {
+  const response = await fetch(`/api/upload/session?uploadId=${uploadId}`);
+  if (!response.ok) throw new Error(await errorText(response));
+  return response.json();
+};
+
+// Получение всех байтов еще не создает файл: целевой файл появляется только после commit.
+// Повтор commit безопасен - сервер помнит завершенную загрузку
+const commitChunked = async (uploadId) => {
+  for (let failures = 0; ; ) {
+    let response;
+    try {
+      response = await fetch(`/api/upload/commit?uploadId=${uploadId}`, { method: 'POST' });
+    } catch (e) {
+      response = null;
+    }
+    if (response && response.ok) return;
+    // 409 - rename на сервере не удался или файл неполон, 404 - загрузка истекла: повтор не поможет
+    if (response && response.status < 500) throw new Error(await errorText(response));
+    if (++failures > CHUNK_RETRIES) {
+      throw new Error(response ? await errorText(response) : 'Соединение прервано');
+    }
+    await delay(1000 * failures);
+  }
+};
+
+// Незавершенная загрузка запоминается в localStorage: после перезагрузки страницы или исчерпанных повторов
+// тот же файл в тот же каталог докачивается с подтвержденного сервером смещения, а не с нуля
+const resumeKey = (sessionId, dir, file) =>
+  `upload_resume:${sessionId}:${dir}:${file.name}:${file.size}:${file.lastModified}`;
+
+const loadResume = (key) => {
+  try {
+    return JSON.parse(localStorage.getItem(key));
+  } catch (e) {
+    return null;
+  }
+};
+
+const abortError = () => new DOMException('Загрузка отменена', 'AbortError');
+
+// Отмена пользователем - единственный случай, когда временный файл на сервере удаляется
+const cancelChunked = (uploadId, key) => {
+  localStorage.removeItem(key);
+  fetch(`/api/upload/session?uploadId=${uploadId}`, { method: 'DELETE' }).catch(() => {});
+};
+
+const uploadChunked = async (sessionId, dir, file, onProgress, signal) => {
+  const key = resumeKey(sessionId, dir, file);
+  let uploadId = null;
+  let chunkSize = 0;
+  let offset = 0;
+
+  const saved = loadResume(key);
+  if (saved) {
+    try {
+      const status = await fetchStatus(saved.uploadId);
+      if (status.committed) {
+        localStorage.removeItem(key);
+        if (onProgress) onProgress(file.size, file.size);
+        return;
+      }
+      offset = status.offset;
+      ({ uploadId, chunkSize } = saved);
+    } catch (e) {
+      // Загрузка истекла или сессия закрыта - начинаем заново
+      localStorage.removeItem(key);
+    }
+  }
+  if (!uploadId) {
+    const init = await fetch('/api/upload/session', {
+      method: 'POST',
+      headers: { 'Content-Type': 'application/json' },
+      body: JSON.stringify({ sessionId, path: dir, name: file.name, size: file.size }),
+    });
+    if (!init.ok) throw new Error(await errorText(init));
+    ({ uploadId, chunkSize } = await init.json());
+    localStorage.setItem(key, JSON.stringify({ uploadId, chunkSize }));
+  }
+  if (onProgress && offset) onProgress(offset, file.size);
+
+  let failures = 0;
+  while (offset < file.size) {
+    if (signal && signal.aborted) {
+      cancelChunked(uploadId, key);
+      throw abortError();
+    }
+    const bytes = new Uint8Array(await file.slice(offset, offset + chunkSize).arrayBuffer());
+    let response;
+    try {
+      response = await fetch(`/api/upload/chunk?uploadId=${uploadId}&offset=${offset}`, {
+        method: 'PUT',
+        headers: { 'Content-Type': 'application/octet-stream', 'X-Chunk-CRC32': crc32(bytes) },
+        body: bytes,
+        signal,
+      });
+    } catch (e) {
+      response = null;
+    }
+    if (signal && signal.aborted) continue;
+    if (response && response.ok) {
+      const result = await response.json();
+      failures = 0;
+      offset = result.offset;
+      if (onProgress) onProgress(offset, file.size);
+      continue;
+    }
+    // 409 - смещение разошлось (например, ответ на прошлую часть потерялся) или часть еще пишется, 422 - часть повреждена
+    if (response && ![409, 422].includes(response.status) && response.status < 500) {
+      if (response.status === 404) localStorage.removeItem(key);
+      throw new Error(await errorText(response));
+    }
+    // Временный файл и запись в localStorage остаются - следующая попытка продолжит с подтвержденного смещения
+    if (++failures > CHUNK_RETRIES) {
+      throw new Error(response ? await errorText(response) : 'Соединение прервано');
+    }
+    await delay(1000 * failures);
+    const status = await fetchStatus(uploadId);
+    offset = status.committed ? file.size : status.offset;
+  }
+  if (signal && signal.aborted) {
+    cancelChunked(uploadId, key);
+    throw abortError();
+  }
+  // Запись в localStorage остается до успешного commit: при ошибке повторная загрузка того же файла
+  // сразу перейдет к commit, не передавая байты заново
+  await commitChunked(uploadId);
+  localStorage.removeItem(key);
+};
+
+// signal (AbortController) - отмена пользователем: большой файл при этом удаляется и на сервере
+export const uploadFile = async (sessionId, dir, file, onProgress, signal, chunkThreshold = 8 * 1024 * 1024) => {
+  if (file.size > chunkThreshold) {
+    return uploadChunked(sessionId, dir, file, onProgress, signal);
+  }
+  const response = await fetch(`/api/upload?sessionId=${sessionId}&path=${encodeURIComponent(dir)}&name=${encodeURIComponent(file.name)}`, {
+    method: 'PUT',
+    headers: { 'Content-Type': 'application/octet-stream' },
+    body: file,
+    signal,
+  });
+  if (!response.ok) throw new Error(await errorText(response));
+  if (onProgress) onProgress(file.size, file.size);
+};